@@ -86,6 +86,11 @@ public class Endpoint {
   private final Condition condition;
   private final Duration connectionTimeout;
   private final Duration idleTimeout;
+  private final Integer maxPoolSize;
+  private final Integer maxPoolWaitQueueSize;
+  private final Boolean sharedPool;
+  private final Integer preparedStatementCacheMaxSize;
+  private final Integer preparedStatementCacheSqlLimit;
 
   /**
    * Validate the configuration.
@@ -111,6 +116,18 @@ public class Endpoint {
     if (!Strings.isNullOrEmpty(password) && !Strings.isNullOrEmpty(secret)) {
       throw new IllegalArgumentException("Endpoint " + name + " has both password and secret set, they are mutually incompatible.");
     }
+    if (maxPoolSize != null && maxPoolSize <= 0) {
+      throw new IllegalArgumentException("Endpoint " + name + " has maxPoolSize set to " + maxPoolSize + ", it must be at least 1.");
+    }
+    if (maxPoolWaitQueueSize != null && maxPoolWaitQueueSize <= 0) {
+      throw new IllegalArgumentException("Endpoint " + name + " has maxPoolWaitQueueSize set to " + maxPoolWaitQueueSize + ", it must be at least 1.");
+    }
+    if (preparedStatementCacheMaxSize != null && preparedStatementCacheMaxSize < 0) {
+      throw new IllegalArgumentException("Endpoint " + name + " has preparedStatementCacheMaxSize set to " + preparedStatementCacheMaxSize + ", it must not be negative.");
+    }
+    if (preparedStatementCacheSqlLimit != null && preparedStatementCacheSqlLimit <= 0) {
+      throw new IllegalArgumentException("Endpoint " + name + " has preparedStatementCacheSqlLimit set to " + preparedStatementCacheSqlLimit + ", it must be at least 1.");
+    }
   }
 
   /**
@@ -311,6 +328,117 @@ public class Endpoint {
     return idleTimeout;
   }
 
+  /**
+   * Get the maximum number of connections to open to the endpoint.
+   * <P>
+   * This may be overridden by the maxPoolSize of an individual {@link SourceSql}.
+   * If neither is set the pool is limited to 40 connections.
+   *
+   * @return the maximum number of connections to open to the endpoint.
+   */
+  @Schema(description = """
+                        <P>The maximum number of connections to open to the endpoint.</P>
+                        <P>
+                        This may be overridden by the maxPoolSize of an individual SQL source.
+                        If neither is set the pool is limited to 40 connections.
+                        </P>
+                        """,
+           requiredMode = Schema.RequiredMode.NOT_REQUIRED,
+           minimum = "1"
+  )
+  public Integer getMaxPoolSize() {
+    return maxPoolSize;
+  }
+
+  /**
+   * Get the maximum number of requests for connections that may be queued waiting for the endpoint.
+   * <P>
+   * This may be overridden by the maxPoolWaitQueueSize of an individual {@link SourceSql}.
+   * If neither is set the queue is unbounded.
+   *
+   * @return the maximum number of requests for connections that may be queued waiting for the endpoint.
+   */
+  @Schema(description = """
+                        <P>The maximum number of requests for connections that may be queued waiting for the endpoint.</P>
+                        <P>
+                        This may be overridden by the maxPoolWaitQueueSize of an individual SQL source.
+                        If neither is set the queue is unbounded.
+                        </P>
+                        """,
+           requiredMode = Schema.RequiredMode.NOT_REQUIRED,
+           minimum = "1"
+  )
+  public Integer getMaxPoolWaitQueueSize() {
+    return maxPoolWaitQueueSize;
+  }
+
+  /**
+   * Get whether the connection pool for the endpoint should be shared by all the verticles in the query engine.
+   * <P>
+   * By default each verticle has its own pool, so the total number of connections to the endpoint may be
+   * maxPoolSize multiplied by the number of verticles.
+   * A shared pool caps the total number of connections at maxPoolSize.
+   *
+   * @return true if the connection pool for the endpoint should be shared by all the verticles in the query engine.
+   */
+  @Schema(description = """
+                        <P>Whether the connection pool for the endpoint should be shared by all the verticles in the query engine.</P>
+                        <P>
+                        By default each verticle has its own pool, so the total number of connections to the endpoint may be
+                        maxPoolSize multiplied by the number of verticles.
+                        A shared pool caps the total number of connections at maxPoolSize.
+                        </P>
+                        """,
+           requiredMode = Schema.RequiredMode.NOT_REQUIRED
+  )
+  public Boolean getSharedPool() {
+    return sharedPool;
+  }
+
+  /**
+   * Get the maximum number of prepared statements that will be cached on each connection to the endpoint.
+   * <P>
+   * When this is set to a positive value statements that are run repeatedly on the same connection are only prepared once,
+   * saving a round trip to the database for each subsequent run.
+   * The default (zero) disables the cache.
+   *
+   * @return the maximum number of prepared statements that will be cached on each connection to the endpoint.
+   */
+  @Schema(description = """
+                        <P>The maximum number of prepared statements that will be cached on each connection to the endpoint.</P>
+                        <P>
+                        When this is set to a positive value statements that are run repeatedly on the same connection are only prepared once,
+                        saving a round trip to the database for each subsequent run.
+                        The default (zero) disables the cache.
+                        </P>
+                        """,
+           requiredMode = Schema.RequiredMode.NOT_REQUIRED,
+           minimum = "0"
+  )
+  public Integer getPreparedStatementCacheMaxSize() {
+    return preparedStatementCacheMaxSize;
+  }
+
+  /**
+   * Get the maximum length of SQL statement that will be put in the prepared statement cache.
+   * <P>
+   * Only relevant if preparedStatementCacheMaxSize is positive, if not set the Vert.x default (2048 characters) is used.
+   *
+   * @return the maximum length of SQL statement that will be put in the prepared statement cache.
+   */
+  @Schema(description = """
+                        <P>The maximum length of SQL statement that will be put in the prepared statement cache.</P>
+                        <P>
+                        Only relevant if preparedStatementCacheMaxSize is positive, if not set the Vert.x default (2048 characters) is used.
+                        </P>
+                        """,
+           requiredMode = Schema.RequiredMode.NOT_REQUIRED,
+           minimum = "1"
+  )
+  public Integer getPreparedStatementCacheSqlLimit() {
+    return preparedStatementCacheSqlLimit;
+  }
+
   /**
    * Builder class for {@link Endpoint} objects.
    */
@@ -327,6 +455,11 @@ public class Endpoint {
     private Condition condition;
     private Duration connectionTimeout;
     private Duration idleTimeout;
+    private Integer maxPoolSize;
+    private Integer maxPoolWaitQueueSize;
+    private Boolean sharedPool;
+    private Integer preparedStatementCacheMaxSize;
+    private Integer preparedStatementCacheSqlLimit;
 
     private Builder() {
     }
@@ -441,13 +574,69 @@ public class Endpoint {
       return this;
     }
 
+    /**
+     * Set the maximum number of connections to open to the Endpoint in the builder.
+     *
+     * @param value the maximum number of connections to open to the Endpoint.
+     * @return this, so that the builder may be used fluently.
+     */
+    public Builder maxPoolSize(final Integer value) {
+      this.maxPoolSize = value;
+      return this;
+    }
+
+    /**
+     * Set the maximum number of requests for connections that may be queued waiting for the Endpoint in the builder.
+     *
+     * @param value the maximum number of requests for connections that may be queued waiting for the Endpoint.
+     * @return this, so that the builder may be used fluently.
+     */
+    public Builder maxPoolWaitQueueSize(final Integer value) {
+      this.maxPoolWaitQueueSize = value;
+      return this;
+    }
+
+    /**
+     * Set whether the connection pool for the Endpoint should be shared by all verticles in the builder.
+     *
+     * @param value true if the connection pool for the Endpoint should be shared by all verticles.
+     * @return this, so that the builder may be used fluently.
+     */
+    public Builder sharedPool(final Boolean value) {
+      this.sharedPool = value;
+      return this;
+    }
+
+    /**
+     * Set the maximum number of prepared statements that will be cached on each connection to the Endpoint in the builder.
+     *
+     * @param value the maximum number of prepared statements that will be cached on each connection to the Endpoint.
+     * @return this, so that the builder may be used fluently.
+     */
+    public Builder preparedStatementCacheMaxSize(final Integer value) {
+      this.preparedStatementCacheMaxSize = value;
+      return this;
+    }
+
+    /**
+     * Set the maximum length of SQL statement that will be put in the prepared statement cache in the builder.
+     *
+     * @param value the maximum length of SQL statement that will be put in the prepared statement cache.
+     * @return this, so that the builder may be used fluently.
+     */
+    public Builder preparedStatementCacheSqlLimit(final Integer value) {
+      this.preparedStatementCacheSqlLimit = value;
+      return this;
+    }
+
     /**
      * Construct a new Endpoint object.
      *
      * @return a new Endpoint object.
      */
     public Endpoint build() {
-      return new Endpoint(name, type, url, urlTemplate, secret, username, password, condition, connectionTimeout, idleTimeout);
+      return new Endpoint(name, type, url, urlTemplate, secret, username, password, condition, connectionTimeout, idleTimeout
+              , maxPoolSize, maxPoolWaitQueueSize, sharedPool, preparedStatementCacheMaxSize, preparedStatementCacheSqlLimit);
     }
   }
 
@@ -460,7 +649,8 @@ public class Endpoint {
     return new Endpoint.Builder();
   }
 
-  private Endpoint(final String name, final EndpointType type, final String url, final String urlTemplate, final String secret, final String username, final String password, final Condition condition, final Duration connectionTimeout, final Duration idleTimeout) {
+  private Endpoint(final String name, final EndpointType type, final String url, final String urlTemplate, final String secret, final String username, final String password, final Condition condition, final Duration connectionTimeout, final Duration idleTimeout
+          , final Integer maxPoolSize, final Integer maxPoolWaitQueueSize, final Boolean sharedPool, final Integer preparedStatementCacheMaxSize, final Integer preparedStatementCacheSqlLimit) {
     this.name = name;
     this.type = type;
     this.url = url;
@@ -471,6 +661,11 @@ public class Endpoint {
     this.condition = condition;
     this.connectionTimeout = connectionTimeout;
     this.idleTimeout = idleTimeout;
+    this.maxPoolSize = maxPoolSize;
+    this.maxPoolWaitQueueSize = maxPoolWaitQueueSize;
+    this.sharedPool = sharedPool;
+    this.preparedStatementCacheMaxSize = preparedStatementCacheMaxSize;
+    this.preparedStatementCacheSqlLimit = preparedStatementCacheSqlLimit;
   }
   
 }
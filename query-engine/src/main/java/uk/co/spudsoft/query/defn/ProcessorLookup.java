@@ -16,6 +16,7 @@
  */
 package uk.co.spudsoft.query.defn;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
 import com.google.common.base.Strings;
@@ -24,6 +25,7 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.vertx.core.Vertx;
+import java.time.Duration;
 import java.util.List;
 import uk.co.spudsoft.query.exec.Auditor;
 import uk.co.spudsoft.query.exec.context.PipelineContext;
@@ -78,6 +80,8 @@ public class ProcessorLookup implements Processor {
   private final ImmutableList<ProcessorLookupField> lookupFields;
   
   private final SourcePipeline map;
+
+  private final Duration cacheDuration;
   
   @Override
   public ProcessorLookupInstance createInstance(Vertx vertx, MeterRegistry meterRegistry, Auditor auditor, PipelineContext pipelineContext, String name) {
@@ -106,6 +110,9 @@ public class ProcessorLookup implements Processor {
     if (condition != null) {
       condition.validate();
     }
+    if (cacheDuration != null && cacheDuration.isNegative()) {
+      throw new IllegalArgumentException("Negative lookup cache duration (" + cacheDuration.toString() + ") does not make sense");
+    }
   }
   
   @Override
@@ -187,6 +194,50 @@ public class ProcessorLookup implements Processor {
   public List<ProcessorLookupField> getLookupFields() {
     return lookupFields;
   }
+
+  /**
+   * Get the time for which the lookup map may be cached and shared between requests.
+   * <P>
+   * By default the lookup map is not cached and the map pipeline is run for every request.
+   * <P>
+   * When a cache duration is set the cache key is made of a hash of this processor definition, the values of any arguments whose names
+   * appear in the definition and the definitions of any endpoints whose names appear in the definition.
+   * Do not set a cache duration if the map depends on anything else (such as the identity of the user) because the map for one request will be
+   * used for other requests.
+   * <P>
+   * When the map is taken from the cache the map pipeline is not run, so the query will not appear in the audit of the request.
+   *
+   * @return the time for which the lookup map may be cached and shared between requests.
+   */
+  @Schema(description = """
+                        <P>The time for which the lookup map may be cached and shared between requests.</P>
+                        <P>
+                        By default the lookup map is not cached and the map pipeline is run for every request.
+                        </P>
+                        <P>
+                        When a cache duration is set the cache key is made of a hash of this processor definition, the values of any arguments whose names
+                        appear in the definition and the definitions of any endpoints whose names appear in the definition.
+                        Do not set a cache duration if the map depends on anything else (such as the identity of the user) because the map for one request will be
+                        used for other requests.
+                        </P>
+                        <P>
+                        When the map is taken from the cache the map pipeline is not run, so the query will not appear in the audit of the request.
+                        </P>
+                        """
+          , requiredMode = Schema.RequiredMode.NOT_REQUIRED
+  )
+  public Duration getCacheDuration() {
+    return cacheDuration;
+  }
+
+  /**
+   * Helper method that returns true if the cacheDuration contains a valid value.
+   * @return true if the cacheDuration contains a valid value.
+   */
+  @JsonIgnore
+  public boolean supportsCaching() {
+    return cacheDuration != null && cacheDuration.isPositive();
+  }
   
   /**
    * Builder class for ProcessorLookup.
@@ -202,6 +253,7 @@ public class ProcessorLookup implements Processor {
     private String lookupValueField;
     private List<ProcessorLookupField> lookupFields;
     private SourcePipeline map;
+    private Duration cacheDuration;
 
     private Builder() {
     }
@@ -276,12 +328,22 @@ public class ProcessorLookup implements Processor {
       return this;
     }
 
+    /**
+     * Set the {@link ProcessorLookup#cacheDuration} value in the builder.
+     * @param value The value for the {@link ProcessorLookup#cacheDuration}.
+     * @return this, so that this builder may be used in a fluent manner.
+     */
+    public Builder cacheDuration(final Duration value) {
+      this.cacheDuration = value;
+      return this;
+    }
+
     /**
      * Construct a new instance of the ProcessorLookup class.
      * @return a new instance of the ProcessorLookup class.
      */
     public ProcessorLookup build() {
-      ProcessorLookup result = new ProcessorLookup(type, condition, name, lookupKeyField, lookupValueField, lookupFields, map);
+      ProcessorLookup result = new ProcessorLookup(type, condition, name, lookupKeyField, lookupValueField, lookupFields, map, cacheDuration);
       result.validateType(ProcessorType.LOOKUP, type);
       return result;
     }
@@ -295,7 +357,7 @@ public class ProcessorLookup implements Processor {
     return new ProcessorLookup.Builder();
   }
 
-  private ProcessorLookup(final ProcessorType type, final Condition condition, final String name, final String lookupKeyField, final String lookupValueField, final List<ProcessorLookupField> lookupFields, final SourcePipeline map) {
+  private ProcessorLookup(final ProcessorType type, final Condition condition, final String name, final String lookupKeyField, final String lookupValueField, final List<ProcessorLookupField> lookupFields, final SourcePipeline map, final Duration cacheDuration) {
     this.type = type;
     this.condition = condition;
     this.name = name;
@@ -303,6 +365,7 @@ public class ProcessorLookup implements Processor {
     this.lookupValueField = lookupValueField;
     this.lookupFields = ImmutableCollectionTools.copy(lookupFields);
     this.map = map;
+    this.cacheDuration = cacheDuration;
   }
   
 }
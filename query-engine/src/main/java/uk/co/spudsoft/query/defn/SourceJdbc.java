@@ -53,7 +53,7 @@ public final class SourceJdbc implements Source {
 
   @Override
   public SourceJdbcInstance createInstance(Vertx vertx, MeterRegistry meterRegistry, Auditor auditor, PipelineContext pipelineContext, SharedMap sharedMap) {
-    return new SourceJdbcInstance(vertx, meterRegistry, auditor, pipelineContext, this);
+    return new SourceJdbcInstance(vertx, meterRegistry, auditor, pipelineContext, sharedMap, this);
   }
 
   /**
@@ -74,6 +74,7 @@ public final class SourceJdbc implements Source {
   
   private final Duration connectionTimeout;
   private final Boolean replaceDoubleQuotes;
+  private final Boolean pushDown;
   private final ImmutableList<ColumnType> columnTypeOverrides;
   private final ImmutableMap<String, DataType> columnTypeOverrideMap;
   
@@ -309,6 +310,62 @@ public final class SourceJdbc implements Source {
     return replaceDoubleQuotes;
   }
 
+  /**
+   * Get whether processing that immediately follows this source may be pushed down into the SQL statement.
+   * <P>
+   * When set to true any query, sort, offset and limit processors (including those created by the _query, _sort, _offset and _limit filters)
+   * that come first in the pipeline are converted into WHERE, ORDER BY and OFFSET/LIMIT clauses wrapped around the query,
+   * so that the database only returns the rows that are required.
+   * Anything that cannot be pushed down (including regular expression matches, and offsets or limits that do not follow a sort)
+   * is left to be processed by Query Engine as usual.
+   * <P>
+   * The query is used as a derived table, so it must be valid as one.
+   * For SQL Server a query that ends with an ORDER BY clause without TOP or OFFSET has "OFFSET 0 ROWS" appended to make it valid.
+   * The order of the rows from the query itself is not preserved once anything has been pushed down, only a pushed down sort determines the order.
+   * Comparisons are carried out by the database, so collation may differ from the in-engine processing;
+   * nulls are sorted first in ascending sorts and last in descending sorts, as they are by Query Engine.
+   * Only RSQL comparisons on fields that have a type in the {@link #columnTypeOverrides} are pushed down, with the arguments bound as parameters of that type.
+   * <P>
+   * The default is false.
+   *
+   * @return true if processing that immediately follows this source may be pushed down into the SQL statement.
+   */
+  @Schema(description = """
+                        <P>If set to true processing that immediately follows this source may be pushed down into the SQL statement.</P>
+                        <P>
+                        Any query, sort, offset and limit processors (including those created by the _query, _sort, _offset and _limit filters)
+                        that come first in the pipeline are converted into WHERE, ORDER BY and OFFSET/LIMIT clauses wrapped around the query,
+                        so that the database only returns the rows that are required.
+                        Anything that cannot be pushed down (including regular expression matches, and offsets or limits that do not follow a sort)
+                        is left to be processed by Query Engine as usual.
+                        </P>
+                        <P>
+                        The query is used as a derived table, so it must be valid as one.
+                        For SQL Server a query that ends with an ORDER BY clause without TOP or OFFSET has "OFFSET 0 ROWS" appended to make it valid.
+                        The order of the rows from the query itself is not preserved once anything has been pushed down, only a pushed down sort determines the order.
+                        Comparisons are carried out by the database, so collation may differ from the in-engine processing;
+                        nulls are sorted first in ascending sorts and last in descending sorts, as they are by Query Engine.
+                        Only RSQL comparisons on fields that have a type in the columnTypeOverrides are pushed down, with the arguments bound as parameters of that type.
+                        </P>
+                        <P>
+                        The default is false.
+                        </P>
+                        """
+    , defaultValue = "false"
+  )
+  public Boolean getPushDown() {
+    return pushDown;
+  }
+
+  /**
+   * Return true if {@link #pushDown} is set to true.
+   * @return true if {@link #pushDown} is set to true.
+   */
+  @JsonIgnore
+  public boolean isPushDownEnabled() {
+    return pushDown != null && pushDown;
+  }
+
   /**
    * The connection timeout for the connections that will be created.
   * <P>
@@ -410,6 +467,7 @@ public final class SourceJdbc implements Source {
     private int processingBatchSize = 1000;
     private Duration connectionTimeout;
     private Boolean replaceDoubleQuotes;
+    private Boolean pushDown;
     private ImmutableList<ColumnType> columnTypeOverrides;
 
     private Builder() {
@@ -515,6 +573,16 @@ public final class SourceJdbc implements Source {
       return this;
     }
 
+    /**
+     * Set the {@link SourceJdbc#pushDown} value in the builder.
+     * @param value The value for the {@link SourceJdbc#pushDown}.
+     * @return this, so that this builder may be used in a fluent manner.
+     */
+    public Builder pushDown(final Boolean value) {
+      this.pushDown = value;
+      return this;
+    }
+
     /**
      * Set the {@link SourceJdbc#columnTypeOverrides} value in the builder.
      * @param value The value for the {@link SourceJdbc#columnTypeOverrides}.
@@ -535,6 +603,7 @@ public final class SourceJdbc implements Source {
             , jdbcFetchSize, processingBatchSize
             , connectionTimeout
             , replaceDoubleQuotes
+            , pushDown
             , columnTypeOverrides
       );
     }
@@ -560,6 +629,7 @@ public final class SourceJdbc implements Source {
    * @param processingBatchSize {@link SourceJdbc#processingBatchSize}
    * @param connectionTimeout {@link SourceJdbc#connectionTimeout}
    * @param replaceDoubleQuotes  {@link SourceJdbc#replaceDoubleQuotes}
+   * @param pushDown {@link SourceJdbc#pushDown}
    * @param columnTypeOverrides {@link SourceJdbc#columnTypeOverrides}
    */
   public SourceJdbc(final SourceType type
@@ -572,6 +642,7 @@ public final class SourceJdbc implements Source {
           , final int processingBatchSize
           , final Duration connectionTimeout
           , final Boolean replaceDoubleQuotes
+          , final Boolean pushDown
           , final List<ColumnType> columnTypeOverrides
   ) {
     validateType(SourceType.JDBC, type);
@@ -585,6 +656,7 @@ public final class SourceJdbc implements Source {
     this.processingBatchSize = processingBatchSize;
     this.connectionTimeout = connectionTimeout;
     this.replaceDoubleQuotes = replaceDoubleQuotes;
+    this.pushDown = pushDown;
     if (columnTypeOverrides == null || columnTypeOverrides.isEmpty()) {
       this.columnTypeOverrides = null;
       this.columnTypeOverrideMap = null;
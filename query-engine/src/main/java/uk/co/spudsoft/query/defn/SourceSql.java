@@ -71,12 +71,14 @@ public final class SourceSql implements Source {
   private final String query;
   private final String queryTemplate;
   private final int streamingFetchSize;
+  private final int streamingReadAhead;
   
   private final Integer maxPoolSize;
   private final Integer maxPoolWaitQueueSize;
   private final Duration idleTimeout;
   private final Duration connectionTimeout;
   private final Boolean replaceDoubleQuotes;
+  private final Boolean pushDown;
   private final ImmutableList<ColumnType> columnTypeOverrides;
   private final ImmutableMap<String, DataType> columnTypeOverrideMap;
   
@@ -93,6 +95,9 @@ public final class SourceSql implements Source {
     if (!Strings.isNullOrEmpty(query) && !Strings.isNullOrEmpty(queryTemplate)) {
       throw new IllegalArgumentException("Both query and quueryTemplate specified in SQL source");
     }
+    if (streamingReadAhead < 0) {
+      throw new IllegalArgumentException("StreamingReadAhead must not be negative");
+    }
     if (maxPoolSize != null) {
       if (maxPoolSize <= 0) {
         throw new IllegalArgumentException("MaxPoolSize must be at least 1");
@@ -248,6 +253,33 @@ public final class SourceSql implements Source {
     return streamingFetchSize;
   }    
 
+  /**
+   * The number of batches of rows (each of {@link #getStreamingFetchSize()} rows) that may be read from the Source ahead of the rows being processed.
+   * <P>
+   * By default (zero) the next batch of rows is only requested once the previous batch has been processed, so the database sits idle whilst
+   * the rows are being output.
+   * Setting this to one or more requests the next batch as soon as the previous batch arrives, overlapping the database round trip with
+   * the processing of the rows, at the cost of holding up to this many more batches in memory.
+   * This is most beneficial when the Source has a high latency.
+   * 
+   * @return the number of batches of rows that may be read from the Source ahead of the rows being processed.
+   */
+  @Schema(description = """
+                        <P>The number of batches of rows (each of streamingFetchSize rows) that may be read from the Source ahead of the rows being processed.</P>
+                        <P>
+                        By default (zero) the next batch of rows is only requested once the previous batch has been processed, so the database sits idle whilst
+                        the rows are being output.
+                        Setting this to one or more requests the next batch as soon as the previous batch arrives, overlapping the database round trip with
+                        the processing of the rows, at the cost of holding up to this many more batches in memory.
+                        This is most beneficial when the Source has a high latency.
+                        </P>
+                        """
+          , minimum = "0"
+  )
+  public int getStreamingReadAhead() {
+    return streamingReadAhead;
+  }
+
   /**
    * The maximum number of connections to open to the Endpoint.
    * <P>
@@ -314,6 +346,62 @@ public final class SourceSql implements Source {
     return replaceDoubleQuotes;
   }
 
+  /**
+   * Get whether processing that immediately follows this source may be pushed down into the SQL statement.
+   * <P>
+   * When set to true any query, sort, offset and limit processors (including those created by the _query, _sort, _offset and _limit filters)
+   * that come first in the pipeline are converted into WHERE, ORDER BY and OFFSET/LIMIT clauses wrapped around the query,
+   * so that the database only returns the rows that are required.
+   * Anything that cannot be pushed down (including regular expression matches, and offsets or limits that do not follow a sort)
+   * is left to be processed by Query Engine as usual.
+   * <P>
+   * The query is used as a derived table, so it must be valid as one.
+   * For SQL Server a query that ends with an ORDER BY clause without TOP or OFFSET has "OFFSET 0 ROWS" appended to make it valid.
+   * The order of the rows from the query itself is not preserved once anything has been pushed down, only a pushed down sort determines the order.
+   * Comparisons are carried out by the database, so collation may differ from the in-engine processing;
+   * nulls are sorted first in ascending sorts and last in descending sorts, as they are by Query Engine.
+   * Only RSQL comparisons on fields that have a type in the {@link #columnTypeOverrides} are pushed down, with the arguments bound as parameters of that type.
+   * <P>
+   * The default is false.
+   *
+   * @return true if processing that immediately follows this source may be pushed down into the SQL statement.
+   */
+  @Schema(description = """
+                        <P>If set to true processing that immediately follows this source may be pushed down into the SQL statement.</P>
+                        <P>
+                        Any query, sort, offset and limit processors (including those created by the _query, _sort, _offset and _limit filters)
+                        that come first in the pipeline are converted into WHERE, ORDER BY and OFFSET/LIMIT clauses wrapped around the query,
+                        so that the database only returns the rows that are required.
+                        Anything that cannot be pushed down (including regular expression matches, and offsets or limits that do not follow a sort)
+                        is left to be processed by Query Engine as usual.
+                        </P>
+                        <P>
+                        The query is used as a derived table, so it must be valid as one.
+                        For SQL Server a query that ends with an ORDER BY clause without TOP or OFFSET has "OFFSET 0 ROWS" appended to make it valid.
+                        The order of the rows from the query itself is not preserved once anything has been pushed down, only a pushed down sort determines the order.
+                        Comparisons are carried out by the database, so collation may differ from the in-engine processing;
+                        nulls are sorted first in ascending sorts and last in descending sorts, as they are by Query Engine.
+                        Only RSQL comparisons on fields that have a type in the columnTypeOverrides are pushed down, with the arguments bound as parameters of that type.
+                        </P>
+                        <P>
+                        The default is false.
+                        </P>
+                        """
+    , defaultValue = "false"
+  )
+  public Boolean getPushDown() {
+    return pushDown;
+  }
+
+  /**
+   * Return true if {@link #pushDown} is set to true.
+   * @return true if {@link #pushDown} is set to true.
+   */
+  @JsonIgnore
+  public boolean isPushDownEnabled() {
+    return pushDown != null && pushDown;
+  }
+
   /**
    * The idle timeout for the connection pool that will be created.
    * <P>
@@ -459,11 +547,13 @@ public final class SourceSql implements Source {
     private String query;
     private String queryTemplate;
     private int streamingFetchSize = 1000;
+    private int streamingReadAhead;
     private Integer maxPoolSize;
     private Integer maxPoolWaitQueueSize;
     private Duration idleTimeout;
     private Duration connectionTimeout;
     private Boolean replaceDoubleQuotes;
+    private Boolean pushDown;
     private ImmutableList<ColumnType> columnTypeOverrides;
 
     private Builder() {
@@ -539,6 +629,16 @@ public final class SourceSql implements Source {
       return this;
     }
 
+    /**
+     * Set the {@link SourceSql#streamingReadAhead} value in the builder.
+     * @param value The value for the {@link SourceSql#streamingReadAhead}.
+     * @return this, so that this builder may be used in a fluent manner.
+     */
+    public Builder streamingReadAhead(final int value) {
+      this.streamingReadAhead = value;
+      return this;
+    }
+
     /**
      * Set the {@link SourceSql#maxPoolSize} value in the builder.
      * @param value The value for the {@link SourceSql#maxPoolSize}.
@@ -589,6 +689,16 @@ public final class SourceSql implements Source {
       return this;
     }
 
+    /**
+     * Set the {@link SourceSql#pushDown} value in the builder.
+     * @param value The value for the {@link SourceSql#pushDown}.
+     * @return this, so that this builder may be used in a fluent manner.
+     */
+    public Builder pushDown(final Boolean value) {
+      this.pushDown = value;
+      return this;
+    }
+
     /**
      * Set the {@link SourceSql#replaceDoubleQuotes} value in the builder.
      * @param value The value for the {@link SourceSql#replaceDoubleQuotes}.
@@ -607,8 +717,10 @@ public final class SourceSql implements Source {
       return new SourceSql(type, name, endpoint, endpointTemplate
             , query, queryTemplate
             , streamingFetchSize
+            , streamingReadAhead
             , maxPoolSize, maxPoolWaitQueueSize, idleTimeout, connectionTimeout
             , replaceDoubleQuotes
+            , pushDown
             , columnTypeOverrides
       );
     }
@@ -631,11 +743,13 @@ public final class SourceSql implements Source {
    * @param query {@link SourceSql#query}
    * @param queryTemplate {@link SourceSql#queryTemplate}
    * @param streamingFetchSize {@link SourceSql#streamingFetchSize}
+   * @param streamingReadAhead {@link SourceSql#streamingReadAhead}
    * @param maxPoolSize {@link SourceSql#maxPoolSize}
    * @param maxPoolWaitQueueSize {@link SourceSql#maxPoolWaitQueueSize}
    * @param idleTimeout {@link SourceSql#idleTimeout}
    * @param connectionTimeout {@link SourceSql#connectionTimeout}
    * @param replaceDoubleQuotes  {@link SourceSql#replaceDoubleQuotes}
+   * @param pushDown {@link SourceSql#pushDown}
    * @param columnTypeOverrides {@link SourceSql#columnTypeOverrides}
    */
   public SourceSql(final SourceType type
@@ -645,11 +759,13 @@ public final class SourceSql implements Source {
           , final String query
           , final String queryTemplate
           , final int streamingFetchSize
+          , final int streamingReadAhead
           , final Integer maxPoolSize
           , final Integer maxPoolWaitQueueSize
           , final Duration idleTimeout
           , final Duration connectionTimeout
           , final Boolean replaceDoubleQuotes
+          , final Boolean pushDown
           , final List<ColumnType> columnTypeOverrides
   ) {
     validateType(SourceType.SQL, type);
@@ -660,11 +776,13 @@ public final class SourceSql implements Source {
     this.query = query;
     this.queryTemplate = queryTemplate;
     this.streamingFetchSize = streamingFetchSize;
+    this.streamingReadAhead = streamingReadAhead;
     this.maxPoolSize = maxPoolSize;
     this.maxPoolWaitQueueSize = maxPoolWaitQueueSize;
     this.idleTimeout = idleTimeout;
     this.connectionTimeout = connectionTimeout;
     this.replaceDoubleQuotes = replaceDoubleQuotes;
+    this.pushDown = pushDown;
     if (columnTypeOverrides == null || columnTypeOverrides.isEmpty()) {
       this.columnTypeOverrides = null;
       this.columnTypeOverrideMap = null;
@@ -0,0 +1,317 @@
+/*
+ * Copyright (C) 2026 jtalbut
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.spudsoft.query.exec;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.co.spudsoft.query.main.AuditWriteBehind;
+
+/**
+ * Bounded queue of audit updates that are written to the database in the background.
+ * <P>
+ * Updates are written in the order in which they were added, with consecutive updates that use the same SQL statement being sent as
+ * a single JDBC batch.
+ * Only one flush runs at a time; a flush is started periodically, when a full batch is waiting, or when {@link #flush()} is called.
+ * <P>
+ * The binder of an update may not be called until long after the update was added, so all the values that it uses must be
+ * captured before the update is added.
+ *
+ * @author jtalbut
+ */
+class AuditWriteBehindQueue {
+
+  @SuppressWarnings("constantname")
+  private static final Logger logger = LoggerFactory.getLogger(AuditWriteBehindQueue.class);
+
+  /**
+   * An update waiting to be written.
+   * @param name name of the update, for log messages.
+   * @param sql the SQL statement to run.
+   * @param silent if true the update is expected to fail sometimes, so it is never batched and failures are only logged at debug level.
+   * @param binder sets the parameters of the {@link PreparedStatement}.
+   */
+  record Update(String name, String sql, boolean silent, JdbcHelper.SqlConsumer<PreparedStatement> binder) {
+  }
+
+  private record Waiter(long target, Context context, Promise<Void> promise) {
+  }
+
+  private final Vertx vertx;
+  private final JdbcHelper jdbcHelper;
+  private final int maxQueueSize;
+  private final int maxBatchSize;
+  private final long timerId;
+
+  private final Counter droppedCounter;
+  private final Counter writtenCounter;
+  private final Counter failedCounter;
+
+  private final Object lock = new Object();
+  // All guarded by lock
+  private final ArrayDeque<Update> queue = new ArrayDeque<>();
+  private final List<Waiter> waiters = new ArrayList<>();
+  private long addedCount;
+  private long writtenCount;
+  private boolean flushing;
+
+  /**
+   * Constructor.
+   * @param vertx The Vert.x instance.
+   * @param meterRegistry MeterRegistry for production of metrics, may be null.
+   * @param jdbcHelper Helper object for making DB calls.
+   * @param config The configuration of the queue.
+   */
+  AuditWriteBehindQueue(Vertx vertx, MeterRegistry meterRegistry, JdbcHelper jdbcHelper, AuditWriteBehind config) {
+    this.vertx = vertx;
+    this.jdbcHelper = jdbcHelper;
+    this.maxQueueSize = config.getMaxQueueSize();
+    this.maxBatchSize = config.getMaxBatchSize();
+    if (meterRegistry != null) {
+      droppedCounter = meterRegistry.counter("queryengine.audit.writebehind.dropped");
+      writtenCounter = meterRegistry.counter("queryengine.audit.writebehind.written");
+      failedCounter = meterRegistry.counter("queryengine.audit.writebehind.failed");
+      meterRegistry.gauge("queryengine.audit.writebehind.queued", this, q -> q.size());
+    } else {
+      droppedCounter = null;
+      writtenCounter = null;
+      failedCounter = null;
+    }
+    this.timerId = vertx.setPeriodic(config.getFlushPeriod().toMillis(), id -> {
+      synchronized (lock) {
+        if (flushing || queue.isEmpty()) {
+          return;
+        }
+        flushing = true;
+      }
+      writeNext();
+    });
+  }
+
+  /**
+   * Get the number of updates waiting to be written.
+   * @return the number of updates waiting to be written.
+   */
+  int size() {
+    synchronized (lock) {
+      return queue.size();
+    }
+  }
+
+  /**
+   * Add an update to the queue.
+   * <P>
+   * If the queue is full the update is discarded.
+   * @param update The update to add.
+   * @return true if the update was added to the queue.
+   */
+  boolean add(Update update) {
+    synchronized (lock) {
+      if (queue.size() >= maxQueueSize) {
+        increment(droppedCounter, 1);
+        logger.warn("Audit write-behind queue is full, {} update discarded", update.name());
+        return false;
+      }
+      queue.add(update);
+      ++addedCount;
+      if (flushing || queue.size() < maxBatchSize) {
+        return true;
+      }
+      flushing = true;
+    }
+    writeNext();
+    return true;
+  }
+
+  /**
+   * Write all the updates that have been added to the queue.
+   * <P>
+   * The returned Future is completed on the calling context once every update added before this call has been written (or has failed).
+   * It is never failed.
+   * @return A Future that will be completed when all the updates that have been added to the queue have been written.
+   */
+  Future<Void> flush() {
+    Context context = vertx.getOrCreateContext();
+    Promise<Void> promise = Promise.promise();
+    synchronized (lock) {
+      if (writtenCount >= addedCount) {
+        return Future.succeededFuture();
+      }
+      waiters.add(new Waiter(addedCount, context, promise));
+      if (flushing) {
+        return promise.future();
+      }
+      flushing = true;
+    }
+    writeNext();
+    return promise.future();
+  }
+
+  /**
+   * Stop the periodic flush and write everything that is in the queue.
+   * @return A Future that will be completed when all the updates that have been added to the queue have been written.
+   */
+  Future<Void> close() {
+    vertx.cancelTimer(timerId);
+    return flush();
+  }
+
+  /**
+   * Write the next batch from the queue, must only be called by the thread that set flushing to true.
+   * <P>
+   * Batches continue to be written until the queue is empty.
+   */
+  private void writeNext() {
+    List<Update> batch;
+    long lastCount;
+    synchronized (lock) {
+      if (queue.isEmpty()) {
+        flushing = false;
+        return;
+      }
+      batch = new ArrayList<>(Math.min(queue.size(), maxBatchSize));
+      while (!queue.isEmpty() && batch.size() < maxBatchSize) {
+        batch.add(queue.poll());
+      }
+      lastCount = writtenCount + batch.size();
+    }
+    vertx.executeBlocking(() -> {
+      write(batch);
+      return null;
+    }).onComplete(ar -> {
+      if (ar.failed()) {
+        logger.warn("Failed to write audit updates: ", ar.cause());
+      }
+      List<Waiter> completed = new ArrayList<>();
+      synchronized (lock) {
+        writtenCount = lastCount;
+        for (Iterator<Waiter> iter = waiters.iterator(); iter.hasNext();) {
+          Waiter waiter = iter.next();
+          if (waiter.target() <= writtenCount) {
+            completed.add(waiter);
+            iter.remove();
+          }
+        }
+      }
+      for (Waiter waiter : completed) {
+        waiter.context().runOnContext(v -> waiter.promise().complete());
+      }
+      writeNext();
+    });
+  }
+
+  /**
+   * Write a batch of updates on a single connection, must be called on a worker thread.
+   * @param batch The updates to write.
+   */
+  void write(List<Update> batch) {
+    try {
+      jdbcHelper.runOnConnectionSynchronously("auditWriteBehind", conn -> {
+        int start = 0;
+        while (start < batch.size()) {
+          Update first = batch.get(start);
+          int end = start + 1;
+          if (!first.silent()) {
+            while (end < batch.size() && !batch.get(end).silent() && batch.get(end).sql().equals(first.sql())) {
+              ++end;
+            }
+          }
+          if (end - start == 1) {
+            writeOne(conn, first);
+          } else {
+            writeBatch(conn, batch.subList(start, end));
+          }
+          start = end;
+        }
+        return null;
+      });
+    } catch (Throwable ex) {
+      // Failure to get a connection has already been logged
+      increment(failedCounter, batch.size());
+    }
+  }
+
+  /**
+   * Write a batch of updates that use the same SQL statement in a single transaction.
+   * <P>
+   * Some drivers continue to process a batch after one of its statements has failed, so the transaction is rolled back before
+   * the updates are retried individually to ensure that none of them is written twice.
+   *
+   * @param conn The connection to use, which is returned to auto-commit mode afterwards.
+   * @param updates The updates to write.
+   * @throws SQLException if the transaction cannot be started or rolled back, in which case the connection should not be used again.
+   */
+  private void writeBatch(Connection conn, List<Update> updates) throws SQLException {
+    conn.setAutoCommit(false);
+    try {
+      PreparedStatement statement = conn.prepareStatement(updates.get(0).sql());
+      try {
+        for (Update update : updates) {
+          update.binder().accept(statement);
+          statement.addBatch();
+        }
+        statement.executeBatch();
+      } finally {
+        JdbcHelper.closeStatement(statement);
+      }
+      conn.commit();
+      increment(writtenCounter, updates.size());
+    } catch (Throwable ex) {
+      conn.rollback();
+      conn.setAutoCommit(true);
+      logger.warn("Failed to write batch of {} {} updates, writing them individually: {}", updates.size(), updates.get(0).name(), ex.getMessage());
+      for (Update update : updates) {
+        writeOne(conn, update);
+      }
+      return;
+    }
+    conn.setAutoCommit(true);
+  }
+
+  private void writeOne(Connection conn, Update update) {
+    try {
+      jdbcHelper.runSqlUpdateOnConnectionSynchronously(conn, update.sql(), update.binder());
+      increment(writtenCounter, 1);
+    } catch (Throwable ex) {
+      increment(failedCounter, 1);
+      if (update.silent()) {
+        logger.debug("Failed to write {} update: {}", update.name(), ex.getMessage());
+      } else {
+        logger.warn("Failed to write {} update: ", update.name(), ex);
+      }
+    }
+  }
+
+  private static void increment(Counter counter, int count) {
+    if (counter != null) {
+      counter.increment(count);
+    }
+  }
+
+}
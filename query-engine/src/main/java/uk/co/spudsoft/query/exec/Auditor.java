@@ -16,15 +16,19 @@
  */
 package uk.co.spudsoft.query.exec;
 
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import io.vertx.core.Future;
 import io.vertx.core.Promise;
 import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.json.JsonArray;
 import io.vertx.ext.healthchecks.Status;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Objects;
 import liquibase.exception.LiquibaseException;
 import uk.co.spudsoft.dircache.DirCacheTree.File;
 import uk.co.spudsoft.query.defn.Pipeline;
@@ -99,6 +103,55 @@ public interface Auditor {
    */
   record CacheDetails(String auditId, String cacheFile, LocalDateTime expiry){};
 
+  /**
+   * Get the key used to find cache files for a request.
+   * <P>
+   * The cache key is built of:
+   * <UL>
+   * <LI>The full request URL.
+   * <LI>Headers:
+   * <UL>
+   * <LI>Accept
+   * <LI>Accept-Encoding
+   * </UL>
+   * <LI>Token fields:
+   * <UL>
+   * <LI>aud
+   * <LI>iss
+   * <LI>sub
+   * <LI>groups
+   * <LI>roles
+   * </UL>
+   * </UL>
+   *
+   * Note that the fileHash must also match, but isn't built into the key (should usually match because of the use of the inclusion of full URL).
+   *
+   * @param requestContext The request context.
+   * @return the cache key for the request, or null if there is no request context.
+   */
+  default String cacheKey(RequestContext requestContext) {
+    if (requestContext != null) {
+      Hasher sha = Hashing.sha256().newHasher();
+      hashNullableString(sha, requestContext.getUrl());
+      hashNullableString(sha, requestContext.getHeaders().get("Accept"));
+      hashNullableString(sha, requestContext.getHeaders().get("Accept-Encoding"));
+      hashNullableString(sha, Objects.toString(requestContext.getAudience()));
+      hashNullableString(sha, requestContext.getIssuer());
+      hashNullableString(sha, requestContext.getSubject());
+      hashNullableString(sha, Objects.toString(requestContext.getGroups()));
+      hashNullableString(sha, Objects.toString(requestContext.getRoles()));
+      return sha.hash().toString();
+    } else {
+      return null;
+    }
+  }
+
+  private static void hashNullableString(Hasher hasher, String value) {
+    if (value != null) {
+      hasher.putString(value, StandardCharsets.UTF_8);
+    }
+  }
+
   /**
    * Get the most recent cache file (if any) matching the current request.
    * @param requestContext The context in which this request is being made.
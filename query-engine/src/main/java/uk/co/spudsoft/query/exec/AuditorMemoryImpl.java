@@ -38,23 +38,17 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Deque;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
-import org.apache.commons.collections4.CollectionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.co.spudsoft.dircache.DirCacheTree;
 import uk.co.spudsoft.query.defn.Pipeline;
 import uk.co.spudsoft.query.defn.RateLimitRule;
-import uk.co.spudsoft.query.defn.RateLimitScopeType;
 import uk.co.spudsoft.query.exec.context.RequestContext;
-import static uk.co.spudsoft.query.defn.RateLimitScopeType.clientip;
-import static uk.co.spudsoft.query.defn.RateLimitScopeType.host;
-import static uk.co.spudsoft.query.defn.RateLimitScopeType.issuer;
-import static uk.co.spudsoft.query.defn.RateLimitScopeType.path;
-import static uk.co.spudsoft.query.defn.RateLimitScopeType.subject;
-import static uk.co.spudsoft.query.defn.RateLimitScopeType.username;
 import static uk.co.spudsoft.query.exec.AuditHistorySortOrder.id;
 import static uk.co.spudsoft.query.exec.AuditHistorySortOrder.responseStreamStart;
 import static uk.co.spudsoft.query.exec.AuditHistorySortOrder.timestamp;
@@ -68,6 +62,10 @@ import uk.co.spudsoft.query.main.OperatorsInstance;
 /**
  * Audit implementation that is based on a size-constrained list in memory.
  * This is not intended for production use, but can be a good choice for design mode.
+ * <P>
+ * The rows are held in a time-ordered ring of at most {@link #SIZE} entries, which is only locked to add and evict rows.
+ * Rows are found by hash indexes on the request ID and the cache key, and rate limit rules are evaluated using the per-scope
+ * counters of a {@link LocalRateLimiter}, so the cost of each operation does not depend on the amount of history retained.
  * @author jtalbut
  */
 public class AuditorMemoryImpl implements Auditor {
@@ -121,6 +119,7 @@ public class AuditorMemoryImpl implements Auditor {
     private String filePath;
     private Long fileSize;
     private LocalDateTime fileModified;
+    // Written whilst synchronized on the row because it is captured in the CacheEntry
     private String fileHash;
     private LocalDateTime exceptionTime;
     private String exceptionClass;
@@ -133,6 +132,7 @@ public class AuditorMemoryImpl implements Auditor {
     private Long responseRows;
     private Long responseSize;
     private String responseHeaders;
+    // The cache fields are only accessed whilst synchronized on the row, readers use the CacheEntry in the index
     private String cacheKey;
     private LocalDateTime cacheExpiry;
     private LocalDateTime cacheDeleted;
@@ -163,9 +163,25 @@ public class AuditorMemoryImpl implements Auditor {
     }
   }
 
+  /**
+   * Immutable snapshot of the cache details of an {@link AuditRow}, as published in the index of cache keys.
+   * @param row The row that recorded the cache file, used to check that it has not been evicted.
+   * @param cacheFile The name of the cache file.
+   * @param cacheExpiry The time at which the cache file expires.
+   * @param fileHash The hash of the pipeline that generated the cache file.
+   */
+  private record CacheEntry(AuditRow row, String cacheFile, LocalDateTime cacheExpiry, String fileHash) {
+  }
+
+  private static final long RATE_LIMIT_PURGE_PERIOD_MS = 60000;
+
   private final Vertx vertx;
   private final OperatorsInstance operators;
   private final Deque<AuditRow> auditRows = new ArrayDeque<>(SIZE + 1);
+  private final Map<String, AuditRow> rowsById = new ConcurrentHashMap<>();
+  // The values are immutable lists of immutable entries that are replaced whenever they change
+  private final Map<String, List<CacheEntry>> rowsByCacheKey = new ConcurrentHashMap<>();
+  private final LocalRateLimiter rateLimiter = new LocalRateLimiter(null);
 
   /**
    * Constructor.
@@ -175,6 +191,9 @@ public class AuditorMemoryImpl implements Auditor {
   public AuditorMemoryImpl(Vertx vertx, OperatorsInstance operators) {
     this.vertx = vertx;
     this.operators = operators;
+    if (vertx != null) {
+      vertx.setPeriodic(RATE_LIMIT_PURGE_PERIOD_MS, id -> rateLimiter.purge());
+    }
   }
 
   @Override
@@ -190,7 +209,7 @@ public class AuditorMemoryImpl implements Auditor {
 
   private void waitForOutstandingRequests(Promise<Void> promise, long terminalTime) {
     boolean allComplete = true;
-    for (AuditRow row : auditRows) {
+    for (AuditRow row : rowsById.values()) {
       if (row.responseTime == null) {
         allComplete = false;
         break;
@@ -212,35 +231,60 @@ public class AuditorMemoryImpl implements Auditor {
     if (Strings.isNullOrEmpty(id)) {
       return null;
     }
-    synchronized (auditRows) {
-      for (AuditRow row : auditRows) {
-        if (id.equals(row.id)) {
-          return row;
+    AuditRow row = rowsById.get(id);
+    if (row == null) {
+      Log.decorate(logger.atInfo(), requestContext).log("Did not find details of run {} in history of {} runs", id, rowsById.size());
+    }
+    return row;
+  }
+
+  private void indexCacheKey(CacheEntry entry, String cacheKey) {
+    rowsByCacheKey.compute(cacheKey, (k, entries) -> {
+      if (entries == null) {
+        return List.of(entry);
+      }
+      List<CacheEntry> result = new ArrayList<>(entries.size() + 1);
+      for (CacheEntry existing : entries) {
+        if (existing.row() != entry.row()) {
+          result.add(existing);
         }
       }
-      Log.decorate(logger.atInfo(), requestContext).log("Did not find details of run {} in history of {} runs: {}", id, auditRows.size(), auditRows);
-    }
-    return null;
+      result.add(entry);
+      return List.copyOf(result);
+    });
+  }
+
+  private void unindexCacheKey(AuditRow row, String cacheKey) {
+    rowsByCacheKey.computeIfPresent(cacheKey, (k, entries) -> {
+      List<CacheEntry> result = new ArrayList<>(entries.size());
+      for (CacheEntry existing : entries) {
+        if (existing.row() != row) {
+          result.add(existing);
+        }
+      }
+      if (result.size() == entries.size()) {
+        return entries;
+      }
+      return result.isEmpty() ? null : List.copyOf(result);
+    });
   }
 
   @Override
   @SuppressFBWarnings(value = "UNSAFE_HASH_EQUALS", justification = "The user has no control over the hash and production instances should be using AuditorPersistenceImpl")
   public Future<CacheDetails> getCacheFile(RequestContext requestContext, Pipeline pipeline) {
 
-    String cacheKey = AuditorPersistenceImpl.buildCacheKey(requestContext);
+    String cacheKey = cacheKey(requestContext);
     if (cacheKey != null) {
       LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
-      synchronized (auditRows) {
-        for (AuditRow row : auditRows) {
-          if (cacheKey.equals(row.cacheKey)
-                  && row.cacheExpiry != null
-                  && row.cacheExpiry.isAfter(now)
-                  && row.cacheDeleted == null
-                  && row.fileHash != null
-                  && row.fileHash.equals(pipeline.getSha256())
-                  ) {
-            return Future.succeededFuture(new CacheDetails(row.id, row.cacheFile, row.cacheExpiry));
-          }
+      // Entries are removed from the index when they are deleted, so only the immutable entry needs to be checked
+      for (CacheEntry entry : rowsByCacheKey.getOrDefault(cacheKey, List.of())) {
+        if (entry.cacheExpiry() != null
+                && entry.cacheExpiry().isAfter(now)
+                && entry.fileHash() != null
+                && entry.fileHash().equals(pipeline.getSha256())
+                && rowsById.get(entry.row().id) == entry.row()
+                ) {
+          return Future.succeededFuture(new CacheDetails(entry.row().id, entry.cacheFile(), entry.cacheExpiry()));
         }
       }
     }
@@ -251,17 +295,24 @@ public class AuditorMemoryImpl implements Auditor {
   public Future<Void> recordCacheFile(RequestContext requestContext, String fileName, LocalDateTime expiry) {
     String requestId = requestId(requestContext);
     if (requestId != null) {
-      synchronized (auditRows) {
-        for (AuditRow row : auditRows) {
-          if (requestId.equals(row.id)) {
-            row.cacheKey = AuditorPersistenceImpl.buildCacheKey(requestContext);
-            row.cacheFile = fileName;
-            row.cacheExpiry = expiry;
-            break;
+      AuditRow row = rowsById.get(requestId);
+      if (row != null) {
+        String cacheKey = cacheKey(requestContext);
+        // The row and the index are updated together so that the index always reflects the latest state of the row
+        synchronized (row) {
+          String previousKey = row.cacheKey;
+          row.cacheKey = cacheKey;
+          row.cacheFile = fileName;
+          row.cacheExpiry = expiry;
+          if (previousKey != null && !previousKey.equals(cacheKey)) {
+            unindexCacheKey(row, previousKey);
+          }
+          if (cacheKey != null && row.cacheDeleted == null) {
+            indexCacheKey(new CacheEntry(row, fileName, expiry, row.fileHash), cacheKey);
           }
         }
-        return Future.succeededFuture();
       }
+      return Future.succeededFuture();
     } else {
       return Future.failedFuture("RequestContext not set");
     }
@@ -271,15 +322,13 @@ public class AuditorMemoryImpl implements Auditor {
   public Future<Void> recordCacheFileUsed(RequestContext requestContext, String fileName) {
     String requestId = requestId(requestContext);
     if (requestId != null) {
-      synchronized (auditRows) {
-        for (AuditRow row : auditRows) {
-          if (requestId.equals(row.id)) {
-            row.cacheFile = fileName;
-            break ;
-          }
+      AuditRow row = rowsById.get(requestId);
+      if (row != null) {
+        synchronized (row) {
+          row.cacheFile = fileName;
         }
-        return Future.succeededFuture();
       }
+      return Future.succeededFuture();
     } else {
       return Future.failedFuture("RequestContext not set");
     }
@@ -288,10 +337,12 @@ public class AuditorMemoryImpl implements Auditor {
   @Override
   public Future<Void> deleteCacheFile(RequestContext requestContext, String auditId) {
 
-    synchronized (auditRows) {
-      for (AuditRow row : auditRows) {
-        if (auditId.equals(row.id)) {
-          row.cacheDeleted = LocalDateTime.now(ZoneOffset.UTC);
+    AuditRow row = rowsById.get(auditId);
+    if (row != null) {
+      synchronized (row) {
+        row.cacheDeleted = LocalDateTime.now(ZoneOffset.UTC);
+        if (row.cacheKey != null) {
+          unindexCacheKey(row, row.cacheKey);
         }
       }
     }
@@ -328,7 +379,9 @@ public class AuditorMemoryImpl implements Auditor {
         row.fileModified = file.getModified();
       }
       if (pipeline != null) {
-        row.fileHash = pipeline.getSha256();
+        synchronized (row) {
+          row.fileHash = pipeline.getSha256();
+        }
       }
     }
     return Future.succeededFuture();
@@ -375,87 +428,23 @@ public class AuditorMemoryImpl implements Auditor {
             , JdbcHelper.toString(groups)
     );
 
+    AuditRow evicted = null;
     synchronized (auditRows) {
       auditRows.addLast(row);
+      rowsById.put(row.id, row);
       if (auditRows.size() > SIZE) {
-        auditRows.removeFirst();
+        evicted = auditRows.removeFirst();
+        rowsById.remove(evicted.id, evicted);
       }
     }
-    return Future.succeededFuture();
-  }
-
-  private static class RateLimitCounts {
-    private int outstanding;
-    private int total;
-    private long bytes;
-  }
-
-  static boolean rowMatches(RequestContext requestContext, RateLimitRule rule, AuditRow row) {
-    if (requestContext == null) {
-      return false;
-    }
-             
-    for (RateLimitScopeType scope : rule.getScope()) {
-      switch (scope) {
-        case clientip:
-          if (!requestContext.getClientIp().toNormalizedString().equals(row.clientIp)) {
-            return false;
-          }
-          break;
-        case host:
-          if (requestContext.getHost() == null || !requestContext.getHost().equals(row.host)) {
-            return false;
-          }
-          break;
-        case path:
-          if (requestContext.getPath() == null || !requestContext.getPath().equals(row.path)) {
-            return false;
-          }
-          break;
-        case issuer:
-          if (requestContext.getIssuer() == null || !requestContext.getIssuer().equals(row.issuer)) {
-            return false;
-          }
-          break;
-        case subject:
-          if (requestContext.getSubject() == null || !requestContext.getSubject().equals(row.subject)) {
-            return false;
-          }
-          break;
-        case username:
-          if (requestContext.getUsername() == null || !requestContext.getUsername().equals(row.username)) {
-            return false;
-          }
-          break;
-        default:
-         throw new IllegalStateException("Unknown RateLimitScope type: " + scope);
-     }
-    }
-    return true;
-  }
-
-  private RateLimitCounts getCounts(RequestContext requestContext, RateLimitRule rule, LocalDateTime startPoint) {
-    RateLimitCounts result = new RateLimitCounts();
-    synchronized (auditRows) {
-      for (AuditRow row : auditRows) {
-        if (startPoint.isAfter(row.timestamp)) {
-          continue;
-        }
-        // Don't look at the current run
-        if (requestContext.getRequestId().equals(row.id)) {
-          continue;
-        }
-        if (rowMatches(requestContext, rule, row)) {
-          result.total += 1;
-          if (row.responseTime != null) {
-            result.bytes += row.responseSize;
-          } else {
-            result.outstanding += 1;
-          }
+    if (evicted != null) {
+      synchronized (evicted) {
+        if (evicted.cacheKey != null) {
+          unindexCacheKey(evicted, evicted.cacheKey);
         }
       }
     }
-    return result;
+    return Future.succeededFuture();
   }
 
   @Override
@@ -468,24 +457,11 @@ public class AuditorMemoryImpl implements Auditor {
       List<RateLimitRule> rules = pipeline.getRateLimitRules();
 
       Log.decorate(logger.atDebug(), requestContext).log("Performing rate limit check with {} rules", rules.size());
-      if (CollectionUtils.isEmpty(rules)) {
-        return Future.succeededFuture(pipeline);
-      }
 
-      LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
-      Instant nowInstant = now.toInstant(ZoneOffset.UTC);
-
-      for (int i = 0; i < rules.size(); ++i) {
-        RateLimitRule rule = rules.get(i);
-        if (rule.getTimeLimit() == null) {
-          continue;
-        }
-        LocalDateTime startPoint = now.minus(rule.getTimeLimit());
-        RateLimitCounts counts = getCounts(requestContext, rule, startPoint);
+      List<RateLimitRule> timedRules = rules.stream().filter(rule -> rule.getTimeLimit() != null).toList();
 
-        AuditorPersistenceImpl.evaluateRateLimitRule(requestContext, rule, nowInstant, i
-                , counts.outstanding, counts.total, counts.bytes, now);
-      }
+      // Requests without rules must still be counted, they may be in the scope of the rules of other pipelines
+      rateLimiter.admit(requestContext, timedRules, Instant.now());
     } catch (Throwable ex) {
       return Future.failedFuture(ex);
     }
@@ -506,6 +482,7 @@ public class AuditorMemoryImpl implements Auditor {
             , (System.currentTimeMillis() - requestContext.getStartTime()) / 1000.0
             , headers
     );
+    rateLimiter.complete(requestContext.getRequestId(), response.bytesWritten());
     AuditRow row = find(requestContext);
     if (row != null) {
       row.responseTime = LocalDateTime.now(ZoneOffset.UTC);
@@ -580,8 +557,13 @@ public class AuditorMemoryImpl implements Auditor {
 
     OperatorsInstance.Flags operatorFlags = operators.evaluate(requestContext);
     
+    List<AuditRow> snapshot;
+    synchronized (auditRows) {
+      snapshot = new ArrayList<>(auditRows);
+    }
+    
     long count[] = {0};
-    List<AuditHistoryRow> output = this.auditRows.stream()
+    List<AuditHistoryRow> output = snapshot.stream()
             .filter(row -> {
               if (operatorFlags.global()) {
                 return true;
@@ -61,7 +61,6 @@ import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.TimeZone;
 import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
@@ -94,6 +93,7 @@ import uk.co.spudsoft.query.main.Persistence;
 import uk.co.spudsoft.query.main.DataSourceConfig;
 import uk.co.spudsoft.query.main.ExceptionToString;
 import uk.co.spudsoft.query.main.OperatorsInstance;
+import uk.co.spudsoft.query.main.RateLimitMode;
 import uk.co.spudsoft.query.web.ServiceException;
 
 /**
@@ -130,6 +130,8 @@ public class AuditorPersistenceImpl implements Auditor {
     return result;
   }
 
+  private static final long RATE_LIMIT_PURGE_PERIOD_MS = 60000;
+
   private final ObjectMapper mapper = DatabindCodec.mapper();
 
   private final Vertx vertx;
@@ -145,6 +147,11 @@ public class AuditorPersistenceImpl implements Auditor {
 
   private final int maxHistoryRows;
   
+  private final AuditWriteBehindQueue writeBehind;
+  
+  private final RateLimitMode rateLimitMode;
+  private final LocalRateLimiter localRateLimiter;
+
   private boolean prepared;
 
   /**
@@ -169,6 +176,18 @@ public class AuditorPersistenceImpl implements Auditor {
     } else {
       this.maxHistoryRows = 60000;
     }
+    if (audit.getAuditWriteBehind() != null) {
+      this.writeBehind = new AuditWriteBehindQueue(vertx, meterRegistry, jdbcHelper, audit.getAuditWriteBehind());
+    } else {
+      this.writeBehind = null;
+    }
+    this.rateLimitMode = audit.getRateLimitMode() == null ? RateLimitMode.database : audit.getRateLimitMode();
+    if (rateLimitMode != RateLimitMode.database) {
+      this.localRateLimiter = new LocalRateLimiter(meterRegistry);
+      vertx.setPeriodic(RATE_LIMIT_PURGE_PERIOD_MS, id -> localRateLimiter.purge());
+    } else {
+      this.localRateLimiter = null;
+    }
   }
   
   private boolean isMicrosoft(DataSourceConfig dataSource) {
@@ -621,12 +640,6 @@ public class AuditorPersistenceImpl implements Auditor {
     return false;
   }
 
-  private static void hashNullableString(Hasher hasher, String value) {
-    if (value != null) {
-      hasher.putString(value, StandardCharsets.UTF_8);
-    }
-  }
-  
   /**
    * Extract the requestId from a PipelineContext.
    * @param pipelineContext The context in which this {@link SourcePipeline} is being run.
@@ -640,62 +653,47 @@ public class AuditorPersistenceImpl implements Auditor {
   }
   
   /**
-   * The cache key is built of:
-   * <UL>
-   * <LI>The full request URL.
-   * <LI>Headers:
-   * <UL>
-   * <LI>Accept
-   * <LI>Accept-Encoding
-   * </UL>
-   * <LI>Token fields:
-   * <UL>
-   * <LI>aud
-   * <LI>iss
-   * <LI>sub
-   * <LI>groups
-   * <LI>roles
-   * </UL>
-   * </UL>
-   *
-   * Note that the fileHash must also match, but isn't built into the key (should usually match because of the use of the inclusion of full URL).
-   *
-   * @param context The request context.
-   * @return
+   * Run an update to the audit data, either immediately or by adding it to the write-behind queue.
+   * <P>
+   * When write-behind is configured the returned Future is completed as soon as the update has been queued, 
+   * so the prepareStatement consumer must not depend on anything that may change after this method is called.
+   * 
+   * @param name name of the action being taken for log messages.
+   * @param template the statement to be run.
+   * @param silent if true the update is expected to fail sometimes and errors should not be logged.
+   * @param prepareStatement a {@link JdbcHelper.SqlConsumer} to use to set parameters on the {@link PreparedStatement}.
+   * @return A Future that will be completed when the update has been run or queued.
    */
-  static String buildCacheKey(RequestContext requestContext) {
-
-    if (requestContext != null) {
-      Hasher sha = Hashing.sha256().newHasher();
-      hashNullableString(sha, requestContext.getUrl());
-      hashNullableString(sha, requestContext.getHeaders().get("Accept"));
-      hashNullableString(sha, requestContext.getHeaders().get("Accept-Encoding"));
-      hashNullableString(sha, Objects.toString(requestContext.getAudience()));
-      hashNullableString(sha, requestContext.getIssuer());
-      hashNullableString(sha, requestContext.getSubject());
-      hashNullableString(sha, Objects.toString(requestContext.getGroups()));
-      hashNullableString(sha, Objects.toString(requestContext.getRoles()));
-      return sha.hash().toString();
+  private Future<Void> runUpdate(String name, SqlTemplate template, boolean silent, JdbcHelper.SqlConsumer<PreparedStatement> prepareStatement) {
+    if (writeBehind != null) {
+      writeBehind.add(new AuditWriteBehindQueue.Update(name, template.sql(), silent, prepareStatement));
+      return Future.succeededFuture();
+    } else if (silent) {
+      return jdbcHelper.runSqlUpdateSilently(name, template.sql(), prepareStatement).mapEmpty();
     } else {
-      return null;
+      return jdbcHelper.runSqlUpdate(name, template.sql(), prepareStatement).mapEmpty();
     }
   }
-
+  
   @Override
   public Future<CacheDetails> getCacheFile(RequestContext requestContext, Pipeline pipeline) {
 
-    String cacheKey = buildCacheKey(requestContext);
-
-    return jdbcHelper.runSqlSelect(SqlTemplate.GET_CACHE_FILE.sql(), ps -> {
-        ps.setString(1, cacheKey);
-        JdbcHelper.setLocalDateTimeUTC(ps, 2, LocalDateTime.now(ZoneOffset.UTC));
-        ps.setString(3, pipeline.getSha256());
-      }, rs -> {
-        while (rs.next()) {
-          return new CacheDetails(rs.getString(1), rs.getString(2), rs.getTimestamp(3).toLocalDateTime());
-        }
-        return null;
-      });
+    String cacheKey = cacheKey(requestContext);
+
+    // Cache files are recorded (and their responses completed or deleted) via the write-behind queue, so it must be written first
+    Future<Void> flushed = writeBehind == null ? Future.succeededFuture() : writeBehind.flush();
+    return flushed.compose(v -> {
+      return jdbcHelper.runSqlSelect(SqlTemplate.GET_CACHE_FILE.sql(), ps -> {
+          ps.setString(1, cacheKey);
+          JdbcHelper.setLocalDateTimeUTC(ps, 2, LocalDateTime.now(ZoneOffset.UTC));
+          ps.setString(3, pipeline.getSha256());
+        }, rs -> {
+          while (rs.next()) {
+            return new CacheDetails(rs.getString(1), rs.getString(2), rs.getTimestamp(3).toLocalDateTime());
+          }
+          return null;
+        });
+    });
   }
 
   @Override
@@ -703,13 +701,14 @@ public class AuditorPersistenceImpl implements Auditor {
     
     String requestId = requestId(requestContext);
     if (requestId != null) {
-      return jdbcHelper.runSqlUpdate("recordCacheFile", SqlTemplate.RECORD_CACHE_FILE.sql(), ps -> {
+      String cacheKey = cacheKey(requestContext);
+      return runUpdate("recordCacheFile", SqlTemplate.RECORD_CACHE_FILE, false, ps -> {
                       int param = 1;
-                      ps.setString(param++, buildCacheKey(requestContext));
+                      ps.setString(param++, cacheKey);
                       ps.setString(param++, fileName);
                       JdbcHelper.setLocalDateTimeUTC(ps, param++, expiry);
                       ps.setString(param++, requestId);
-      }).mapEmpty();
+      });
     } else {
       return Future.failedFuture("RequestContext not set");
     }
@@ -719,11 +718,11 @@ public class AuditorPersistenceImpl implements Auditor {
   public Future<Void> recordCacheFileUsed(RequestContext requestContext, String fileName) {
     String requestId = requestId(requestContext);
     if (requestId != null) {
-      return jdbcHelper.runSqlUpdate("recordCacheFileUsed", SqlTemplate.RECORD_CACHE_FILE_USED.sql(), ps -> {
+      return runUpdate("recordCacheFileUsed", SqlTemplate.RECORD_CACHE_FILE_USED, false, ps -> {
                       int param = 1;
                       ps.setString(param++, fileName);
                       ps.setString(param++, requestId);
-      }).mapEmpty();
+      });
     } else {
       return Future.failedFuture("RequestContext not set");
     }
@@ -731,10 +730,11 @@ public class AuditorPersistenceImpl implements Auditor {
 
   @Override
   public Future<Void> deleteCacheFile(RequestContext requestContext, String auditId) {
-    return jdbcHelper.runSqlUpdate("deleteCacheFile", SqlTemplate.DELETE_CACHE_FILE.sql(), ps -> {
+    LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
+    return runUpdate("deleteCacheFile", SqlTemplate.DELETE_CACHE_FILE, false, ps -> {
                     int param = 1;
+                    JdbcHelper.setLocalDateTimeUTC(ps, param++, now);
                     ps.setString(param++, auditId);
-                    JdbcHelper.setLocalDateTimeUTC(ps, param++, LocalDateTime.now(ZoneOffset.UTC));
     })
             .recover(ex -> {
               Log.decorate(logger.atError(), requestContext).log("Failed to mark cache file deleted for {}: ", auditId, ex);
@@ -765,12 +765,13 @@ public class AuditorPersistenceImpl implements Auditor {
     JsonArray groups = Auditor.listToJson(requestContext.getGroups());
     JsonArray roles = Auditor.listToJson(requestContext.getRoles());
     String openIdDetails = requestContext.getJwt() == null ? null : requestContext.getJwt().getPayloadAsString();
+    LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
 
-    return jdbcHelper.runSqlUpdate("recordRequest", SqlTemplate.RECORD_REQUEST.sql(), ps -> {
+    return runUpdate("recordRequest", SqlTemplate.RECORD_REQUEST, false, ps -> {
                     int param = 1;
                     ps.setString(param++, JdbcHelper.limitLength(requestContext.getRequestId(), 100));
                     ps.setString(param++, JdbcHelper.limitLength(requestContext.getRunID(), 100));
-                    JdbcHelper.setLocalDateTimeUTC(ps, param++, LocalDateTime.now(ZoneOffset.UTC));
+                    JdbcHelper.setLocalDateTimeUTC(ps, param++, now);
                     ps.setString(param++, JdbcHelper.limitLength(PROCESS_ID, 1000));
                     ps.setString(param++, JdbcHelper.limitLength(requestContext.getUrl(), 1000));
                     ps.setString(param++, JdbcHelper.limitLength(requestContext.getClientIp().toNormalizedString(), 40));
@@ -788,7 +789,7 @@ public class AuditorPersistenceImpl implements Auditor {
                     ps.setString(param++, JdbcHelper.toString(groups));
                     ps.setString(param++, JdbcHelper.toString(roles));
 
-    }).mapEmpty();
+    });
   }
 
   @Override
@@ -796,13 +797,14 @@ public class AuditorPersistenceImpl implements Auditor {
     Log.decorate(logger.atInfo(), requestContext).log("File: {} {} {}", file.getPath(), file.getSize(), file.getModified());
     String requestId = requestId(requestContext);
     if (requestId != null) {
-      return jdbcHelper.runSqlUpdate("recordFile", SqlTemplate.RECORD_FILE.sql(), ps -> {
+      String sha256 = pipeline == null ? null : pipeline.getSha256();
+      return runUpdate("recordFile", SqlTemplate.RECORD_FILE, false, ps -> {
                ps.setString(1, JdbcHelper.limitLength(JdbcHelper.toString(file.getPath()), 1000));
                ps.setLong(2, file.getSize());
                JdbcHelper.setLocalDateTimeUTC(ps, 3, file.getModified());
-               ps.setString(4, pipeline == null ? null : pipeline.getSha256());
+               ps.setString(4, sha256);
                ps.setString(5, JdbcHelper.limitLength(requestId, 100));
-      }).mapEmpty();
+      });
     } else {
       return Future.failedFuture("RequestContext not set");
     }
@@ -813,8 +815,9 @@ public class AuditorPersistenceImpl implements Auditor {
     Log.decorate(logger.atInfo(), requestContext).log("Exception: {} {}", ex.getClass().getCanonicalName(), ex.getMessage());
     String requestId = requestId(requestContext);
     if (requestId != null) {
-      jdbcHelper.runSqlUpdate("recordException", SqlTemplate.RECORD_EXCEPTION.sql(), ps -> {
-               JdbcHelper.setLocalDateTimeUTC(ps, 1, LocalDateTime.now(ZoneOffset.UTC));
+      LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
+      runUpdate("recordException", SqlTemplate.RECORD_EXCEPTION, false, ps -> {
+               JdbcHelper.setLocalDateTimeUTC(ps, 1, now);
                ps.setString(2, JdbcHelper.limitLength(ex.getClass().getCanonicalName(), 1000));
                ps.setString(3, JdbcHelper.limitLength(ex.getMessage(), 1000));
                ps.setString(4, ExceptionToString.convert(ex, "; ", "@", 1));
@@ -835,17 +838,26 @@ public class AuditorPersistenceImpl implements Auditor {
             , (System.currentTimeMillis() - requestContext.getStartTime()) / 1000.0
             , headers
     );
-    jdbcHelper.runSqlUpdate("recordResponse", SqlTemplate.RECORD_RESPONSE.sql(), ps -> {
-             JdbcHelper.setLocalDateTimeUTC(ps, 1, LocalDateTime.now(ZoneOffset.UTC));
-             if (requestContext.getHeadersSentTime() > 0) {
-               ps.setLong(2, requestContext.getHeadersSentTime() - requestContext.getStartTime());
+    LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
+    long headersSentTime = requestContext.getHeadersSentTime();
+    long duration = System.currentTimeMillis() - requestContext.getStartTime();
+    int statusCode = response.getStatusCode();
+    long rowsWritten = requestContext.getRowsWritten();
+    long bytesWritten = response.bytesWritten();
+    if (localRateLimiter != null) {
+      localRateLimiter.complete(requestContext.getRequestId(), bytesWritten);
+    }
+    runUpdate("recordResponse", SqlTemplate.RECORD_RESPONSE, false, ps -> {
+             JdbcHelper.setLocalDateTimeUTC(ps, 1, now);
+             if (headersSentTime > 0) {
+               ps.setLong(2, headersSentTime - requestContext.getStartTime());
              } else {
                ps.setNull(2, Types.BIGINT);
              }
-             ps.setLong(3, System.currentTimeMillis() - requestContext.getStartTime());
-             ps.setInt(4, response.getStatusCode());
-             ps.setLong(5, requestContext.getRowsWritten());
-             ps.setLong(6, response.bytesWritten());
+             ps.setLong(3, duration);
+             ps.setInt(4, statusCode);
+             ps.setLong(5, rowsWritten);
+             ps.setLong(6, bytesWritten);
              ps.setString(7, JdbcHelper.toString(headers));
              ps.setString(8, JdbcHelper.limitLength(requestContext.getRequestId(), 100));
     });
@@ -862,8 +874,15 @@ public class AuditorPersistenceImpl implements Auditor {
 
     Log.decorate(logger.atDebug(), requestContext).log("Performing rate limit check with {} rules", rules.size());
     Instant now = LocalDateTime.now(ZoneOffset.UTC).toInstant(ZoneOffset.UTC);
-    if (CollectionUtils.isEmpty(rules)) {
-      return jdbcHelper.runSqlUpdate("markRateLimitRulesProcessed", SqlTemplate.MARK_RATE_LIMIT_RULES_PROCESSED.sql(), ps -> {
+    if (localRateLimiter != null) {
+      try {
+        localRateLimiter.admit(requestContext, rules, now);
+      } catch (Throwable ex) {
+        return Future.failedFuture(ex);
+      }
+    }
+    if (CollectionUtils.isEmpty(rules) || rateLimitMode == RateLimitMode.local) {
+      return runUpdate("markRateLimitRulesProcessed", SqlTemplate.MARK_RATE_LIMIT_RULES_PROCESSED, false, ps -> {
         Timestamp ts = Timestamp.from(now);
         Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
         ps.setTimestamp(1, ts, cal);
@@ -921,9 +940,17 @@ public class AuditorPersistenceImpl implements Auditor {
     String sqlString = sql.toString();
     Log.decorate(logger.atInfo(), requestContext).log("Running rate limit rules {} with {}", sqlString, args);
 
-    return jdbcHelper.runInTransaction("rateLimitRules", JdbcHelper.IsolationLevel.TRANSACTION_SERIALIZABLE, conn -> {
-      runRateLimitRulesSqlInTransaction(requestContext, conn, sqlString, args, rules, requestContext.getRequestId(), now);
-      return null;
+    // The rules count the request rows, so any queued audit records (including the one for this request) must be written first
+    Future<Void> flushed = writeBehind == null ? Future.succeededFuture() : writeBehind.flush();
+    return flushed.compose(v -> {
+      return jdbcHelper.runInTransaction("rateLimitRules", JdbcHelper.IsolationLevel.TRANSACTION_SERIALIZABLE, conn -> {
+        runRateLimitRulesSqlInTransaction(requestContext, conn, sqlString, args, rules, requestContext.getRequestId(), now);
+        return null;
+      });
+    }).onFailure(ex -> {
+      if (localRateLimiter != null) {
+        localRateLimiter.cancel(requestContext.getRequestId());
+      }
     }).map(v -> pipeline);
   }
 
@@ -1455,24 +1482,39 @@ public class AuditorPersistenceImpl implements Auditor {
     if (logMessages.isEmpty()) {
       return Future.succeededFuture();
     }
+    if (writeBehind != null) {
+      // The write-behind queue batches consecutive records itself
+      int idx = 0;
+      for (AuditLogMessage entry : logMessages) {
+        int entryIdx = idx++;
+        runUpdate("recordAuditLogMessages", SqlTemplate.RECORD_LOG_MESSAGE, false, ps -> {
+          bindAuditLogMessage(ps, requestContext, entryIdx, entry);
+        });
+      }
+      return Future.succeededFuture();
+    }
     return jdbcHelper.runSqlBatchUpdate("recordAuditLogMessages", SqlTemplate.RECORD_LOG_MESSAGE.sql(), ps -> {
-      Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
       int idx = 0;
       for (AuditLogMessage entry : logMessages) {
-          ps.setString(1, requestContext.getRequestId());
-          ps.setInt(2, idx++);
-          ps.setTimestamp(3, Timestamp.from(entry.getTimestamp().toInstant(ZoneOffset.UTC)), cal);
-          ps.setString(4, JdbcHelper.limitLength(entry.getPipe(), 250));
-          ps.setString(5, JdbcHelper.limitLength(entry.getLevel(), 16));
-          ps.setString(6, JdbcHelper.limitLength(entry.getLoggerName(), 250));
-          ps.setString(7, JdbcHelper.limitLength(entry.getThreadName(), 250));
-          ps.setString(8, entry.getMessage());
-          ps.setString(9, Json.encode(entry.getKvpData()));
+          bindAuditLogMessage(ps, requestContext, idx++, entry);
           ps.addBatch();
       }
     }).mapEmpty();
   }
 
+  private static void bindAuditLogMessage(PreparedStatement ps, RequestContext requestContext, int idx, AuditLogMessage entry) throws SQLException {
+    Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
+    ps.setString(1, requestContext.getRequestId());
+    ps.setInt(2, idx);
+    ps.setTimestamp(3, Timestamp.from(entry.getTimestamp().toInstant(ZoneOffset.UTC)), cal);
+    ps.setString(4, JdbcHelper.limitLength(entry.getPipe(), 250));
+    ps.setString(5, JdbcHelper.limitLength(entry.getLevel(), 16));
+    ps.setString(6, JdbcHelper.limitLength(entry.getLoggerName(), 250));
+    ps.setString(7, JdbcHelper.limitLength(entry.getThreadName(), 250));
+    ps.setString(8, entry.getMessage());
+    ps.setString(9, Json.encode(entry.getKvpData()));
+  }
+
   private String buildHash(String endpointName, String dataSourceUrl, String username, String query, String argsJson) {
     Hasher hasher = DEDUPE_HASH.newHasher();
     if (endpointName != null) {
@@ -1501,15 +1543,32 @@ public class AuditorPersistenceImpl implements Auditor {
     Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
     String argsJson = Json.encode(args);
     String hash = buildHash(endpointName, dataSourceUrl, username, query, argsJson);
+    String requestId = pipelineContext.getRequestContext().getRequestId();
+    String pipe = pipelineContext.getPipe();
+    Instant now = Instant.now();
 
-    return jdbcHelper.runSqlUpdateSilently("recordSource", SqlTemplate.RECORD_SOURCE.sql(), ps -> {
+    JdbcHelper.SqlConsumer<PreparedStatement> recordSourceBinder = ps -> {
       ps.setString(1, JdbcHelper.limitLength(hash, 32));
       ps.setString(2, JdbcHelper.limitLength(endpointName, 250));
       ps.setString(3, JdbcHelper.limitLength(dataSourceUrl, 1000));
       ps.setString(4, JdbcHelper.limitLength(username, 250));
       ps.setString(5, query);
       ps.setString(6, argsJson);
-    }).onComplete(ar -> {
+    };
+    JdbcHelper.SqlConsumer<PreparedStatement> recordRequestSourceBinder = ps -> {
+      ps.setString(1, requestId);
+      ps.setString(2, JdbcHelper.limitLength(pipe, 250));
+      ps.setTimestamp(3, Timestamp.from(now), cal);
+      ps.setString(4, JdbcHelper.limitLength(hash, 32));
+    };
+
+    if (writeBehind != null) {
+      // Sources are deduplicated by the primary key, so the insert of the source is expected to fail much of the time
+      runUpdate("recordSource", SqlTemplate.RECORD_SOURCE, true, recordSourceBinder);
+      return runUpdate("recordRequestSource", SqlTemplate.RECORD_REQUEST_SOURCE, false, recordRequestSourceBinder);
+    }
+
+    return jdbcHelper.runSqlUpdateSilently("recordSource", SqlTemplate.RECORD_SOURCE.sql(), recordSourceBinder).onComplete(ar -> {
       if (ar.failed()) {
         Throwable ex = ar.cause();
         String message = ex.getMessage();
@@ -1523,12 +1582,7 @@ public class AuditorPersistenceImpl implements Auditor {
           Log.decorate(logger.atWarn(), pipelineContext).log("Failed to record source: ", ex);
         }
       }
-      jdbcHelper.runSqlUpdate("recordRequestSource", SqlTemplate.RECORD_REQUEST_SOURCE.sql(), ps -> {
-          ps.setString(1, pipelineContext.getRequestContext().getRequestId());
-          ps.setString(2, JdbcHelper.limitLength(pipelineContext.getPipe(), 250));
-          ps.setTimestamp(3, Timestamp.from(Instant.now()), cal);
-          ps.setString(4, JdbcHelper.limitLength(hash, 32));
-      })
+      jdbcHelper.runSqlUpdate("recordRequestSource", SqlTemplate.RECORD_REQUEST_SOURCE.sql(), recordRequestSourceBinder)
       .onComplete(ar2 -> {
         if (ar2.failed()) {
           Log.decorate(logger.atWarn(), pipelineContext).log("Failed to record request source: ", ar2.cause());
@@ -1543,7 +1597,13 @@ public class AuditorPersistenceImpl implements Auditor {
 
     LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
     Timestamp relevanceThreshold = Timestamp.from(now.minusDays(1).toInstant(ZoneOffset.UTC));
-    waitForOutstandingRequests(promise, relevanceThreshold, 10, System.currentTimeMillis() + timeoutMs);
+    long terminalTimeMs = System.currentTimeMillis() + timeoutMs;
+    if (writeBehind == null) {
+      waitForOutstandingRequests(promise, relevanceThreshold, 10, terminalTimeMs);
+    } else {
+      // This is only called at shutdown, so stop the periodic flush and write everything that is queued before checking the database
+      writeBehind.close().onComplete(ar -> waitForOutstandingRequests(promise, relevanceThreshold, 10, terminalTimeMs));
+    }
     return promise.future();
   }
 
@@ -19,6 +19,7 @@ package uk.co.spudsoft.query.exec;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
+import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.file.FileSystem;
@@ -46,6 +47,7 @@ public final class CachingWriteStream implements WriteStream<Buffer> {
   private final Object lock = new Object();
   private Handler<Void> drainHandler;
   private Handler<Throwable> exceptionHandler;
+  private final Promise<Void> cacheCompletion = Promise.promise();
 
   /**
    * Constructor.
@@ -90,6 +92,17 @@ public final class CachingWriteStream implements WriteStream<Buffer> {
     });
   }
     
+  /**
+   * Get a Future that will be completed when the cache file has been completely written and closed.
+   * <P>
+   * If anything goes wrong with the cache file (so that it is deleted) the Future will be failed.
+   *
+   * @return a Future that will be completed when the cache file has been completely written and closed.
+   */
+  public Future<Void> cacheCompletion() {
+    return cacheCompletion.future();
+  }
+
   @Override
   public WriteStream<Buffer> exceptionHandler(Handler<Throwable> handler) {
     synchronized (lock) {
@@ -113,8 +126,13 @@ public final class CachingWriteStream implements WriteStream<Buffer> {
   @Override
   public Future<Void> end() {
     Future<Void> f1 = cacheStream.end()
+            .onSuccess(v -> {
+              // If the cache stream has been abandoned cacheCompletion has already failed and this does nothing
+              cacheCompletion.tryComplete();
+            })
             .recover(ex -> {
               logger.warn("Ignored error ending cache stream: ", ex);
+              cacheCompletion.tryFail(ex);
               fileSystem.delete(cacheFile);
               return Future.succeededFuture();
             });
@@ -155,6 +173,7 @@ public final class CachingWriteStream implements WriteStream<Buffer> {
     synchronized (lock) {
       stream = cacheStream;
       cacheStream = new NullWriteStream<>();
+      cacheCompletion.tryFail(ex);
       if (destFailed) {
         handler = exceptionHandler;
       }
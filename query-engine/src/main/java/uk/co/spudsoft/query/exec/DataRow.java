@@ -25,6 +25,7 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.ZoneOffset;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -39,24 +40,45 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Representation of a single row in the stream.
+ * <p>
+ * Values are stored in slots indexed by the position of the column in the {@link Types} object shared by all rows in the stream,
+ * rather than in a map per row.
+ * Values of the primitive types ({@link DataType#Integer}, {@link DataType#Long}, {@link DataType#Float}, {@link DataType#Double}
+ * and {@link DataType#Boolean}) are kept unboxed, they are only boxed when accessed via {@link #get(java.lang.String)}.
+ * The typed accessors (such as {@link #getLong(int)}) can be used to avoid boxing entirely.
  * @author jtalbut
  */
 public final class DataRow {
 
+  private static final byte ABSENT = 0;
+  private static final byte NULL = 1;
+  private static final byte OBJECT = 2;
+  private static final byte INTEGER = 3;
+  private static final byte LONG = 4;
+  private static final byte FLOAT = 5;
+  private static final byte DOUBLE = 6;
+  private static final byte BOOLEAN = 7;
+
+  private static final int MIN_CAPACITY = 4;
+
   private final Types types;
-  private final LinkedHashMap<String, Comparable<?>> data;
+  private byte[] states;
+  private long[] primitives;
+  private Comparable<?>[] objects;
+  private int count;
 
   /**
    * An empty row that should never be modified.
    */
-  public static final DataRow EMPTY_ROW = new DataRow(new Types(), new LinkedHashMap<>());
+  public static final DataRow EMPTY_ROW = new DataRow(new Types(), 0);
 
   @SuppressFBWarnings(value = "EI_EXPOSE_REP2", justification = "It is expected that the types map change between instances of the DataRow")
-  private DataRow(Types types, LinkedHashMap<String, Comparable<?>> data) {
+  private DataRow(Types types, int capacity) {
     Objects.requireNonNull(types);
-    Objects.requireNonNull(data);
     this.types = types;
-    this.data = data;
+    this.states = new byte[capacity];
+    this.primitives = new long[capacity];
+    this.objects = new Comparable<?>[capacity];
   }
 
   /**
@@ -68,7 +90,7 @@ public final class DataRow {
    * @return a newly created DataRow object.
    */
   public static DataRow create(Types types) {
-    return new DataRow(types, new LinkedHashMap<>());
+    return new DataRow(types, Math.max(MIN_CAPACITY, types.size()));
   }
 
   /**
@@ -80,7 +102,7 @@ public final class DataRow {
    */
   public static DataRow create(Types types, Object... entries) {
     assert(entries.length % 2 == 0);
-    DataRow result = new DataRow(types, new LinkedHashMap<>());
+    DataRow result = create(types);
     for (int i = 0; i < entries.length; i += 2) {
       String key = (String) entries[i];
       Comparable<?> value = (Comparable) entries[i + 1];
@@ -115,13 +137,17 @@ public final class DataRow {
    * @return true if no fields have been set on this DataRow.
    */
   public boolean isEmpty() {
-    return data.isEmpty();
+    return count == 0;
   }
 
   @Override
   public String toString() {
     JsonObject json = new JsonObject();
-    data.forEach((k, v) -> json.put(k, Utils.toJson(v)));
+    for (int i = 0; i < states.length; ++i) {
+      if (states[i] != ABSENT) {
+        json.put(types.getDefn(i).key(), Utils.toJson(get(i)));
+      }
+    }
     return json.toString();
   }
 
@@ -131,7 +157,133 @@ public final class DataRow {
    * @return The value of the field "key" in this DataRow.
    */
   public Comparable<?> get(String key) {
-    return data.get(key);
+    int idx = types.indexOf(key);
+    return idx < 0 ? null : get(idx);
+  }
+
+  /**
+   * Get the value of a field from this DataRow by its index in the {@link Types}.
+   * <p>
+   * Primitive values are boxed by this method, use the typed accessors to avoid that.
+   * @param index The index of the field, as returned by {@link Types#indexOf(java.lang.String)}.
+   * @return The value of the field in this DataRow, or null if it has no value.
+   */
+  public Comparable<?> get(int index) {
+    if (index >= states.length) {
+      return null;
+    }
+    return switch (states[index]) {
+      case INTEGER -> (int) primitives[index];
+      case LONG -> primitives[index];
+      case FLOAT -> Float.intBitsToFloat((int) primitives[index]);
+      case DOUBLE -> Double.longBitsToDouble(primitives[index]);
+      case BOOLEAN -> primitives[index] != 0;
+      case OBJECT -> objects[index];
+      default -> null;
+    };
+  }
+
+  /**
+   * Return true if the field at the given index has no value (either because it has not been set or because it has been set to null).
+   * @param index The index of the field, as returned by {@link Types#indexOf(java.lang.String)}.
+   * @return true if the field at the given index has no value.
+   */
+  public boolean isNull(int index) {
+    return index >= states.length || states[index] <= NULL;
+  }
+
+  /**
+   * Get the value of a numeric field as a long, without boxing.
+   * <p>
+   * The caller should check {@link #isNull(int)} before calling this method.
+   * @param index The index of the field, as returned by {@link Types#indexOf(java.lang.String)}.
+   * @return The value of the field as a long.
+   * @throws IllegalStateException if the field does not contain a numeric or boolean value.
+   */
+  public long getLong(int index) throws IllegalStateException {
+    return switch (states[index]) {
+      case INTEGER, LONG, BOOLEAN -> primitives[index];
+      case FLOAT -> (long) Float.intBitsToFloat((int) primitives[index]);
+      case DOUBLE -> (long) Double.longBitsToDouble(primitives[index]);
+      case OBJECT -> {
+        if (objects[index] instanceof Number n) {
+          yield n.longValue();
+        }
+        throw new IllegalStateException("Field " + types.getDefn(index).name() + " does not contain a number");
+      }
+      default -> throw new IllegalStateException("Field " + types.getDefn(index).name() + " has no value");
+    };
+  }
+
+  /**
+   * Get the value of a numeric field as an int, without boxing.
+   * <p>
+   * The caller should check {@link #isNull(int)} before calling this method.
+   * @param index The index of the field, as returned by {@link Types#indexOf(java.lang.String)}.
+   * @return The value of the field as an int.
+   * @throws IllegalStateException if the field does not contain a numeric or boolean value.
+   */
+  public int getInt(int index) throws IllegalStateException {
+    return (int) getLong(index);
+  }
+
+  /**
+   * Get the value of a numeric field as a double, without boxing.
+   * <p>
+   * The caller should check {@link #isNull(int)} before calling this method.
+   * @param index The index of the field, as returned by {@link Types#indexOf(java.lang.String)}.
+   * @return The value of the field as a double.
+   * @throws IllegalStateException if the field does not contain a numeric or boolean value.
+   */
+  public double getDouble(int index) throws IllegalStateException {
+    return switch (states[index]) {
+      case INTEGER, LONG, BOOLEAN -> primitives[index];
+      case FLOAT -> Float.intBitsToFloat((int) primitives[index]);
+      case DOUBLE -> Double.longBitsToDouble(primitives[index]);
+      case OBJECT -> {
+        if (objects[index] instanceof Number n) {
+          yield n.doubleValue();
+        }
+        throw new IllegalStateException("Field " + types.getDefn(index).name() + " does not contain a number");
+      }
+      default -> throw new IllegalStateException("Field " + types.getDefn(index).name() + " has no value");
+    };
+  }
+
+  /**
+   * Get the value of a numeric field as a float, without boxing.
+   * <p>
+   * The caller should check {@link #isNull(int)} before calling this method.
+   * @param index The index of the field, as returned by {@link Types#indexOf(java.lang.String)}.
+   * @return The value of the field as a float.
+   * @throws IllegalStateException if the field does not contain a numeric or boolean value.
+   */
+  public float getFloat(int index) throws IllegalStateException {
+    if (states[index] == FLOAT) {
+      return Float.intBitsToFloat((int) primitives[index]);
+    }
+    return (float) getDouble(index);
+  }
+
+  /**
+   * Get the value of a boolean field, without boxing.
+   * <p>
+   * The caller should check {@link #isNull(int)} before calling this method.
+   * @param index The index of the field, as returned by {@link Types#indexOf(java.lang.String)}.
+   * @return The value of the field as a boolean.
+   * @throws IllegalStateException if the field does not contain a numeric or boolean value.
+   */
+  public boolean getBoolean(int index) throws IllegalStateException {
+    return switch (states[index]) {
+      case FLOAT, DOUBLE -> getDouble(index) != 0.0;
+      case OBJECT -> {
+        if (objects[index] instanceof Boolean b) {
+          yield b;
+        }
+        yield getLong(index) != 0;
+      }
+      default -> getLong(index) != 0;
+    };
   }
 
   /**
@@ -148,7 +300,7 @@ public final class DataRow {
    * @return the number of fields in this DataRow.
    */
   public int size() {
-    return data == null ? 0 : data.size();
+    return count;
   }
 
   private static final Logger logger = LoggerFactory.getLogger(DataRow.class);
@@ -161,20 +313,21 @@ public final class DataRow {
    * @return the approximate size of this DataRow, in bytes.
    */
   public int bytesSize() {
-    int total[] = {0};
-    types.forEach(cd -> {
-      Object value = get(cd.name());
-      if (value != null) {
+    int total = 0;
+    int limit = Math.min(states.length, types.size());
+    for (int i = 0; i < limit; ++i) {
+      if (states[i] > NULL) {
+        ColumnDefn cd = types.getDefn(i);
         if (cd.type() == DataType.String) {
-          if (value instanceof String str) {
-            total[0] += str.length();
+          if (objects[i] instanceof String str) {
+            total += str.length();
           }
         } else {
-          total[0] += cd.type().bytes();
+          total += cd.type().bytes();
         }
       }
-    });
-    return total[0];
+    }
+    return total;
   }
 
   /**
@@ -184,8 +337,9 @@ public final class DataRow {
    * @param action to carry out for each column.
    */
   public void forEach(BiConsumer<ColumnDefn, ? super Comparable<?>> action) {
+    int index[] = {0};
     types.forEach(cd -> {
-      action.accept(cd, data.get(cd.key()));
+      action.accept(cd, get(index[0]++));
     });
   }
 
@@ -193,10 +347,44 @@ public final class DataRow {
    * Carry out action for each column in this DataRow.
    * <p>
    * This version only iterates across fields that have a value (even null) in this DataRow.
+   * The entries passed to the action may be used to modify the value in this DataRow.
    * @param action to carry out for each column.
    */
   public void forEach(Consumer<Entry<? super String, ? super Comparable<?>>> action) {
-    data.entrySet().forEach(action);
+    for (int i = 0; i < states.length; ++i) {
+      if (states[i] != ABSENT) {
+        action.accept(new SlotEntry(i));
+      }
+    }
+  }
+
+  /**
+   * Map.Entry implementation that provides access to a single slot in this DataRow.
+   */
+  private final class SlotEntry implements Entry<String, Comparable<?>> {
+
+    private final int index;
+
+    SlotEntry(int index) {
+      this.index = index;
+    }
+
+    @Override
+    public String getKey() {
+      return types.getDefn(index).key();
+    }
+
+    @Override
+    public Comparable<?> getValue() {
+      return get(index);
+    }
+
+    @Override
+    public Comparable<?> setValue(Comparable<?> value) {
+      Comparable<?> previous = get(index);
+      set(index, value);
+      return previous;
+    }
   }
 
   /**
@@ -219,9 +407,8 @@ public final class DataRow {
    * @return this, so that this method may be used in a fluent manner.
    */
   public DataRow put(String key, String name, DataType type, Comparable<?> value) {
-    types.putIfAbsent(key, name, type);
-    data.put(key, value);
-    return this;
+    int idx = types.indexFor(key, name, type);
+    return set(idx, value);
   }
 
   /**
@@ -235,6 +422,101 @@ public final class DataRow {
     return put(key, key, type, value);
   }
 
+  /**
+   * Set the value of a field by its index in the {@link Types}.
+   * <p>
+   * The field must already have been added to the Types (for example with {@link Types#indexFor(java.lang.String, java.lang.String, uk.co.spudsoft.query.defn.DataType)}).
+   * @param index The index of the field.
+   * @param value The value of the field.
+   * @return this, so that this method may be used in a fluent manner.
+   */
+  public DataRow set(int index, Comparable<?> value) {
+    switch (value) {
+      case null -> mark(index, NULL, 0L, null);
+      case Integer v -> mark(index, INTEGER, v, null);
+      case Long v -> mark(index, LONG, v, null);
+      case Float v -> mark(index, FLOAT, Float.floatToRawIntBits(v), null);
+      case Double v -> mark(index, DOUBLE, Double.doubleToRawLongBits(v), null);
+      case Boolean v -> mark(index, BOOLEAN, v ? 1L : 0L, null);
+      default -> mark(index, OBJECT, 0L, value);
+    }
+    return this;
+  }
+
+  /**
+   * Set the value of an {@link DataType#Integer} field by its index in the {@link Types}, without boxing.
+   * @param index The index of the field.
+   * @param value The value of the field.
+   * @return this, so that this method may be used in a fluent manner.
+   */
+  public DataRow setInt(int index, int value) {
+    mark(index, INTEGER, value, null);
+    return this;
+  }
+
+  /**
+   * Set the value of a {@link DataType#Long} field by its index in the {@link Types}, without boxing.
+   * @param index The index of the field.
+   * @param value The value of the field.
+   * @return this, so that this method may be used in a fluent manner.
+   */
+  public DataRow setLong(int index, long value) {
+    mark(index, LONG, value, null);
+    return this;
+  }
+
+  /**
+   * Set the value of a {@link DataType#Float} field by its index in the {@link Types}, without boxing.
+   * @param index The index of the field.
+   * @param value The value of the field.
+   * @return this, so that this method may be used in a fluent manner.
+   */
+  public DataRow setFloat(int index, float value) {
+    mark(index, FLOAT, Float.floatToRawIntBits(value), null);
+    return this;
+  }
+
+  /**
+   * Set the value of a {@link DataType#Double} field by its index in the {@link Types}, without boxing.
+   * @param index The index of the field.
+   * @param value The value of the field.
+   * @return this, so that this method may be used in a fluent manner.
+   */
+  public DataRow setDouble(int index, double value) {
+    mark(index, DOUBLE, Double.doubleToRawLongBits(value), null);
+    return this;
+  }
+
+  /**
+   * Set the value of a {@link DataType#Boolean} field by its index in the {@link Types}, without boxing.
+   * @param index The index of the field.
+   * @param value The value of the field.
+   * @return this, so that this method may be used in a fluent manner.
+   */
+  public DataRow setBoolean(int index, boolean value) {
+    mark(index, BOOLEAN, value ? 1L : 0L, null);
+    return this;
+  }
+
+  private void mark(int index, byte state, long primitive, Comparable<?> object) {
+    if (index >= states.length) {
+      grow(index + 1);
+    }
+    if (states[index] == ABSENT) {
+      ++count;
+    }
+    states[index] = state;
+    primitives[index] = primitive;
+    objects[index] = object;
+  }
+
+  private void grow(int minCapacity) {
+    int capacity = Math.max(minCapacity, Math.max(types.size(), states.length + (states.length >> 1)));
+    states = Arrays.copyOf(states, capacity);
+    primitives = Arrays.copyOf(primitives, capacity);
+    objects = Arrays.copyOf(objects, capacity);
+  }
+
   /**
    * Add a value to this DataRow, but allow a wider variety of input classes.
    *
@@ -313,11 +595,19 @@ public final class DataRow {
   }
 
   /**
-   * Get an unmodifiable copy of the internal map of field names to values.
-   * @return an unmodifiable copy of the internal map of field names to values.
+   * Get an unmodifiable map of field names to values.
+   * <p>
+   * The map is built on each call, it should not be used on performance sensitive paths.
+   * @return an unmodifiable map of field names to values.
    */
   public Map<String, Object> getMap() {
-    return Collections.unmodifiableMap(data);
+    LinkedHashMap<String, Object> result = new LinkedHashMap<>();
+    for (int i = 0; i < states.length; ++i) {
+      if (states[i] != ABSENT) {
+        result.put(types.getDefn(i).key(), get(i));
+      }
+    }
+    return Collections.unmodifiableMap(result);
   }
 
   /**
@@ -326,7 +616,8 @@ public final class DataRow {
    * @return true if this DataRow contains the field with name "key".
    */
   public boolean containsKey(String key) {
-    return data.containsKey(key);
+    int idx = types.indexOf(key);
+    return idx >= 0 && idx < states.length && states[idx] != ABSENT;
   }
 
   /**
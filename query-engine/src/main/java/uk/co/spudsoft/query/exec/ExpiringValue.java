@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2026 jtalbut
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.spudsoft.query.exec;
+
+import com.google.common.cache.Cache;
+import java.time.Duration;
+
+/**
+ * A value held in a Guava {@link Cache} that has its own time to live.
+ * <P>
+ * Guava caches only support a single expiry policy for every entry, so caches whose entries each have a different lifetime
+ * store values that implement this interface and use {@link #getIfPresent(com.google.common.cache.Cache, java.lang.Object)}
+ * instead of {@link Cache#getIfPresent(java.lang.Object)}.
+ *
+ * @author jtalbut
+ */
+public interface ExpiringValue {
+
+  /**
+   * The time at which this value expires.
+   * @return the value of {@link System#nanoTime()} after which this value should not be used.
+   */
+  long expiry();
+
+  /**
+   * Return true if this value has expired.
+   * @return true if this value has expired.
+   */
+  default boolean expired() {
+    return System.nanoTime() - expiry() > 0;
+  }
+
+  /**
+   * Calculate the expiry for a value that should live for the given duration.
+   * @param ttl The time for which the value may be used.
+   * @return the value of {@link System#nanoTime()} after which the value should not be used.
+   */
+  static long expiryAfter(Duration ttl) {
+    return System.nanoTime() + ttl.toNanos();
+  }
+
+  /**
+   * Get a value from the cache, if it is present and has not expired.
+   * <P>
+   * Expired values are removed before calling {@link Cache#getIfPresent(java.lang.Object)} so that they are recorded as misses.
+   *
+   * @param <K> The type of the keys in the cache.
+   * @param <V> The type of the values in the cache.
+   * @param cache The cache.
+   * @param key The key to look for.
+   * @return the value from the cache, or null if there is no value or it has expired.
+   */
+  static <K, V extends ExpiringValue> V getIfPresent(Cache<K, V> cache, K key) {
+    V cached = cache.asMap().get(key);
+    if (cached != null && cached.expired()) {
+      cache.asMap().remove(key, cached);
+    }
+    return cache.getIfPresent(key);
+  }
+
+  /**
+   * Remove all expired values from the cache.
+   *
+   * @param <V> The type of the values in the cache.
+   * @param cache The cache.
+   */
+  static <V extends ExpiringValue> void purge(Cache<?, V> cache) {
+    cache.asMap().values().removeIf(ExpiringValue::expired);
+    cache.cleanUp();
+  }
+
+}
@@ -0,0 +1,388 @@
+/*
+ * Copyright (C) 2026 jtalbut
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.spudsoft.query.exec;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.co.spudsoft.query.defn.RateLimitRule;
+import uk.co.spudsoft.query.defn.RateLimitScopeType;
+import uk.co.spudsoft.query.exec.context.RequestContext;
+import uk.co.spudsoft.query.web.ServiceException;
+
+/**
+ * In-memory evaluation of {@link RateLimitRule}s using sliding-window counters.
+ * <P>
+ * The database implementation counts every previous request (that passed its own rate limit checks) that matches the scope of a rule,
+ * regardless of which pipeline it ran.
+ * To provide the same semantics without retaining every request, this class records the scope and time limit of every rule that it has
+ * seen (the "shape" of the rule) and every admitted request is counted against every known shape.
+ * The number of distinct shapes is determined by the pipeline definitions, so it is expected to be small.
+ * A shape that is seen for the first time has no history, so rules are more lenient than the database for one time limit after startup
+ * or after a new pipeline definition is loaded.
+ * <P>
+ * Each combination of shape and scope values has a window, which is a ring of {@link #BUCKETS} buckets covering the time limit.
+ * Runs and bytes are accumulated in {@link LongAdder}s in the bucket for the time at which the request started, buckets are replaced
+ * by compare-and-set when they age out, so counting never takes a lock.
+ * The number of outstanding requests is tracked separately, so it is not limited to the time limit of the rule.
+ * <P>
+ * Admission locks the windows of the request (in the order of their keys, so that admissions cannot deadlock) whilst the rules are
+ * checked and the request is recorded, so concurrent requests in the same scope always see each other.
+ * <P>
+ * Windows that have no outstanding requests and no recent runs are removed by {@link #purge()}.
+ * Shapes that have not been used by any rule for their time limit are also removed, along with their windows once those have no
+ * outstanding requests; if such a rule is seen again it starts without history, as a new shape does.
+ *
+ * @author jtalbut
+ */
+class LocalRateLimiter {
+
+  @SuppressWarnings("constantname")
+  private static final Logger logger = LoggerFactory.getLogger(LocalRateLimiter.class);
+
+  /**
+   * The number of buckets in each window, which determines the granularity of the sliding window.
+   */
+  static final int BUCKETS = 20;
+
+  /**
+   * Admissions that have not been completed after this long are assumed to have been lost.
+   */
+  static final Duration MAX_ADMISSION_AGE = Duration.ofDays(1);
+
+  private record Shape(List<RateLimitScopeType> scope, Duration timeLimit) {
+  }
+
+  private static final class Bucket {
+    private final long epoch;
+    private final LongAdder runs = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+
+    Bucket(long epoch) {
+      this.epoch = epoch;
+    }
+  }
+
+  private static final class Window {
+    private final Shape shape;
+    private final long bucketMillis;
+    private final AtomicReferenceArray<Bucket> buckets = new AtomicReferenceArray<>(BUCKETS);
+    private final AtomicInteger outstanding = new AtomicInteger();
+    // Admissions that are using this window but have not yet been decided, which prevent it from being purged
+    private final AtomicInteger reserved = new AtomicInteger();
+    // Held whilst the rules are checked and the request is recorded
+    private final ReentrantLock lock = new ReentrantLock();
+
+    Window(Shape shape) {
+      this.shape = shape;
+      this.bucketMillis = Math.max(1, shape.timeLimit().toMillis() / BUCKETS);
+    }
+
+    Bucket current(long nowMillis) {
+      long epoch = nowMillis / bucketMillis;
+      int slot = (int) (epoch % BUCKETS);
+      while (true) {
+        Bucket bucket = buckets.get(slot);
+        if (bucket != null && bucket.epoch >= epoch) {
+          return bucket;
+        }
+        Bucket replacement = new Bucket(epoch);
+        if (buckets.compareAndSet(slot, bucket, replacement)) {
+          return replacement;
+        }
+      }
+    }
+
+    long runs(long nowMillis) {
+      long oldest = nowMillis / bucketMillis - BUCKETS;
+      long result = 0;
+      for (int i = 0; i < BUCKETS; ++i) {
+        Bucket bucket = buckets.get(i);
+        if (bucket != null && bucket.epoch > oldest) {
+          result += bucket.runs.sum();
+        }
+      }
+      return result;
+    }
+
+    long bytes(long nowMillis) {
+      long oldest = nowMillis / bucketMillis - BUCKETS;
+      long result = 0;
+      for (int i = 0; i < BUCKETS; ++i) {
+        Bucket bucket = buckets.get(i);
+        if (bucket != null && bucket.epoch > oldest) {
+          result += bucket.bytes.sum();
+        }
+      }
+      return result;
+    }
+
+    boolean idle(long nowMillis) {
+      return outstanding.get() <= 0 && runs(nowMillis) == 0;
+    }
+
+    boolean removable(long nowMillis, boolean shapeKnown) {
+      if (reserved.get() > 0) {
+        return false;
+      }
+      // The runs in the window of a shape that is no longer known are never checked
+      return shapeKnown ? idle(nowMillis) : outstanding.get() <= 0;
+    }
+  }
+
+  private record Entry(Window window, Bucket bucket) {
+  }
+
+  private record Admission(long startMillis, List<Entry> entries) {
+  }
+
+  private final LongSupplier clock;
+  // The value is the time at which a rule with the shape was last seen
+  private final ConcurrentHashMap<Shape, Long> shapes = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, Window> windows = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, Admission> admissions = new ConcurrentHashMap<>();
+
+  /**
+   * Constructor.
+   * @param meterRegistry MeterRegistry for production of metrics, may be null.
+   */
+  LocalRateLimiter(MeterRegistry meterRegistry) {
+    this(meterRegistry, System::currentTimeMillis);
+  }
+
+  /**
+   * Constructor.
+   * @param meterRegistry MeterRegistry for production of metrics, may be null.
+   * @param clock Source of the current time in milliseconds since the epoch.
+   */
+  LocalRateLimiter(MeterRegistry meterRegistry, LongSupplier clock) {
+    this.clock = clock;
+    if (meterRegistry != null) {
+      meterRegistry.gauge("queryengine.ratelimit.windows", windows, w -> w.size());
+      meterRegistry.gauge("queryengine.ratelimit.outstanding", admissions, a -> a.size());
+    }
+  }
+
+  private static String key(RequestContext requestContext, Shape shape) {
+    StringBuilder builder = new StringBuilder();
+    builder.append(shape.timeLimit());
+    for (RateLimitScopeType scope : shape.scope()) {
+      String value = switch (scope) {
+        case clientip -> requestContext.getClientIp() == null ? null : requestContext.getClientIp().toNormalizedString();
+        case host -> requestContext.getHost();
+        case path -> requestContext.getPath();
+        case issuer -> requestContext.getIssuer();
+        case subject -> requestContext.getSubject();
+        case username -> requestContext.getUsername();
+      };
+      if (value == null) {
+        // Null never matches in the database either
+        return null;
+      }
+      builder.append('\u0000').append(scope).append('=').append(value);
+    }
+    return builder.toString();
+  }
+
+  private static Shape shape(RateLimitRule rule) {
+    return new Shape(rule.getScope().stream().distinct().sorted().toList(), rule.getTimeLimit());
+  }
+
+  /**
+   * Evaluate the rate limit rules for a request and, if they pass, count the request against every known shape.
+   * <P>
+   * Every request should be passed to this method, even if it has no rules, because it may be within the scope of the rules
+   * of other pipelines.
+   * <P>
+   * The counts seen by a rule do not include the current request.
+   *
+   * @param requestContext The context of the request, which must have a request ID.
+   * @param rules The rate limit rules to evaluate, may be empty.
+   * @param now The time at which the rules are being evaluated, for log messages.
+   * @throws ServiceException with a status code of 429 if any rule fails.
+   */
+  void admit(RequestContext requestContext, List<RateLimitRule> rules, Instant now) throws ServiceException {
+    long nowMillis = clock.getAsLong();
+    List<Shape> ruleShapes = new ArrayList<>(rules.size());
+    for (RateLimitRule rule : rules) {
+      Shape shape = shape(rule);
+      shapes.put(shape, nowMillis);
+      ruleShapes.add(shape);
+    }
+    // The shapes of these rules are included even if purge has just removed them
+    Set<Shape> allShapes = new HashSet<>(shapes.keySet());
+    allShapes.addAll(ruleShapes);
+
+    // Sorted by key so that windows are always locked in the same order
+    TreeMap<String, Window> requestWindows = new TreeMap<>();
+    for (Shape shape : allShapes) {
+      String key = key(requestContext, shape);
+      if (key == null || requestWindows.containsKey(key)) {
+        continue;
+      }
+      // The window is reserved whilst the map entry is locked, so purge cannot remove a window that is about to be used
+      Window window = windows.compute(key, (k, w) -> {
+        if (w == null) {
+          w = new Window(shape);
+        }
+        w.reserved.incrementAndGet();
+        return w;
+      });
+      requestWindows.put(key, window);
+    }
+
+    List<Window> locked = new ArrayList<>(requestWindows.size());
+    try {
+      for (Window window : requestWindows.values()) {
+        window.lock.lock();
+        locked.add(window);
+      }
+
+      LocalDateTime timestamp = LocalDateTime.ofInstant(now, ZoneOffset.UTC);
+      for (int i = 0; i < rules.size(); ++i) {
+        String key = key(requestContext, ruleShapes.get(i));
+        Window window = key == null ? null : requestWindows.get(key);
+        if (window == null) {
+          AuditorPersistenceImpl.evaluateRateLimitRule(requestContext, rules.get(i), now, i, 0, 0, 0, timestamp);
+        } else {
+          AuditorPersistenceImpl.evaluateRateLimitRule(requestContext, rules.get(i), now, i
+                  , window.outstanding.get()
+                  , (int) Math.min(Integer.MAX_VALUE, window.runs(nowMillis))
+                  , window.bytes(nowMillis)
+                  , timestamp
+          );
+        }
+      }
+
+      // Every rule has passed, so the request is counted before any other admission can check these windows
+      List<Entry> entries = new ArrayList<>(requestWindows.size());
+      for (Window window : requestWindows.values()) {
+        Bucket bucket = window.current(nowMillis);
+        bucket.runs.increment();
+        window.outstanding.incrementAndGet();
+        entries.add(new Entry(window, bucket));
+      }
+      if (!entries.isEmpty()) {
+        admissions.put(requestContext.getRequestId(), new Admission(nowMillis, entries));
+      }
+    } finally {
+      for (Window window : locked) {
+        window.lock.unlock();
+      }
+      for (Window window : requestWindows.values()) {
+        window.reserved.decrementAndGet();
+      }
+    }
+  }
+
+  private static void release(List<Entry> entries) {
+    for (Entry entry : entries) {
+      entry.bucket().runs.decrement();
+      entry.window().outstanding.decrementAndGet();
+    }
+  }
+
+  /**
+   * Remove a request that has been admitted, without counting it as a run.
+   * <P>
+   * This is used when a subsequent check (against the database) refuses the request.
+   * @param requestId The ID of the request.
+   */
+  void cancel(String requestId) {
+    Admission admission = admissions.remove(requestId);
+    if (admission != null) {
+      release(admission.entries());
+    }
+  }
+
+  /**
+   * Record that a request has completed.
+   * <P>
+   * The bytes are added to the buckets in which the request started, if they are still within their windows.
+   * @param requestId The ID of the request.
+   * @param bytes The number of bytes sent in the response.
+   */
+  void complete(String requestId, long bytes) {
+    Admission admission = admissions.remove(requestId);
+    if (admission != null) {
+      for (Entry entry : admission.entries()) {
+        entry.bucket().bytes.add(bytes);
+        entry.window().outstanding.decrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * Remove windows that no longer contain any data, shapes that have not been used by a rule for their time limit,
+   * and admissions that are too old to still be running.
+   */
+  void purge() {
+    long nowMillis = clock.getAsLong();
+    long oldest = nowMillis - MAX_ADMISSION_AGE.toMillis();
+    for (Map.Entry<String, Admission> entry : admissions.entrySet()) {
+      Admission admission = entry.getValue();
+      if (admission.startMillis() < oldest && admissions.remove(entry.getKey(), admission)) {
+        logger.debug("Rate limit admission for {} discarded without completing", entry.getKey());
+        for (Entry windowEntry : admission.entries()) {
+          windowEntry.window().outstanding.decrementAndGet();
+        }
+      }
+    }
+    for (Map.Entry<Shape, Long> entry : shapes.entrySet()) {
+      if (entry.getValue() < nowMillis - entry.getKey().timeLimit().toMillis()) {
+        // Not removed if a rule with the shape has been seen since it was read
+        shapes.remove(entry.getKey(), entry.getValue());
+      }
+    }
+    for (String key : windows.keySet()) {
+      windows.computeIfPresent(key, (k, w) -> w.removable(nowMillis, shapes.containsKey(w.shape)) ? null : w);
+    }
+  }
+
+  /**
+   * Get the number of windows currently being tracked.
+   * @return the number of windows currently being tracked.
+   */
+  int windowCount() {
+    return windows.size();
+  }
+
+  /**
+   * Get the number of shapes currently being tracked.
+   * @return the number of shapes currently being tracked.
+   */
+  int shapeCount() {
+    return shapes.size();
+  }
+
+}
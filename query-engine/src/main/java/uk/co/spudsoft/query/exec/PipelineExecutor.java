@@ -76,6 +76,9 @@ public interface PipelineExecutor extends SharedMap {
 
   /**
    * Validate a {@link Pipeline} definition.
+   * <p>
+   * Validation does not depend upon the request, so the result for a Pipeline that has a {@link Pipeline#getSha256() hash} may be
+   * remembered and reused for any later Pipeline with the same hash.
    *
    * @param requestContext The request context, the calculated {@link Map} is stored in the request context.
    * @param definition The {@link Pipeline} on which {@link Pipeline#validate(uk.co.spudsoft.query.exec.context.RequestContext)} will be called.
@@ -18,6 +18,8 @@ package uk.co.spudsoft.query.exec;
 
 import uk.co.spudsoft.query.exec.context.RequestContext;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 import com.google.common.net.MediaType;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
@@ -30,6 +32,9 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 import java.util.Map.Entry;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -48,6 +53,11 @@ import uk.co.spudsoft.query.main.ProtectedCredentials;
 import uk.co.spudsoft.query.defn.Format;
 import uk.co.spudsoft.query.exec.conditions.ConditionInstance;
 import uk.co.spudsoft.query.exec.dynamic.JexlEvaluator;
+import uk.co.spudsoft.query.exec.procs.filters.ProcessorLimitInstance;
+import uk.co.spudsoft.query.exec.procs.filters.ProcessorOffsetInstance;
+import uk.co.spudsoft.query.exec.procs.sort.ProcessorSortInstance;
+import uk.co.spudsoft.query.exec.sources.sql.SqlPushDown;
+import uk.co.spudsoft.query.exec.sources.sql.SqlPushDownTarget;
 import uk.co.spudsoft.query.exec.context.PipelineContext;
 import uk.co.spudsoft.query.logging.Log;
 
@@ -66,6 +76,19 @@ public class PipelineExecutorImpl implements PipelineExecutor {
   private final Map<String, ProtectedCredentials> secrets;
   private final Map<String, Object> sharedMap;
 
+  /**
+   * The maximum number of pipeline validation results to remember.
+   */
+  static final int VALIDATION_CACHE_SIZE = 1024;
+
+  /**
+   * Results of {@link Pipeline#validate(RequestContext)} keyed by {@link Pipeline#getSha256()}.
+   * The value is the exception thrown by the validation, or empty if the pipeline is valid.
+   */
+  private final Cache<String, Optional<Throwable>> validationCache = CacheBuilder.newBuilder()
+          .maximumSize(VALIDATION_CACHE_SIZE)
+          .build();
+
   /**
    * Constructor.
    * @param meterRegistry MeterRegistry for production of metrics.
@@ -79,7 +102,8 @@ public class PipelineExecutorImpl implements PipelineExecutor {
     this.auditor = auditor;
     this.filterFactory = filterFactory;
     this.secrets = ImmutableCollectionTools.copy(secrets);
-    this.sharedMap = new HashMap<>();
+    // The PipelineExecutor is shared by all the pipeline verticles, so the shared map is accessed from multiple threads
+    this.sharedMap = new ConcurrentHashMap<>();
   }
 
   @Override
@@ -97,12 +121,35 @@ public class PipelineExecutorImpl implements PipelineExecutor {
     sharedMap.put(name, value);
   }
 
+  @Override
+  public Object computeIfAbsent(String name, Function<String, Object> factory) {
+    return sharedMap.computeIfAbsent(name, factory);
+  }
+
   @Override
   public Future<Pipeline> validatePipeline(RequestContext requestContext, Pipeline definition) {
+    // Validation only depends upon the definition, so the result can be reused for any pipeline with the same hash.
+    // Pipelines without a hash have not come from the PipelineDefnLoader and are always validated.
+    String sha256 = definition.getSha256();
+    if (sha256 != null) {
+      Optional<Throwable> previous = validationCache.getIfPresent(sha256);
+      if (previous != null) {
+        Log.decorate(logger.atTrace(), requestContext).log("Pipeline {} already validated", sha256);
+        return previous.isPresent() ? Future.failedFuture(previous.get()) : Future.succeededFuture(definition);
+      }
+    }
+
+    Throwable failure = null;
     try {
       definition.validate(requestContext);
     } catch (Throwable ex) {
-      return Future.failedFuture(ex);
+      failure = ex;
+    }
+    if (sha256 != null) {
+      validationCache.put(sha256, Optional.ofNullable(failure));
+    }
+    if (failure != null) {
+      return Future.failedFuture(failure);
     }
     return Future.succeededFuture(definition);
   }
@@ -143,10 +190,43 @@ public class PipelineExecutorImpl implements PipelineExecutor {
         }
       }
     }
+    useTopNSorts(pipelineContext, result);
 
     return result;
   }
 
+  /**
+   * Replace any sort processor that is immediately followed by a limit processor (possibly with an offset processor between them)
+   * with a processor that only finds the rows that will get through the limit.
+   * <p>
+   * The limit and offset processors are left in place.
+   *
+   * @param pipelineContext The context in which this {@link SourcePipeline} is being run.
+   * @param processors The processors for the pipeline, which will be modified in place.
+   */
+  static void useTopNSorts(PipelineContext pipelineContext, List<ProcessorInstance> processors) {
+    for (int index = 0; index < processors.size() - 1; ++index) {
+      if (processors.get(index) instanceof ProcessorSortInstance sort) {
+        int next = index + 1;
+        long offset = 0;
+        if (processors.get(next) instanceof ProcessorOffsetInstance offsetInstance && next + 1 < processors.size()) {
+          offset = offsetInstance.getOffset();
+          ++next;
+        }
+        if (processors.get(next) instanceof ProcessorLimitInstance limitInstance) {
+          long rows = offset + limitInstance.getLimit();
+          if (rows <= Integer.MAX_VALUE) {
+            ProcessorInstance replacement = sort.withLimit((int) rows);
+            if (replacement != sort) {
+              Log.decorate(logger.atDebug(), pipelineContext).log("Replaced sort processor {} with top {} sort", sort.getName(), rows);
+              processors.set(index, replacement);
+            }
+          }
+        }
+      }
+    }
+  }
+
   @Override
   public List<PreProcessorInstance> createPreProcessors(Vertx vertx, PipelineContext pipelineContext, Pipeline definition) {
     List<PreProcessorInstance> result = new ArrayList<>();
@@ -399,15 +479,37 @@ public class PipelineExecutorImpl implements PipelineExecutor {
     }
   }
 
+  /**
+   * Push as many of the leading processors as possible down into the source, if the source supports it and its definition permits it.
+   *
+   * @param pipelineContext The context in which this {@link SourcePipeline} is being run.
+   * @param source The source of the pipeline.
+   * @param processors The processors for the pipeline, which are not modified.
+   * @return the number of leading processors that have been pushed down into the source, which must not be initialized.
+   */
+  static int pushDownProcessors(PipelineContext pipelineContext, SourceInstance source, List<ProcessorInstance> processors) {
+    if (source instanceof SqlPushDownTarget target && target.isPushDownEnabled()) {
+      SqlPushDown pushDown = SqlPushDown.plan(pipelineContext, processors, target.getColumnTypeOverrideMap());
+      if (!pushDown.isEmpty()) {
+        Log.decorate(logger.atDebug(), pipelineContext).log("Pushed down {} of {} processors into source: {}", pushDown.getProcessorCount(), processors.size(), pushDown);
+        target.setPushDown(pushDown);
+      }
+      return pushDown.getProcessorCount();
+    }
+    return 0;
+  }
+
   @Override
   public Future<Void> initializePipeline(PipelineContext pipelineContext, PipelineInstance pipeline) {
+    List<ProcessorInstance> processors = pipeline.getProcessors();
+    int pushedDown = pushDownProcessors(pipelineContext, pipeline.getSource(), processors);
     return runPreProcessors(pipelineContext, pipeline)
             .compose(v -> {
               return pipeline.getSource().initialize(this, pipeline);
             })
             .compose(sourceStreamWithTypes -> {
               Log.decorate(logger.atDebug(), pipelineContext).log("Source initialized");
-              return initializeProcessors(pipelineContext, pipeline, pipeline.getPipelineContext().getPipe(), pipeline.getProcessors().iterator(), 1, sourceStreamWithTypes);
+              return initializeProcessors(pipelineContext, pipeline, pipeline.getPipelineContext().getPipe(), processors.subList(pushedDown, processors.size()).iterator(), 1 + pushedDown, sourceStreamWithTypes);
             })
             .compose(streamWithTypes -> {
               Log.decorate(logger.atDebug(), pipelineContext).log("Processors ({}) initialized", pipeline.getProcessors().size());
@@ -415,7 +517,12 @@ public class PipelineExecutorImpl implements PipelineExecutor {
               return pipeline.getSink().initialize(this, pipeline, streamWithTypes);
             })
             .andThen(ar -> {
-              pipeline.getFinalPromise().handle(ar);
+              // The final promise may already have been failed if the pipeline was cancelled
+              if (ar.succeeded()) {
+                pipeline.getFinalPromise().tryComplete();
+              } else {
+                pipeline.getFinalPromise().tryFail(ar.cause());
+              }
               if (pipelineContext.getSpan() != null) {
                 pipelineContext.getSpan().end();
               }
@@ -33,6 +33,7 @@ import uk.co.spudsoft.query.defn.Pipeline;
 import uk.co.spudsoft.query.defn.SourcePipeline;
 import uk.co.spudsoft.query.exec.context.PipelineContext;
 import uk.co.spudsoft.query.exec.dynamic.StringTemplateEvaluator;
+import uk.co.spudsoft.query.logging.Log;
 import uk.co.spudsoft.query.main.ImmutableCollectionTools;
 
 /**
@@ -190,6 +191,37 @@ public class PipelineInstance {
     return finalPromise;
   }
   
+  /**
+   * Cancel the source and all the processors of this pipeline.
+   * <P>
+   * The source will end its stream, so the pipeline will finish with whatever data has already been passed on.
+   * This must be called on the Vert.x context of the pipeline.
+   */
+  public void cancel() {
+    cancelUpstream(processors.size() + 1);
+  }
+
+  /**
+   * Cancel the source and all the processors before the given processor because the processor does not need any more data.
+   * <P>
+   * The source will end its stream, so the pipeline will finish with whatever data has already been passed on.
+   * This must be called on the Vert.x context of the pipeline.
+   *
+   * @param processorIndex The index of the processor that no longer needs any data, as passed to
+   * {@link ProcessorInstance#initialize(uk.co.spudsoft.query.exec.PipelineExecutor, uk.co.spudsoft.query.exec.PipelineInstance, java.lang.String, int, uk.co.spudsoft.query.exec.ReadStreamWithTypes)}
+   * (i.e. the first processor has index 1).
+   */
+  public void cancelUpstream(int processorIndex) {
+    int count = Math.max(0, Math.min(processorIndex - 1, processors.size()));
+    Log.decorate(logger.atDebug(), pipelineContext).log("Cancelling source and {} processors", count);
+    for (int i = 0; i < count; ++i) {
+      processors.get(i).cancel();
+    }
+    if (source != null) {
+      source.cancel();
+    }
+  }
+
   /**
    * Render a {@link ST StringTemplate}.
    * @param name the name of the template, used for error reporting.
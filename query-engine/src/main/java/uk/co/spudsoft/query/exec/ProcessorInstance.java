@@ -46,5 +46,16 @@ public interface ProcessorInstance {
    * @return a Future that will be completed when the initialization is complete.
    */
   Future<ReadStreamWithTypes> initialize(PipelineExecutor executor, PipelineInstance pipeline, String parentSource, int processorIndex, ReadStreamWithTypes input);
+
+  /**
+   * Stop any data sources owned by this processor (such as the child pipelines of a join) because nothing downstream needs any more data.
+   * <P>
+   * Processors that only transform their input do not need to do anything, the pipeline source is cancelled separately.
+   * Calling this method more than once must have no effect.
+   * <P>
+   * This method will be called on the Vert.x context of the pipeline.
+   */
+  default void cancel() {
+  }
   
 }
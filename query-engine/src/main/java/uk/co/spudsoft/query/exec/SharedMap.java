@@ -16,6 +16,8 @@
  */
 package uk.co.spudsoft.query.exec;
 
+import java.util.function.Function;
+
 /**
  * A very simple Map interface to enable pooling between {@link SourceInstance} objects.
  * @author jtalbut
@@ -36,4 +38,15 @@ public interface SharedMap {
    */
   void put(String name, Object value);
   
+  /**
+   * Get a named object from the map, creating it if it is not already present.
+   * <P>
+   * This must be atomic, the factory will only be called once no matter how many threads ask for the same name at the same time.
+   * 
+   * @param name The name of the object in the map.
+   * @param factory Function to create the value if there isn't one in the map already.
+   * @return The value that is in the map with the given name.
+   */
+  Object computeIfAbsent(String name, Function<String, Object> factory);
+  
 }
@@ -40,4 +40,17 @@ public interface SourceInstance {
    * @return a Future that will be completed when the initialization is complete.
    */
   Future<ReadStreamWithTypes> initialize(PipelineExecutor executor, PipelineInstance pipeline);
+
+  /**
+   * Stop producing data because nothing downstream needs any more of it.
+   * <P>
+   * Implementations should stop reading as soon as possible (e.g. cancel the running statement), release any resources they hold
+   * and end the stream.
+   * Calling this method more than once, or after the stream has ended, must have no effect.
+   * <P>
+   * This method will be called on the Vert.x context of the pipeline.
+   * The default implementation does nothing, leaving the stream to run to completion.
+   */
+  default void cancel() {
+  }
 }
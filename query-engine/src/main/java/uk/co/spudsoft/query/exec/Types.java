@@ -18,10 +18,12 @@ package uk.co.spudsoft.query.exec;
 
 import io.vertx.sqlclient.desc.ColumnDescriptor;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.function.Consumer;
 import org.slf4j.Logger;
@@ -44,6 +46,25 @@ public class Types {
   private final List<ColumnDefn> defns = new ArrayList<>();
   private final HashMap<String, Integer> indices = new HashMap<>();
   
+  /**
+   * Immutable copy of {@link #indices} and {@link #defns}, replaced whilst holding the lock every time either of them changes.
+   * <P>
+   * Everything other than {@link #indexFor(java.lang.String, java.lang.String, uk.co.spudsoft.query.defn.DataType)} reads only this,
+   * the mutable collections may be part way through being changed and are only touched whilst holding the lock.
+   * 
+   * @param indices The index of each key.
+   * @param defns The column definitions, by index.
+   * @param columns An unmodifiable list view of defns.
+   */
+  private record Snapshot(Map<String, Integer> indices, ColumnDefn[] defns, List<ColumnDefn> columns) {
+    
+    Snapshot(Map<String, Integer> indices, ColumnDefn[] defns) {
+      this(indices, defns, Collections.unmodifiableList(Arrays.asList(defns)));
+    }
+  }
+  
+  private volatile Snapshot snapshot = new Snapshot(Collections.emptyMap(), new ColumnDefn[0]);
+  
   /**
    * Constructor.
    */
@@ -56,20 +77,23 @@ public class Types {
    * @return the type of the requested field.
    */
   public DataType get(String key) {
-    Integer idx = indices.get(key);
+    Snapshot current = snapshot;
+    Integer idx = current.indices().get(key);
     if (idx == null) {
       return null;
     } else {
-      return defns.get(idx).type();
+      return current.defns()[idx].type();
     }
   }
   
   /**
    * Get the set of all fields.
+   * <P>
+   * The set does not include fields added after it is returned.
    * @return the set of all fields.
    */
   public Set<String> keySet() {
-    return indices.keySet();
+    return snapshot.indices().keySet();
   }
   
   /**
@@ -97,30 +121,95 @@ public class Types {
    * @throws IllegalStateException if they type is already set to a non-null value and an attempt is made to set it to a different non-null value.
    */
   public final Types putIfAbsent(String key, String name, DataType type) {
+    indexFor(key, name, type);
+    return this;
+  }
+
+  /**
+   * Set the type for the key if it is not already set (or is currently set to null) and return the index of the column.
+   * 
+   * This is the equivalent of {@link #putIfAbsent(java.lang.String, java.lang.String, uk.co.spudsoft.query.defn.DataType)}
+   * for callers that need to know the slot that values for the column occupy in a {@link DataRow}.
+   * 
+   * @param key The key to use when comparing the column.
+   * @param name The name of the column.
+   * @param type The desired type of the column.
+   * @return the index of the column in this Types object.
+   */
+  public int indexFor(String key, String name, DataType type) {
     if (type == null) {
       type = DataType.Null;
     }
+    Snapshot published = snapshot;
+    Integer known = published.indices().get(key);
+    if (known != null && (type == DataType.Null || published.defns()[known].type() != DataType.Null)) {
+      // Nothing to change, so no need to take the lock
+      return known;
+    }
     synchronized (defns) {
       Integer idx = indices.get(key);
       if (idx == null) {
-        indices.put(key, defns.size());
+        int result = defns.size();
+        indices.put(key, result);
         defns.add(new ColumnDefn(name, key, type));
+        publish();
+        return result;
       } else {
         ColumnDefn current = defns.get(idx);
         if (current.type() == DataType.Null && type != DataType.Null) {
           defns.set(idx, new ColumnDefn(current.name(), key, type));
+          publish();
         }
+        return idx;
       }
     }
-    return this;
+  }
+  
+  /**
+   * Replace the {@link #snapshot} with a copy of the current state.
+   * <P>
+   * Must be called whilst holding the lock.
+   */
+  private void publish() {
+    snapshot = new Snapshot(Collections.unmodifiableMap(new HashMap<>(indices)), defns.toArray(new ColumnDefn[0]));
+  }
+
+  /**
+   * Get the index of a field.
+   * 
+   * The index of a field never changes once it has been added, so it is safe to resolve it once and then use it 
+   * for every {@link DataRow} that shares this Types object.
+   * 
+   * @param key The field being requested.
+   * @return the index of the requested field, or -1 if the field is not known.
+   */
+  public int indexOf(String key) {
+    Integer idx = snapshot.indices().get(key);
+    return idx == null ? -1 : idx;
+  }
+
+  /**
+   * Get the column definition at a given index.
+   * @param index The index of the column, as returned by {@link #indexOf(java.lang.String)}.
+   * @return the column definition at the given index.
+   * @throws IndexOutOfBoundsException if the index is not valid.
+   */
+  public ColumnDefn getDefn(int index) {
+    ColumnDefn[] current = snapshot.defns();
+    if (index < 0 || index >= current.length) {
+      throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + current.length);
+    }
+    return current[index];
   }
 
   /**
    * Get the list of column definitions.
+   * <P>
+   * The list does not include columns added after it is returned.
    * @return the list of column definitions.
    */
   public List<ColumnDescriptor> getColumnDescriptors() {
-    return Collections.unmodifiableList(defns);
+    return Collections.unmodifiableList(snapshot.columns());
   }
 
   /**
@@ -128,7 +217,7 @@ public class Types {
    * @param action The action to carry out.
    */
   public void forEach(Consumer<? super ColumnDefn> action) {
-    defns.forEach(action);
+    snapshot.columns().forEach(action);
   }
   
   /**
@@ -136,7 +225,7 @@ public class Types {
    * @return a newly created Iterator across the column definitions.
    */
   public Iterator<ColumnDefn> iterator() {
-    return defns.iterator();
+    return snapshot.columns().iterator();
   }
   
   /**
@@ -144,7 +233,7 @@ public class Types {
    * @return true if the there are no column definitions.
    */
   public boolean isEmpty() {
-    return defns.isEmpty();
+    return snapshot.defns().length == 0;
   }
 
   /**
@@ -152,12 +241,12 @@ public class Types {
    * @return the number of column definitions known.
    */
   public int size() {
-    return defns.size();
+    return snapshot.defns().length;
   }
 
   @Override
   public String toString() {
-    return "{" + defns + '}';
+    return "{" + snapshot.columns() + '}';
   }
   
 }
@@ -17,7 +17,11 @@
 package uk.co.spudsoft.query.exec.dynamic;
 
 import uk.co.spudsoft.query.exec.context.RequestContext;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -69,6 +73,10 @@ import uk.co.spudsoft.query.exec.conditions.DataRowUberspect;
  * </ul>
  *
  * Conditions are <a href="uk.co.spudsoft.query.defn.Condition">JEXL</a> expressions.
+ * <P>
+ * Compiled expressions are immutable and thread safe, so they are kept in a process-wide cache (keyed by the collapsed source text)
+ * and shared by every JexlEvaluator created with the same expression.
+ * The cache is limited to {@value #EXPRESSION_CACHE_SIZE} expressions.
  *
  * @author jtalbut
  */
@@ -81,6 +89,16 @@ public class JexlEvaluator {
 
   private static final Pattern WS_PATTERN = Pattern.compile("\\s*+\\\\\\r?\\n\\s*+");
 
+  /**
+   * The maximum number of compiled expressions to keep in the cache.
+   */
+  static final int EXPRESSION_CACHE_SIZE = 4096;
+
+  private static final Cache<String, JexlExpression> EXPRESSION_CACHE = CacheBuilder.newBuilder()
+          .maximumSize(EXPRESSION_CACHE_SIZE)
+          .recordStats()
+          .build();
+
   static JexlEngine createJexlEngine() {
     Map<String, Object> namespaces = new HashMap<>();
     namespaces.put(null, new TopLevelJexlFunctions());
@@ -130,6 +148,44 @@ public class JexlEvaluator {
     return JEXL;
   }
 
+  /**
+   * Report the hits and misses of the compiled expression cache to the MeterRegistry.
+   *
+   * @param meterRegistry MeterRegistry for production of metrics.
+   */
+  public static void monitorCache(MeterRegistry meterRegistry) {
+    GuavaCacheMetrics.monitor(meterRegistry, EXPRESSION_CACHE, "jexl");
+  }
+
+  /**
+   * Get the compiled form of an expression, from the cache if it is there.
+   * <P>
+   * Expressions that fail to compile are not cached, so the exception will be thrown each time they are used.
+   *
+   * @param source The expression, which must already have had its whitespace collapsed.
+   * @return the compiled form of the expression.
+   */
+  static JexlExpression compile(String source) {
+    if (source == null) {
+      return JEXL.createExpression(source);
+    }
+    JexlExpression expression = EXPRESSION_CACHE.getIfPresent(source);
+    if (expression == null) {
+      // Two threads may both compile the same expression, which is harmless
+      expression = JEXL.createExpression(source);
+      EXPRESSION_CACHE.put(source, expression);
+    }
+    return expression;
+  }
+
+  /**
+   * Get the number of compiled expressions in the cache.
+   * @return the number of compiled expressions in the cache.
+   */
+  static long cacheSize() {
+    return EXPRESSION_CACHE.size();
+  }
+
   /**
    * Return true if the condition or its expression is null or blank.
    *
@@ -160,7 +216,7 @@ public class JexlEvaluator {
    * @param expression The <a href="https://commons.apache.org/proper/commons-jexl/">JEXL</a> expression.
    */
   public JexlEvaluator(String expression) {
-    this.expression = JEXL.createExpression(collapseWhitespace(expression));
+    this.expression = compile(collapseWhitespace(expression));
   }
 
   /**
@@ -169,7 +225,7 @@ public class JexlEvaluator {
    * @param expression The <a href="https://commons.apache.org/proper/commons-jexl/">JEXL</a> expression to validate.
    */
   public static void parse(String expression) {
-    JEXL.createExpression(expression);
+    compile(collapseWhitespace(expression));
   }
 
   /**
@@ -17,13 +17,21 @@
 package uk.co.spudsoft.query.exec.dynamic;
 
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
 import io.vertx.core.json.Json;
+import java.io.StringWriter;
 import java.time.LocalDateTime;
+import java.util.Locale;
 import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.stringtemplate.v4.AutoIndentWriter;
 import org.stringtemplate.v4.ST;
 import org.stringtemplate.v4.STGroup;
+import org.stringtemplate.v4.misc.ErrorManager;
 import uk.co.spudsoft.query.exec.StringTemplateListener;
 import uk.co.spudsoft.query.exec.context.PipelineContext;
 import uk.co.spudsoft.query.logging.Log;
@@ -32,6 +40,12 @@ import uk.co.spudsoft.query.logging.Log;
  * Helper class for evaluating {@link ST StringTemplate} instances.
  *
  * Unlike the JexlEvaluator this class is implemented in a single static method.
+ * <P>
+ * Compiling a template is far more expensive than rendering it, so templates that compile without errors are kept in a
+ * process-wide cache (keyed by the template text), each in its own {@link STGroup} with the renderers already registered.
+ * Rendering takes a copy of the cached template, which clones the compiled form but shares the byte code, and binds the attributes
+ * to that copy.
+ * The cache is limited to {@value #TEMPLATE_CACHE_SIZE} templates.
  *
  * @author jtalbut
  */
@@ -41,6 +55,16 @@ public class StringTemplateEvaluator {
 
   private static TopLevelJexlFunctions fns = new TopLevelJexlFunctions();
 
+  /**
+   * The maximum number of compiled templates to keep in the cache.
+   */
+  static final int TEMPLATE_CACHE_SIZE = 1024;
+
+  private static final Cache<String, ST> TEMPLATE_CACHE = CacheBuilder.newBuilder()
+          .maximumSize(TEMPLATE_CACHE_SIZE)
+          .recordStats()
+          .build();
+
   private StringTemplateEvaluator() {
   }
 
@@ -87,11 +111,7 @@ public class StringTemplateEvaluator {
        *
        * If callers need a literal '<' or '>' in output, they must escape it per ST rules.
        */
-      STGroup stgroup = new STGroup();
-      stgroup.setListener(errorListener);
-      stgroup.registerRenderer(LocalDateTime.class, new StringTemplateLocalDateTimeRenderer());
-
-      ST st = new ST(stgroup, template);
+      ST st = instantiate(template, errorListener);
 
       // Provide "now" function object; invoke as: <now.call("pattern")>
       st.add("obj", new TopLevelStringTemplateObjects());
@@ -104,7 +124,9 @@ public class StringTemplateEvaluator {
         extraContext.forEach(st::add);
       }
 
-      return st.render();
+      StringWriter writer = new StringWriter();
+      st.write(new AutoIndentWriter(writer), Locale.getDefault(), errorListener);
+      return writer.toString();
     } catch (Throwable ex) {
       if (extraContext != null) {
         try {
@@ -131,4 +153,54 @@ public class StringTemplateEvaluator {
     }
   }
 
+  /**
+   * Report the hits and misses of the compiled template cache to the MeterRegistry.
+   *
+   * @param meterRegistry MeterRegistry for production of metrics.
+   */
+  public static void monitorCache(MeterRegistry meterRegistry) {
+    GuavaCacheMetrics.monitor(meterRegistry, TEMPLATE_CACHE, "stringtemplate");
+  }
+
+  /**
+   * Get an instance of a template that attributes can be added to, using the cached compiled form if there is one.
+   * <P>
+   * Templates that fail to compile are not cached, so the errors will be reported to the errorListener each time they are used.
+   *
+   * @param template the text of the template.
+   * @param errorListener the listener that will be told about any errors compiling the template.
+   * @return an instance of the template with no attributes set.
+   */
+  static ST instantiate(String template, StringTemplateListener errorListener) {
+    ST prototype = TEMPLATE_CACHE.getIfPresent(template);
+    if (prototype != null) {
+      return new ST(prototype);
+    }
+
+    STGroup stgroup = new STGroup();
+    stgroup.setListener(errorListener);
+    stgroup.registerRenderer(LocalDateTime.class, new StringTemplateLocalDateTimeRenderer());
+
+    prototype = new ST(stgroup, template);
+    if (!errorListener.getErrors().isEmpty()) {
+      return prototype;
+    }
+
+    // The group outlives this request, so it must not keep hold of this request's listener.
+    // Errors whilst rendering are reported to the listener passed to ST#write.
+    stgroup.setListener(ErrorManager.DEFAULT_ERROR_LISTENER);
+    // Two threads may both compile the same template, which is harmless.
+    // The prototype never has attributes added to it, so it can be copied safely by multiple threads.
+    TEMPLATE_CACHE.put(template, prototype);
+    return new ST(prototype);
+  }
+
+  /**
+   * Get the number of compiled templates in the cache.
+   * @return the number of compiled templates in the cache.
+   */
+  static long cacheSize() {
+    return TEMPLATE_CACHE.size();
+  }
+
 }
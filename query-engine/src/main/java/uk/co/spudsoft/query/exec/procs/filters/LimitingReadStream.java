@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2026 jtalbut
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.spudsoft.query.exec.procs.filters;
+
+import io.vertx.core.Handler;
+import io.vertx.core.streams.ReadStream;
+import java.util.Objects;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.co.spudsoft.query.defn.SourcePipeline;
+import uk.co.spudsoft.query.exec.context.PipelineContext;
+import uk.co.spudsoft.query.logging.Log;
+
+/**
+ * {@link io.vertx.core.streams.ReadStream} that wraps another ReadStream and passes on at most a fixed number of items.
+ * <P>
+ * As soon as the limit has been reached this stream is detached from the source stream, the limitHandler is called and then this stream is ended.
+ * The limitHandler is expected to cancel the source stream so that it does not go on producing data that nothing will read.
+ *
+ * @author jtalbut
+ * @param <T> The type of item in the stream.
+ */
+public final class LimitingReadStream<T> implements ReadStream<T> {
+
+  private static final Logger logger = LoggerFactory.getLogger(LimitingReadStream.class);
+
+  private final PipelineContext pipelineContext;
+  private final ReadStream<T> source;
+  private final long limit;
+  private final Runnable limitHandler;
+
+  private long passed;
+  private boolean stopped;
+  private Handler<Throwable> exceptionHandler;
+  private Handler<Void> endHandler;
+
+  /**
+   * Constructor.
+   * @param pipelineContext The context in which this {@link SourcePipeline} is being run.
+   * @param source the {@link ReadStream} being limited.
+   * @param limit the maximum number of items to pass on.
+   * @param limitHandler called (once) when the limit has been reached, before this stream is ended, may be null.
+   */
+  public LimitingReadStream(PipelineContext pipelineContext, ReadStream<T> source, long limit, Runnable limitHandler) {
+    Objects.requireNonNull(source, "Source cannot be null");
+    this.pipelineContext = pipelineContext;
+    this.source = source;
+    this.limit = limit;
+    this.limitHandler = limitHandler;
+  }
+
+  @Override
+  public synchronized ReadStream<T> exceptionHandler(Handler<Throwable> handler) {
+    exceptionHandler = handler;
+    return this;
+  }
+
+  private synchronized Handler<Throwable> getExceptionHandler() {
+    return exceptionHandler;
+  }
+
+  @Override
+  public ReadStream<T> handler(Handler<T> handler) {
+    if (handler == null) {
+      source.handler(null);
+      return this;
+    }
+    source
+      .exceptionHandler(throwable -> notifyTerminalHandler(getExceptionHandler(), throwable))
+      .endHandler(v -> notifyTerminalHandler(getEndHandler(), null))
+      .handler(item -> {
+        boolean emit;
+        boolean reached;
+        synchronized (this) {
+          emit = !stopped && passed < limit;
+          if (emit) {
+            ++passed;
+          }
+          reached = !stopped && passed >= limit;
+        }
+        if (emit) {
+          handler.handle(item);
+        }
+        if (reached) {
+          limitReached();
+        }
+      });
+    return this;
+  }
+
+  private void limitReached() {
+    Handler<Void> handler;
+    synchronized (this) {
+      if (stopped) {
+        return;
+      }
+      stopped = true;
+      source.handler(null).exceptionHandler(null).endHandler(null);
+      handler = endHandler;
+    }
+    Log.decorate(logger.atDebug(), pipelineContext).log("Limit of {} reached, cancelling source", limit);
+    if (limitHandler != null) {
+      try {
+        limitHandler.run();
+      } catch (Throwable ex) {
+        Log.decorate(logger.atWarn(), pipelineContext).log("Failed to cancel source: ", ex);
+      }
+    }
+    if (handler != null) {
+      handler.handle(null);
+    }
+  }
+
+  @Override
+  public ReadStream<T> pause() {
+    source.pause();
+    return this;
+  }
+
+  @Override
+  public ReadStream<T> resume() {
+    return fetch(Long.MAX_VALUE);
+  }
+
+  @Override
+  public ReadStream<T> fetch(long l) {
+    source.fetch(l);
+    return this;
+  }
+
+  @Override
+  public synchronized ReadStream<T> endHandler(Handler<Void> handler) {
+    endHandler = handler;
+    return this;
+  }
+
+  private synchronized Handler<Void> getEndHandler() {
+    return endHandler;
+  }
+
+  private <V> void notifyTerminalHandler(Handler<V> handler, V value) {
+    Handler<V> h;
+    synchronized (this) {
+      if (!stopped) {
+        stopped = true;
+        source.handler(null).exceptionHandler(null).endHandler(null);
+        h = handler;
+      } else {
+        h = null;
+      }
+    }
+    if (h != null) {
+      h.handle(value);
+    }
+  }
+}
@@ -17,7 +17,6 @@
 package uk.co.spudsoft.query.exec.procs.filters;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
-import io.github.tsegismont.streamutils.impl.LimitingStream;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.vertx.core.Future;
 import io.vertx.core.Vertx;
@@ -37,6 +36,9 @@ import uk.co.spudsoft.query.exec.procs.AbstractProcessor;
 /**
  * {@link uk.co.spudsoft.query.exec.ProcessorInstance} to limit the number of rows to a configured number.
  * <P>
+ * Once the limit has been reached the source, and any processors before this one, are cancelled
+ * (see {@link PipelineInstance#cancelUpstream(int)}) so that they stop producing rows that will never be output.
+ * <P>
  * Not usually useful in a pipeline definition, aimed at use via the {@link uk.co.spudsoft.query.exec.filters.LimitFilter}.
  *
  * @author jtalbut
@@ -47,7 +49,7 @@ public class ProcessorLimitInstance extends AbstractProcessor {
   private static final Logger slf4jlogger = LoggerFactory.getLogger(ProcessorLimitInstance.class);
 
   private final ProcessorLimit definition;
-  private LimitingStream<DataRow> stream; 
+  private LimitingReadStream<DataRow> stream;
   private Types types;
 
   /**
@@ -75,7 +77,11 @@ public class ProcessorLimitInstance extends AbstractProcessor {
 
   @Override
   public Future<ReadStreamWithTypes> initialize(PipelineExecutor executor, PipelineInstance pipeline, String parentSource, int processorIndex, ReadStreamWithTypes input) {
-    this.stream = new LimitingStream<>(input.getStream(), definition.getLimit());
+    this.stream = new LimitingReadStream<>(pipelineContext, input.getStream(), definition.getLimit(), () -> {
+      if (pipeline != null) {
+        pipeline.cancelUpstream(processorIndex);
+      }
+    });
     this.types = input.getTypes();
     return Future.succeededFuture(new ReadStreamWithTypes(stream, types));
   }
@@ -41,6 +41,7 @@ import uk.co.spudsoft.query.exec.procs.AbstractProcessor;
  * Configuration is via a {@link uk.co.spudsoft.query.defn.ProcessorQuery} that has a single RSQL expression.
  * <P>
  * The RSQL expression is evaluated against each row in the stream and only those that pass the evaluation remain in the stream.
+ * The expression is parsed and compiled into an {@link RsqlPredicate} once, when the processor is initialized.
  * <P>
  * The query processor is only useful when the stream already contains more rows than are required - thus, whilst the processor itself is not
  * particularly inefficient it is best not used if at all possible.
@@ -65,7 +66,7 @@ public class ProcessorQueryInstance extends AbstractProcessor {
   private final String expression;
   private Types types;
 
-  private Node rootNode;
+  private RsqlPredicate predicate;
 
   /**
    * Constructor.
@@ -84,26 +85,22 @@ public class ProcessorQueryInstance extends AbstractProcessor {
   }
 
   /**
-   * Process the RSQL/FIQL for a DataRow and return the result.
-   * @param pipelineContext The context in which this {@link SourcePipeline} is being run.
-   * @param rootNode the root of the RSQL abstract tree.
-   * @param row the {@link DataRow} being evaluated.
-   * @return the value calculated by the RSQL evaluation.
+   * Get the RSQL expression that this processor evaluates.
+   * @return the RSQL expression that this processor evaluates.
    */
-  static boolean evaluate(PipelineContext pipelineContext, Node rootNode, DataRow row) {
-    return rootNode.accept(new RsqlEvaluator(pipelineContext), row);
+  public String getExpression() {
+    return expression;
   }
 
   @Override
   public Future<ReadStreamWithTypes> initialize(PipelineExecutor executor, PipelineInstance pipeline, String parentSource, int processorIndex, ReadStreamWithTypes input) {
     try {
-      rootNode = RSQL_PARSER.parse(expression);
+      Node rootNode = RSQL_PARSER.parse(expression);
+      predicate = RsqlPredicate.compile(pipelineContext, rootNode);
     } catch (Throwable ex) {
       return Future.failedFuture(ex);
     }
-    this.stream = new FilteringStream<>(pipelineContext, input.getStream(), (data) -> {
-      return evaluate(pipelineContext, rootNode, data);
-    });
+    this.stream = new FilteringStream<>(pipelineContext, input.getStream(), predicate);
     this.types = input.getTypes();
     return Future.succeededFuture(new ReadStreamWithTypes(stream, types));
   }
@@ -192,7 +192,7 @@ public class RsqlEvaluator implements RSQLVisitor<Boolean, DataRow> {
           .put(RSQLOperators.NOT_IN.getSymbol(), new RsqlOperatorNotIn())
           .put("=~", new RsqlOperatorRegex())
           .build();
-  private static final ImmutableMap<DataType, RsqlComparator<?>> COMPARATOR_MAP = ImmutableMap.<DataType, RsqlComparator<?>>builder()
+  static final ImmutableMap<DataType, RsqlComparator<?>> COMPARATOR_MAP = ImmutableMap.<DataType, RsqlComparator<?>>builder()
           .put(DataType.Boolean, new RsqlComparatorBoolean())
           .put(DataType.Date, new RsqlComparatorDate())
           .put(DataType.DateTime, new RsqlComparatorDateTime())
@@ -0,0 +1,457 @@
+/*
+ * Copyright (C) 2026 jtalbut
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.spudsoft.query.exec.procs.query;
+
+import cz.jirutka.rsql.parser.ast.AndNode;
+import cz.jirutka.rsql.parser.ast.ComparisonNode;
+import cz.jirutka.rsql.parser.ast.Node;
+import cz.jirutka.rsql.parser.ast.OrNode;
+import cz.jirutka.rsql.parser.ast.RSQLOperators;
+import cz.jirutka.rsql.parser.ast.RSQLVisitor;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.co.spudsoft.query.defn.DataType;
+import uk.co.spudsoft.query.defn.SourcePipeline;
+import uk.co.spudsoft.query.exec.DataRow;
+import uk.co.spudsoft.query.exec.Types;
+import uk.co.spudsoft.query.exec.context.PipelineContext;
+import uk.co.spudsoft.query.logging.Log;
+
+/**
+ * An RSQL expression compiled into a tree of predicates that can be evaluated against many {@link DataRow}s.
+ * <P>
+ * This produces the same results as {@link RsqlEvaluator}, but all the work that does not depend on the row is done once.
+ * The operators are resolved and regular expressions are compiled by {@link #compile(uk.co.spudsoft.query.exec.context.PipelineContext, cz.jirutka.rsql.parser.ast.Node)}.
+ * The first evaluation of each comparison resolves the field to its slot and type in the {@link Types} of the rows and parses the arguments
+ * to that type (including building the {@link Set} for =in= and =out=).
+ * The Types are usually still empty when the expression is compiled, which is why this cannot be done any earlier.
+ * Numeric comparisons are carried out on primitive values read by index from the row, without boxing.
+ * <P>
+ * Instances are thread safe, the resolved state of each comparison is immutable and is published via a volatile field.
+ *
+ * @author jtalbut
+ */
+public abstract class RsqlPredicate implements Predicate<DataRow> {
+
+  private static final Logger logger = LoggerFactory.getLogger(RsqlPredicate.class);
+
+  private static final String REGEX_SYMBOL = "=~";
+
+  private RsqlPredicate() {
+  }
+
+  /**
+   * Compile the root node of a parsed RSQL expression into a predicate.
+   *
+   * @param pipelineContext The context in which this {@link SourcePipeline} is being run.
+   * @param rootNode The root of the RSQL abstract syntax tree.
+   * @return A predicate that evaluates the RSQL expression against a {@link DataRow}.
+   * @throws IllegalArgumentException if the expression uses an operator that is not handled, or an invalid regular expression.
+   */
+  public static RsqlPredicate compile(PipelineContext pipelineContext, Node rootNode) throws IllegalArgumentException {
+    return rootNode.accept(new Compiler(pipelineContext));
+  }
+
+  private static final class Compiler implements RSQLVisitor<RsqlPredicate, Void> {
+
+    private final PipelineContext pipelineContext;
+
+    Compiler(PipelineContext pipelineContext) {
+      this.pipelineContext = pipelineContext;
+    }
+
+    private RsqlPredicate[] children(List<Node> nodes) {
+      RsqlPredicate[] children = new RsqlPredicate[nodes.size()];
+      for (int i = 0; i < children.length; ++i) {
+        children[i] = nodes.get(i).accept(this);
+      }
+      return children;
+    }
+
+    @Override
+    public RsqlPredicate visit(AndNode node, Void param) {
+      return new And(children(node.getChildren()));
+    }
+
+    @Override
+    public RsqlPredicate visit(OrNode node, Void param) {
+      return new Or(children(node.getChildren()));
+    }
+
+    @Override
+    public RsqlPredicate visit(ComparisonNode node, Void param) {
+      String symbol = node.getOperator().getSymbol();
+      if (REGEX_SYMBOL.equals(symbol)) {
+        return new Regex(pipelineContext, node.getSelector(), compilePattern(node.getArguments()));
+      }
+      Op op = Op.fromSymbol(symbol);
+      if (op == null) {
+        Log.decorate(logger.atWarn(), pipelineContext).log("The operator specified in the RSQL expression ({}) is not handled", symbol);
+        throw new IllegalArgumentException("The operator specified in the RSQL expression is not handled");
+      }
+      return new Comparison(pipelineContext, node.getSelector(), op, node.getArguments());
+    }
+  }
+
+  /**
+   * Compile the argument to the =~ operator.
+   * @param args The arguments passed to the operator.
+   * @return The compiled pattern, or null if the argument is null (in which case nothing matches).
+   */
+  static Pattern compilePattern(List<String> args) {
+    if (args.size() != 1) {
+      throw new IllegalArgumentException(Integer.toString(args.size()) + " arguments provided to =~ operator");
+    }
+    String argument = args.get(0);
+    if (argument == null) {
+      return null;
+    }
+    try {
+      return Pattern.compile(argument);
+    } catch (PatternSyntaxException ex) {
+      throw new IllegalArgumentException("Invalid argument passed to =~ operator", ex);
+    }
+  }
+
+  private static final class And extends RsqlPredicate {
+
+    private final RsqlPredicate[] children;
+
+    And(RsqlPredicate[] children) {
+      this.children = children;
+    }
+
+    @Override
+    public boolean test(DataRow row) {
+      for (RsqlPredicate child : children) {
+        if (!child.test(row)) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  private static final class Or extends RsqlPredicate {
+
+    private final RsqlPredicate[] children;
+
+    Or(RsqlPredicate[] children) {
+      this.children = children;
+    }
+
+    @Override
+    public boolean test(DataRow row) {
+      for (RsqlPredicate child : children) {
+        if (child.test(row)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  /**
+   * The RSQL operators that compare the value in the row with typed arguments.
+   */
+  private enum Op {
+    EQUAL, NOT_EQUAL, GREATER_THAN, GREATER_THAN_OR_EQUAL, LESS_THAN, LESS_THAN_OR_EQUAL, IN, NOT_IN;
+
+    static Op fromSymbol(String symbol) {
+      if (RSQLOperators.EQUAL.getSymbol().equals(symbol)) {
+        return EQUAL;
+      } else if (RSQLOperators.NOT_EQUAL.getSymbol().equals(symbol)) {
+        return NOT_EQUAL;
+      } else if (RSQLOperators.GREATER_THAN.getSymbol().equals(symbol)) {
+        return GREATER_THAN;
+      } else if (RSQLOperators.GREATER_THAN_OR_EQUAL.getSymbol().equals(symbol)) {
+        return GREATER_THAN_OR_EQUAL;
+      } else if (RSQLOperators.LESS_THAN.getSymbol().equals(symbol)) {
+        return LESS_THAN;
+      } else if (RSQLOperators.LESS_THAN_OR_EQUAL.getSymbol().equals(symbol)) {
+        return LESS_THAN_OR_EQUAL;
+      } else if (RSQLOperators.IN.getSymbol().equals(symbol)) {
+        return IN;
+      } else if (RSQLOperators.NOT_IN.getSymbol().equals(symbol)) {
+        return NOT_IN;
+      } else {
+        return null;
+      }
+    }
+
+    /**
+     * Interpret the result of a primitive comparison (as returned by, for example, {@link Long#compare(long, long)}).
+     * @param cmp The result of comparing the row value with the argument.
+     * @return true if the comparison satisfies this operator.
+     */
+    boolean test(int cmp) {
+      return switch (this) {
+        case EQUAL -> cmp == 0;
+        case NOT_EQUAL -> cmp != 0;
+        case GREATER_THAN -> cmp > 0;
+        case GREATER_THAN_OR_EQUAL -> cmp >= 0;
+        case LESS_THAN -> cmp < 0;
+        case LESS_THAN_OR_EQUAL -> cmp <= 0;
+        default -> throw new IllegalStateException("Operator " + this + " is not a single value comparison");
+      };
+    }
+  }
+
+  /**
+   * Base class for leaf predicates that must be resolved against the {@link Types} of the rows before they can be evaluated.
+   */
+  private abstract static class Leaf extends RsqlPredicate {
+
+    protected final PipelineContext pipelineContext;
+    protected final String field;
+    private volatile Bound bound;
+
+    Leaf(PipelineContext pipelineContext, String field) {
+      this.pipelineContext = pipelineContext;
+      this.field = field;
+    }
+
+    @Override
+    public boolean test(DataRow row) {
+      Bound current = bound;
+      if (current == null || current.types != row.types()) {
+        current = resolve(row);
+      }
+      return current.test(row);
+    }
+
+    private Bound resolve(DataRow row) {
+      Types types = row.types();
+      DataType type = types.get(field);
+      if (type == null) {
+        Log.decorate(logger.atWarn(), pipelineContext).log("The field {} is not present in the row: {}", field, row.getMap().keySet());
+        throw new IllegalArgumentException("The field specified in the RSQL expression does not exist");
+      }
+      int slot = types.indexOf(field);
+      if (type == DataType.Null) {
+        // Only nulls have been seen, which never match, resolve again next time in case the type becomes known
+        return new NullBound(types, slot);
+      }
+      Bound result = bind(types, slot, type);
+      bound = result;
+      return result;
+    }
+
+    /**
+     * Create the resolved form of this predicate for a specific column.
+     * @param types The Types that the rows share.
+     * @param slot The index of the field in the Types.
+     * @param type The type of the field, which will not be {@link DataType#Null}.
+     * @return The resolved form of this predicate.
+     */
+    abstract Bound bind(Types types, int slot, DataType type);
+  }
+
+  /**
+   * A leaf predicate resolved against a specific {@link Types}.
+   * <P>
+   * Null values never match any comparison.
+   */
+  private abstract static class Bound {
+
+    final Types types;
+    final int slot;
+
+    Bound(Types types, int slot) {
+      this.types = types;
+      this.slot = slot;
+    }
+
+    final boolean test(DataRow row) {
+      if (row.isNull(slot)) {
+        return false;
+      }
+      return testValue(row);
+    }
+
+    abstract boolean testValue(DataRow row);
+  }
+
+  private static final class NullBound extends Bound {
+
+    NullBound(Types types, int slot) {
+      super(types, slot);
+    }
+
+    @Override
+    boolean testValue(DataRow row) {
+      throw new IllegalStateException("The data type accessed in the RSQL expression is not handled");
+    }
+  }
+
+  private static final class Regex extends Leaf {
+
+    private final Pattern pattern;
+
+    Regex(PipelineContext pipelineContext, String field, Pattern pattern) {
+      super(pipelineContext, field);
+      this.pattern = pattern;
+    }
+
+    @Override
+    Bound bind(Types types, int slot, DataType type) {
+      return new Bound(types, slot) {
+        @Override
+        boolean testValue(DataRow row) {
+          if (pattern == null) {
+            return false;
+          }
+          // Non-String values are compared using their default toString, not any configured output formatting
+          return pattern.matcher(row.get(slot).toString()).matches();
+        }
+      };
+    }
+  }
+
+  private static final class Comparison extends Leaf {
+
+    private final Op op;
+    private final List<String> arguments;
+
+    Comparison(PipelineContext pipelineContext, String field, Op op, List<String> arguments) {
+      super(pipelineContext, field);
+      this.op = op;
+      this.arguments = arguments;
+    }
+
+    @Override
+    Bound bind(Types types, int slot, DataType type) {
+      RsqlComparator<?> rsqlComparator = RsqlEvaluator.COMPARATOR_MAP.get(type);
+      if (rsqlComparator == null) {
+        Log.decorate(logger.atWarn(), pipelineContext).log("The data type {} is not handled", type);
+        throw new IllegalStateException("The data type accessed in the RSQL expression is not handled");
+      }
+      if (op == Op.IN || op == Op.NOT_IN) {
+        return bindSet(types, slot, rsqlComparator);
+      }
+      return switch (type) {
+        case Integer, Long -> {
+          long arg = ((Number) rsqlComparator.parseType(field, arguments.get(0))).longValue();
+          yield new Bound(types, slot) {
+            @Override
+            boolean testValue(DataRow row) {
+              return op.test(Long.compare(row.getLong(slot), arg));
+            }
+          };
+        }
+        case Float -> {
+          float arg = (Float) rsqlComparator.parseType(field, arguments.get(0));
+          yield new Bound(types, slot) {
+            @Override
+            boolean testValue(DataRow row) {
+              return op.test(Float.compare(row.getFloat(slot), arg));
+            }
+          };
+        }
+        case Double -> {
+          double arg = (Double) rsqlComparator.parseType(field, arguments.get(0));
+          yield new Bound(types, slot) {
+            @Override
+            boolean testValue(DataRow row) {
+              return op.test(Double.compare(row.getDouble(slot), arg));
+            }
+          };
+        }
+        case String -> {
+          if (op == Op.EQUAL) {
+            yield bindStringEqual(types, slot, (RsqlComparatorString) rsqlComparator, arguments.get(0));
+          } else {
+            yield bindObject(types, slot, rsqlComparator);
+          }
+        }
+        default -> bindObject(types, slot, rsqlComparator);
+      };
+    }
+
+    private <T> Bound bindObject(Types types, int slot, RsqlComparator<T> rsqlComparator) {
+      T arg = rsqlComparator.parseType(field, arguments.get(0));
+      return new Bound(types, slot) {
+        @Override
+        boolean testValue(DataRow row) {
+          T value = rsqlComparator.validateType(field, row.get(slot));
+          return switch (op) {
+            case EQUAL -> rsqlComparator.equal(value, arg);
+            case NOT_EQUAL -> rsqlComparator.notEqual(value, arg);
+            case GREATER_THAN -> rsqlComparator.greaterThan(value, arg);
+            case GREATER_THAN_OR_EQUAL -> rsqlComparator.greaterThanOrEqual(value, arg);
+            case LESS_THAN -> rsqlComparator.lessThan(value, arg);
+            case LESS_THAN_OR_EQUAL -> rsqlComparator.lessThanOrEqual(value, arg);
+            default -> throw new IllegalStateException("Operator " + op + " is not a single value comparison");
+          };
+        }
+      };
+    }
+
+    private <T> Bound bindSet(Types types, int slot, RsqlComparator<T> rsqlComparator) {
+      Set<T> args = new HashSet<>();
+      for (String argument : arguments) {
+        args.add(rsqlComparator.parseType(field, argument));
+      }
+      boolean in = op == Op.IN;
+      return new Bound(types, slot) {
+        @Override
+        boolean testValue(DataRow row) {
+          T value = rsqlComparator.validateType(field, row.get(slot));
+          return in ? rsqlComparator.in(value, args) : rsqlComparator.notIn(value, args);
+        }
+      };
+    }
+
+    /**
+     * String equality supports leading and trailing wildcards (see {@link RsqlComparatorString#equal(java.lang.String, java.lang.String)}),
+     * the wildcards are removed from the argument once here rather than for every row.
+     */
+    private Bound bindStringEqual(Types types, int slot, RsqlComparatorString rsqlComparator, String arg) {
+      if (arg == null) {
+        return new Bound(types, slot) {
+          @Override
+          boolean testValue(DataRow row) {
+            return false;
+          }
+        };
+      }
+      boolean leading = arg.startsWith("*");
+      boolean trailing = arg.length() > (leading ? 1 : 0) && arg.endsWith("*");
+      String needle = arg.substring(leading ? 1 : 0, trailing ? arg.length() - 1 : arg.length());
+      return new Bound(types, slot) {
+        @Override
+        boolean testValue(DataRow row) {
+          String value = rsqlComparator.validateType(field, row.get(slot));
+          if (leading) {
+            return trailing ? value.contains(needle) : value.endsWith(needle);
+          } else if (trailing) {
+            return value.startsWith(needle);
+          } else {
+            return value.equals(needle);
+          }
+        }
+      };
+    }
+  }
+
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2026 jtalbut
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.spudsoft.query.exec.procs.sort;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import uk.co.spudsoft.query.defn.DataType;
+import uk.co.spudsoft.query.exec.ColumnDefn;
+import uk.co.spudsoft.query.exec.DataRow;
+import uk.co.spudsoft.query.exec.Types;
+
+/**
+ * Compact binary serialization of {@link DataRow} objects for use with {@link SerializeWriteStream} and {@link SerializeReadStream}.
+ * <P>
+ * The format is driven entirely by the {@link Types} shared by the rows, no type information is written per value:
+ * <UL>
+ * <LI>The number of columns, as a varint.
+ * <LI>A bitmap with one bit per column, set if the column has no value.
+ * <LI>The values of the remaining columns, in column order:
+ * <UL>
+ * <LI>Integer and Long values as zig-zag varints, an Integer column containing a value that does not fit in an Integer cannot be serialized.
+ * <LI>Float and Double values as their raw IEEE 754 bits (4 and 8 bytes).
+ * <LI>Boolean values as a single byte.
+ * <LI>String values as a varint byte length followed by the UTF-8 bytes.
+ * <LI>Date values as a zig-zag varint epoch day.
+ * <LI>DateTime values as a zig-zag varint epoch second (UTC) followed by a varint nano of second.
+ * This is used instead of epoch nanos because a long of nanos cannot represent the full range of dates found in databases.
+ * <LI>Time values as a varint nano of day.
+ * </UL>
+ * </UL>
+ * <P>
+ * Columns that are added to the Types after a row has been written will be absent from the deserialized row.
+ * <P>
+ * Instances are not thread safe, they reuse an internal buffer between calls.
+ *
+ * @author jtalbut
+ */
+public final class DataRowCodec implements SerializeWriteStream.Serializer<DataRow>, SerializeReadStream.Deserializer<DataRow> {
+
+  private static final int INITIAL_BUFFER_SIZE = 256;
+
+  private final Types types;
+
+  private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+  private int pos;
+
+  private byte[] input;
+  private int readPos;
+
+  /**
+   * Constructor.
+   * @param types The Types shared by all the rows that will be serialized or deserialized.
+   */
+  @SuppressFBWarnings(value = "EI_EXPOSE_REP2", justification = "The Types is expected to be shared with the rows being processed")
+  public DataRowCodec(Types types) {
+    this.types = types;
+  }
+
+  @Override
+  public byte[] serialize(DataRow row) throws IOException {
+    int columns = types.size();
+    int bitmapBytes = (columns + 7) >> 3;
+    pos = 0;
+    writeUnsignedVarLong(columns);
+    int bitmapPos = pos;
+    ensure(bitmapBytes);
+    Arrays.fill(buffer, bitmapPos, bitmapPos + bitmapBytes, (byte) 0);
+    pos += bitmapBytes;
+
+    for (int i = 0; i < columns; ++i) {
+      ColumnDefn cd = types.getDefn(i);
+      if (row.isNull(i) || cd.type() == DataType.Null) {
+        buffer[bitmapPos + (i >> 3)] |= (byte) (1 << (i & 7));
+        continue;
+      }
+      switch (cd.type()) {
+        case Integer -> {
+          // Values are not checked against the column type when they are put in the row, so a Long may be found here
+          long value = row.getLong(i);
+          if ((int) value != value) {
+            throw new IOException("Value " + value + " of Integer field " + cd.name() + " does not fit in an Integer");
+          }
+          writeSignedVarLong(value);
+        }
+        case Long -> writeSignedVarLong(row.getLong(i));
+        case Float -> writeFixedInt(Float.floatToRawIntBits(row.getFloat(i)));
+        case Double -> writeFixedLong(Double.doubleToRawLongBits(row.getDouble(i)));
+        case Boolean -> {
+          ensure(1);
+          buffer[pos++] = (byte) (row.getBoolean(i) ? 1 : 0);
+        }
+        case String -> {
+          Comparable<?> value = row.get(i);
+          byte[] bytes = (value instanceof String str ? str : value.toString()).getBytes(StandardCharsets.UTF_8);
+          writeUnsignedVarLong(bytes.length);
+          ensure(bytes.length);
+          System.arraycopy(bytes, 0, buffer, pos, bytes.length);
+          pos += bytes.length;
+        }
+        case Date -> writeSignedVarLong(((LocalDate) row.get(i)).toEpochDay());
+        case DateTime -> {
+          LocalDateTime ldt = (LocalDateTime) row.get(i);
+          writeSignedVarLong(ldt.toEpochSecond(ZoneOffset.UTC));
+          writeUnsignedVarLong(ldt.getNano());
+        }
+        case Time -> writeUnsignedVarLong(((LocalTime) row.get(i)).toNanoOfDay());
+        default -> throw new IllegalArgumentException("Unknown value type: " + cd.typeName());
+      }
+    }
+    return Arrays.copyOf(buffer, pos);
+  }
+
+  @Override
+  @SuppressFBWarnings(value = "EI_EXPOSE_REP2", justification = "The input is only referenced for the duration of the call")
+  public DataRow deserialize(byte[] data) throws IOException {
+    input = data;
+    readPos = 0;
+    try {
+      DataRow result = DataRow.create(types);
+      int columns = (int) readUnsignedVarLong();
+      int bitmapPos = readPos;
+      readPos += (columns + 7) >> 3;
+      if (readPos > input.length) {
+        throw new EOFException("Serialized row truncated in null bitmap");
+      }
+      for (int i = 0; i < columns; ++i) {
+        if ((input[bitmapPos + (i >> 3)] & (1 << (i & 7))) != 0) {
+          result.set(i, null);
+          continue;
+        }
+        ColumnDefn cd = types.getDefn(i);
+        switch (cd.type()) {
+          case Integer -> result.setInt(i, (int) readSignedVarLong());
+          case Long -> result.setLong(i, readSignedVarLong());
+          case Float -> result.setFloat(i, Float.intBitsToFloat((int) readFixed(4)));
+          case Double -> result.setDouble(i, Double.longBitsToDouble(readFixed(8)));
+          case Boolean -> result.setBoolean(i, readFixed(1) != 0);
+          case String -> {
+            int length = (int) readUnsignedVarLong();
+            if (readPos + length > input.length) {
+              throw new EOFException("Serialized row truncated in string value for " + cd.name());
+            }
+            result.set(i, new String(input, readPos, length, StandardCharsets.UTF_8));
+            readPos += length;
+          }
+          case Date -> result.set(i, LocalDate.ofEpochDay(readSignedVarLong()));
+          case DateTime -> {
+            long seconds = readSignedVarLong();
+            int nanos = (int) readUnsignedVarLong();
+            result.set(i, LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC));
+          }
+          case Time -> result.set(i, LocalTime.ofNanoOfDay(readUnsignedVarLong()));
+          default -> throw new IllegalArgumentException("Unknown value type: " + cd.typeName());
+        }
+      }
+      return result;
+    } finally {
+      input = null;
+    }
+  }
+
+  private void ensure(int required) {
+    if (pos + required > buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.max(pos + required, buffer.length << 1));
+    }
+  }
+
+  private void writeUnsignedVarLong(long value) {
+    ensure(10);
+    while ((value & ~0x7FL) != 0) {
+      buffer[pos++] = (byte) ((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    buffer[pos++] = (byte) value;
+  }
+
+  private void writeSignedVarLong(long value) {
+    writeUnsignedVarLong((value << 1) ^ (value >> 63));
+  }
+
+  private void writeFixedInt(int value) {
+    ensure(4);
+    buffer[pos++] = (byte) (value >> 24);
+    buffer[pos++] = (byte) (value >> 16);
+    buffer[pos++] = (byte) (value >> 8);
+    buffer[pos++] = (byte) value;
+  }
+
+  private void writeFixedLong(long value) {
+    writeFixedInt((int) (value >> 32));
+    writeFixedInt((int) value);
+  }
+
+  private long readUnsignedVarLong() throws IOException {
+    long result = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      if (readPos >= input.length) {
+        throw new EOFException("Serialized row truncated in varint");
+      }
+      byte b = input[readPos++];
+      result |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return result;
+      }
+    }
+    throw new IOException("Malformed varint in serialized row");
+  }
+
+  private long readSignedVarLong() throws IOException {
+    long raw = readUnsignedVarLong();
+    return (raw >>> 1) ^ -(raw & 1);
+  }
+
+  private long readFixed(int bytes) throws IOException {
+    if (readPos + bytes > input.length) {
+      throw new EOFException("Serialized row truncated in fixed width value");
+    }
+    long result = 0;
+    for (int i = 0; i < bytes; ++i) {
+      result = (result << 8) | (input[readPos++] & 0xFF);
+    }
+    return result;
+  }
+
+}
@@ -16,221 +16,457 @@
  */
 package uk.co.spudsoft.query.exec.procs.sort;
 
-import com.google.common.collect.ImmutableList;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.co.spudsoft.query.defn.DataType;
-import static uk.co.spudsoft.query.defn.DataType.Boolean;
-import static uk.co.spudsoft.query.defn.DataType.Date;
-import static uk.co.spudsoft.query.defn.DataType.DateTime;
-import static uk.co.spudsoft.query.defn.DataType.Double;
-import static uk.co.spudsoft.query.defn.DataType.Float;
-import static uk.co.spudsoft.query.defn.DataType.Integer;
-import static uk.co.spudsoft.query.defn.DataType.Long;
-import static uk.co.spudsoft.query.defn.DataType.String;
-import static uk.co.spudsoft.query.defn.DataType.Time;
 import uk.co.spudsoft.query.defn.SourcePipeline;
 import uk.co.spudsoft.query.exec.DataRow;
+import uk.co.spudsoft.query.exec.Types;
 import uk.co.spudsoft.query.exec.context.PipelineContext;
 import uk.co.spudsoft.query.logging.Log;
-import uk.co.spudsoft.query.main.ImmutableCollectionTools;
 
 /**
  * {@link java.util.Comparator} class for comparing {@link uk.co.spudsoft.query.exec.DataRow} objects.
  * <P>
  * The comparison will be based on the fields provided to the constructor, which may be preceded by "-" to invert the result (to do a descending sort).
- * 
+ * <P>
+ * The field list is parsed once, in the constructor.
+ * The first comparison resolves each field to its slot and type in the {@link Types} of the rows and builds a chain of
+ * type specific comparisons that read the values by index, without boxing the primitive types.
+ * The Types are usually still empty when the comparator is constructed, which is why this cannot be done any earlier.
+ * Fields that do not yet have a type (because they have only been seen with null values) are resolved again on each comparison until their type is known.
+ * <P>
+ * The comparator can also generate a normalised binary key for a row (see {@link #sortKey(uk.co.spudsoft.query.exec.DataRow)}),
+ * such that comparing the keys of two rows as unsigned bytes gives the same order as comparing the rows.
+ * <P>
+ * Instances are thread safe, the resolved chain is immutable and is published via a volatile field.
+ *
  * @author jtalbut
  */
-public class DataRowComparator implements Comparator<DataRow> {
-  
+public class DataRowComparator implements Comparator<DataRow>, SortingStream.SortKeyEncoder<DataRow> {
+
   private static final Logger logger = LoggerFactory.getLogger(DataRowComparator.class);
 
+  private static final int INITIAL_KEY_SIZE = 64;
+
   private final PipelineContext pipelineContext;
 
-  private final ImmutableList<String> fields;
-  
+  private final String[] names;
+  private final boolean[] descending;
+
+  private volatile Compiled compiled;
+
   /**
    * Constructor.
    * @param pipelineContext The context in which this {@link SourcePipeline} is being run.
-   * @param fields The list of fields to use in the comparison. 
+   * @param fields The list of fields to use in the comparison.
    */
   public DataRowComparator(PipelineContext pipelineContext, List<String> fields) {
     this.pipelineContext = pipelineContext;
-    this.fields = ImmutableCollectionTools.copy(fields);
+    this.names = new String[fields.size()];
+    this.descending = new boolean[fields.size()];
+    for (int i = 0; i < names.length; ++i) {
+      String field = fields.get(i);
+      if (field.startsWith("-")) {
+        descending[i] = true;
+        field = field.substring(1);
+      }
+      names[i] = field;
+    }
+  }
+
+  /**
+   * Get the number of fields used in the comparison.
+   * @return the number of fields used in the comparison.
+   */
+  public int getFieldCount() {
+    return names.length;
   }
 
   @Override
   public int compare(DataRow o1, DataRow o2) {
-    for (String field : fields) {
-      int descending = 1;
-      if (field.startsWith("-")) {
-        descending = -1;
-        field = field.substring(1);
+    if (o1 == null) {
+      if (o2 == null || names.length == 0) {
+        return 0;
       }
-      int result = compareField(pipelineContext, o1, o2, field) * descending;
+      return descending[0] ? 1 : -1;
+    } else if (o2 == null) {
+      if (names.length == 0) {
+        return 0;
+      }
+      return descending[0] ? -1 : 1;
+    }
+    ColumnKey[] keys = compile(o1.types());
+    for (int i = 0; i < keys.length; ++i) {
+      int result = keys[i].compare(o1, o2);
       if (result != 0) {
-        return result;
+        return descending[i] ? -result : result;
       }
     }
-    return 0;    
+    return 0;
   }
-  
-  private static int compareField(PipelineContext pipelineContext, DataRow o1, DataRow o2, String field) {
-    if (o1 == null) {
-      return (o2 == null) ? 0 : -1;
+
+  /**
+   * Generate a normalised binary key for a row.
+   * <P>
+   * Comparing the keys of two rows using {@link Arrays#compareUnsigned(byte[], byte[])} gives the same order as {@link #compare(uk.co.spudsoft.query.exec.DataRow, uk.co.spudsoft.query.exec.DataRow)}.
+   * <P>
+   * Each field is written as a marker byte (0 for null, 1 otherwise) followed by an order preserving encoding of the value:
+   * <UL>
+   * <LI>Integer, Long, Date (epoch day) and Time (nano of day) values as big endian two's complement with the sign bit flipped.
+   * <LI>Float and Double values as their IEEE 754 bits, with every bit flipped for negative values and only the sign bit flipped otherwise.
+   * <LI>Boolean values as a single byte.
+   * <LI>DateTime values as the epoch day followed by the nano of day.
+   * <LI>String values as big endian UTF-16 code units, terminated by three zero bytes with a zero code unit written as 0, 0, 1.
+   * </UL>
+   * The bytes of descending fields are inverted.
+   * <P>
+   * The key is only valid for comparison with keys generated from rows that share the same {@link Types}.
+   *
+   * @param row The row to generate the key for.
+   * @return The normalised binary key for the row.
+   */
+  @Override
+  public byte[] sortKey(DataRow row) {
+    ColumnKey[] keys = compile(row.types());
+    KeyWriter writer = new KeyWriter();
+    for (int i = 0; i < keys.length; ++i) {
+      int start = writer.pos;
+      if (keys[i].isNull(row)) {
+        writer.writeByte(0);
+      } else {
+        writer.writeByte(1);
+        keys[i].encode(row, writer);
+      }
+      if (descending[i]) {
+        writer.invert(start);
+      }
     }
-    
-    DataType type = o1.getType(field);
-    if (type == null) {
-      Log.decorate(logger.atWarn(), pipelineContext).log("Field {} not found in fields {}", field, o1.types().keySet());
-      throw new IllegalArgumentException("Unrecognised field in sort");
+    return writer.toByteArray();
+  }
+
+  private ColumnKey[] compile(Types types) {
+    Compiled current = compiled;
+    if (current != null && current.types == types) {
+      return current.keys;
     }
-    
+    ColumnKey[] keys = new ColumnKey[names.length];
+    boolean complete = true;
+    for (int i = 0; i < names.length; ++i) {
+      int index = types.indexOf(names[i]);
+      if (index < 0) {
+        Log.decorate(logger.atWarn(), pipelineContext).log("Field {} not found in fields {}", names[i], types.keySet());
+        throw new IllegalArgumentException("Unrecognised field in sort");
+      }
+      DataType type = types.getDefn(index).type();
+      if (type == DataType.Null) {
+        complete = false;
+      }
+      keys[i] = keyFor(type, index);
+    }
+    if (complete) {
+      compiled = new Compiled(types, keys);
+    }
+    return keys;
+  }
+
+  private static ColumnKey keyFor(DataType type, int index) {
     return switch (type) {
-        case Boolean -> { 
-          yield compareBooleanFields(o1, o2, field); 
-        }
-        case Date -> { 
-          yield compareDateFields(o1, o2, field); 
-        }
-        case DateTime -> { 
-          yield compareDateTimeFields(o1, o2, field); 
-        }
-        case Double -> { 
-          yield compareDoubleFields(o1, o2, field); 
-        }
-        case Float -> { 
-          yield compareFloatFields(o1, o2, field); 
-        }
-        case Integer -> { 
-          yield compareIntegerFields(o1, o2, field); 
-        }
-        case Long -> { 
-          yield compareLongFields(o1, o2, field); 
-        }
-        case String -> { 
-          yield compareStringFields(o1, o2, field); 
-        }
-        case Time -> { 
-          yield compareTimeFields(o1, o2, field); 
-        }
-        default -> { 
-          throw new IllegalStateException("Unable to compare fields of type " + type); 
+      case Null -> new NullKey(index);
+      case Boolean -> new BooleanKey(index);
+      case Date -> new DateKey(index);
+      case DateTime -> new DateTimeKey(index);
+      case Double -> new DoubleKey(index);
+      case Float -> new FloatKey(index);
+      case Integer -> new IntegerKey(index);
+      case Long -> new LongKey(index);
+      case String -> new StringKey(index);
+      case Time -> new TimeKey(index);
+    };
+  }
+
+  /**
+   * The resolved comparison chain, along with the Types that it was resolved against.
+   */
+  private static final class Compiled {
+
+    private final Types types;
+    private final ColumnKey[] keys;
+
+    Compiled(Types types, ColumnKey[] keys) {
+      this.types = types;
+      this.keys = keys;
+    }
+  }
+
+  /**
+   * Comparison and encoding of a single field, nulls sort before all other values.
+   */
+  private abstract static class ColumnKey {
+
+    protected final int index;
+
+    ColumnKey(int index) {
+      this.index = index;
+    }
+
+    final boolean isNull(DataRow row) {
+      return row.isNull(index);
+    }
+
+    final int compare(DataRow o1, DataRow o2) {
+      boolean null1 = o1.isNull(index);
+      boolean null2 = o2.isNull(index);
+      if (null1) {
+        return null2 ? 0 : -1;
+      } else if (null2) {
+        return 1;
+      }
+      return compareValues(o1, o2);
+    }
+
+    abstract int compareValues(DataRow o1, DataRow o2);
+
+    abstract void encode(DataRow row, KeyWriter writer);
+  }
+
+  /**
+   * A field that has only been seen with null values, so all values are equal.
+   */
+  private static final class NullKey extends ColumnKey {
+
+    NullKey(int index) {
+      super(index);
+    }
+
+    @Override
+    int compareValues(DataRow o1, DataRow o2) {
+      return 0;
+    }
+
+    @Override
+    void encode(DataRow row, KeyWriter writer) {
+    }
+  }
+
+  private static final class BooleanKey extends ColumnKey {
+
+    BooleanKey(int index) {
+      super(index);
+    }
+
+    @Override
+    int compareValues(DataRow o1, DataRow o2) {
+      return Boolean.compare(o1.getBoolean(index), o2.getBoolean(index));
+    }
+
+    @Override
+    void encode(DataRow row, KeyWriter writer) {
+      writer.writeByte(row.getBoolean(index) ? 1 : 0);
+    }
+  }
+
+  private static final class IntegerKey extends ColumnKey {
+
+    IntegerKey(int index) {
+      super(index);
+    }
+
+    @Override
+    int compareValues(DataRow o1, DataRow o2) {
+      return Integer.compare(o1.getInt(index), o2.getInt(index));
+    }
+
+    @Override
+    void encode(DataRow row, KeyWriter writer) {
+      writer.writeInt(row.getInt(index) ^ Integer.MIN_VALUE);
+    }
+  }
+
+  private static final class LongKey extends ColumnKey {
+
+    LongKey(int index) {
+      super(index);
+    }
+
+    @Override
+    int compareValues(DataRow o1, DataRow o2) {
+      return Long.compare(o1.getLong(index), o2.getLong(index));
+    }
+
+    @Override
+    void encode(DataRow row, KeyWriter writer) {
+      writer.writeLong(row.getLong(index) ^ Long.MIN_VALUE);
+    }
+  }
+
+  private static final class FloatKey extends ColumnKey {
+
+    FloatKey(int index) {
+      super(index);
+    }
+
+    @Override
+    int compareValues(DataRow o1, DataRow o2) {
+      return Float.compare(o1.getFloat(index), o2.getFloat(index));
+    }
+
+    @Override
+    void encode(DataRow row, KeyWriter writer) {
+      int bits = Float.floatToIntBits(row.getFloat(index));
+      writer.writeInt(bits < 0 ? ~bits : bits ^ Integer.MIN_VALUE);
+    }
+  }
+
+  private static final class DoubleKey extends ColumnKey {
+
+    DoubleKey(int index) {
+      super(index);
+    }
+
+    @Override
+    int compareValues(DataRow o1, DataRow o2) {
+      return Double.compare(o1.getDouble(index), o2.getDouble(index));
+    }
+
+    @Override
+    void encode(DataRow row, KeyWriter writer) {
+      long bits = Double.doubleToLongBits(row.getDouble(index));
+      writer.writeLong(bits < 0 ? ~bits : bits ^ Long.MIN_VALUE);
+    }
+  }
+
+  private static final class StringKey extends ColumnKey {
+
+    StringKey(int index) {
+      super(index);
+    }
+
+    @Override
+    int compareValues(DataRow o1, DataRow o2) {
+      return ((String) o1.get(index)).compareTo((String) o2.get(index));
+    }
+
+    @Override
+    void encode(DataRow row, KeyWriter writer) {
+      String value = (String) row.get(index);
+      int length = value.length();
+      for (int i = 0; i < length; ++i) {
+        char c = value.charAt(i);
+        if (c == 0) {
+          writer.writeByte(0);
+          writer.writeByte(0);
+          writer.writeByte(1);
+        } else {
+          writer.writeByte(c >> 8);
+          writer.writeByte(c);
         }
-      };
-  }
-  
-  private static int compareBooleanFields(DataRow o1, DataRow o2, String field) {
-    Boolean v1 = (Boolean) o1.get(field);
-    Boolean v2 = (Boolean) o2.get(field);
-    if (v1 == null) {
-      return (v2 == null) ? 0 : -1;
-    } else if (v2 == null) {
-      return 1;
-    } else {
-      return v1.compareTo(v2);
-    }
-  }
-  
-  private static int compareDateFields(DataRow o1, DataRow o2, String field) {
-    LocalDate v1 = (LocalDate) o1.get(field);
-    LocalDate v2 = (LocalDate) o2.get(field);
-    if (v1 == null) {
-      return (v2 == null) ? 0 : -1;
-    } else if (v2 == null) {
-      return 1;
-    } else {
-      return v1.compareTo(v2);
-    }
-  }
-  
-  private static int compareDateTimeFields(DataRow o1, DataRow o2, String field) {
-    LocalDateTime v1 = (LocalDateTime) o1.get(field);
-    LocalDateTime v2 = (LocalDateTime) o2.get(field);
-    if (v1 == null) {
-      return (v2 == null) ? 0 : -1;
-    } else if (v2 == null) {
-      return 1;
-    } else {
-      return v1.compareTo(v2);
-    }
-  }
-  
-  private static int compareDoubleFields(DataRow o1, DataRow o2, String field) {
-    Double v1 = (Double) o1.get(field);
-    Double v2 = (Double) o2.get(field);
-    if (v1 == null) {
-      return (v2 == null) ? 0 : -1;
-    } else if (v2 == null) {
-      return 1;
-    } else {
-      return v1.compareTo(v2);
-    }
-  }
-  
-  private static int compareFloatFields(DataRow o1, DataRow o2, String field) {
-    Float v1 = (Float) o1.get(field);
-    Float v2 = (Float) o2.get(field);
-    if (v1 == null) {
-      return (v2 == null) ? 0 : -1;
-    } else if (v2 == null) {
-      return 1;
-    } else {
-      return v1.compareTo(v2);
-    }
-  }
-  
-  private static int compareIntegerFields(DataRow o1, DataRow o2, String field) {
-    Integer v1 = (Integer) o1.get(field);
-    Integer v2 = (Integer) o2.get(field);
-    if (v1 == null) {
-      return (v2 == null) ? 0 : -1;
-    } else if (v2 == null) {
-      return 1;
-    } else {
-      return v1.compareTo(v2);
-    }
-  }
-  
-  private static int compareLongFields(DataRow o1, DataRow o2, String field) {
-    Long v1 = (Long) o1.get(field);
-    Long v2 = (Long) o2.get(field);
-    if (v1 == null) {
-      return (v2 == null) ? 0 : -1;
-    } else if (v2 == null) {
-      return 1;
-    } else {
-      return v1.compareTo(v2);
-    }
-  }
-  
-  private static int compareStringFields(DataRow o1, DataRow o2, String field) {
-    String v1 = (String) o1.get(field);
-    String v2 = (String) o2.get(field);
-    if (v1 == null) {
-      return (v2 == null) ? 0 : -1;
-    } else if (v2 == null) {
-      return 1;
-    } else {
-      return v1.compareTo(v2);
-    }
-  }
-  
-  private static int compareTimeFields(DataRow o1, DataRow o2, String field) {
-    LocalTime v1 = (LocalTime) o1.get(field);
-    LocalTime v2 = (LocalTime) o2.get(field);
-    if (v1 == null) {
-      return (v2 == null) ? 0 : -1;
-    } else if (v2 == null) {
-      return 1;
-    } else {
-      return v1.compareTo(v2);
+      }
+      writer.writeByte(0);
+      writer.writeByte(0);
+      writer.writeByte(0);
+    }
+  }
+
+  private static final class DateKey extends ColumnKey {
+
+    DateKey(int index) {
+      super(index);
+    }
+
+    @Override
+    int compareValues(DataRow o1, DataRow o2) {
+      return ((LocalDate) o1.get(index)).compareTo((LocalDate) o2.get(index));
+    }
+
+    @Override
+    void encode(DataRow row, KeyWriter writer) {
+      writer.writeLong(((LocalDate) row.get(index)).toEpochDay() ^ Long.MIN_VALUE);
+    }
+  }
+
+  private static final class DateTimeKey extends ColumnKey {
+
+    DateTimeKey(int index) {
+      super(index);
+    }
+
+    @Override
+    int compareValues(DataRow o1, DataRow o2) {
+      return ((LocalDateTime) o1.get(index)).compareTo((LocalDateTime) o2.get(index));
+    }
+
+    @Override
+    void encode(DataRow row, KeyWriter writer) {
+      LocalDateTime value = (LocalDateTime) row.get(index);
+      writer.writeLong(value.toLocalDate().toEpochDay() ^ Long.MIN_VALUE);
+      writer.writeLong(value.toLocalTime().toNanoOfDay());
+    }
+  }
+
+  private static final class TimeKey extends ColumnKey {
+
+    TimeKey(int index) {
+      super(index);
+    }
+
+    @Override
+    int compareValues(DataRow o1, DataRow o2) {
+      return ((LocalTime) o1.get(index)).compareTo((LocalTime) o2.get(index));
+    }
+
+    @Override
+    void encode(DataRow row, KeyWriter writer) {
+      writer.writeLong(((LocalTime) row.get(index)).toNanoOfDay());
+    }
+  }
+
+  /**
+   * Growable buffer for building a sort key.
+   */
+  private static final class KeyWriter {
+
+    private byte[] buffer = new byte[INITIAL_KEY_SIZE];
+    private int pos;
+
+    private void ensure(int required) {
+      if (pos + required > buffer.length) {
+        buffer = Arrays.copyOf(buffer, Math.max(pos + required, buffer.length << 1));
+      }
+    }
+
+    void writeByte(int value) {
+      ensure(1);
+      buffer[pos++] = (byte) value;
+    }
+
+    void writeInt(int value) {
+      ensure(4);
+      buffer[pos++] = (byte) (value >> 24);
+      buffer[pos++] = (byte) (value >> 16);
+      buffer[pos++] = (byte) (value >> 8);
+      buffer[pos++] = (byte) value;
+    }
+
+    void writeLong(long value) {
+      writeInt((int) (value >> 32));
+      writeInt((int) value);
+    }
+
+    void invert(int start) {
+      for (int i = start; i < pos; ++i) {
+        buffer[i] = (byte) ~buffer[i];
+      }
+    }
+
+    byte[] toByteArray() {
+      return Arrays.copyOf(buffer, pos);
     }
   }
 }
@@ -21,29 +21,12 @@ import io.micrometer.core.instrument.MeterRegistry;
 import io.vertx.core.Future;
 import io.vertx.core.Vertx;
 import io.vertx.core.file.FileSystem;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.nio.charset.StandardCharsets;
-import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.time.LocalTime;
-import java.util.Iterator;
+import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import uk.co.spudsoft.query.defn.DataType;
-import static uk.co.spudsoft.query.defn.DataType.Boolean;
-import static uk.co.spudsoft.query.defn.DataType.Date;
-import static uk.co.spudsoft.query.defn.DataType.DateTime;
-import static uk.co.spudsoft.query.defn.DataType.Double;
-import static uk.co.spudsoft.query.defn.DataType.Float;
-import static uk.co.spudsoft.query.defn.DataType.Integer;
-import static uk.co.spudsoft.query.defn.DataType.Time;
 import uk.co.spudsoft.query.defn.ProcessorSort;
 import uk.co.spudsoft.query.exec.Auditor;
-import uk.co.spudsoft.query.exec.ColumnDefn;
 import uk.co.spudsoft.query.exec.DataRow;
 import uk.co.spudsoft.query.exec.PipelineExecutor;
 import uk.co.spudsoft.query.exec.PipelineInstance;
@@ -59,7 +42,7 @@ import uk.co.spudsoft.query.exec.procs.AbstractProcessor;
  * <P>
  * The sort processor cannot pass on any rows until it has received all rows - it is the only part of the Query Engine that absolutely cannot stream data.
  * <P>
- * There tempDir and memoryLimit configuration properties that are not settable in the pipeline definition - these must be configured globally as part of the overall configuration of the Query Engine (see {@link uk.co.spudsoft.query.main.Parameters}).
+ * There tempDir, memoryLimit and mergeFanIn configuration properties that are not settable in the pipeline definition - these must be configured globally as part of the overall configuration of the Query Engine (see {@link uk.co.spudsoft.query.main.Parameters}).
  *
  * @author jtalbut
  */
@@ -71,6 +54,9 @@ public class ProcessorSortInstance extends AbstractProcessor {
 
   private static String tempDir = System.getProperty("java.io.tmpdir");
   private static int memoryLimit = 1 << 22; // 4MB
+  private static int mergeFanIn = SortingStream.DEFAULT_MERGE_FAN_IN;
+  private static boolean normalisedKeys = false;
+  private static int topNMaxRows = 10000;
 
   private final ProcessorSort definition;
 
@@ -78,6 +64,8 @@ public class ProcessorSortInstance extends AbstractProcessor {
 
   private Types types;
 
+  private DataRowCodec codec;
+
   /**
    * Constructor.
    * @param vertx the Vert.x instance.
@@ -112,130 +100,73 @@ public class ProcessorSortInstance extends AbstractProcessor {
     ProcessorSortInstance.memoryLimit = memoryLimit;
   }
 
+  /**
+   * Set the global limit on the number of temporary files merged in a single pass.
+   * @param mergeFanIn the maximum number of temporary files merged in a single pass, must be at least 2.
+   */
+  public static void setMergeFanIn(int mergeFanIn) {
+    ProcessorSortInstance.mergeFanIn = mergeFanIn;
+  }
+
+  /**
+   * Set whether sorts on more than one field should sort in-memory chunks using normalised binary keys.
+   * @param normalisedKeys true if sorts on more than one field should sort in-memory chunks using normalised binary keys.
+   * @see DataRowComparator#sortKey(uk.co.spudsoft.query.exec.DataRow)
+   */
+  public static void setNormalisedKeys(boolean normalisedKeys) {
+    ProcessorSortInstance.normalisedKeys = normalisedKeys;
+  }
+
+  /**
+   * Set the global limit on the number of rows that a sort followed by a limit will hold in memory to find the first rows.
+   * <p>
+   * A sort that is followed by a limit that requires more rows than this will use a full sort, otherwise it will be replaced with a {@link ProcessorSortTopNInstance}.
+   * A value of zero disables the use of {@link ProcessorSortTopNInstance}.
+   * @param topNMaxRows the maximum number of rows that a sort followed by a limit will hold in memory to find the first rows.
+   */
+  public static void setTopNMaxRows(int topNMaxRows) {
+    ProcessorSortInstance.topNMaxRows = topNMaxRows;
+  }
+
+  /**
+   * Get the fields that the rows are sorted by, each of which may be preceded by "-" for a descending sort.
+   * @return the fields that the rows are sorted by.
+   */
+  public List<String> getFields() {
+    return definition.getFields();
+  }
+
+  /**
+   * Get a processor that outputs the same first rows as this one, for use when this sort is immediately followed by a limit.
+   * <p>
+   * If rows is within the configured limit (see {@link #setTopNMaxRows(int)}) the result will be a {@link ProcessorSortTopNInstance},
+   * which only holds that many rows in memory and never spills to disc, otherwise the result is this processor.
+   * @param rows the number of rows that will be consumed by the processors that follow this one.
+   * @return a processor that outputs at least the first rows rows of this sort.
+   */
+  public AbstractProcessor withLimit(int rows) {
+    if (rows < 1 || rows > topNMaxRows) {
+      return this;
+    }
+    return new ProcessorSortTopNInstance(vertx, meterRegistry, auditor, pipelineContext, definition, name, rows);
+  }
+
   /**
    * This serializer, and its associated deserializer, are only aimed at serving the needs of the SortingStream and are not suitable for general purpose serialization.
    * Specifically, they require the Types to be known by the deserializer in advance.
+   * @see DataRowCodec
   */
   byte[] dataRowSerializer(DataRow row) throws IOException {
-    int sizeGuess = row.bytesSize() + 4 * row.size();
-    try (ByteArrayOutputStream baos = new ByteArrayOutputStream(sizeGuess)) {
-      try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
-        for (Iterator<ColumnDefn> iter = types.iterator(); iter.hasNext();) {
-          ColumnDefn cd = iter.next();
-          Object value = row.get(cd.name());
-          if (value == null) {
-            oos.writeByte(~cd.type().ordinal());
-          } else {
-            oos.writeByte(cd.type().ordinal());
-            switch (cd.type()) {
-              case Boolean:
-                oos.writeBoolean((Boolean) value);
-                break;
-              case Date:
-                oos.writeObject((LocalDate) value);
-                break;
-              case DateTime:
-                oos.writeObject((LocalDateTime) value);
-                break;
-              case Double:
-                oos.writeDouble((Double) value);
-                break;
-              case Float:
-                oos.writeFloat((Float) value);
-                break;
-              case Integer:
-                oos.writeInt((Integer) value);
-                break;
-              case Long:
-                oos.writeLong((Long) value);
-                break;
-              case String:
-                String stringValue = (String) value;
-                byte[] bytes = stringValue.getBytes(StandardCharsets.UTF_8);
-                int length = bytes.length;
-                oos.writeInt(length);
-                oos.write(bytes);
-                break;
-              case Time:
-                oos.writeObject((LocalTime) value);
-                break;
-              default:
-                throw new IllegalArgumentException("Unknown value type: " + cd.typeName());
-            }
-          }
-        }
-      }
-      byte[] result = baos.toByteArray();
-      if (result.length > sizeGuess) {
-        logger.warn().log("Guessed at {} bytes, but was actually {} bytes", sizeGuess, result.length);
-      }
-      return result;
-    }
+    return codec.serialize(row);
   }
 
   /**
    * This serializer, and its associated deserializer, are only aimed at serving the needs of the SortingStream and are not suitable for general purpose serialization.
    * Specifically, they require the Types to be known by the deserializer in advance.
-   * @param bytes
-   * @return
+   * @see DataRowCodec
    */
-  @SuppressFBWarnings(value = {"OBJECT_DESERIALIZATION"}, justification = "Source of bytes is trusted")
   DataRow dataRowDeserializer(byte[] bytes) throws IOException  {
-    DataRow result = DataRow.create(types);
-    try (ByteArrayInputStream baos = new ByteArrayInputStream(bytes)) {
-      try (ObjectInputStream ois = new ObjectInputStream(baos)) {
-        for (Iterator<ColumnDefn> iter = types.iterator(); iter.hasNext();) {
-          ColumnDefn cd = iter.next();
-          if (ois.available() < 1) {
-            return result;
-          }
-          byte typeOrd = ois.readByte();
-          if (typeOrd <= 0) {
-            result.put(cd.name(), cd.type(), null);
-          } else {
-            DataType type = DataType.fromOrdinal(typeOrd);
-            assert(cd.type() == type);
-            switch (type) {
-              case DataType.Boolean:
-                result.put(cd.name(), cd.type(), ois.readBoolean());
-                break;
-              case DataType.Date:
-                result.put(cd.name(), cd.type(), (LocalDate) ois.readObject());
-                break;
-              case DataType.DateTime:
-                result.put(cd.name(), cd.type(), (LocalDateTime) ois.readObject());
-                break;
-              case DataType.Double:
-                result.put(cd.name(), cd.type(), ois.readDouble());
-                break;
-              case DataType.Float:
-                result.put(cd.name(), cd.type(), ois.readFloat());
-                break;
-              case DataType.Integer:
-                result.put(cd.name(), cd.type(), ois.readInt());
-                break;
-              case DataType.Long:
-                result.put(cd.name(), cd.type(), ois.readLong());
-                break;
-              case DataType.String:
-                int length = ois.readInt();
-                byte[] stringBytes = ois.readNBytes(length);
-                result.put(cd.name(), cd.type(), new String(stringBytes, StandardCharsets.UTF_8));
-                break;
-              case DataType.Time:
-                result.put(cd.name(), cd.type(), (LocalTime) ois.readObject());
-                break;
-              default:
-                throw new IllegalArgumentException("Unknown value type: " + cd.typeName());
-            }
-          }
-        }
-      }
-    } catch (ClassNotFoundException ex) {
-      logger.error().log("ObjectInputStream threw ClassNotFoundException, which shouldn't happen: ", ex);
-      throw new IOException("Unable to deserialize stream", ex);
-    }
-    return result;
+    return codec.deserialize(bytes);
   }
 
   private String sanitiseSourceName(String name) {
@@ -248,19 +179,25 @@ public class ProcessorSortInstance extends AbstractProcessor {
     FileSystem fileSystem = vertx.fileSystem();
     String dir = tempDir;
     this.types = input.getTypes();
+    this.codec = new DataRowCodec(types);
+    DataRowComparator comparator = new DataRowComparator(pipelineContext, definition.getFields());
+    // With a single field the cost of building the keys outweighs the saving on comparisons
+    boolean useSortKeys = normalisedKeys && comparator.getFieldCount() > 1;
 
     return fileSystem.mkdirs(dir)
             .compose(v -> {
               this.stream = new SortingStream<>(pipelineContext
                     , Vertx.currentContext()
                     , fileSystem
-                    , new DataRowComparator(pipelineContext, definition.getFields())
+                    , comparator
                     , this::dataRowSerializer
                     , this::dataRowDeserializer
                     , dir
                     , sanitiseSourceName(getName())
                     , memoryLimit
+                    , mergeFanIn
                     , DataRow::bytesSize
+                    , useSortKeys ? comparator : null
                     , input.getStream()
               );
               return Future.succeededFuture(new ReadStreamWithTypes(stream, types));
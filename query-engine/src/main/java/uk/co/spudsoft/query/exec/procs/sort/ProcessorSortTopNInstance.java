@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2026 jtalbut
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.spudsoft.query.exec.procs.sort;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.co.spudsoft.query.defn.ProcessorSort;
+import uk.co.spudsoft.query.exec.Auditor;
+import uk.co.spudsoft.query.exec.DataRow;
+import uk.co.spudsoft.query.exec.PipelineExecutor;
+import uk.co.spudsoft.query.exec.PipelineInstance;
+import uk.co.spudsoft.query.exec.ReadStreamWithTypes;
+import uk.co.spudsoft.query.exec.context.PipelineContext;
+import uk.co.spudsoft.query.exec.procs.AbstractProcessor;
+
+/**
+ * {@link uk.co.spudsoft.query.exec.ProcessorInstance} to output only the first rows of the sorted stream of {@link uk.co.spudsoft.query.exec.DataRow} objects.
+ * <P>
+ * This is not configured directly, it replaces a {@link ProcessorSortInstance} that is immediately followed by a limit (possibly with an offset in between)
+ * - see {@link ProcessorSortInstance#withLimit(int)}.
+ * The limit (and offset) processors are left in place, this processor just avoids sorting (and spilling to disc) rows that they would discard.
+ *
+ * @author jtalbut
+ */
+public class ProcessorSortTopNInstance extends AbstractProcessor {
+
+  @SuppressWarnings("constantname")
+  private static final Logger slf4jlogger = LoggerFactory.getLogger(ProcessorSortTopNInstance.class);
+
+  private final ProcessorSort definition;
+  private final int rows;
+
+  /**
+   * Constructor.
+   * @param vertx the Vert.x instance.
+   * @param meterRegistry MeterRegistry for production of metrics.
+   * @param auditor The auditor that the source should use for recording details of the data accessed.
+   * @param pipelineContext The context in which this {@link uk.co.spudsoft.query.defn.SourcePipeline} is being run.
+   * @param definition the definition of the sort processor being replaced.
+   * @param name the name of this processor, used in tracking and logging.
+   * @param rows the number of rows to output, which must be at least 1.
+   */
+  @SuppressFBWarnings(value = "EI_EXPOSE_REP2", justification = "The requestContext should not be modified by this class")
+  public ProcessorSortTopNInstance(Vertx vertx, MeterRegistry meterRegistry, Auditor auditor, PipelineContext pipelineContext, ProcessorSort definition, String name, int rows) {
+    super(slf4jlogger, vertx, meterRegistry, auditor, pipelineContext, name);
+    this.definition = definition;
+    this.rows = rows;
+  }
+
+  /**
+   * Get the fields that the rows are sorted by, each of which may be preceded by "-" for a descending sort.
+   * @return the fields that the rows are sorted by.
+   */
+  public List<String> getFields() {
+    return definition.getFields();
+  }
+
+  /**
+   * Purely for test purposes.
+   * @return The number of rows that this processor will output.
+   */
+  public int getRows() {
+    return rows;
+  }
+
+  @Override
+  public Future<ReadStreamWithTypes> initialize(PipelineExecutor executor, PipelineInstance pipeline, String parentSource, int processorIndex, ReadStreamWithTypes input) {
+    TopNStream<DataRow> stream = new TopNStream<>(pipelineContext
+            , Vertx.currentContext()
+            , new DataRowComparator(pipelineContext, definition.getFields())
+            , rows
+            , input.getStream()
+    );
+    return Future.succeededFuture(new ReadStreamWithTypes(stream, input.getTypes()));
+  }
+
+}
@@ -156,7 +156,7 @@ public class SerializeWriteStream<T> implements WriteStream<T> {
     int spaceRequired = 4 + serialized.length;
     if (spaceRequired > bufferSize) {
       Buffer buff = Buffer.buffer(4 + spaceRequired);
-      buff.appendBytes(byteArrayFromInt(serialized.length));
+      buff.appendInt(serialized.length);
       buff.appendBytes(serialized);
       if (writePos > 0) {
         writeWriteBuffer(true);
@@ -167,12 +167,12 @@ public class SerializeWriteStream<T> implements WriteStream<T> {
      } else if (writePos + spaceRequired > bufferSize) {
       // Need to wait for file writes
       Future<Void> result = writeWriteBuffer(true);
-      writeBuffer.appendBytes(byteArrayFromInt(serialized.length));
+      writeBuffer.appendInt(serialized.length);
       writeBuffer.appendBytes(serialized);
       writePos += spaceRequired;
       return result;
     } else {
-      writeBuffer.appendBytes(byteArrayFromInt(serialized.length));
+      writeBuffer.appendInt(serialized.length);
       writeBuffer.appendBytes(serialized);
       writePos += spaceRequired;
       // Don't need to wait for buffer writes
@@ -21,12 +21,13 @@ import io.vertx.core.Context;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Promise;
+import io.vertx.core.file.AsyncFile;
 import io.vertx.core.file.FileSystem;
 import io.vertx.core.file.OpenOptions;
 import io.vertx.core.streams.ReadStream;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
@@ -45,13 +46,36 @@ import uk.co.spudsoft.query.logging.Log;
 /**
  * A ReadStream that sorts its input using external merge sort. Uses bounded memory by spilling sorted chunks to temporary files
  * when memory limit is reached.
+ * <P>
+ * Each chunk is sorted on a worker thread so that collection of the next chunk can continue while the previous one is sorted and written.
+ * At most {@link #MAX_CHUNKS_IN_FLIGHT} chunks are sorted or written at any one time, if the next chunk fills up before then the input
+ * is paused, so the memory used is bounded by (approximately) (1 + {@link #MAX_CHUNKS_IN_FLIGHT}) times the memoryLimit.
+ * <P>
+ * The sorted chunks (runs) are merged using a loser tree, which needs a single comparison per level of the tree for each item output.
+ * If there are more runs than the merge fan-in they are first merged in groups of fan-in runs into larger runs, so that no more
+ * than fan-in temporary files are ever open at once.
+ * <P>
+ * Items that compare as equal are output in the order in which they were received.
  *
  * @param <T> The object type being sorted.
  */
 public final class SortingStream<T> implements ReadStream<T> {
 
   private static final Logger logger = LoggerFactory.getLogger(SortingStream.class);
-  private static final int BUFFER_SIZE = 1000; // Buffer size per source
+
+  /**
+   * The default maximum number of runs that will be merged in one pass.
+   */
+  public static final int DEFAULT_MERGE_FAN_IN = 32;
+
+  /**
+   * The maximum number of chunks that may be being sorted or written to disc whilst the next chunk is collected.
+   */
+  static final int MAX_CHUNKS_IN_FLIGHT = 1;
+
+  private static final int INITIAL_READ_AHEAD = 64; // Initial number of items to read ahead from each run
+  private static final int MIN_READ_AHEAD = 16; // Minimum number of items to read ahead from each run, regardless of memory
+  private static final int YIELD_INTERVAL = 1000; // Number of rows to process before yielding the event loop
 
   // Configuration
   private final Context context;
@@ -62,7 +86,9 @@ public final class SortingStream<T> implements ReadStream<T> {
   private final String tempDir;
   private final String baseFileName;
   private final long memoryLimit;
+  private final int mergeFanIn;
   private final MemoryEvaluator<T> memoryEvaluator;
+  private final SortKeyEncoder<T> sortKeyEncoder;
 
   // Input stream
   private final ReadStream<T> input;
@@ -79,9 +105,13 @@ public final class SortingStream<T> implements ReadStream<T> {
   private final AtomicBoolean checkAgain = new AtomicBoolean(false);
 
   // Collection phase
-  private final List<T> currentChunk = new ArrayList<>();
+  private List<T> currentChunk = new ArrayList<>();
   private long currentChunkSize = 0;
   private final List<String> tempFiles = new ArrayList<>();
+  private int tempFileCount = 0;
+  private long totalItems = 0;
+  private long totalSize = 0;
+  private boolean inputPaused = false;
 
   // List of outstanding chunk writes
   private final List<Future<Void>> pendingChunkFlushes = new  ArrayList<>();
@@ -115,6 +145,24 @@ public final class SortingStream<T> implements ReadStream<T> {
     long sizeof(T item);
   }
 
+  /**
+   * Interface for generating normalised binary sort keys for items.
+   *
+   * @param <T> The class of item that this SortKeyEncoder can encode.
+   */
+  public interface SortKeyEncoder<T> {
+    /**
+     * Generate a normalised binary key for an item.
+     *
+     * Comparing the keys of two items using {@link Arrays#compareUnsigned(byte[], byte[])} must give the same order as
+     * comparing the items with the comparator passed in to the SortingStream constructor.
+     *
+     * @param item The item to consider.
+     * @return The normalised binary key for the item.
+     */
+    byte[] sortKey(T item);
+  }
+
   enum State {
     PENDING,      // Not yet started collecting input
     COLLECTING,   // Still collecting input
@@ -124,7 +172,7 @@ public final class SortingStream<T> implements ReadStream<T> {
   }
 
   /**
-   * Constructor.
+   * Constructor using the {@link #DEFAULT_MERGE_FAN_IN}.
    *
    * @param pipelineContext The context in which this {@link uk.co.spudsoft.query.defn.SourcePipeline} is being run.
    * @param context The vertx {@link Context} to use for asynchronous operations.
@@ -138,6 +186,40 @@ public final class SortingStream<T> implements ReadStream<T> {
    * @param memoryEvaluator The {@link MemoryEvaluator} to use to determin the number of bytes used by items.
    * @param input The input stream of items, which should be cold (paused, with no handlers set).
    */
+  public SortingStream(PipelineContext pipelineContext,
+           Context context,
+           FileSystem fileSystem,
+           Comparator<T> comparator,
+           SerializeWriteStream.Serializer<T> serializer,
+           SerializeReadStream.Deserializer<T> deserializer,
+           String tempDir,
+           String baseFileName,
+           long memoryLimit,
+           MemoryEvaluator<T> memoryEvaluator,
+           ReadStream<T> input
+  ) {
+    this(pipelineContext, context, fileSystem, comparator, serializer, deserializer, tempDir, baseFileName, memoryLimit, DEFAULT_MERGE_FAN_IN, memoryEvaluator, null, input);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param pipelineContext The context in which this {@link uk.co.spudsoft.query.defn.SourcePipeline} is being run.
+   * @param context The vertx {@link Context} to use for asynchronous operations.
+   * @param fileSystem The vertx {@link FileSystem} to use for temporary file operations.
+   * @param comparator The comparator to use to sort objects of type T, this will be called from worker threads.
+   * @param serializer The serializer to use to convert objects of type T into byte[].
+   * @param deserializer The deserializer to use to convert byte[] into objects of type T.
+   * @param tempDir The temporary directory to use to store temporary files, this should be unique to this instance of the SortingStream.
+   * @param baseFileName A base filename to use for the temporary files - this must consist of alphanumeric characters or underscore or dot.
+   * @param memoryLimit The amount of memory to use for storing items before they spill to temporary files.
+   * @param mergeFanIn The maximum number of temporary files to merge in a single pass, must be at least 2.
+   * @param memoryEvaluator The {@link MemoryEvaluator} to use to determin the number of bytes used by items.
+   * @param sortKeyEncoder Optional {@link SortKeyEncoder} used to sort each chunk by normalised binary keys instead of by the comparator,
+   * this will be called from worker threads.
+   * The comparator is still used for merging the sorted chunks.
+   * @param input The input stream of items, which should be cold (paused, with no handlers set).
+   */
   @SuppressFBWarnings(value = "EI_EXPOSE_REP2", justification = "The filesystem is clearly mutable")
   public SortingStream(PipelineContext pipelineContext,
            Context context,
@@ -148,9 +230,14 @@ public final class SortingStream<T> implements ReadStream<T> {
            String tempDir,
            String baseFileName,
            long memoryLimit,
+           int mergeFanIn,
            MemoryEvaluator<T> memoryEvaluator,
+           SortKeyEncoder<T> sortKeyEncoder,
            ReadStream<T> input
   ) {
+    if (mergeFanIn < 2) {
+      throw new IllegalArgumentException("Merge fan-in must be at least 2");
+    }
     this.context = context;
     this.fileSystem = fileSystem;
     this.comparator = comparator;
@@ -159,7 +246,9 @@ public final class SortingStream<T> implements ReadStream<T> {
     this.tempDir = tempDir;
     this.baseFileName = baseFileName;
     this.memoryLimit = memoryLimit;
+    this.mergeFanIn = mergeFanIn;
     this.memoryEvaluator = memoryEvaluator;
+    this.sortKeyEncoder = sortKeyEncoder;
     this.input = input;
     this.log = new Log(logger, pipelineContext);
 
@@ -177,12 +266,21 @@ public final class SortingStream<T> implements ReadStream<T> {
       return;
     }
 
+    long size = memoryEvaluator.sizeof(item);
     currentChunk.add(item);
-    currentChunkSize += memoryEvaluator.sizeof(item);
+    currentChunkSize += size;
+    ++totalItems;
+    totalSize += size;
 
     if (currentChunkSize >= memoryLimit) {
-      flushCurrentChunk()
-              .onFailure(this::handleException);
+      if (pendingChunkFlushes.size() < MAX_CHUNKS_IN_FLIGHT) {
+        flushCurrentChunk()
+                .onFailure(this::handleException);
+      } else if (!inputPaused) {
+        // Stop collecting until a chunk has been written, otherwise memory use is unbounded
+        inputPaused = true;
+        input.pause();
+      }
     }
   }
 
@@ -194,18 +292,19 @@ public final class SortingStream<T> implements ReadStream<T> {
 
     log.trace().log("Input ended, transitioning to merge phase");
 
-    Future.all(pendingChunkFlushes)
+    Future.all(new ArrayList<>(pendingChunkFlushes))
+            .compose(v1 -> sortOnWorker(currentChunk))
+            .compose(v1 -> reduceRuns())
             .compose(v1 -> {
               log.trace().log("Starting merge phase with {} temp files and {} items in memory", tempFiles.size(), currentChunk.size());
 
               // Choose merge strategy
               if (tempFiles.isEmpty()) {
-                // All data fits in memory - sort it
-                Collections.sort(currentChunk, comparator);
+                // All data fits in memory
                 mergeState = new InMemoryMergeState();
               } else {
                 // Need to merge files
-                mergeState = new BufferedFileMergeState();
+                mergeState = new BufferedFileMergeState(new ArrayList<>(tempFiles), currentChunk);
               }
 
               return mergeState.initialize()
@@ -224,15 +323,70 @@ public final class SortingStream<T> implements ReadStream<T> {
     return handler != null && demand.get() > 0;
   }
 
-  private Future<Void> flushChunkAsync(List<T> chunkToFlush) {
-    // Sort the chunk
-    Collections.sort(chunkToFlush, comparator);
+  /**
+   * Sort a list of items on a worker thread.
+   * <P>
+   * The returned Future completes on the context.
+   *
+   * @param items The items to sort.
+   * @return A Future that will be completed when the items have been sorted.
+   */
+  private Future<List<T>> sortOnWorker(List<T> items) {
+    if (items.size() < 2) {
+      return Future.succeededFuture(items);
+    }
+    return context.executeBlocking(() -> {
+      if (sortKeyEncoder == null) {
+        items.sort(comparator);
+      } else {
+        sortByKeys(items);
+      }
+      return items;
+    }, false);
+  }
+
+  /**
+   * Sort a list of items by their normalised binary keys.
+   * <P>
+   * The keys are generated once per item, after which each comparison is a single unsigned byte array comparison.
+   * The sort is stable, as is the sort by comparator.
+   *
+   * @param items The items to sort.
+   */
+  private void sortByKeys(List<T> items) {
+    List<KeyedItem<T>> keyed = new ArrayList<>(items.size());
+    for (T item : items) {
+      keyed.add(new KeyedItem<>(sortKeyEncoder.sortKey(item), item));
+    }
+    keyed.sort((a, b) -> Arrays.compareUnsigned(a.key, b.key));
+    for (int i = 0; i < keyed.size(); ++i) {
+      items.set(i, keyed.get(i).item);
+    }
+  }
+
+  private static final class KeyedItem<T> {
+
+    private final byte[] key;
+    private final T item;
+
+    KeyedItem(byte[] key, T item) {
+      this.key = key;
+      this.item = item;
+    }
+  }
 
-    // Write to temporary file
-    String tempFileName = tempDir + "/" + baseFileName + "_" + tempFiles.size() + ".tmp";
+  private String nextTempFileName() {
+    String tempFileName = tempDir + "/" + baseFileName + "_" + tempFileCount++ + ".tmp";
     tempFiles.add(tempFileName);
+    return tempFileName;
+  }
+
+  private Future<Void> flushChunkAsync(List<T> chunkToFlush) {
+    // Reserve the file name now so that the runs are kept in the order in which their items were received
+    String tempFileName = nextTempFileName();
 
-    return fileSystem.open(tempFileName, new OpenOptions().setCreate(true).setWrite(true))
+    return sortOnWorker(chunkToFlush)
+        .compose(sorted -> fileSystem.open(tempFileName, new OpenOptions().setCreate(true).setWrite(true)))
         .compose(file -> {
           SerializeWriteStream<T> writeStream = new SerializeWriteStream<>(file, serializer);
           return writeAllItems(writeStream, chunkToFlush);
@@ -240,8 +394,8 @@ public final class SortingStream<T> implements ReadStream<T> {
   }
 
   private Future<Void> flushCurrentChunk() {
-    List<T> chunkToFlush = new ArrayList<>(currentChunk);
-    currentChunk.clear();
+    List<T> chunkToFlush = currentChunk;
+    currentChunk = new ArrayList<>(chunkToFlush.size());
     currentChunkSize = 0;
 
     Future<Void> future = flushChunkAsync(chunkToFlush);
@@ -252,10 +406,128 @@ public final class SortingStream<T> implements ReadStream<T> {
         handleException(ar.cause());
       }
       pendingChunkFlushes.remove(future);
+      if (inputPaused && state.get() == State.COLLECTING.ordinal()) {
+        inputPaused = false;
+        if (currentChunkSize >= memoryLimit) {
+          flushCurrentChunk()
+                  .onFailure(this::handleException);
+        }
+        input.resume();
+      }
     });
     return future;
   }
 
+  /**
+   * Merge groups of runs into larger runs until there are no more than mergeFanIn runs left.
+   * <P>
+   * Each group consists of consecutive runs and the merged run replaces the group in the same position, so that the order
+   * of runs (and thus the order of items that compare as equal) is preserved.
+   * The groups are merged one at a time, so that no more than mergeFanIn files are ever open for reading.
+   *
+   * @return A Future that will be completed when there are no more than mergeFanIn runs.
+   */
+  private Future<Void> reduceRuns() {
+    if (tempFiles.size() <= mergeFanIn) {
+      return Future.succeededFuture();
+    }
+    List<String> runs = new ArrayList<>(tempFiles);
+    log.debug().log("Merging {} runs in groups of {}", runs.size(), mergeFanIn);
+    return mergeGroups(runs, 0)
+            .compose(v -> reduceRuns());
+  }
+
+  private Future<Void> mergeGroups(List<String> runs, int start) {
+    int end = Math.min(start + mergeFanIn, runs.size());
+    if (end - start < 2) {
+      // A single run left over does not need merging
+      return Future.succeededFuture();
+    }
+    List<String> group = runs.subList(start, end);
+    String output = nextTempFileName();
+    return mergeRuns(group, output)
+            .compose(v -> {
+              // Replace the group with the merged output
+              tempFiles.remove(output);
+              int position = tempFiles.indexOf(group.get(0));
+              List<Future<Void>> deletions = new ArrayList<>(group.size());
+              for (String run : group) {
+                tempFiles.remove(run);
+                deletions.add(deleteTempFile(run));
+              }
+              tempFiles.add(position, output);
+              return Future.all(deletions);
+            })
+            .compose(v -> mergeGroups(runs, end));
+  }
+
+  private Future<Void> mergeRuns(List<String> runs, String output) {
+    BufferedFileMergeState merger = new BufferedFileMergeState(new ArrayList<>(runs), null);
+    return merger.initialize()
+            .compose(v -> fileSystem.open(output, new OpenOptions().setCreate(true).setWrite(true)))
+            .compose(file -> {
+              Promise<Void> promise = Promise.promise();
+              pumpMerge(merger, new SerializeWriteStream<>(file, serializer), promise);
+              return promise.future();
+            })
+            .onComplete(ar -> merger.cleanup());
+  }
+
+  private void pumpMerge(MergeState merger, SerializeWriteStream<T> stream, Promise<Void> promise) {
+    int count = 0;
+    while (merger.hasNext() && !promise.future().isComplete()) {
+      stream.write(merger.next()).onComplete(ar -> {
+        if (ar.failed()) {
+          promise.tryFail(ar.cause());
+        }
+      });
+      if (stream.writeQueueFull()) {
+        stream.drainHandler(v -> {
+          stream.drainHandler(null);
+          context.runOnContext(v2 -> pumpMerge(merger, stream, promise));
+        });
+        return ;
+      }
+      if (++count >= YIELD_INTERVAL) {
+        context.runOnContext(v -> pumpMerge(merger, stream, promise));
+        return ;
+      }
+    }
+    if (promise.future().isComplete() || state.get() == State.FAILED.ordinal()) {
+      promise.tryFail(new IllegalStateException("Merge of runs abandoned"));
+      return ;
+    }
+    if (merger.hasMoreDataPotential()) {
+      merger.ensureBuffersFilled()
+              .onSuccess(v -> context.runOnContext(v2 -> pumpMerge(merger, stream, promise)))
+              .onFailure(promise::tryFail);
+      return ;
+    }
+    stream.end().onComplete(promise);
+  }
+
+  private Future<Void> deleteTempFile(String tempFile) {
+    return fileSystem.delete(tempFile)
+            .recover(ex -> {
+              log.warn().log("Failed to delete temp file {}: {}", tempFile, ex.getMessage());
+              return Future.succeededFuture();
+            });
+  }
+
+  /**
+   * The maximum number of items to read ahead from each of a set of runs.
+   * <P>
+   * The total read ahead across all the runs is limited to (approximately) the memory limit, based on the average size of items seen.
+   *
+   * @param runCount The number of runs being read.
+   * @return The maximum number of items to read ahead from each run.
+   */
+  int maxReadAhead(int runCount) {
+    long averageSize = totalItems == 0 ? 1 : Math.max(1, totalSize / totalItems);
+    long perRun = memoryLimit / averageSize / Math.max(1, runCount);
+    return (int) Math.max(MIN_READ_AHEAD, Math.min(Integer.MAX_VALUE, perRun));
+  }
+
   Future<Void> writeAllItems(SerializeWriteStream<T> stream, List<T> items) {
     Promise<Void> promise = Promise.promise();
 
@@ -344,8 +616,8 @@ public final class SortingStream<T> implements ReadStream<T> {
       int rowsProcessedInThisPass = 0;
       while (demand.get() > 0) {
         if (mergeState.hasNext()) {
-          // YIELD CHECK: After every 1000 rows, yield the event loop to allow I/O and signals
-          if (++rowsProcessedInThisPass >= 1000) {
+          // YIELD CHECK: After every YIELD_INTERVAL rows, yield the event loop to allow I/O and signals
+          if (++rowsProcessedInThisPass >= YIELD_INTERVAL) {
             scheduleProcessOutput();
             return;
           }
@@ -525,7 +797,7 @@ public final class SortingStream<T> implements ReadStream<T> {
 
     @Override
     Future<Void> initialize() {
-      Collections.sort(currentChunk, comparator);
+      // The current chunk has already been sorted
       iterator = currentChunk.iterator();
       return Future.succeededFuture();
     }
@@ -556,131 +828,182 @@ public final class SortingStream<T> implements ReadStream<T> {
     }
   }
 
+  /**
+   * Merge of a number of sorted runs using a loser tree.
+   * <P>
+   * The loser tree has one leaf per source and each internal node records the loser of the match played at that node, the overall winner
+   * is held in position zero.
+   * When the winner is taken only the matches on the path from its leaf to the root need to be replayed.
+   * <P>
+   * A source that has no buffered items but has not ended is pending, and the winner cannot be determined until it has been filled.
+   * Only the source that has just provided the winner can become pending, so at most one source is ever pending.
+   * Exhausted sources lose every match, ties are won by the lower source index so that the merge is stable.
+   */
   private class BufferedFileMergeState extends MergeState {
+    private final List<String> files;
+    private final List<T> inMemoryChunk;
     private final List<BufferedMergeSource> sources = new ArrayList<>();
+    private int[] tree;
+    private int pending = -1;
+
+    /**
+     * Constructor.
+     * @param files The temporary files to merge, in the order in which they were created.
+     * @param inMemoryChunk Sorted items that have not been written to disc, which are treated as the last run, may be null.
+     */
+    BufferedFileMergeState(List<String> files, List<T> inMemoryChunk) {
+      this.files = files;
+      this.inMemoryChunk = inMemoryChunk;
+    }
 
     @Override
     Future<Void> initialize() {
-      // Add in-memory chunk if present
-      if (!currentChunk.isEmpty()) {
-        sources.add(new InMemoryBufferedSource(currentChunk));
-      }
-
-      // Add file sources - use async file opening
-      List<Future<Void>> fileOpenFutures = new ArrayList<>();
-      for (String tempFile : tempFiles) {
-        Promise<Void> sourcePromise = Promise.promise();
-        fileOpenFutures.add(sourcePromise.future());
-
-        fileSystem.open(tempFile, new OpenOptions().setRead(true))
-            .onSuccess(file -> {
-              SerializeReadStream<T> readStream = new SerializeReadStream<>(file, deserializer);
-              sources.add(new FileBufferedSource(readStream));
-              sourcePromise.complete();
-            })
-            .onFailure(sourcePromise::fail);
+      // Add file sources - use async file opening, but keep the sources in the order of the files
+      List<Future<BufferedMergeSource>> fileOpenFutures = new ArrayList<>();
+      for (String tempFile : files) {
+        fileOpenFutures.add(
+                fileSystem.open(tempFile, new OpenOptions().setRead(true))
+                        .map(file -> new FileBufferedSource(new SerializeReadStream<>(file, deserializer), file))
+        );
       }
 
       // Wait for all file sources to be opened, then initialize them
       return Future.all(fileOpenFutures)
-          .compose(v -> {
-            // Initialize all sources
-            for (BufferedMergeSource source : sources) {
-              source.initialize();
+          .transform(ar -> {
+            // Record every source that was opened, even on failure, so that they can all be closed
+            for (Future<BufferedMergeSource> future : fileOpenFutures) {
+              if (future.succeeded()) {
+                sources.add(future.result());
+              }
             }
-            // Fill initial buffers
+            if (ar.failed()) {
+              return Future.failedFuture(ar.cause());
+            }
+            // Add in-memory chunk if present, as the last run
+            if (inMemoryChunk != null && !inMemoryChunk.isEmpty()) {
+              sources.add(new InMemoryBufferedSource(inMemoryChunk));
+            }
+            int maxReadAhead = maxReadAhead(sources.size());
+            // Initialize all sources and fill initial buffers
             List<Future<Void>> fillFutures = new ArrayList<>();
             for (BufferedMergeSource source : sources) {
-              fillFutures.add(source.fillBuffer(BUFFER_SIZE));
+              source.initialize();
+              source.maxReadAhead = maxReadAhead;
+              fillFutures.add(source.fillBuffer(source.nextReadAhead()));
             }
             return Future.all(fillFutures);
           })
           .onSuccess(v -> {
+            buildTree();
             log.trace().log("Initialized merge state with {} sources", sources.size());
           })
           .mapEmpty();
     }
 
-    private boolean hasPendingSources() {
-      for (BufferedMergeSource source : sources) {
-        if (!source.isEnded() && !source.hasNext()) {
-          return true; // This source is Pending
-        }
+    /**
+     * Determine whether the source at index a beats the source at index b.
+     * @param a The index of the first source.
+     * @param b The index of the second source.
+     * @return true if the next item from source a should be output before the next item from source b.
+     */
+    private boolean beats(int a, int b) {
+      BufferedMergeSource sourceA = sources.get(a);
+      BufferedMergeSource sourceB = sources.get(b);
+      if (!sourceA.hasNext()) {
+        return !sourceB.hasNext() && a < b;
+      }
+      if (!sourceB.hasNext()) {
+        return true;
       }
-      return false;
+      int result = comparator.compare(sourceA.peekNext(), sourceB.peekNext());
+      return result < 0 || (result == 0 && a < b);
     }
 
-    private BufferedMergeSource findMinSource() {
-      BufferedMergeSource minSource = null;
-      T minValue = null;
-
-      for (BufferedMergeSource source : sources) {
-        if (source.hasNext()) { // Only consider Ready sources
-          T value = source.peekNext();
-          if (minValue == null || comparator.compare(value, minValue) < 0) {
-            minValue = value;
-            minSource = source;
-          }
+    private void buildTree() {
+      int k = sources.size();
+      tree = new int[Math.max(1, k)];
+      if (k == 0) {
+        return ;
+      }
+      // winners[n] is the winner of the match at node n, leaves are at k..2k-1
+      int[] winners = new int[2 * k];
+      for (int i = 0; i < k; ++i) {
+        winners[k + i] = i;
+      }
+      for (int node = k - 1; node >= 1; --node) {
+        int left = winners[2 * node];
+        int right = winners[2 * node + 1];
+        if (beats(left, right)) {
+          winners[node] = left;
+          tree[node] = right;
+        } else {
+          winners[node] = right;
+          tree[node] = left;
         }
       }
+      tree[0] = winners[1];
+    }
 
-      return minSource;
+    private void replay(int source) {
+      int winner = source;
+      for (int node = (source + sources.size()) >> 1; node >= 1; node >>= 1) {
+        if (beats(tree[node], winner)) {
+          int loser = winner;
+          winner = tree[node];
+          tree[node] = loser;
+        }
+      }
+      tree[0] = winner;
     }
 
     @Override
     boolean hasNext() {
       // Only return true if we can definitely provide a next item
-      // If there are pending sources, we can't be sure what the next item should be
-      if (hasPendingSources()) {
-        return false;
-      }
-      return findMinSource() != null;
+      // If there is a pending source, we can't be sure what the next item should be
+      return pending < 0 && !sources.isEmpty() && sources.get(tree[0]).hasNext();
     }
 
     @Override
     boolean hasMoreDataPotential() {
-      // Return true if there are pending sources OR if we have a ready source
-      if (hasPendingSources()) {
-        return true;
-      }
-      return findMinSource() != null;
+      return pending >= 0 || hasNext();
     }
 
     @Override
     T next() {
-      BufferedMergeSource source = findMinSource();
-      if (source == null) {
+      if (!hasNext()) {
         return null;
       }
-
+      int winner = tree[0];
+      BufferedMergeSource source = sources.get(winner);
       T result = source.takeNext();
       log.trace().log("Taking {} from source {}", result, source);
 
+      if (source.hasNext() || source.isEnded()) {
+        source.prefetch();
+        replay(winner);
+      } else {
+        pending = winner;
+      }
       return result;
     }
 
     @Override
     Future<Void> ensureBuffersFilled() {
-      List<Future<Void>> fillFutures = new ArrayList<>();
-
-      // Fill buffers for all Pending sources
-      log.trace().log("Filling buffers");
-      for (BufferedMergeSource source : sources) {
-        if (!source.isEnded() && !source.hasNext()) {
-          // This source is Pending - make it Ready or Ended
-          fillFutures.add(source.fillBuffer(BUFFER_SIZE));
-        }
+      if (pending < 0) {
+        return Future.succeededFuture();
       }
-
-      return Future.all(fillFutures)
+      int source = pending;
+      BufferedMergeSource pendingSource = sources.get(source);
+      log.trace().log("Filling buffer for {}", pendingSource);
+      return pendingSource.fillBuffer(pendingSource.nextReadAhead())
               .onComplete(ar -> {
                 if (ar.failed()) {
                   log.warn().log("Buffer fill failed: ", ar.cause());
-                } else {
-                  log.trace().log("After buffer fill, no more pending sources");
+                } else if (pending == source) {
+                  pending = -1;
+                  replay(source);
                 }
-              })
-              .mapEmpty();
+              });
     }
 
     @Override
@@ -695,11 +1018,26 @@ public final class SortingStream<T> implements ReadStream<T> {
   private abstract class BufferedMergeSource {
     protected final Queue<T> buffer = new ArrayDeque<>();
     protected boolean ended = false;
+    protected int readAhead = INITIAL_READ_AHEAD;
+    protected int maxReadAhead = Integer.MAX_VALUE;
 
     abstract void initialize();
     abstract Future<Void> fillBuffer(int targetSize);
+    abstract void prefetch();
     abstract void cleanup();
 
+    /**
+     * Get the number of items to read ahead for the next fill, doubling it (up to the maximum) for subsequent fills.
+     * <P>
+     * A source that needs repeated fills is providing a lot of the output, so it is worth reading further ahead.
+     * @return The number of items to read ahead for the next fill.
+     */
+    int nextReadAhead() {
+      int result = Math.min(readAhead, maxReadAhead);
+      readAhead = (int) Math.min((long) readAhead * 2, maxReadAhead);
+      return result;
+    }
+
     boolean hasNext() {
       return !buffer.isEmpty();
     }
@@ -719,9 +1057,8 @@ public final class SortingStream<T> implements ReadStream<T> {
 
   private class InMemoryBufferedSource extends BufferedMergeSource {
 
-    // Just put everything straght into the buffer
+    // Just put everything straght into the buffer, the items must already be sorted
     InMemoryBufferedSource(List<T> items) {
-      Collections.sort(items, comparator);
       this.buffer.addAll(items);
       this.ended = true;
     }
@@ -735,6 +1072,10 @@ public final class SortingStream<T> implements ReadStream<T> {
       return Future.succeededFuture();
     }
 
+    @Override
+    void prefetch() {
+    }
+
     @Override
     void cleanup() {
     }
@@ -742,14 +1083,22 @@ public final class SortingStream<T> implements ReadStream<T> {
 
   private class FileBufferedSource extends BufferedMergeSource {
     private final SerializeReadStream<T> readStream;
+    private final AsyncFile file;
     private Promise<Void> fillPromise;
     private int targetFillSize;
     private long totalItemsRead = 0;
+    private long outstanding = 0;
     private boolean streamStarted = false;
     private boolean streamEnded = false;
+    private Throwable failure;
 
     FileBufferedSource(SerializeReadStream<T> readStream) {
+      this(readStream, null);
+    }
+
+    FileBufferedSource(SerializeReadStream<T> readStream, AsyncFile file) {
       this.readStream = readStream;
+      this.file = file;
     }
 
     @Override
@@ -760,6 +1109,9 @@ public final class SortingStream<T> implements ReadStream<T> {
         readStream.handler(item -> {
           buffer.offer(item);
           totalItemsRead++;
+          if (outstanding > 0) {
+            --outstanding;
+          }
           log.trace().log("{} received item {}, buffer size now: {}", this, item, buffer.size());
           checkFillComplete();
         });
@@ -775,9 +1127,12 @@ public final class SortingStream<T> implements ReadStream<T> {
 
         readStream.exceptionHandler(ex -> {
           log.error().log("Error in {}", this, ex);
+          // Record the failure in case it happened during a prefetch, it must be reported by the next fill
+          failure = ex;
           if (fillPromise != null) {
-            fillPromise.fail(ex);
+            Promise<Void> promise = fillPromise;
             fillPromise = null;
+            promise.fail(ex);
           }
         });
       }
@@ -785,7 +1140,17 @@ public final class SortingStream<T> implements ReadStream<T> {
 
     @Override
     Future<Void> fillBuffer(int targetSize) {
-      if (streamEnded || buffer.size() >= targetSize) {
+      if (streamEnded) {
+        return Future.succeededFuture();
+      }
+      if (failure != null) {
+        return Future.failedFuture(failure);
+      }
+
+      // Request whatever is needed to bring the buffer up to the target
+      request(targetSize);
+
+      if (!buffer.isEmpty()) {
         return Future.succeededFuture();
       }
 
@@ -799,12 +1164,25 @@ public final class SortingStream<T> implements ReadStream<T> {
 
       log.trace().log("{} starting fill, target: {}, current buffer: {}", this, targetSize, buffer.size());
 
-      // Start reading from the stream
-      readStream.fetch(targetSize);
-
       return fillPromise.future();
     }
 
+    @Override
+    void prefetch() {
+      // Top up the buffer before it runs dry, but only once it is worth making a request
+      if (!streamEnded && failure == null && buffer.size() + outstanding <= readAhead / 2) {
+        request(readAhead);
+      }
+    }
+
+    private void request(int targetSize) {
+      long shortfall = targetSize - buffer.size() - outstanding;
+      if (shortfall > 0) {
+        outstanding += shortfall;
+        readStream.fetch(shortfall);
+      }
+    }
+
     private void checkFillComplete() {
       if (fillPromise != null && (!buffer.isEmpty() || streamEnded)) {
         log.trace().log("{} fill complete, buffer size: {}, target was: {}", this, buffer.size(), targetFillSize);
@@ -813,15 +1191,19 @@ public final class SortingStream<T> implements ReadStream<T> {
     }
 
     private void completeFill() {
-      fillPromise.complete();
+      // Clear the field before completing, the completion may start another fill
+      Promise<Void> promise = fillPromise;
       fillPromise = null;
+      promise.complete();
       log.trace().log("{} complete, promise signalled", this);
     }
 
     @Override
     void cleanup() {
-      // The SerializeReadStream should handle cleanup internally
-      // when the underlying AsyncFile is closed
+      if (file != null) {
+        file.close()
+                .onFailure(ex -> log.debug().log("Failed to close {}: {}", this, ex.getMessage()));
+      }
     }
   }
 }
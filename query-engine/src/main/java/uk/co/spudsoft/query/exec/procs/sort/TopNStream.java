@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2026 jtalbut
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.spudsoft.query.exec.procs.sort;
+
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.streams.ReadStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.co.spudsoft.query.exec.context.PipelineContext;
+import uk.co.spudsoft.query.exec.procs.ListReadStream;
+import uk.co.spudsoft.query.logging.Log;
+
+/**
+ * A {@link ReadStream} that outputs the first N items of its input, in sorted order.
+ * <P>
+ * The output is the same as the first N items output by a {@link SortingStream} using the same comparator, including the order of items that compare as equal.
+ * <P>
+ * The entire input is consumed before anything is output, but at most N items are held in memory at once (in a bounded heap)
+ * and nothing is written to disc.
+ * This makes it suitable for a sort that is followed by a limit, where N is the sum of the limit and any offset between them.
+ * <P>
+ * This stream is expected to be used on a single Vert.x context.
+ *
+ * @param <T> The type of item being streamed.
+ * @author jtalbut
+ */
+public class TopNStream<T> implements ReadStream<T> {
+
+  private static final Logger logger = LoggerFactory.getLogger(TopNStream.class);
+
+  private final PipelineContext pipelineContext;
+  private final Context context;
+  private final Comparator<Ranked<T>> order;
+  private final int limit;
+  private final ReadStream<T> input;
+  private final Log log;
+
+  /**
+   * Heap with the worst of the retained items at the head.
+   */
+  private final PriorityQueue<Ranked<T>> heap;
+
+  private long sequence;
+  private boolean started;
+  private boolean failed;
+  private long demand;
+
+  private Handler<T> handler;
+  private Handler<Void> endHandler;
+  private Handler<Throwable> exceptionHandler;
+
+  private ListReadStream<T> output;
+
+  /**
+   * An item along with the order in which it was received, which is used to make the sort stable.
+   * @param <T> The type of item being streamed.
+   */
+  private static final class Ranked<T> {
+
+    private final T item;
+    private final long sequence;
+
+    Ranked(T item, long sequence) {
+      this.item = item;
+      this.sequence = sequence;
+    }
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param pipelineContext The context in which this {@link uk.co.spudsoft.query.defn.SourcePipeline} is being run.
+   * @param context The vertx {@link Context} to use for asynchronous operations.
+   * @param comparator The comparator to use to sort objects of type T.
+   * @param limit The maximum number of items to output, must be at least 1.
+   * @param input The input stream of items, which should be cold (paused, with no handlers set).
+   */
+  public TopNStream(PipelineContext pipelineContext, Context context, Comparator<T> comparator, int limit, ReadStream<T> input) {
+    if (limit < 1) {
+      throw new IllegalArgumentException("Top N limit must be at least 1");
+    }
+    this.pipelineContext = pipelineContext;
+    this.context = context;
+    Comparator<Ranked<T>> byItem = (a, b) -> comparator.compare(a.item, b.item);
+    this.order = byItem.thenComparingLong(r -> r.sequence);
+    this.limit = limit;
+    this.input = input;
+    this.log = new Log(logger, pipelineContext);
+    this.heap = new PriorityQueue<>(Math.min(limit, 1024) + 1, order.reversed());
+
+    input.handler(this::handleInputItem);
+    input.endHandler(this::handleInputEnd);
+    input.exceptionHandler(this::handleException);
+  }
+
+  private void handleInputItem(T item) {
+    Ranked<T> ranked = new Ranked<>(item, sequence++);
+    if (heap.size() < limit) {
+      heap.add(ranked);
+    } else if (order.compare(ranked, heap.peek()) < 0) {
+      heap.poll();
+      heap.add(ranked);
+    }
+  }
+
+  private void handleInputEnd(Void v) {
+    List<Ranked<T>> ranked = new ArrayList<>(heap);
+    heap.clear();
+    ranked.sort(order);
+    List<T> items = new ArrayList<>(ranked.size());
+    for (Ranked<T> r : ranked) {
+      items.add(r.item);
+    }
+    log.trace().log("Input ended after {} items, outputting {}", sequence, items.size());
+
+    output = new ListReadStream<>(pipelineContext, context, items);
+    output.handler(handler);
+    output.endHandler(endHandler);
+    output.exceptionHandler(exceptionHandler);
+    if (demand > 0) {
+      output.fetch(demand);
+    }
+  }
+
+  private void handleException(Throwable ex) {
+    if (failed) {
+      return;
+    }
+    failed = true;
+    heap.clear();
+    log.warn().log("Exception in input stream: ", ex);
+    Handler<Throwable> captured = exceptionHandler;
+    if (captured != null) {
+      captured.handle(ex);
+    }
+  }
+
+  private void start() {
+    if (!started) {
+      started = true;
+      input.resume();
+    }
+  }
+
+  @Override
+  public TopNStream<T> exceptionHandler(Handler<Throwable> handler) {
+    this.exceptionHandler = handler;
+    if (output != null) {
+      output.exceptionHandler(handler);
+    }
+    return this;
+  }
+
+  @Override
+  public TopNStream<T> handler(Handler<T> handler) {
+    this.handler = handler;
+    if (output != null) {
+      output.handler(handler);
+    }
+    return this;
+  }
+
+  @Override
+  public TopNStream<T> endHandler(Handler<Void> endHandler) {
+    this.endHandler = endHandler;
+    if (output != null) {
+      output.endHandler(endHandler);
+    }
+    return this;
+  }
+
+  @Override
+  public TopNStream<T> pause() {
+    demand = 0;
+    if (output != null) {
+      output.pause();
+    }
+    return this;
+  }
+
+  @Override
+  public TopNStream<T> resume() {
+    return fetch(Long.MAX_VALUE);
+  }
+
+  @Override
+  public TopNStream<T> fetch(long amount) {
+    if (amount < 0) {
+      throw new IllegalArgumentException("Fetch amount cannot be negative");
+    }
+    start();
+    if (output != null) {
+      output.fetch(amount);
+    } else {
+      demand += amount;
+      if (demand < 0) {
+        demand = Long.MAX_VALUE;
+      }
+    }
+    return this;
+  }
+
+}
@@ -21,6 +21,7 @@ import io.micrometer.core.instrument.MeterRegistry;
 import io.vertx.core.Future;
 import io.vertx.core.Vertx;
 import io.vertx.core.streams.ReadStream;
+import java.util.ArrayList;
 import java.util.List;
 import org.slf4j.Logger;
 import uk.co.spudsoft.query.defn.DataType;
@@ -48,6 +49,7 @@ public abstract class AbstractJoiningProcessor extends AbstractProcessor {
   private final boolean innerJoin;
 
   private MergeStream<DataRow, DataRow, DataRow> stream;
+  private final List<PipelineInstance> childPipelines = new ArrayList<>();
 
   /**
    * The Types captured during {@link #initialize(uk.co.spudsoft.query.exec.PipelineExecutor, uk.co.spudsoft.query.exec.PipelineInstance, java.lang.String, int, uk.co.spudsoft.query.exec.ReadStreamWithTypes)}.
@@ -105,10 +107,21 @@ public abstract class AbstractJoiningProcessor extends AbstractProcessor {
             , executor.createProcessors(vertx, childContext, sourcePipeline, null)
             , sinkInstance
     );
+    childPipelines.add(childPipeline);
     return executor.initializePipeline(childContext, childPipeline)
             .map(v -> sinkInstance.getReadStream());
   }
 
+  /**
+   * Cancel all the child pipelines that have been initialized by this processor.
+   */
+  @Override
+  public void cancel() {
+    for (PipelineInstance childPipeline : childPipelines) {
+      childPipeline.cancel();
+    }
+  }
+
   /**
    * Abstract method that specializations must implement to process one parent row and a collection of related child rows.
    * @param parentRow The single DataRow from the parent stream.
@@ -195,6 +208,8 @@ public abstract class AbstractJoiningProcessor extends AbstractProcessor {
                       , 200
                       , 100
               );
+              // Once the parent stream has ended there is no point reading any more child rows
+              this.stream.secondaryAbandonedHandler(v -> cancel());
               return Future.succeededFuture(new ReadStreamWithTypes(stream, types));
             })
             ;
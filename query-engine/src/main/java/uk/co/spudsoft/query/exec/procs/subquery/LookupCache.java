@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2026 jtalbut
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.spudsoft.query.exec.procs.subquery;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.co.spudsoft.query.defn.DataType;
+import uk.co.spudsoft.query.exec.ExpiringValue;
+import uk.co.spudsoft.query.exec.context.PipelineContext;
+import uk.co.spudsoft.query.logging.Log;
+
+/**
+ * Cache of lookup maps loaded by {@link ProcessorLookupInstance}s that survives between calls.
+ * <P>
+ * A single instance of this class is shared by all pipelines (via the {@link uk.co.spudsoft.query.exec.SharedMap}).
+ * Each entry has its own time to live (from {@link uk.co.spudsoft.query.defn.ProcessorLookup#getCacheDuration()})
+ * and the total size of the cache is limited to approximately {@link #setMaxBytes(long)} bytes.
+ * <P>
+ * Loads are single-flight: if a lookup map is requested whilst it is already being loaded the request waits for that load
+ * rather than starting another one.
+ *
+ * @author jtalbut
+ */
+public class LookupCache {
+
+  private static final Logger logger = LoggerFactory.getLogger(LookupCache.class);
+
+  private static long maxBytes = 64L << 20;
+
+  private final Cache<String, LookupTable> cache;
+  private final Map<String, Future<LookupTable>> loading = new ConcurrentHashMap<>();
+
+  /**
+   * The contents of a lookup map, along with the time at which it expires.
+   * @param map The lookup map, which must not be modified.
+   * @param valueType The type of the values in the map.
+   * @param expiry The value of {@link System#nanoTime()} after which this table should not be used.
+   */
+  record LookupTable(Map<Comparable<?>, Comparable<?>> map, DataType valueType, long expiry) implements ExpiringValue {
+
+    LookupTable {
+      map = Collections.unmodifiableMap(map);
+    }
+  }
+
+  /**
+   * Constructor.
+   * @param meterRegistry MeterRegistry for production of metrics.
+   */
+  public LookupCache(MeterRegistry meterRegistry) {
+    cache = CacheBuilder.newBuilder()
+            .maximumWeight(maxBytes)
+            .<String, LookupTable>weigher(LookupCache::weigh)
+            .recordStats()
+            .build();
+    if (meterRegistry != null) {
+      GuavaCacheMetrics.monitor(meterRegistry, cache, "lookup");
+      meterRegistry.gauge("queryengine.cache.size"
+              , Arrays.asList(
+                      Tag.of("cachename", "lookup")
+              )
+              , cache, c -> {
+        synchronized (c) {
+          return c.size();
+        }
+      });
+    }
+  }
+
+  /**
+   * Set the approximate maximum number of bytes that the lookup maps in the cache may take up.
+   * <P>
+   * This only affects caches created after it is called.
+   * @param maxBytes the approximate maximum number of bytes that the lookup maps in the cache may take up.
+   */
+  public static void setMaxBytes(long maxBytes) {
+    LookupCache.maxBytes = maxBytes;
+  }
+
+  /**
+   * Get the approximate number of bytes used by a lookup table.
+   * <P>
+   * As with the in-memory sort this is not very precise, there is no easy way to know how many bytes a String uses.
+   *
+   * @param key The cache key.
+   * @param table The lookup table.
+   * @return the approximate number of bytes used by the lookup table, limited to {@link Integer#MAX_VALUE}.
+   */
+  static int weigh(String key, LookupTable table) {
+    long bytes = 64 + 2L * key.length();
+    for (Map.Entry<Comparable<?>, Comparable<?>> entry : table.map().entrySet()) {
+      bytes += 48 + weigh(entry.getKey()) + weigh(entry.getValue());
+    }
+    return (int) Math.min(Integer.MAX_VALUE, bytes);
+  }
+
+  private static long weigh(Comparable<?> value) {
+    if (value instanceof String s) {
+      return 40 + 2L * s.length();
+    } else {
+      return 24;
+    }
+  }
+
+  /**
+   * Get a lookup table from the cache, loading it if it is not present or has expired.
+   * <P>
+   * The returned Future is always completed on the passed in context.
+   *
+   * @param pipelineContext The context in which the {@link uk.co.spudsoft.query.defn.SourcePipeline} is being run.
+   * @param context The Vert.x context that the result should be delivered on.
+   * @param key The key for the lookup table.
+   * @param loader Function to load the lookup table, this will only be called if there is no valid table in the cache
+   * and no other load for the same key is in progress.
+   * @return A Future that will be completed with the lookup table.
+   */
+  Future<LookupTable> get(PipelineContext pipelineContext, Context context, String key, Supplier<Future<LookupTable>> loader) {
+    LookupTable cached = ExpiringValue.getIfPresent(cache, key);
+    if (cached != null) {
+      Log.decorate(logger.atDebug(), pipelineContext).log("Found lookup table {} in cache", key);
+      return Future.succeededFuture(cached);
+    }
+
+    Promise<LookupTable> promise = Promise.promise();
+    Future<LookupTable> existing = loading.putIfAbsent(key, promise.future());
+    if (existing != null) {
+      Log.decorate(logger.atDebug(), pipelineContext).log("Waiting for lookup table {} to be loaded by another request", key);
+      Promise<LookupTable> local = Promise.promise();
+      existing.onComplete(ar -> context.runOnContext(v -> local.handle(ar)));
+      return local.future();
+    }
+
+    Future<LookupTable> loaded;
+    try {
+      loaded = loader.get();
+    } catch (Throwable ex) {
+      loaded = Future.failedFuture(ex);
+    }
+    loaded.onComplete(ar -> {
+      if (ar.succeeded()) {
+        cache.put(key, ar.result());
+      }
+      loading.remove(key, promise.future());
+      promise.handle(ar);
+    });
+    return promise.future();
+  }
+
+  /**
+   * Create a lookup table that will expire after the given duration.
+   * @param map The lookup map.
+   * @param valueType The type of the values in the map.
+   * @param ttl The time for which the table may be used.
+   * @return A newly created LookupTable.
+   */
+  static LookupTable table(Map<Comparable<?>, Comparable<?>> map, DataType valueType, Duration ttl) {
+    return new LookupTable(map, valueType, ExpiringValue.expiryAfter(ttl));
+  }
+
+  /**
+   * Get the number of lookup tables in the cache.
+   * @return the number of lookup tables in the cache.
+   */
+  long size() {
+    return cache.size();
+  }
+
+}
@@ -57,6 +57,7 @@ public class MergeStream<T, U, V> implements ReadStream<V> {
   private Handler<V> handler;
   private Handler<Throwable> exceptionHandler;
   private Handler<Void> endHandler;
+  private Handler<Void> secondaryAbandonedHandler;
 
   /**
    * Interface for comparing two objects of different types.
@@ -356,6 +357,15 @@ public class MergeStream<T, U, V> implements ReadStream<V> {
           capturedEndHandler.handle(null);
           primaryStream.handler(null);
           secondaryStream.handler(null);
+          Handler<Void> capturedAbandonedHandler;
+          synchronized (lock) {
+            capturedAbandonedHandler = secondaryEnded ? null : secondaryAbandonedHandler;
+            secondaryAbandonedHandler = null;
+          }
+          if (capturedAbandonedHandler != null) {
+            Log.decorate(logger.atDebug(), pipelineContext).log("Primary stream ended before secondary stream, abandoning secondary stream");
+            capturedAbandonedHandler.handle(null);
+          }
         } else {
           if (resumePrimary) {
             Log.decorate(logger.atTrace(), pipelineContext).log("Resuming primary stream at {} rows", primaryRows.size());
@@ -418,4 +428,20 @@ public class MergeStream<T, U, V> implements ReadStream<V> {
     return this;
   }
 
+  /**
+   * Set a handler to be called if this stream ends whilst the secondary stream still has data.
+   * <P>
+   * Once the primary stream has ended no more secondary rows can be merged, so the handler should cancel
+   * whatever is producing the secondary stream.
+   * 
+   * @param handler The handler to call if the secondary stream is abandoned.
+   * @return this, so that the method may be used in a fluent manner.
+   */
+  public MergeStream<T, U, V> secondaryAbandonedHandler(Handler<Void> handler) {
+    synchronized (lock) {
+      this.secondaryAbandonedHandler = handler;
+    }
+    return this;
+  }
+
 }
@@ -16,33 +16,44 @@
  */
 package uk.co.spudsoft.query.exec.procs.subquery;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.github.tsegismont.streamutils.impl.MappingStream;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.vertx.core.Future;
 import io.vertx.core.Vertx;
 import io.vertx.core.streams.ReadStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.co.spudsoft.query.defn.DataType;
+import uk.co.spudsoft.query.defn.Endpoint;
 import uk.co.spudsoft.query.defn.ProcessorLookup;
 import uk.co.spudsoft.query.defn.ProcessorLookupField;
 import uk.co.spudsoft.query.defn.SourcePipeline;
+import uk.co.spudsoft.query.exec.ArgumentInstance;
 import uk.co.spudsoft.query.exec.Auditor;
 import uk.co.spudsoft.query.exec.DataRow;
 import uk.co.spudsoft.query.exec.PipelineExecutor;
 import uk.co.spudsoft.query.exec.PipelineInstance;
 import uk.co.spudsoft.query.exec.ReadStreamWithTypes;
+import uk.co.spudsoft.query.exec.SharedMap;
 import uk.co.spudsoft.query.exec.SourceInstance;
 import uk.co.spudsoft.query.exec.conditions.ConditionInstance;
 import uk.co.spudsoft.query.exec.context.PipelineContext;
 import uk.co.spudsoft.query.exec.fmts.FormatCaptureInstance;
 import uk.co.spudsoft.query.exec.fmts.ReadStreamToList;
 import uk.co.spudsoft.query.exec.procs.AbstractProcessor;
+import uk.co.spudsoft.query.pipeline.PipelineDefnLoader;
 
 /**
  * {@link uk.co.spudsoft.query.exec.ProcessorInstance} to create field values from a map loaded during initialization.
@@ -52,6 +63,8 @@ import uk.co.spudsoft.query.exec.procs.AbstractProcessor;
  * Typically this is worth consideration when there is a large query with multiple joins to a lookup table per row.
  * <P>
  * The entire lookup map will be loaded into a {@link java.util.HashMap}, so beware of memory limits.
+ * <P>
+ * If the definition has a cacheDuration the lookup map is kept in a {@link LookupCache} and shared with other requests.
  *
  * @author jtalbut
  */
@@ -61,7 +74,7 @@ public class ProcessorLookupInstance extends AbstractProcessor {
   private static final Logger slf4jlogger = LoggerFactory.getLogger(ProcessorLookupInstance.class);
 
   private final ProcessorLookup definition;
-  private final Map<Comparable<?>, Comparable<?>> map = new HashMap<>();
+  private Map<Comparable<?>, Comparable<?>> map;
 
   private DataType outputFieldType;
   private ReadStream<DataRow> stream;
@@ -92,23 +105,6 @@ public class ProcessorLookupInstance extends AbstractProcessor {
 
   @Override
   public Future<ReadStreamWithTypes> initialize(PipelineExecutor executor, PipelineInstance pipeline, String parentSource, int processorIndex, ReadStreamWithTypes input) {
-    
-    String childName = getName() + ".map";
-    PipelineContext childContext = pipeline.getPipelineContext().child(childName);
-    
-    
-    SourceInstance sourceInstance = definition.getMap().getSource().createInstance(vertx, meterRegistry, auditor, pipelineContext, executor);
-    FormatCaptureInstance fieldDefnStreamCapture = new FormatCaptureInstance();
-    PipelineInstance childPipeline = new PipelineInstance(
-            childContext
-            , pipeline.getDefinition()
-            , pipeline.getArgumentInstances()
-            , pipeline.getSourceEndpoints()
-            , null
-            , sourceInstance
-            , executor.createProcessors(vertx, childContext, definition.getMap(), null)
-            , fieldDefnStreamCapture
-    );
 
     long start = System.currentTimeMillis();
 
@@ -125,6 +121,145 @@ public class ProcessorLookupInstance extends AbstractProcessor {
       }
     }
 
+    Future<LookupCache.LookupTable> tableFuture;
+    if (definition.supportsCaching()) {
+      LookupCache cache = lookupCache(executor);
+      String key;
+      try {
+        key = cacheKey(definition, pipeline);
+      } catch (Throwable ex) {
+        logger.warn().log("Failed to generate cache key for lookup, it will not be cached: ", ex);
+        key = null;
+      }
+      if (key == null) {
+        tableFuture = loadTable(executor, pipeline);
+      } else {
+        tableFuture = cache.get(pipelineContext, vertx.getOrCreateContext(), key, () -> loadTable(executor, pipeline));
+      }
+    } else {
+      tableFuture = loadTable(executor, pipeline);
+    }
+
+    return tableFuture
+            .compose(table -> {
+              map = table.map();
+              outputFieldType = table.valueType();
+              logger.info().log("{} Loaded {} mappings in {}s", getName(), map.size(), ((System.currentTimeMillis() - start) / 1000.0));
+              for (ProcessorLookupField field : definition.getLookupFields()) {
+                if (includedFields.contains(field.getKeyField())) {
+                  input.getTypes().putIfAbsent(field.getValueField(), outputFieldType);
+                }
+              }
+              stream = new MappingStream<>(input.getStream(), this::runProcess);
+
+              return Future.succeededFuture(new ReadStreamWithTypes(stream, input.getTypes()));
+            });
+  }
+
+  private LookupCache lookupCache(SharedMap sharedMap) {
+    return (LookupCache) sharedMap.computeIfAbsent(LookupCache.class.toString(), k -> new LookupCache(meterRegistry));
+  }
+
+  /**
+   * Generate the key for the lookup map in the {@link LookupCache}.
+   * <P>
+   * The key is a hash of the definition of the lookup processor, the values of the arguments whose names appear in that definition
+   * and the definitions of the endpoints whose names appear in that definition.
+   *
+   * @param definition The definition of the lookup processor.
+   * @param pipeline The pipeline being run.
+   * @return the key for the lookup map.
+   * @throws JsonProcessingException if the definition cannot be serialized.
+   */
+  static String cacheKey(ProcessorLookup definition, PipelineInstance pipeline) throws JsonProcessingException {
+    String json = PipelineDefnLoader.JSON_OBJECT_MAPPER.writeValueAsString(definition);
+    Hasher hasher = Hashing.sha256().newHasher();
+    hasher.putString(json, StandardCharsets.UTF_8);
+    Map<String, ArgumentInstance> args = new TreeMap<>(pipeline.getArgumentInstances());
+    for (Entry<String, ArgumentInstance> arg : args.entrySet()) {
+      if (mentions(json, arg.getKey())) {
+        putString(hasher, arg.getKey());
+        hasher.putInt(arg.getValue().getValues().size());
+        for (Comparable<?> value : arg.getValue().getValues()) {
+          putString(hasher, value == null ? null : value.toString());
+        }
+      }
+    }
+    if (pipeline.getSourceEndpoints() != null) {
+      Map<String, Endpoint> endpoints = new TreeMap<>(pipeline.getSourceEndpoints());
+      for (Entry<String, Endpoint> endpoint : endpoints.entrySet()) {
+        if (mentions(json, endpoint.getKey())) {
+          putString(hasher, endpoint.getKey());
+          putString(hasher, PipelineDefnLoader.JSON_OBJECT_MAPPER.writeValueAsString(endpoint.getValue()));
+        }
+      }
+    }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Add a string to the hash, prefixed by its length so that adjacent strings cannot run into each other.
+   * @param hasher The hasher.
+   * @param value The value to add, a null value is distinguished from any string.
+   */
+  private static void putString(Hasher hasher, String value) {
+    if (value == null) {
+      hasher.putInt(-1);
+    } else {
+      hasher.putInt(value.length());
+      hasher.putString(value, StandardCharsets.UTF_8);
+    }
+  }
+
+  /**
+   * Return true if name appears in json as a whole word.
+   * <P>
+   * This is the equivalent of searching for the regular expression \bname\b, without compiling a Pattern for every name on every request.
+   * @param json The JSON serialization of the definition.
+   * @param name The name to look for.
+   * @return true if name appears in json with a word boundary at each end.
+   */
+  static boolean mentions(String json, String name) {
+    if (name.isEmpty()) {
+      return false;
+    }
+    for (int idx = json.indexOf(name); idx >= 0; idx = json.indexOf(name, idx + 1)) {
+      if (isWordBoundary(json, idx) && isWordBoundary(json, idx + name.length())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isWordBoundary(String text, int pos) {
+    boolean before = pos > 0 && isWordChar(text.charAt(pos - 1));
+    boolean after = pos < text.length() && isWordChar(text.charAt(pos));
+    return before != after;
+  }
+
+  private static boolean isWordChar(char c) {
+    return c == '_' || Character.isLetterOrDigit(c);
+  }
+
+  private Future<LookupCache.LookupTable> loadTable(PipelineExecutor executor, PipelineInstance pipeline) {
+
+    String childName = getName() + ".map";
+    PipelineContext childContext = pipeline.getPipelineContext().child(childName);
+
+    SourceInstance sourceInstance = definition.getMap().getSource().createInstance(vertx, meterRegistry, auditor, pipelineContext, executor);
+    FormatCaptureInstance fieldDefnStreamCapture = new FormatCaptureInstance();
+    PipelineInstance childPipeline = new PipelineInstance(
+            childContext
+            , pipeline.getDefinition()
+            , pipeline.getArgumentInstances()
+            , pipeline.getSourceEndpoints()
+            , null
+            , sourceInstance
+            , executor.createProcessors(vertx, childContext, definition.getMap(), null)
+            , fieldDefnStreamCapture
+    );
+
+    DataType[] valueType = new DataType[1];
     return executor.initializePipeline(childContext, childPipeline)
             .compose(v -> {
               return ReadStreamToList.map(pipelineContext
@@ -133,8 +268,8 @@ public class ProcessorLookupInstance extends AbstractProcessor {
                         if (row.isEmpty()) {
                           return null;
                         } else {
-                          if (outputFieldType == null) {
-                            outputFieldType = row.getType(definition.getLookupValueField());
+                          if (valueType[0] == null) {
+                            valueType[0] = row.getType(definition.getLookupValueField());
                           }
                           return new KVP(
                                   row.get(definition.getLookupKeyField())
@@ -143,19 +278,13 @@ public class ProcessorLookupInstance extends AbstractProcessor {
                         }
                       });
             })
-            .compose(collated -> {
+            .map(collated -> {
+              Map<Comparable<?>, Comparable<?>> loaded = new HashMap<>();
               for (KVP kvp : collated) {
-                map.put(kvp.key, kvp.value);
-              }
-              logger.info().log("{} Loaded {} mappings in {}s", getName(), map.size(), ((System.currentTimeMillis() - start) / 1000.0));
-              for (ProcessorLookupField field : definition.getLookupFields()) {
-                if (includedFields.contains(field.getKeyField())) {
-                  input.getTypes().putIfAbsent(field.getValueField(), outputFieldType);
-                }
+                loaded.put(kvp.key, kvp.value);
               }
-              stream = new MappingStream<>(input.getStream(), this::runProcess);
-
-              return Future.succeededFuture(new ReadStreamWithTypes(stream, input.getTypes()));
+              Duration ttl = definition.supportsCaching() ? definition.getCacheDuration() : Duration.ZERO;
+              return LookupCache.table(loaded, valueType[0], ttl);
             });
   }
 
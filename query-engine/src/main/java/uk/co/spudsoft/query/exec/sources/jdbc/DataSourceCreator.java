@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2026 jtalbut
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.spudsoft.query.exec.sources.jdbc;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.co.spudsoft.query.defn.SourcePipeline;
+import uk.co.spudsoft.query.exec.context.PipelineContext;
+import uk.co.spudsoft.query.logging.Log;
+
+/**
+ * Cache of JDBC connection pools ({@link HikariDataSource} instances) that survives between calls.
+ * <P>
+ * There is one pool for each combination of URL, credentials and maximum pool size.
+ * Each pool is limited to the maxPoolSize of its {@link uk.co.spudsoft.query.defn.Endpoint} (or {@link #DEFAULT_MAX_POOL_SIZE}) connections
+ * and closes connections that have been idle for {@link #IDLE_TIMEOUT}.
+ * Pools that have not been used for {@link #CACHE_EXPIRY} are removed from the cache and closed once they are no longer in use.
+ * <P>
+ * Pools are leased from the cache by {@link #acquire(uk.co.spudsoft.query.exec.context.PipelineContext, java.lang.String, java.lang.String, java.lang.String, int)}
+ * and every lease must be ended by a call to {@link PooledDataSource#release()}, this ensures that a pool is not closed whilst one of its connections is in use.
+ *
+ * @author jtalbut
+ */
+public class DataSourceCreator {
+
+  private static final Logger logger = LoggerFactory.getLogger(DataSourceCreator.class);
+
+  /**
+   * The maximum number of connections in a pool if it is not set on the {@link uk.co.spudsoft.query.defn.Endpoint}.
+   */
+  public static final int DEFAULT_MAX_POOL_SIZE = 40;
+
+  /**
+   * The time after which idle connections are closed.
+   */
+  public static final Duration IDLE_TIMEOUT = Duration.ofMinutes(1);
+
+  /**
+   * The time after which an unused pool is removed from the cache.
+   */
+  public static final Duration CACHE_EXPIRY = Duration.ofMinutes(10);
+
+  private final MeterRegistry meterRegistry;
+  private final Cache<DataSourceKey, PooledDataSource> cache;
+
+  /**
+   * The key for a pool, the credentials are part of the key because a pool only has one set of credentials.
+   */
+  private record DataSourceKey(String url, String username, String password, int maxPoolSize) {
+
+    @Override
+    public String toString() {
+      return "DataSourceKey{url=" + url + ", username=" + username + ", maxPoolSize=" + maxPoolSize + "}";
+    }
+
+    /**
+     * Get a name for the pool that is the same every time a pool is created for this key.
+     * <P>
+     * The pool name is used as a tag on the pool metrics, so it must not change each time the pool is recreated.
+     * The name is logged and published, so it is allocated from a counter rather than derived from the key, which contains the password.
+     * @return a name for the pool that is unique to the key within this process.
+     */
+    String poolName() {
+      return POOL_NAMES.computeIfAbsent(this, k -> "QueryEngine-Jdbc-" + POOL_COUNTER.incrementAndGet());
+    }
+  }
+
+  private static final AtomicInteger POOL_COUNTER = new AtomicInteger();
+  private static final ConcurrentHashMap<DataSourceKey, String> POOL_NAMES = new ConcurrentHashMap<>();
+
+  /**
+   * A cached {@link HikariDataSource} along with the number of current leases on it.
+   */
+  public static final class PooledDataSource {
+
+    private final HikariDataSource dataSource;
+    private int leases;
+    private boolean retired;
+
+    private PooledDataSource(HikariDataSource dataSource, boolean cached) {
+      this.dataSource = dataSource;
+      // A pool that is not cached starts with the lease of its only user and is closed when that ends
+      this.leases = cached ? 0 : 1;
+      this.retired = !cached;
+    }
+
+    private synchronized boolean lease() {
+      if (retired) {
+        return false;
+      }
+      ++leases;
+      return true;
+    }
+
+    /**
+     * Get a connection from the pool.
+     * <P>
+     * This may block until a connection is available.
+     * The connection must be closed to return it to the pool.
+     *
+     * @return a connection from the pool.
+     * @throws SQLException if a connection cannot be obtained.
+     */
+    public Connection getConnection() throws SQLException {
+      return dataSource.getConnection();
+    }
+
+    /**
+     * End the lease on this pool, this must be called exactly once for each call to {@link DataSourceCreator#acquire}.
+     */
+    public void release() {
+      boolean close;
+      synchronized (this) {
+        --leases;
+        close = retired && leases == 0;
+      }
+      if (close) {
+        dataSource.close();
+      }
+    }
+
+    private void retire() {
+      boolean close;
+      synchronized (this) {
+        retired = true;
+        close = leases == 0;
+      }
+      if (close) {
+        logger.atDebug().log("Closing JDBC pool {}", dataSource.getPoolName());
+        dataSource.close();
+      }
+    }
+
+    /**
+     * Get the name of the underlying pool.
+     * @return the name of the underlying pool.
+     */
+    String getPoolName() {
+      return dataSource.getPoolName();
+    }
+
+    /**
+     * Return true if the underlying pool has been closed.
+     * @return true if the underlying pool has been closed.
+     */
+    public boolean isClosed() {
+      return dataSource.isClosed();
+    }
+  }
+
+  /**
+   * Constructor.
+   * @param meterRegistry MeterRegistry for production of metrics.
+   */
+  public DataSourceCreator(MeterRegistry meterRegistry) {
+    this.meterRegistry = meterRegistry;
+    cache = CacheBuilder.newBuilder()
+          .expireAfterAccess(CACHE_EXPIRY)
+          .maximumSize(100)
+          .recordStats()
+          .removalListener(notification -> {
+            logger.atDebug().log("Removing JDBC pool entry from cache");
+            ((PooledDataSource) notification.getValue()).retire();
+          })
+          .build();
+    if (meterRegistry != null) {
+      GuavaCacheMetrics.monitor(meterRegistry, cache, "jdbcpool");
+      meterRegistry.gauge("queryengine.cache.size"
+              , Arrays.asList(
+                      Tag.of("cachename", "jdbcpool")
+              )
+              , cache, c -> {
+        synchronized (c) {
+          return c.size();
+        }
+      });
+    }
+  }
+
+  private HikariDataSource createDataSource(DataSourceKey key) {
+    HikariDataSource ds = new HikariDataSource();
+    ds.setJdbcUrl(key.url());
+    ds.setUsername(key.username());
+    ds.setPassword(key.password());
+    ds.setMaximumPoolSize(key.maxPoolSize());
+    ds.setMinimumIdle(0);
+    ds.setIdleTimeout(IDLE_TIMEOUT.toMillis());
+    ds.setPoolName(key.poolName());
+    if (meterRegistry != null) {
+      ds.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+    }
+    return ds;
+  }
+
+  /**
+   * Lease the pool for the given URL and credentials, creating it if necessary.
+   * <P>
+   * The caller must call {@link PooledDataSource#release()} when it has finished with the pool.
+   *
+   * @param pipelineContext The context in which this {@link SourcePipeline} is being run.
+   * @param url The JDBC URL for the data source.
+   * @param username The username to use to connect to the data source.
+   * @param password The password to use to connect to the data source.
+   * @param maxPoolSize The maximum number of connections in the pool.
+   * @return The leased pool.
+   */
+  public PooledDataSource acquire(PipelineContext pipelineContext, String url, String username, String password, int maxPoolSize) {
+    DataSourceKey key = new DataSourceKey(url, username, password, maxPoolSize);
+    while (true) {
+      PooledDataSource pooled;
+      try {
+        pooled = cache.get(key, () -> {
+          Log.decorate(logger.atDebug(), pipelineContext).log("Creating new JDBC pool for {} as {}", url, username);
+          return new PooledDataSource(createDataSource(key), true);
+        });
+      } catch (ExecutionException ex) {
+        Log.decorate(logger.atError(), pipelineContext).log("Failed to get JDBC pool for {} from cache: ", url, ex);
+        return new PooledDataSource(createDataSource(key), false);
+      }
+      if (pooled.lease()) {
+        return pooled;
+      }
+      // The pool was removed from the cache between the get and the lease, the next get will create a new one
+    }
+  }
+
+  /**
+   * Remove all pools from the cache, each pool is closed once all of its leases have been released.
+   */
+  void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2026 jtalbut
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.spudsoft.query.exec.sources.jdbc;
+
+import java.sql.JDBCType;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Calendar;
+import java.util.TimeZone;
+import uk.co.spudsoft.query.defn.DataType;
+import uk.co.spudsoft.query.exec.DataRow;
+import uk.co.spudsoft.query.exec.Types;
+import uk.co.spudsoft.query.exec.context.PipelineContext;
+import uk.co.spudsoft.query.logging.Log;
+
+/**
+ * Copy the value of a single column from the current row of a {@link ResultSet} into the appropriate slot in a {@link DataRow}.
+ * <P>
+ * The extractors for a {@link ResultSet} are created once, when its metadata is available, so that converting each row does not need to
+ * look up column names or types.
+ * When the type of the column in the {@link Types} is the natural type for the JDBC type of the column the value is read using the typed getter
+ * (e.g. {@link ResultSet#getLong(int)}) and stored without boxing.
+ * Otherwise (e.g. when the type has been overridden) the value is read as an Object and converted with {@link DataType#cast(uk.co.spudsoft.query.exec.context.PipelineContext, java.lang.Object)}.
+ * <P>
+ * Extractors are not thread safe, the DateTime extractors share a single Calendar.
+ *
+ * @author jtalbut
+ */
+abstract class JdbcColumnExtractor {
+
+  /**
+   * The (one-based) index of the column in the ResultSet.
+   */
+  protected final int column;
+
+  /**
+   * The (zero-based) index of the slot in the DataRow.
+   */
+  protected final int slot;
+
+  private JdbcColumnExtractor(int column, int slot) {
+    this.column = column;
+    this.slot = slot;
+  }
+
+  /**
+   * Copy the value of the column from the current row of the ResultSet to the DataRow.
+   * @param rs The ResultSet, positioned on the row to be read.
+   * @param row The DataRow to set the value in.
+   * @throws SQLException if the value cannot be read from the ResultSet.
+   */
+  abstract void extract(ResultSet rs, DataRow row) throws SQLException;
+
+  /**
+   * Create the extractors for all the columns in a ResultSet.
+   * <P>
+   * All the columns must already have been added to the {@link Types}.
+   *
+   * @param pipelineContext The context in which this {@link uk.co.spudsoft.query.defn.SourcePipeline} is being run.
+   * @param log The Log to use for reporting values that cannot be converted.
+   * @param rsmeta The metadata for the ResultSet.
+   * @param types The Types for the rows that will be output.
+   * @return An array with one extractor for each column in the ResultSet.
+   * @throws SQLException if the metadata cannot be read.
+   */
+  static JdbcColumnExtractor[] create(PipelineContext pipelineContext, Log log, ResultSetMetaData rsmeta, Types types) throws SQLException {
+    Calendar utc = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
+    JdbcColumnExtractor[] extractors = new JdbcColumnExtractor[rsmeta.getColumnCount()];
+    for (int i = 0; i < extractors.length; ++i) {
+      int column = i + 1;
+      String name = rsmeta.getColumnLabel(column);
+      int slot = types.indexOf(name);
+      DataType type = types.getDefn(slot).type();
+      JDBCType jdbcType = JDBCType.valueOf(rsmeta.getColumnType(column));
+      extractors[i] = create(pipelineContext, log, name, column, slot, type, jdbcType, rsmeta.isSigned(column), utc);
+    }
+    return extractors;
+  }
+
+  /**
+   * Create the extractor for a single column.
+   *
+   * @param pipelineContext The context in which this {@link uk.co.spudsoft.query.defn.SourcePipeline} is being run.
+   * @param log The Log to use for reporting values that cannot be converted.
+   * @param name The name of the column.
+   * @param column The (one-based) index of the column in the ResultSet.
+   * @param slot The (zero-based) index of the slot in the DataRow.
+   * @param type The type of the column in the output.
+   * @param jdbcType The JDBC type of the column in the ResultSet.
+   * @param signed True if the column contains signed numbers.
+   * @param utc Calendar in the UTC time zone, used for reading timestamps.
+   * @return The extractor for the column.
+   */
+  static JdbcColumnExtractor create(PipelineContext pipelineContext, Log log, String name, int column, int slot, DataType type, JDBCType jdbcType, boolean signed, Calendar utc) {
+    switch (type) {
+      case Integer -> {
+        // Unsigned integers may not fit in an int, leave them to be converted as before
+        if (jdbcType == JDBCType.TINYINT || jdbcType == JDBCType.SMALLINT || (jdbcType == JDBCType.INTEGER && signed)) {
+          return new IntExtractor(column, slot);
+        }
+      }
+      case Long -> {
+        if (jdbcType == JDBCType.BIGINT && signed) {
+          return new LongExtractor(column, slot);
+        }
+      }
+      case Float -> {
+        if (jdbcType == JDBCType.FLOAT) {
+          return new FloatExtractor(column, slot);
+        }
+      }
+      case Double -> {
+        if (jdbcType == JDBCType.REAL || jdbcType == JDBCType.DOUBLE || jdbcType == JDBCType.NUMERIC || jdbcType == JDBCType.DECIMAL) {
+          return new DoubleExtractor(column, slot);
+        }
+      }
+      case Boolean -> {
+        if (jdbcType == JDBCType.BOOLEAN) {
+          return new BooleanExtractor(column, slot);
+        }
+      }
+      case String -> {
+        switch (jdbcType) {
+          case CHAR, VARCHAR, LONGVARCHAR, NCHAR, NVARCHAR, LONGNVARCHAR -> {
+            return new StringExtractor(column, slot);
+          }
+          default -> {
+          }
+        }
+      }
+      case DateTime -> {
+        return new DateTimeExtractor(column, slot, utc);
+      }
+      default -> {
+      }
+    }
+    return new CastExtractor(pipelineContext, log, name, column, slot, type);
+  }
+
+  private static final class IntExtractor extends JdbcColumnExtractor {
+
+    IntExtractor(int column, int slot) {
+      super(column, slot);
+    }
+
+    @Override
+    void extract(ResultSet rs, DataRow row) throws SQLException {
+      int value = rs.getInt(column);
+      if (rs.wasNull()) {
+        row.set(slot, null);
+      } else {
+        row.setInt(slot, value);
+      }
+    }
+  }
+
+  private static final class LongExtractor extends JdbcColumnExtractor {
+
+    LongExtractor(int column, int slot) {
+      super(column, slot);
+    }
+
+    @Override
+    void extract(ResultSet rs, DataRow row) throws SQLException {
+      long value = rs.getLong(column);
+      if (rs.wasNull()) {
+        row.set(slot, null);
+      } else {
+        row.setLong(slot, value);
+      }
+    }
+  }
+
+  private static final class FloatExtractor extends JdbcColumnExtractor {
+
+    FloatExtractor(int column, int slot) {
+      super(column, slot);
+    }
+
+    @Override
+    void extract(ResultSet rs, DataRow row) throws SQLException {
+      float value = rs.getFloat(column);
+      if (rs.wasNull()) {
+        row.set(slot, null);
+      } else {
+        row.setFloat(slot, value);
+      }
+    }
+  }
+
+  private static final class DoubleExtractor extends JdbcColumnExtractor {
+
+    DoubleExtractor(int column, int slot) {
+      super(column, slot);
+    }
+
+    @Override
+    void extract(ResultSet rs, DataRow row) throws SQLException {
+      double value = rs.getDouble(column);
+      if (rs.wasNull()) {
+        row.set(slot, null);
+      } else {
+        row.setDouble(slot, value);
+      }
+    }
+  }
+
+  private static final class BooleanExtractor extends JdbcColumnExtractor {
+
+    BooleanExtractor(int column, int slot) {
+      super(column, slot);
+    }
+
+    @Override
+    void extract(ResultSet rs, DataRow row) throws SQLException {
+      boolean value = rs.getBoolean(column);
+      if (rs.wasNull()) {
+        row.set(slot, null);
+      } else {
+        row.setBoolean(slot, value);
+      }
+    }
+  }
+
+  private static final class StringExtractor extends JdbcColumnExtractor {
+
+    StringExtractor(int column, int slot) {
+      super(column, slot);
+    }
+
+    @Override
+    void extract(ResultSet rs, DataRow row) throws SQLException {
+      row.set(slot, rs.getString(column));
+    }
+  }
+
+  private static final class DateTimeExtractor extends JdbcColumnExtractor {
+
+    private final Calendar utc;
+
+    DateTimeExtractor(int column, int slot, Calendar utc) {
+      super(column, slot);
+      this.utc = utc;
+    }
+
+    @Override
+    void extract(ResultSet rs, DataRow row) throws SQLException {
+      Timestamp value = rs.getTimestamp(column, utc);
+      row.set(slot, value == null ? null : LocalDateTime.ofInstant(value.toInstant(), ZoneOffset.UTC));
+    }
+  }
+
+  private static final class CastExtractor extends JdbcColumnExtractor {
+
+    private final PipelineContext pipelineContext;
+    private final Log log;
+    private final String name;
+    private final DataType type;
+
+    CastExtractor(PipelineContext pipelineContext, Log log, String name, int column, int slot, DataType type) {
+      super(column, slot);
+      this.pipelineContext = pipelineContext;
+      this.log = log;
+      this.name = name;
+      this.type = type;
+    }
+
+    @Override
+    void extract(ResultSet rs, DataRow row) throws SQLException {
+      Object value = rs.getObject(column);
+      try {
+        row.set(slot, type.cast(pipelineContext, value));
+      } catch (Throwable ex) {
+        log.warn().log("Failed to cast {} ({}) value ({}): ", name, column - 1, value, ex);
+      }
+    }
+  }
+
+}
@@ -24,19 +24,16 @@ import io.vertx.core.Handler;
 import io.vertx.core.Promise;
 import io.vertx.core.streams.ReadStream;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.JDBCType;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
-import java.util.ArrayDeque;
-import java.util.Calendar;
-import java.util.Deque;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.TimeZone;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.co.spudsoft.query.defn.DataType;
@@ -49,12 +46,20 @@ import uk.co.spudsoft.query.exec.ReadStreamWithTypes;
 import uk.co.spudsoft.query.exec.Types;
 import uk.co.spudsoft.query.exec.context.PipelineContext;
 import uk.co.spudsoft.query.exec.sources.sql.AbstractSqlPreparer;
+import uk.co.spudsoft.query.exec.sources.sql.SqlPushDown;
 import uk.co.spudsoft.query.logging.Log;
 
 /**
  * Processor for converting a JDBC {@link ResultSet} into a Vert.x {@link ReadStream}.
  *
- * The logic will attempt to keep between fetchSize/2 and fetchSize rows buffered at all times (until the rows run out).
+ * Rows are read on a separate (virtual) thread and passed to the Vert.x context in batches of processingBatchSize/{@value #BATCHES_PER_BUFFER} rows
+ * through a lock-free single-producer/single-consumer ring.
+ * The reader waits when processingBatchSize rows are buffered and is woken when the buffer drops to half that.
+ * <P>
+ * A partial batch is passed on whenever the ring is empty, so that rows from a slow query are not held back waiting for a batch to fill.
+ * <P>
+ * If the stream is {@link #cancel() cancelled} the running statement is cancelled, the reader stops and the stream is ended
+ * without passing on any more rows.
  *
  * @author jtalbut
  */
@@ -62,6 +67,11 @@ public class JdbcReadStream implements ReadStream<DataRow> {
 
   private static final Logger logger = LoggerFactory.getLogger(JdbcReadStream.class);
 
+  /**
+   * The number of batches that make up the processingBatchSize.
+   */
+  static final int BATCHES_PER_BUFFER = 8;
+
   private final Context context;
   private final Auditor auditor;
   private final String endpointName;
@@ -75,21 +85,27 @@ public class JdbcReadStream implements ReadStream<DataRow> {
   private final io.opentelemetry.context.Context telemetryContext;
 
   private Types types;
+  private JdbcColumnExtractor[] extractors;
+
+  private final int batchSize;
+  private final int lowWatermark;
+  private final SpscRing<List<DataRow>> batches;
+  private final AtomicBoolean processScheduled = new AtomicBoolean();
+  private volatile Thread reader;
+  private volatile boolean readerWaiting;
+  private volatile boolean completed;
+  private volatile boolean cancelled;
+  private volatile PreparedStatement activeStatement;
 
-  private final Deque<DataRow> items = new ArrayDeque<>();
-
-  private final ReentrantLock queueLock = new ReentrantLock();
-  private final Condition notFull = queueLock.newCondition();
-
+  // The remaining fields are only accessed on the Vert.x context
   private Handler<Throwable> exceptionHandler;
   private Handler<DataRow> handler;
   private Handler<Void> endHandler;
 
+  private List<DataRow> current;
+  private int currentIndex;
   private long demand;
-  private volatile boolean initialized;
-  private volatile boolean emitting;
-  private volatile boolean ended;
-  private volatile boolean completed;
+  private boolean ended;
   private long rowsOutput;
 
   /**
@@ -109,53 +125,61 @@ public class JdbcReadStream implements ReadStream<DataRow> {
     this.pipelineContext = pipelineContext;
     this.definition = definition;
     this.processingBatchSize = definition.getProcessingBatchSize();
+    this.batchSize = Math.max(1, processingBatchSize / BATCHES_PER_BUFFER);
+    int capacity = Math.max(2, (processingBatchSize + batchSize - 1) / batchSize);
+    this.batches = new SpscRing<>(capacity);
+    this.lowWatermark = capacity / 2;
     this.initPromise = initPromise;
     this.log = new Log(logger, pipelineContext);
     this.telemetryContext = io.opentelemetry.context.Context.current().with(pipelineContext.getSpan());
   }
 
   /**
-   * Start processing the {@link ResultSet} in a new thread.
+   * Start processing the {@link ResultSet} in a new virtual thread.
    *
    * @param name The name to assign to the new thread.
+   * @param dataSourceCreator The cache of connection pools to get a connection from.
    * @param dataSourceUrl The JDBC URL for the datasource.
    * @param credentials The credentials to use to connect to the data source.
    *    Two element array, the username and then the password.
+   * @param maxPoolSize The maximum number of connections in the pool for the data source.
    * @param sql The SQL statement to execute.
+   * @param pushDown The processing to push down into the SQL statement, may be null.
    * @param pipeline The {@link PipelineInstance} to use to obtain the arguments.
    */
   public void start(String name
+          , DataSourceCreator dataSourceCreator
           , String dataSourceUrl
           , String[] credentials
+          , int maxPoolSize
           , String sql
+          , SqlPushDown pushDown
           , PipelineInstance pipeline
   ) {
-    Thread thread = new Thread(() -> {
-      runOnThread(dataSourceUrl, credentials, sql, pipeline);
-    }, name);
-    thread.start();
+    Thread.ofVirtual().name(name).start(() -> {
+      runOnThread(dataSourceCreator, dataSourceUrl, credentials, maxPoolSize, sql, pushDown, pipeline);
+    });
   }
 
-  private void checkProcessing(String message) {
-    if (initialized) {
-      if (!emitting) {
-        log.trace().log(message);
-        emitting = true;
-        context.runOnContext(v -> process());
-      }
-    } else {
-      log.trace().log("Not initialized yet");
+  private void scheduleProcess(String message) {
+    if (processScheduled.compareAndSet(false, true)) {
+      log.trace().log(message);
+      context.runOnContext(v -> process());
     }
   }
 
   @SuppressFBWarnings("SQL_INJECTION_JDBC")
   private void runOnThread(
-          String dataSourceUrl
+          DataSourceCreator dataSourceCreator
+          , String dataSourceUrl
           , String[] credentials
+          , int maxPoolSize
           , String sql
+          , SqlPushDown pushDown
           , PipelineInstance pipeline
   ) throws RuntimeException {
 
+    DataSourceCreator.PooledDataSource dataSource = null;
     Connection connection = null;
     PreparedStatement statement = null;
     ResultSet rs = null;
@@ -167,7 +191,8 @@ public class JdbcReadStream implements ReadStream<DataRow> {
       log.trace().log("Current scope: {}", scope);
       try {
         log.debug().log("{}: Connecting to {}", (System.currentTimeMillis() - start) / 1000.0, dataSourceUrl);
-        connection = DriverManager.getConnection(dataSourceUrl, credentials[0], credentials[1]);
+        dataSource = dataSourceCreator.acquire(pipelineContext, dataSourceUrl, credentials[0], credentials[1], maxPoolSize);
+        connection = dataSource.getConnection();
       } catch (Throwable ex) {
         log.warn().log("{}: Failed to connect to {} for {}: ", (System.currentTimeMillis() - start) / 1000.0, dataSourceUrl, credentials[0], ex);
         context.runOnContext(v -> {
@@ -179,7 +204,8 @@ public class JdbcReadStream implements ReadStream<DataRow> {
       String preparedSql = null;
       try {
         AbstractSqlPreparer preparer = new JdbcSqlPreparer(pipelineContext, connection);
-        AbstractSqlPreparer.QueryAndArgs queryAndArgs = preparer.prepareSqlStatement(sql, definition.getReplaceDoubleQuotes(), pipeline.getArgumentInstances());
+        AbstractSqlPreparer.QueryAndArgs prepared = preparer.prepareSqlStatement(sql, definition.getReplaceDoubleQuotes(), pipeline.getArgumentInstances());
+        AbstractSqlPreparer.QueryAndArgs queryAndArgs = preparer.applyPushDown(prepared, pushDown, definition.getColumnTypeOverrideMap());
         preparedSql = queryAndArgs.query();
 
         try {
@@ -191,6 +217,7 @@ public class JdbcReadStream implements ReadStream<DataRow> {
           throw new RuntimeException("Failed to prepare statement for (" + sql + "): ", ex);
         }
 
+        activeStatement = statement;
         if (queryAndArgs.args() != null) {
           for (int i = 0; i < queryAndArgs.args().size(); ++i) {
             statement.setObject(i + 1, queryAndArgs.args().get(i));
@@ -231,6 +258,7 @@ public class JdbcReadStream implements ReadStream<DataRow> {
           }
           types.putIfAbsent(name, type);
         }
+        extractors = JdbcColumnExtractor.create(pipelineContext, log, rsmeta, types);
       } catch (Throwable ex) {
         log.warn().log("{}: Failed to execute statement: ", (System.currentTimeMillis() - start) / 1000.0, ex);
         context.runOnContext(v -> {
@@ -244,8 +272,9 @@ public class JdbcReadStream implements ReadStream<DataRow> {
       });
 
       log.debug().log("{}: Processing results", (System.currentTimeMillis() - start) / 1000.0);
-      resultSetWalk(rs, rsmeta);
+      resultSetWalk(rs);
     } finally {
+      activeStatement = null;
       if (statement != null) {
         try {
           statement.close();
@@ -267,6 +296,9 @@ public class JdbcReadStream implements ReadStream<DataRow> {
           log.warn().log("Exception closing Connection: ", ex);
         }
       }
+      if (dataSource != null) {
+        dataSource.release();
+      }
     }
   }
 
@@ -284,80 +316,73 @@ public class JdbcReadStream implements ReadStream<DataRow> {
     }
   }
 
-  @SuppressFBWarnings(value = "UL_UNRELEASED_LOCK_EXCEPTION_PATH", justification = "False positive, which is a shame because it's a useful test")
-  private void resultSetWalk(ResultSet rs, ResultSetMetaData rsmeta) {
+  private void resultSetWalk(ResultSet rs) {
 
+    reader = Thread.currentThread();
     long rows = 0;
+    List<DataRow> batch = new ArrayList<>(batchSize);
     try {
-      while (rs.next()) {
-        DataRow row = dataRowFromResult(rsmeta, rs);
+      while (!cancelled && rs.next()) {
+        batch.add(dataRowFromResult(rs));
         if (report(rows)) {
           log.debug().log("Received {} rows", rows);
         }
         ++rows;
 
-        log.trace().log("resultSetWalker: Taking out queue lock for results walker");
-        queueLock.lock();
-        try {
-          items.add(row);
-          while (items.size() > processingBatchSize) {
-            log.trace().log("resultSetWalker: Waiting until notFull ({} > {})", items.size(), processingBatchSize);
-            notFull.await();
-            log.trace().log("resultSetWalker: notFull ({} > {})", items.size(), processingBatchSize);
-          }
-          checkProcessing("resultSetWalker: starting process");
-        } finally {
-          log.trace().log("resultSetWalker: Releasing queue lock from results walker");
-          queueLock.unlock();
+        if (batch.size() >= batchSize || batches.isEmpty()) {
+          handOff(batch);
+          batch = new ArrayList<>(batchSize);
         }
       }
     } catch (Throwable ex) {
-      log.error().log("resultSetWalker: Failed to process resultset: ", ex);
+      if (cancelled) {
+        log.debug().log("resultSetWalker: Statement cancelled: {}", ex.getMessage());
+      } else {
+        log.error().log("resultSetWalker: Failed to process resultset: ", ex);
+      }
     } finally {
       log.trace().log("resultSetWalker: Finished iterating rows");
+      if (!batch.isEmpty() && !cancelled) {
+        handOff(batch);
+      }
       complete();
     }
   }
 
-  private DataRow dataRowFromResult(ResultSetMetaData rsmeta, ResultSet rs) throws SQLException {
-    DataRow row = DataRow.create(types);
-    for (int i = 0; i < rsmeta.getColumnCount(); ++i) {
-      String name = rsmeta.getColumnLabel(i + 1);
-
-      DataType type = types.get(name);
-      Object value;
-      if  (type == DataType.DateTime) {
-        Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
-        value = rs.getTimestamp(i + 1, cal);
-      } else {
-        value = rs.getObject(i + 1);
-      }
-      try {
-        Comparable<?> typedValue = type.cast(pipelineContext, value);
-        row.put(name, typedValue);
-      } catch (Throwable ex) {
-        log.warn().log("Failed to cast {} ({}) value ({}): ", name, i, value, ex);
+  /**
+   * Add a batch to the ring, waiting until there is space for it.
+   * <P>
+   * Called on the reader thread.
+   *
+   * @param batch The batch of rows to pass to the Vert.x context.
+   */
+  private void handOff(List<DataRow> batch) {
+    while (!cancelled && !batches.offer(batch)) {
+      readerWaiting = true;
+      // Check again after setting the flag, the consumer may have drained the ring before seeing it
+      if (batches.size() >= batches.capacity()) {
+        log.trace().log("resultSetWalker: Waiting for buffer to drain");
+        LockSupport.park(this);
       }
+      readerWaiting = false;
+    }
+    scheduleProcess("resultSetWalker: starting process");
+  }
+
+  private DataRow dataRowFromResult(ResultSet rs) throws SQLException {
+    DataRow row = DataRow.create(types);
+    for (JdbcColumnExtractor extractor : extractors) {
+      extractor.extract(rs, row);
     }
     return row;
   }
 
   /**
    * Mark that no more items will be added.
-   * @return this, so that this method may be used in a fluent manner.
    */
-  private JdbcReadStream complete() {
-    queueLock.lock();
-    try {
-      this.completed = true;
-    } finally {
-      queueLock.unlock();
-    }
-    if (initialized) {
-      log.trace().log("Completed with buffer of {}", items.size());
-    }
-    checkProcessing("Completed");
-    return this;
+  private void complete() {
+    this.completed = true;
+    scheduleProcess("Completed");
   }
 
   static boolean report(long rows) {
@@ -372,132 +397,149 @@ public class JdbcReadStream implements ReadStream<DataRow> {
     }
   }
 
-  @SuppressFBWarnings(value = "UL_UNRELEASED_LOCK_EXCEPTION_PATH", justification = "False positive, which is a shame because it's a useful test")
   private void process() {
-    Handler<Void> endHandlerCaptured = null;
-    log.trace().log("Starting to process {} {} ({}) {} {}", ended, emitting, completed, demand, items.size());
-    long rows = 0;
-    boolean done = false;
-    while (!ended && emitting) {
-      Handler<Throwable> exceptionHandlerCaptured;
-      Handler<DataRow> handlerCaptured = null;
-      DataRow item = null;
-
-      log.trace().log("Taking out queue lock for stream processor");
-      queueLock.lock();
-      try {
-        if (demand <= 0) {
-          log.trace().log("Stop emitting, demand ({}) < 0", demand);
-          emitting = false;
-          break ;
-        } else if (demand < Long.MAX_VALUE) {
-          --demand;
-        }
-        exceptionHandlerCaptured = exceptionHandler;
-        if (!items.isEmpty()) {
-          item =  items.pop();
-          rows = ++rowsOutput;
-          handlerCaptured = handler;
-          if (items.size() < processingBatchSize / 2) {
-            log.trace().log("Signalling notFull");
-            notFull.signal();
+    log.trace().log("Starting to process {} ({}) {} {}", ended, completed, demand, batches.size());
+    while (true) {
+      emit();
+      processScheduled.set(false);
+      // The reader does not schedule processing whilst it is already scheduled, so check for anything that arrived since emit stopped
+      if (ended || demand <= 0 || (batches.isEmpty() && !completed) || !processScheduled.compareAndSet(false, true)) {
+        return;
+      }
+    }
+  }
+
+  private void emit() {
+    while (!ended && demand > 0) {
+      if (current == null) {
+        boolean wasCompleted = completed;
+        current = batches.poll();
+        currentIndex = 0;
+        if (current == null) {
+          if (wasCompleted) {
+            end();
           } else {
-            log.trace().log("Not signalling - buffer too full {} > {}", items.size(), processingBatchSize / 2);
+            log.trace().log("Stop emitting, no items");
           }
-        } else {
-          log.trace().log("Stop emitting, no items");
-          emitting = false;
-          done = completed;
-          notFull.signal();
+          return;
+        }
+        if (readerWaiting && batches.size() <= lowWatermark) {
+          log.trace().log("Signalling reader");
+          LockSupport.unpark(reader);
         }
-      } finally {
-        log.trace().log("Releasing queue lock from stream processor");
-        queueLock.unlock();
       }
-      if (item != null && handlerCaptured != null) {
+
+      DataRow item = current.set(currentIndex++, null);
+      if (currentIndex >= current.size()) {
+        current = null;
+      }
+      if (demand < Long.MAX_VALUE) {
+        --demand;
+      }
+      long rows = ++rowsOutput;
+      Handler<DataRow> handlerCaptured = handler;
+      if (handlerCaptured != null) {
         try {
           log.trace().log("Handling {}", item);
           handlerCaptured.handle(item);
         } catch (Throwable ex) {
+          Handler<Throwable> exceptionHandlerCaptured = exceptionHandler;
           if (exceptionHandlerCaptured != null) {
             exceptionHandlerCaptured.handle(ex);
           } else {
-            log.warn().log("Exception handling item in QueueReadStream: ", ex);
+            log.warn().log("Exception handling item in JdbcReadStream: ", ex);
           }
         }
         if (report(rows)) {
           log.debug().log("Passed on {} rows", rows);
         }
-        ++rows;
       }
     }
-    if (done && !ended) {
-      endHandlerCaptured = endHandler;
-      if (endHandlerCaptured != null) {
-        log.trace().log("Calling endHandler");
-        endHandlerCaptured.handle(null);
-      } else {
-        log.trace().log("No endHandler");
-      }
+    if (demand <= 0) {
+      log.trace().log("Stop emitting, demand ({}) <= 0", demand);
+    }
+  }
+
+  private void end() {
+    ended = true;
+    Handler<Void> endHandlerCaptured = endHandler;
+    if (endHandlerCaptured != null) {
+      log.trace().log("Calling endHandler");
+      endHandlerCaptured.handle(null);
+    } else {
+      log.trace().log("No endHandler");
+    }
+  }
+
+  /**
+   * Stop reading rows because nothing downstream needs any more of them.
+   * <P>
+   * Any rows that have been read but not yet passed on are discarded and the stream is ended immediately.
+   * The running statement is cancelled so that the database stops producing rows, and the reader thread closes the
+   * JDBC objects and releases the connection as soon as it notices.
+   * <P>
+   * Must be called on the Vert.x context.
+   */
+  public void cancel() {
+    if (cancelled) {
+      return;
+    }
+    cancelled = true;
+    log.debug().log("Cancelling after {} rows", rowsOutput);
+    PreparedStatement statement = activeStatement;
+    if (statement != null && !completed) {
+      // Statement#cancel may have to talk to the database, so it must not be called on the Vert.x context
+      Thread.ofVirtual().start(() -> {
+        try {
+          statement.cancel();
+        } catch (Throwable ex) {
+          log.debug().log("Failed to cancel statement: {}", ex.getMessage());
+        }
+      });
+    }
+    Thread readerCaptured = reader;
+    if (readerCaptured != null) {
+      LockSupport.unpark(readerCaptured);
+    }
+    current = null;
+    while (batches.poll() != null) {
+      // Discard anything buffered
+    }
+    if (!ended) {
+      end();
     }
   }
 
   @Override
   public JdbcReadStream exceptionHandler(Handler<Throwable> handler) {
-    queueLock.lock();
-    try {
-      this.exceptionHandler = handler;
-    } finally {
-      queueLock.unlock();
-    }
+    this.exceptionHandler = handler;
     return this;
   }
 
   @Override
   public JdbcReadStream handler(Handler<DataRow> handler) {
-    queueLock.lock();
-    try {
-      this.handler = handler;
-    } finally {
-      queueLock.unlock();
-    }
+    this.handler = handler;
     return this;
   }
 
   @Override
   public JdbcReadStream endHandler(Handler<Void> endHandler) {
-    queueLock.lock();
-    try {
-      this.endHandler = endHandler;
-    } finally {
-      queueLock.unlock();
-    }
+    this.endHandler = endHandler;
     return this;
   }
 
   @Override
   public JdbcReadStream pause() {
     log.trace().log("pause()");
-    queueLock.lock();
-    try {
-      demand = 0;
-    } finally {
-      queueLock.unlock();
-    }
+    demand = 0;
     return this;
   }
 
   @Override
   public JdbcReadStream resume() {
     log.trace().log("resume()");
-    queueLock.lock();
-    try {
-      initialized = true;
-      demand = Long.MAX_VALUE;
-    } finally {
-      queueLock.unlock();
-    }
-    checkProcessing("Resume");
+    demand = Long.MAX_VALUE;
+    scheduleProcess("Resume");
     return this;
   }
 
@@ -507,17 +549,11 @@ public class JdbcReadStream implements ReadStream<DataRow> {
       throw new IllegalArgumentException("Negative fetch amount");
     }
     log.trace().log("fetch({})", amount);
-    queueLock.lock();
-    try {
-      initialized = true;
-      demand += amount;
-      if (demand < 0L) {
-        demand = Long.MAX_VALUE;
-      }
-    } finally {
-      queueLock.unlock();
+    demand += amount;
+    if (demand < 0L) {
+      demand = Long.MAX_VALUE;
     }
-    checkProcessing("Fetch");
+    scheduleProcess("Fetch");
     return this;
   }
 }
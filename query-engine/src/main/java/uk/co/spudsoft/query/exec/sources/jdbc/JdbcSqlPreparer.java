@@ -41,6 +41,7 @@ public class JdbcSqlPreparer extends AbstractSqlPreparer {
   private final Connection conn;
   private final Log log;
   private String quoteCharacter;
+  private String productName;
   
   
   /**
@@ -77,5 +78,55 @@ public class JdbcSqlPreparer extends AbstractSqlPreparer {
     }
     return quoteCharacter;
   }
+
+  @Override
+  protected void appendOffsetAndLimit(StringBuilder builder, long offset, Long limit) {
+    if (isMySql()) {
+      appendMySqlLimitAndOffset(builder, offset, limit);
+    } else {
+      super.appendOffsetAndLimit(builder, offset, limit);
+    }
+  }
+
+  @Override
+  protected void appendNullOrdering(StringBuilder builder, boolean descending) {
+    // MySQL and SQL Server sort nulls before all other values (which matches Query Engine) and do not support NULLS FIRST/LAST
+    if (!isMySql() && !isSqlServer()) {
+      super.appendNullOrdering(builder, descending);
+    }
+  }
+
+  @Override
+  protected String prepareDerivedTable(String query) {
+    if (isSqlServer()) {
+      return appendOffsetToOrderedQuery(query);
+    } else {
+      return query;
+    }
+  }
+
+  private String getProductName() {
+    if (productName == null) {
+      productName = "";
+      try {
+        String product = conn.getMetaData().getDatabaseProductName();
+        if (product != null) {
+          productName = product;
+        }
+      } catch (Throwable ex) {
+        log.warn().log("Failed to capture database product name: ", ex);
+      }
+    }
+    return productName;
+  }
+
+  private boolean isMySql() {
+    String product = getProductName();
+    return product.contains("MySQL") || product.contains("MariaDB");
+  }
+
+  private boolean isSqlServer() {
+    return getProductName().contains("Microsoft SQL Server");
+  }
   
 }
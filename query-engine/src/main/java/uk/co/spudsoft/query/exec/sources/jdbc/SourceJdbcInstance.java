@@ -22,8 +22,10 @@ import io.micrometer.core.instrument.MeterRegistry;
 import io.vertx.core.Future;
 import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
+import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import uk.co.spudsoft.query.defn.DataType;
 import uk.co.spudsoft.query.defn.Endpoint;
 import uk.co.spudsoft.query.defn.SourceJdbc;
 import uk.co.spudsoft.query.defn.SourcePipeline;
@@ -32,11 +34,14 @@ import uk.co.spudsoft.query.exec.Auditor;
 import uk.co.spudsoft.query.exec.PipelineExecutor;
 import uk.co.spudsoft.query.exec.PipelineInstance;
 import uk.co.spudsoft.query.exec.ReadStreamWithTypes;
+import uk.co.spudsoft.query.exec.SharedMap;
 import uk.co.spudsoft.query.exec.conditions.ConditionInstance;
 import uk.co.spudsoft.query.exec.dynamic.JexlEvaluator;
 import uk.co.spudsoft.query.exec.context.PipelineContext;
 import uk.co.spudsoft.query.exec.context.RequestContext;
 import uk.co.spudsoft.query.exec.sources.AbstractSource;
+import uk.co.spudsoft.query.exec.sources.sql.SqlPushDown;
+import uk.co.spudsoft.query.exec.sources.sql.SqlPushDownTarget;
 import uk.co.spudsoft.query.logging.Log;
 import uk.co.spudsoft.query.main.ProtectedCredentials;
 import uk.co.spudsoft.query.web.ServiceException;
@@ -48,14 +53,16 @@ import uk.co.spudsoft.query.web.ServiceException;
  *
  * @author jtalbut
  */
-public class SourceJdbcInstance extends AbstractSource {
+public class SourceJdbcInstance extends AbstractSource implements SqlPushDownTarget {
 
   @SuppressWarnings("constantname")
   private static final Logger logger = LoggerFactory.getLogger(SourceJdbcInstance.class);
 
+  private final DataSourceCreator dataSourceCreator;
   private final SourceJdbc definition;
 
   private JdbcReadStream jdbcReadStream;
+  private SqlPushDown pushDown;
 
   private final Log log;
 
@@ -66,15 +73,40 @@ public class SourceJdbcInstance extends AbstractSource {
    * @param meterRegistry MeterRegistry for production of metrics.
    * @param auditor The auditor that the source should use for recording details of the data accessed.
    * @param pipelineContext The context in which this {@link SourcePipeline} is being run.
+   * @param sharedMap Pooling map.
    * @param definition The {@link SourceSql} definition.
    */
   @SuppressFBWarnings(value = "EI_EXPOSE_REP2", justification = "The requestContext should not be modified by this class")
-  public SourceJdbcInstance(Vertx vertx, MeterRegistry meterRegistry, Auditor auditor, PipelineContext pipelineContext, SourceJdbc definition) {
+  public SourceJdbcInstance(Vertx vertx, MeterRegistry meterRegistry, Auditor auditor, PipelineContext pipelineContext, SharedMap sharedMap, SourceJdbc definition) {
     super(vertx, meterRegistry, auditor, pipelineContext);
+
+    this.dataSourceCreator = (DataSourceCreator) sharedMap.computeIfAbsent(DataSourceCreator.class.toString(), k -> new DataSourceCreator(meterRegistry));
     this.definition = definition;
     this.log = new Log(logger, pipelineContext);
   }
 
+  @Override
+  public boolean isPushDownEnabled() {
+    return definition.isPushDownEnabled();
+  }
+
+  @Override
+  public Map<String, DataType> getColumnTypeOverrideMap() {
+    return definition.getColumnTypeOverrideMap();
+  }
+
+  @Override
+  public void setPushDown(SqlPushDown pushDown) {
+    this.pushDown = pushDown;
+  }
+
+  @Override
+  public void cancel() {
+    if (jdbcReadStream != null) {
+      jdbcReadStream.cancel();
+    }
+  }
+
   @Override
   public Future<ReadStreamWithTypes> initialize(PipelineExecutor executor, PipelineInstance pipeline) {
 
@@ -132,11 +164,12 @@ public class SourceJdbcInstance extends AbstractSource {
       return Future.failedFuture(ex);
     }
 
-    return runInitialization(endpointName, finalUrl, credentials, finalQuery, pipeline);
+    int maxPoolSize = endpoint.getMaxPoolSize() == null ? DataSourceCreator.DEFAULT_MAX_POOL_SIZE : endpoint.getMaxPoolSize();
+    return runInitialization(endpointName, finalUrl, credentials, maxPoolSize, finalQuery, pipeline);
   }
 
   @SuppressFBWarnings(value = {"OBL_UNSATISFIED_OBLIGATION", "ODR_OPEN_DATABASE_RESOURCE", "SQL_INJECTION_JDBC"}, justification = "JDBC objects must be closed by JdbcReadStream")
-  private Future<ReadStreamWithTypes> runInitialization(String endpointName, String finalUrl, String[] credentials, String finalQuery, PipelineInstance pipeline) throws RuntimeException {
+  private Future<ReadStreamWithTypes> runInitialization(String endpointName, String finalUrl, String[] credentials, int maxPoolSize, String finalQuery, PipelineInstance pipeline) throws RuntimeException {
 
     Promise<ReadStreamWithTypes> result = Promise.promise();
 
@@ -145,7 +178,7 @@ public class SourceJdbcInstance extends AbstractSource {
       log.error().log("Exception occurred in stream: ", ex);
     });
 
-    jdbcReadStream.start(pipelineContext.getRequestContext().getRequestId() + " " + pipelineContext.getPipe(), finalUrl, credentials, finalQuery, pipeline);
+    jdbcReadStream.start(pipelineContext.getRequestContext().getRequestId() + " " + pipelineContext.getPipe(), dataSourceCreator, finalUrl, credentials, maxPoolSize, finalQuery, pushDown, pipeline);
 
     return result.future();
   }
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2026 jtalbut
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.spudsoft.query.exec.sources.jdbc;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded, lock-free, single-producer/single-consumer queue.
+ * <P>
+ * {@link #offer(java.lang.Object)} must only ever be called from one thread and {@link #poll()} must only ever be called from one thread
+ * (which may be a different thread each time, so long as calls do not overlap, as is the case for a Vert.x context).
+ * <P>
+ * Neither method blocks, it is up to the caller to decide what to do when the ring is full or empty.
+ * <P>
+ * The head and tail positions are accessed with volatile semantics (rather than acquire/release) so that callers can safely combine
+ * {@link #size()} with their own volatile flags to decide when to park and unpark the producer.
+ *
+ * @param <T> The type of item in the ring.
+ * @author jtalbut
+ */
+final class SpscRing<T> {
+
+  private final AtomicReferenceArray<T> slots;
+  private final int capacity;
+
+  /**
+   * The position of the next item to be polled, only modified by the consumer.
+   */
+  private final AtomicLong head = new AtomicLong();
+
+  /**
+   * The position of the next item to be offered, only modified by the producer.
+   */
+  private final AtomicLong tail = new AtomicLong();
+
+  /**
+   * Constructor.
+   * @param capacity The maximum number of items in the ring, must be at least 1.
+   */
+  SpscRing(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Ring capacity must be at least 1");
+    }
+    this.capacity = capacity;
+    this.slots = new AtomicReferenceArray<>(capacity);
+  }
+
+  /**
+   * Get the maximum number of items in the ring.
+   * @return the maximum number of items in the ring.
+   */
+  int capacity() {
+    return capacity;
+  }
+
+  /**
+   * Add an item to the ring, if there is space.
+   * @param item The item to add, must not be null.
+   * @return true if the item was added, false if the ring is full.
+   */
+  boolean offer(T item) {
+    long t = tail.get();
+    if (t - head.get() >= capacity) {
+      return false;
+    }
+    slots.lazySet((int) (t % capacity), item);
+    tail.set(t + 1);
+    return true;
+  }
+
+  /**
+   * Remove the oldest item from the ring.
+   * @return the oldest item in the ring, or null if the ring is empty.
+   */
+  T poll() {
+    long h = head.get();
+    if (h >= tail.get()) {
+      return null;
+    }
+    int index = (int) (h % capacity);
+    T item = slots.get(index);
+    slots.lazySet(index, null);
+    head.set(h + 1);
+    return item;
+  }
+
+  /**
+   * Get the number of items in the ring.
+   * <P>
+   * When called from any thread other than the producer or consumer this is only an estimate.
+   *
+   * @return the number of items in the ring.
+   */
+  int size() {
+    long h = head.get();
+    long t = tail.get();
+    return (int) Math.max(0, Math.min(capacity, t - h));
+  }
+
+  /**
+   * Return true if there are no items in the ring.
+   * @return true if there are no items in the ring.
+   */
+  boolean isEmpty() {
+    return size() == 0;
+  }
+
+}
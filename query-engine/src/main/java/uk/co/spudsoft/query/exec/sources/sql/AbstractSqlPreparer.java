@@ -23,12 +23,14 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.co.spudsoft.query.defn.Argument;
+import uk.co.spudsoft.query.defn.DataType;
 import uk.co.spudsoft.query.defn.SourcePipeline;
 import uk.co.spudsoft.query.exec.ArgumentInstance;
 import uk.co.spudsoft.query.exec.context.PipelineContext;
@@ -47,6 +49,9 @@ public abstract class AbstractSqlPreparer {
   @SuppressWarnings("constantname")
   private static final Logger logger = LoggerFactory.getLogger(AbstractSqlPreparer.class);
 
+  private static final Pattern UNQUOTED_IDENTIFIER = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+  private final PipelineContext pipelineContext;
   private final Log log;
 
   /**
@@ -54,6 +59,7 @@ public abstract class AbstractSqlPreparer {
    * @param pipelineContext The context in which this {@link SourcePipeline} is being run.
    */
   public AbstractSqlPreparer(PipelineContext pipelineContext) {
+    this.pipelineContext = pipelineContext;
     this.log = new Log(logger, pipelineContext);
   }
 
@@ -173,6 +179,226 @@ public abstract class AbstractSqlPreparer {
     return new QueryAndArgs(sql, Collections.unmodifiableList(args));
   }
 
+  /**
+   * Append a quoted identifier to the SQL statement.
+   * <P>
+   * Any quote characters in the name are doubled.
+   * If the driver does not support quoted identifiers the name must be a simple identifier and is appended as is.
+   *
+   * @param builder The StringBuilder containing the resulting SQL statement.
+   * @param name The name of the identifier.
+   * @throws IllegalArgumentException if the name cannot be used as an identifier.
+   */
+  protected void appendIdentifier(StringBuilder builder, String name) throws IllegalArgumentException {
+    String quote = getQuoteCharacter();
+    if (quote == null || quote.isBlank()) {
+      if (!UNQUOTED_IDENTIFIER.matcher(name).matches()) {
+        throw new IllegalArgumentException("The field \"" + name + "\" cannot be used in a SQL statement");
+      }
+      builder.append(name);
+    } else {
+      builder.append(quote).append(name.replace(quote, quote + quote)).append(quote);
+    }
+  }
+
+  /**
+   * Append the clauses to skip offset rows and return at most limit rows to the SQL statement.
+   * <P>
+   * The default implementation uses the SQL:2008 OFFSET ... FETCH syntax, which requires the statement to have an ORDER BY clause
+   * on some platforms (including SQL Server).
+   *
+   * @param builder The StringBuilder containing the resulting SQL statement.
+   * @param offset The number of rows to skip.
+   * @param limit The maximum number of rows to return, or null if there is no limit.
+   */
+  protected void appendOffsetAndLimit(StringBuilder builder, long offset, Long limit) {
+    builder.append(" OFFSET ").append(offset).append(" ROWS");
+    if (limit != null) {
+      builder.append(" FETCH NEXT ").append(limit).append(" ROWS ONLY");
+    }
+  }
+
+  /**
+   * Append the clauses to skip offset rows and return at most limit rows to the SQL statement using the MySQL LIMIT ... OFFSET syntax.
+   * <P>
+   * MySQL does not permit an OFFSET without a LIMIT, so in that case the limit is the largest value that MySQL accepts.
+   *
+   * @param builder The StringBuilder containing the resulting SQL statement.
+   * @param offset The number of rows to skip.
+   * @param limit The maximum number of rows to return, or null if there is no limit.
+   */
+  protected static void appendMySqlLimitAndOffset(StringBuilder builder, long offset, Long limit) {
+    builder.append(" LIMIT ").append(limit == null ? "18446744073709551615" : limit.toString());
+    if (offset > 0) {
+      builder.append(" OFFSET ").append(offset);
+    }
+  }
+
+  /**
+   * Append the ordering of nulls for a field in a pushed down sort.
+   * <P>
+   * Query Engine sorts nulls before all other values, so they come first in an ascending sort and last in a descending sort.
+   * The default implementation uses the NULLS FIRST/NULLS LAST syntax to get the same order from the database.
+   *
+   * @param builder The StringBuilder containing the resulting SQL statement.
+   * @param descending True if the field is being sorted in descending order.
+   */
+  protected void appendNullOrdering(StringBuilder builder, boolean descending) {
+    builder.append(descending ? " NULLS LAST" : " NULLS FIRST");
+  }
+
+  /**
+   * Make any changes to a query that are required for it to be used as a derived table.
+   * <P>
+   * The default implementation returns the query unchanged.
+   *
+   * @param query The query, without any trailing semicolons.
+   * @return The query to use as a derived table.
+   */
+  protected String prepareDerivedTable(String query) {
+    return query;
+  }
+
+  /**
+   * Make a SQL Server query that ends with an ORDER BY clause valid as a derived table.
+   * <P>
+   * SQL Server does not permit an ORDER BY clause in a derived table unless TOP or OFFSET is also specified,
+   * so if the query has a top level ORDER BY without either of them "OFFSET 0 ROWS" is appended.
+   * The order of the rows from the derived table is still undefined, only a pushed down sort determines the order of the results.
+   * <P>
+   * Strings, quoted identifiers, comments and anything in brackets are ignored when looking for the clauses.
+   *
+   * @param query The query, without any trailing semicolons.
+   * @return The query to use as a derived table.
+   */
+  protected static String appendOffsetToOrderedQuery(String query) {
+    List<String> words = topLevelWords(query);
+    int orderBy = -1;
+    for (int i = 0; i + 1 < words.size(); ++i) {
+      if ("ORDER".equals(words.get(i)) && "BY".equals(words.get(i + 1))) {
+        orderBy = i;
+      }
+    }
+    if (orderBy < 0 || words.subList(orderBy, words.size()).contains("OFFSET")) {
+      return query;
+    }
+    int select = words.indexOf("SELECT");
+    if (select >= 0 && select + 1 < words.size()) {
+      String next = words.get(select + 1);
+      if ("TOP".equals(next) || (("DISTINCT".equals(next) || "ALL".equals(next)) && select + 2 < words.size() && "TOP".equals(words.get(select + 2)))) {
+        return query;
+      }
+    }
+    // On a new line in case the query ends with a comment
+    return query + "\nOFFSET 0 ROWS";
+  }
+
+  /**
+   * Extract the words (in upper case) that are not within brackets, strings, quoted identifiers or comments in a SQL statement.
+   * @param sql The SQL statement.
+   * @return The words that are not within brackets, strings, quoted identifiers or comments in a SQL statement.
+   */
+  static List<String> topLevelWords(String sql) {
+    List<String> words = new ArrayList<>();
+    int depth = 0;
+    int i = 0;
+    int length = sql.length();
+    while (i < length) {
+      char c = sql.charAt(i);
+      if (c == '\'' || c == '"') {
+        int end = sql.indexOf(c, i + 1);
+        i = end < 0 ? length : end + 1;
+      } else if (c == '[') {
+        int end = sql.indexOf(']', i + 1);
+        i = end < 0 ? length : end + 1;
+      } else if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+        int end = sql.indexOf('\n', i + 2);
+        i = end < 0 ? length : end + 1;
+      } else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+        int end = sql.indexOf("*/", i + 2);
+        i = end < 0 ? length : end + 2;
+      } else if (c == '(') {
+        ++depth;
+        ++i;
+      } else if (c == ')') {
+        --depth;
+        ++i;
+      } else if (Character.isLetterOrDigit(c) || c == '_' || c == '@' || c == '#' || c == '$') {
+        int start = i;
+        while (i < length && (Character.isLetterOrDigit(sql.charAt(i)) || "_@#$".indexOf(sql.charAt(i)) >= 0)) {
+          ++i;
+        }
+        if (depth == 0) {
+          words.add(sql.substring(start, i).toUpperCase(Locale.ROOT));
+        }
+      } else {
+        ++i;
+      }
+    }
+    return words;
+  }
+
+  /**
+   * Wrap a prepared SQL statement with the processing that has been pushed down from the pipeline.
+   * <P>
+   * The statement is used as a derived table in a SELECT with WHERE, ORDER BY and offset/limit clauses as required.
+   * Any changes required for the statement to be valid as a derived table are made by {@link #prepareDerivedTable(java.lang.String)}
+   * and the ordering of nulls in the ORDER BY clause is set by {@link #appendNullOrdering(java.lang.StringBuilder, boolean)}.
+   * The arguments of any RSQL comparisons are appended to the arguments of the statement, so the numbering of existing parameters is unaffected.
+   *
+   * @param prepared The result of calling {@link #prepareSqlStatement(java.lang.String, java.lang.Boolean, com.google.common.collect.ImmutableMap)}.
+   * @param pushDown The processing to push down, may be null.
+   * @param columnTypes The column type overrides from the source definition, used to determine the types of RSQL arguments, may be null.
+   * @return A {@link QueryAndArgs} object representing the wrapped SQL and the arguments to pass to the driver.
+   * @throws IllegalArgumentException if an identifier or argument cannot be used in the SQL statement.
+   */
+  public QueryAndArgs applyPushDown(QueryAndArgs prepared, SqlPushDown pushDown, Map<String, DataType> columnTypes) throws IllegalArgumentException {
+    if (pushDown == null || pushDown.isEmpty()) {
+      return prepared;
+    }
+    List<Object> args = new ArrayList<>(prepared.args());
+    StringBuilder builder = new StringBuilder();
+    String query = prepared.query().strip();
+    while (query.endsWith(";")) {
+      query = query.substring(0, query.length() - 1).strip();
+    }
+    // The closing bracket goes on a new line in case the query ends with a comment
+    builder.append("SELECT * FROM (").append(prepareDerivedTable(query)).append("\n) qe_pushdown");
+    if (!pushDown.getFilters().isEmpty()) {
+      RsqlSqlWriter writer = new RsqlSqlWriter(pipelineContext, this, columnTypes, args);
+      builder.append(" WHERE ");
+      for (int i = 0; i < pushDown.getFilters().size(); ++i) {
+        if (i > 0) {
+          builder.append(" AND ");
+        }
+        pushDown.getFilters().get(i).accept(writer, builder);
+      }
+    }
+    if (pushDown.getSortFields() != null) {
+      builder.append(" ORDER BY ");
+      for (int i = 0; i < pushDown.getSortFields().size(); ++i) {
+        String field = pushDown.getSortFields().get(i);
+        if (i > 0) {
+          builder.append(", ");
+        }
+        if (field.startsWith("-")) {
+          appendIdentifier(builder, field.substring(1));
+          builder.append(" DESC");
+          appendNullOrdering(builder, true);
+        } else {
+          appendIdentifier(builder, field);
+          appendNullOrdering(builder, false);
+        }
+      }
+    }
+    if (pushDown.getOffset() > 0 || pushDown.getLimit() != null) {
+      appendOffsetAndLimit(builder, pushDown.getOffset(), pushDown.getLimit());
+    }
+    String sql = builder.toString();
+    log.debug().log("Pushed down {} to give SQL {} with args {}", pushDown, sql, args);
+    return new QueryAndArgs(sql, Collections.unmodifiableList(args));
+  }
+
   /**
    * Add a single valued parameter to the list of arguments.
    *
@@ -32,6 +32,8 @@ import io.vertx.sqlclient.RowStream;
 import io.vertx.sqlclient.Tuple;
 import io.vertx.sqlclient.desc.ColumnDescriptor;
 import io.vertx.sqlclient.impl.RowStreamInternal;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 import org.slf4j.Logger;
@@ -42,6 +44,11 @@ import uk.co.spudsoft.query.logging.Log;
 
 /**
  * Capture the metadata returned by a SQL statement even when there are no rows returned.
+ * <P>
+ * If a read ahead is configured the next {@link Cursor#read(int)} is issued as soon as a {@link RowSet} arrives,
+ * rather than when the rows of the previous {@link RowSet} have all been emitted.
+ * Only one read is ever in flight at a time, and no more than readAhead {@link RowSet}s are held waiting to be emitted,
+ * so the memory used remains bounded when the consumer applies back pressure.
  *
  * @author jtalbut
  */
@@ -53,6 +60,7 @@ public class MetadataRowStreamImpl implements RowStreamInternal, Handler<AsyncRe
   private final PipelineContext pipelineContext;
   private final Context context;
   private final int fetch;
+  private final int readAhead;
   private final Tuple params;
   private final Log log;
 
@@ -65,6 +73,7 @@ public class MetadataRowStreamImpl implements RowStreamInternal, Handler<AsyncRe
   private Cursor cursor;
   private boolean readInProgress;
   private Iterator<Row> result;
+  private final Deque<Iterator<Row>> prefetched = new ArrayDeque<>();
 
   private long rowSetCount = 0;
 
@@ -76,12 +85,26 @@ public class MetadataRowStreamImpl implements RowStreamInternal, Handler<AsyncRe
    * @param fetch The number of rows to fetch.
    * @param params Parameters to pass to the {@link PreparedStatement}.
    */
-  @SuppressFBWarnings("EI_EXPOSE_REP2")
   public MetadataRowStreamImpl(PreparedStatement ps, PipelineContext pipelineContext, Context context, int fetch, Tuple params) {
+    this(ps, pipelineContext, context, fetch, 0, params);
+  }
+
+  /**
+   * Constructor.
+   * @param ps The {@link PreparedStatement} to be executed.
+   * @param pipelineContext The context in which this {@link SourcePipeline} is being run.
+   * @param context The Vert.x context to use for asynchronous operations.
+   * @param fetch The number of rows to fetch.
+   * @param readAhead The maximum number of {@link RowSet}s to read before they are needed, zero to only read when the previous {@link RowSet} has been emitted.
+   * @param params Parameters to pass to the {@link PreparedStatement}.
+   */
+  @SuppressFBWarnings("EI_EXPOSE_REP2")
+  public MetadataRowStreamImpl(PreparedStatement ps, PipelineContext pipelineContext, Context context, int fetch, int readAhead, Tuple params) {
     this.ps = ps;
     this.pipelineContext = pipelineContext;
     this.context = context;
     this.fetch = fetch;
+    this.readAhead = readAhead;
     this.params = params;
     this.log =  new Log(logger, pipelineContext);
     this.demand = Long.MAX_VALUE;
@@ -134,6 +157,7 @@ public class MetadataRowStreamImpl implements RowStreamInternal, Handler<AsyncRe
           readInProgress = false;
           cursor = null;
           result = null; // Will stop the current emission if any
+          prefetched.clear();
         }
         return this;
       }
@@ -184,6 +208,7 @@ public class MetadataRowStreamImpl implements RowStreamInternal, Handler<AsyncRe
         readInProgress = false;
         cursor = null;
         result = null;
+        prefetched.clear();
         handler = exceptionHandler;
       }
       if (handler != null) {
@@ -197,6 +222,7 @@ public class MetadataRowStreamImpl implements RowStreamInternal, Handler<AsyncRe
         log.trace().log("Got RowSet {}", ++rowSetCount);
       }
       Handler<List<ColumnDescriptor>> colDescHandler;
+      Cursor readAheadCursor;
       synchronized (this) {
         readInProgress = false;
         colDescHandler = columnDescriptorHandler;
@@ -205,16 +231,44 @@ public class MetadataRowStreamImpl implements RowStreamInternal, Handler<AsyncRe
         }
         RowIterator<Row> it = rowSet.iterator();
         if (it.hasNext()) {
-          result = it;
+          if (result == null) {
+            result = it;
+          } else {
+            prefetched.addLast(it);
+          }
         }
+        readAheadCursor = startReadAhead();
       }
       if (colDescHandler != null) {
         colDescHandler.handle(rowSet.columnDescriptors());
       }
+      if (readAheadCursor != null) {
+        readAheadCursor.read(fetch).andThen(this);
+      }
       checkPending();
     }
   }
 
+  /**
+   * Determine whether another read should be issued before the current rows have been emitted.
+   * <P>
+   * Must be called whilst synchronized, if a Cursor is returned the caller must call read on it (outside the synchronized block).
+   * @return the Cursor to read from, or null if no read should be started.
+   */
+  private Cursor startReadAhead() {
+    if (readAhead <= 0
+            || readInProgress
+            || cursor == null
+            || result == null
+            || prefetched.size() >= readAhead
+            || !cursor.hasMore()) {
+      return null;
+    }
+    log.trace().log("reading ahead another {} rows with {} row sets waiting", fetch, prefetched.size());
+    readInProgress = true;
+    return cursor;
+  }
+
   @Override
   public Future<Void> close() {
     log.trace().log("close()");
@@ -245,6 +299,8 @@ public class MetadataRowStreamImpl implements RowStreamInternal, Handler<AsyncRe
       emitting = true;
     }
     while (true) {
+      // A read ahead is only started once the lock has been released
+      Cursor readAheadCursor = null;
       synchronized (this) {
         if (demand == 0L) {
           emitting = false;
@@ -261,7 +317,8 @@ public class MetadataRowStreamImpl implements RowStreamInternal, Handler<AsyncRe
           }
           if (!result.hasNext()) {
             log.trace().log("result does not have next");
-            result = null;
+            result = prefetched.pollFirst();
+            readAheadCursor = startReadAhead();
           }
         } else {
           log.trace().log("no result");
@@ -291,6 +348,9 @@ public class MetadataRowStreamImpl implements RowStreamInternal, Handler<AsyncRe
           handler.handle(event);
         }
       }
+      if (readAheadCursor != null) {
+        readAheadCursor.read(fetch).andThen(this);
+      }
     }
   }
 }
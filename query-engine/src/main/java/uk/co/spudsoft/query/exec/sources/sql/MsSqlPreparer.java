@@ -38,5 +38,15 @@ public class MsSqlPreparer extends AbstractSqlPreparer {
   protected void generateParameterNumber(StringBuilder builder, int number) {
     builder.append("@p").append(number);
   }
+
+  @Override
+  protected void appendNullOrdering(StringBuilder builder, boolean descending) {
+    // SQL Server sorts nulls before all other values, which matches Query Engine
+  }
+
+  @Override
+  protected String prepareDerivedTable(String query) {
+    return appendOffsetToOrderedQuery(query);
+  }
   
 }
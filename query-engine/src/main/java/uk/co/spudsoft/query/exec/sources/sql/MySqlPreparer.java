@@ -48,5 +48,15 @@ public class MySqlPreparer extends AbstractSqlPreparer {
   protected String getQuoteCharacter() {
     return "`";
   }
+
+  @Override
+  protected void appendOffsetAndLimit(StringBuilder builder, long offset, Long limit) {
+    appendMySqlLimitAndOffset(builder, offset, limit);
+  }
+
+  @Override
+  protected void appendNullOrdering(StringBuilder builder, boolean descending) {
+    // MySQL sorts nulls before all other values, which matches Query Engine
+  }
   
 }
@@ -22,14 +22,16 @@ import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Tag;
 import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
 import io.vertx.core.Vertx;
-import io.vertx.core.json.JsonObject;
 import io.vertx.sqlclient.Pool;
 import io.vertx.sqlclient.PoolOptions;
 import io.vertx.sqlclient.SqlConnectOptions;
 
 import java.time.Duration;
 import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.co.spudsoft.query.defn.SourcePipeline;
@@ -38,13 +40,61 @@ import uk.co.spudsoft.query.logging.Log;
 
 /**
  * Cache of {@link io.vertx.sqlclient.Pool} instances that survives between calls.
+ * <P>
+ * Pools are keyed by the URL and credentials used to connect along with the settings that affect the pool, which are all cheap to compare.
+ * Everything else in the {@link SqlConnectOptions} is derived from the URL, so there is no need to serialize the options to build the key.
  * @author jtalbut
  */
 public class PoolCreator {
 
   private static final Logger logger = LoggerFactory.getLogger(PoolCreator.class);
 
-  private final Cache<JsonObject, Pool> poolCache;
+  private final Cache<PoolKey, Pool> poolCache;
+
+  /**
+   * The identity of a pool.
+   * <P>
+   * The password is part of the key (so that a change of credentials results in a new pool), but is not included in the
+   * string representation, which is logged.
+   *
+   * @param url The URL used to create the {@link SqlConnectOptions}.
+   * @param user The user that connections are made as.
+   * @param password The password that connections are made with.
+   * @param maxSize The maximum number of connections in the pool.
+   * @param maxWaitQueueSize The maximum number of requests waiting for a connection from the pool.
+   * @param shared Whether the pool is shared by all verticles.
+   * @param connectionTimeoutMs The connection timeout, in milliseconds.
+   * @param idleTimeoutMs The idle timeout, in milliseconds.
+   * @param preparedStatementCacheMaxSize The maximum number of prepared statements cached per connection, zero if the cache is disabled.
+   * @param preparedStatementCacheSqlLimit The maximum length of SQL that will be cached.
+   */
+  record PoolKey(String url, String user, String password
+          , int maxSize, int maxWaitQueueSize, boolean shared, long connectionTimeoutMs, long idleTimeoutMs
+          , int preparedStatementCacheMaxSize, int preparedStatementCacheSqlLimit) {
+
+    @Override
+    public String toString() {
+      return "PoolKey{url=" + url + ", user=" + user
+              + ", maxSize=" + maxSize + ", maxWaitQueueSize=" + maxWaitQueueSize + ", shared=" + shared
+              + ", connectionTimeoutMs=" + connectionTimeoutMs + ", idleTimeoutMs=" + idleTimeoutMs
+              + ", preparedStatementCacheMaxSize=" + preparedStatementCacheMaxSize
+              + ", preparedStatementCacheSqlLimit=" + preparedStatementCacheSqlLimit
+              + "}";
+    }
+
+    /**
+     * Get a name for the pool that is the same for equal keys in all verticles.
+     * <P>
+     * The name is published in the pool metrics, so it is allocated from a counter rather than derived from the key, which contains the password.
+     * @return a name for the pool that is the same for equal keys in all verticles.
+     */
+    String poolName() {
+      return POOL_NAMES.computeIfAbsent(this, k -> "queryengine-" + POOL_COUNTER.incrementAndGet());
+    }
+  }
+
+  private static final AtomicInteger POOL_COUNTER = new AtomicInteger();
+  private static final ConcurrentHashMap<PoolKey, String> POOL_NAMES = new ConcurrentHashMap<>();
 
   /**
    * Constructor.
@@ -75,36 +125,54 @@ public class PoolCreator {
     }
   }
 
+  static long toMillis(int value, TimeUnit unit) {
+    return unit == null ? value : unit.toMillis(value);
+  }
+
+  /**
+   * Create the key that identifies a pool.
+   * @param url the URL used to create the {@link SqlConnectOptions}.
+   * @param database the configuration of the connection.
+   * @param options the configuration of the {@link Pool}.
+   * @return the key that identifies a pool.
+   */
+  static PoolKey key(String url, SqlConnectOptions database, PoolOptions options) {
+    return new PoolKey(url, database.getUser(), database.getPassword()
+            , options.getMaxSize(), options.getMaxWaitQueueSize(), options.isShared()
+            , toMillis(options.getConnectionTimeout(), options.getConnectionTimeoutUnit())
+            , toMillis(options.getIdleTimeout(), options.getIdleTimeoutUnit())
+            , database.getCachePreparedStatements() ? database.getPreparedStatementCacheMaxSize() : 0
+            , database.getPreparedStatementCacheSqlLimit()
+    );
+  }
+
   /**
    * Create a {@link Pool} from the given configuration.
+   * <P>
+   * If the options request a shared pool the pool is given a name derived from the key, so that all verticles using
+   * the same configuration share a single pool.
    * @param vertx the Vert.x instance.
    * @param pipelineContext The context in which this {@link SourcePipeline} is being run.
+   * @param url the URL used to create the {@link SqlConnectOptions}, this must be the only source of the connection options
+   * other than the credentials, pool settings and prepared statement cache settings.
    * @param database the configuration of the connection.
    * @param options the configuration of the {@link Pool}.
    * @return a newly created {@link Pool} instance.
    */
-  public Pool pool(Vertx vertx, PipelineContext pipelineContext, SqlConnectOptions database, PoolOptions options) {
-    JsonObject databaseJson = database.toJson();
-    //options.setIdleTimeout(1);
-    //options.setIdleTimeoutUnit(TimeUnit.MINUTES);
-    //options.setPoolCleanerPeriod(60000);
-    options.setMaxSize(40);
-
-    JsonObject poolJson = options.toJson();
-    JsonObject json = new JsonObject()
-            .put("database", databaseJson)
-            .put("pool", poolJson)
-            ;
+  public Pool pool(Vertx vertx, PipelineContext pipelineContext, String url, SqlConnectOptions database, PoolOptions options) {
+    PoolKey key = key(url, database, options);
+    if (options.isShared()) {
+      options.setName(key.poolName());
+    }
     try {
-      Log.decorate(logger.atDebug(), pipelineContext).log("Getting pool for {}", json);
-      Pool pool = poolCache.get(json, () -> {
-        Log.decorate(logger.atDebug(), pipelineContext).log("Creating new database pool for {}", json);
+      Pool pool = poolCache.get(key, () -> {
+        Log.decorate(logger.atDebug(), pipelineContext).log("Creating new database pool for {}", key);
         return Pool.pool(vertx, database, options);
       });
-      Log.decorate(logger.atDebug(), pipelineContext).log("Got pool for {}", json);
+      Log.decorate(logger.atDebug(), pipelineContext).log("Got pool for {}", key);
       return pool;
     } catch (ExecutionException ex) {
-      Log.decorate(logger.atError(), pipelineContext).log("Failed to get pool ({}) from cache: ", json, ex);
+      Log.decorate(logger.atError(), pipelineContext).log("Failed to get pool ({}) from cache: ", key, ex);
       return Pool.pool(vertx, database, options);
     }
   }
@@ -38,6 +38,16 @@ public class PostgreSqlPreparer extends AbstractSqlPreparer {
   protected void generateParameterNumber(StringBuilder builder, int number) {
     builder.append("$").append(number);
   }
+
+  @Override
+  protected void appendOffsetAndLimit(StringBuilder builder, long offset, Long limit) {
+    if (limit != null) {
+      builder.append(" LIMIT ").append(limit);
+    }
+    if (offset > 0) {
+      builder.append(" OFFSET ").append(offset);
+    }
+  }
   
   
   
@@ -54,8 +54,16 @@ public final class RowStreamWrapper implements ReadStream<DataRow> {
 
   private Handler<Throwable> exceptionHandler;
   private Handler<DataRow> handler;
+  private Handler<Void> endHandler;
   
   private long rowCount;
+  private boolean finished;
+
+  /**
+   * The slot in the {@link DataRow} for each column in the {@link Row}, resolved once when the column descriptors arrive.
+   */
+  private int[] slots = new int[0];
+  private DataType[] slotTypes = new DataType[0];
   
   private final Promise<Void> readyPromise = Promise.promise();
   
@@ -84,6 +92,14 @@ public final class RowStreamWrapper implements ReadStream<DataRow> {
           types.putIfAbsent(cd.name(), DataType.fromJdbcType(pipelineContext, cd.jdbcType()));
         }
       }
+      int[] newSlots = new int[columnDescriptors.size()];
+      DataType[] newSlotTypes = new DataType[columnDescriptors.size()];
+      for (int col = 0; col < newSlots.length; ++col) {
+        newSlots[col] = types.indexOf(columnDescriptors.get(col).name());
+        newSlotTypes[col] = types.getDefn(newSlots[col]).type();
+      }
+      slots = newSlots;
+      slotTypes = newSlotTypes;
       log.debug().log("Got types: {}", types);
       readyPromise.complete();
     });
@@ -100,6 +116,9 @@ public final class RowStreamWrapper implements ReadStream<DataRow> {
       }
     });
     rowStream.handler(row -> {
+      if (finished) {
+        return;
+      }
       try {
         ++rowCount;
         DataRow dataRow = sqlRowToDataRow(pipelineContext, row);
@@ -155,14 +174,12 @@ public final class RowStreamWrapper implements ReadStream<DataRow> {
   
   private DataRow sqlRowToDataRow(PipelineContext pipelineContext, Row row) {
     DataRow result = DataRow.create(types);
-    int size = row.size();
+    int size = Math.min(row.size(), slots.length);
     for (int col = 0; col < size; col++) {
-      String name = row.getColumnName(col);
       Object value = row.getValue(col);
-      DataType type = types.get(name);
+      DataType type = slotTypes[col];
       try {
-        Comparable<?> typedValue = type.cast(pipelineContext, value);
-        result.put(name, typedValue);
+        result.set(slots[col], type.cast(pipelineContext, value));
       } catch (Exception ex) {
         log.warn().log("Unable to convert {} to {}: ", value, type, ex);
       }
@@ -192,35 +209,63 @@ public final class RowStreamWrapper implements ReadStream<DataRow> {
 
   @Override
   public RowStreamWrapper endHandler(Handler<Void> endHandler) {
+    this.endHandler = endHandler;
     rowStream.endHandler(ehv -> {
       if (rowCount > 0) {
         log.trace().log("Finished row stream after handling {} rows", rowCount);
       } else {
         log.trace().log("Finished row stream without handling any rows");
       }
-      rowStream.close()
-              .compose(v -> {
-                return transaction.commit();
-              })
-              .compose(v -> {
-                if (connection != null) {
-                  log.info().log("Closing connection");
-                  return connection.close();
-                } else {
-                  return Future.succeededFuture();
-                }
-              })
-              .onComplete(ar -> {
-                log.info().log("Closed connection");
-                if (!ar.succeeded()) {
-                  log.warn().log("Transaction failed: ", ar.cause());
-                }
-                endHandler.handle(null);                
-              });
+      finish(true);
     });
     return this;
   }
 
+  /**
+   * Stop reading rows because nothing downstream needs any more of them.
+   * <P>
+   * The cursor is closed, the transaction is rolled back, the connection is closed and then the stream is ended.
+   * Calling this method after the stream has ended has no effect.
+   */
+  public void cancel() {
+    if (finished) {
+      return;
+    }
+    log.debug().log("Cancelling row stream after {} rows", rowCount);
+    rowStream.endHandler(null);
+    finish(false);
+    rowStream.handler(null);
+  }
+
+  private void finish(boolean commit) {
+    if (finished) {
+      return;
+    }
+    finished = true;
+    Handler<Void> capturedEndHandler = endHandler;
+    rowStream.close()
+            .compose(v -> {
+              return commit ? transaction.commit() : transaction.rollback();
+            })
+            .compose(v -> {
+              if (connection != null) {
+                log.info().log("Closing connection");
+                return connection.close();
+              } else {
+                return Future.succeededFuture();
+              }
+            })
+            .onComplete(ar -> {
+              log.info().log("Closed connection");
+              if (!ar.succeeded()) {
+                log.warn().log("Transaction failed: ", ar.cause());
+              }
+              if (capturedEndHandler != null) {
+                capturedEndHandler.handle(null);
+              }
+            });
+  }
+
   /**
    * Close the underlying {@link ReadStream}.
    * @return A Future that will be completed when the underlying {@link ReadStream} has been closed.
@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2026 jtalbut
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.spudsoft.query.exec.sources.sql;
+
+import cz.jirutka.rsql.parser.ast.AndNode;
+import cz.jirutka.rsql.parser.ast.ComparisonNode;
+import cz.jirutka.rsql.parser.ast.LogicalNode;
+import cz.jirutka.rsql.parser.ast.Node;
+import cz.jirutka.rsql.parser.ast.OrNode;
+import cz.jirutka.rsql.parser.ast.RSQLOperators;
+import cz.jirutka.rsql.parser.ast.RSQLVisitor;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.co.spudsoft.query.defn.DataType;
+import uk.co.spudsoft.query.exec.context.PipelineContext;
+import uk.co.spudsoft.query.logging.Log;
+
+/**
+ * Convert an RSQL expression into a SQL condition, with every argument as a bind parameter.
+ * <P>
+ * The string wildcard extension of the {@link uk.co.spudsoft.query.exec.procs.query.ProcessorQueryInstance} (a leading or trailing '*')
+ * is converted to a LIKE clause, but the regular expression operator is not supported (see {@link #canWrite(cz.jirutka.rsql.parser.ast.Node)}).
+ * <P>
+ * The type of each argument is taken from the column type overrides of the source, comparisons on fields that do not have
+ * a column type override cannot be converted because the type of the bind parameter would have to be guessed.
+ *
+ * @author jtalbut
+ */
+final class RsqlSqlWriter implements RSQLVisitor<Void, StringBuilder> {
+
+  private static final Logger logger = LoggerFactory.getLogger(RsqlSqlWriter.class);
+
+  private final PipelineContext pipelineContext;
+  private final AbstractSqlPreparer preparer;
+  private final Map<String, DataType> columnTypes;
+  private final List<Object> args;
+
+  /**
+   * Constructor.
+   * @param pipelineContext The context in which this {@link uk.co.spudsoft.query.defn.SourcePipeline} is being run.
+   * @param preparer The preparer for the SQL dialect, used for quoting identifiers and numbering parameters.
+   * @param columnTypes The column type overrides from the source definition, which must include every field used in a comparison.
+   * @param args The arguments of the SQL statement, to which the arguments of the RSQL expression will be appended.
+   */
+  RsqlSqlWriter(PipelineContext pipelineContext, AbstractSqlPreparer preparer, Map<String, DataType> columnTypes, List<Object> args) {
+    this.pipelineContext = pipelineContext;
+    this.preparer = preparer;
+    this.columnTypes = columnTypes;
+    this.args = args;
+  }
+
+  /**
+   * Return true if the RSQL expression can be converted to SQL.
+   * <P>
+   * Every operator must have a SQL equivalent and every field must have a type in the column type overrides.
+   * @param node The root of the RSQL expression.
+   * @param columnTypes The column type overrides from the source definition, may be null.
+   * @return true if the RSQL expression can be converted to SQL.
+   */
+  static boolean canWrite(Node node, Map<String, DataType> columnTypes) {
+    if (node instanceof LogicalNode logical) {
+      for (Node child : logical.getChildren()) {
+        if (!canWrite(child, columnTypes)) {
+          return false;
+        }
+      }
+      return true;
+    } else if (node instanceof ComparisonNode comparison) {
+      if (columnTypes == null || !columnTypes.containsKey(comparison.getSelector())) {
+        return false;
+      }
+      String symbol = comparison.getOperator().getSymbol();
+      return sqlOperator(symbol) != null || isSet(symbol);
+    } else {
+      return false;
+    }
+  }
+
+  private static String sqlOperator(String symbol) {
+    if (RSQLOperators.EQUAL.getSymbol().equals(symbol)) {
+      return "=";
+    } else if (RSQLOperators.NOT_EQUAL.getSymbol().equals(symbol)) {
+      return "<>";
+    } else if (RSQLOperators.GREATER_THAN.getSymbol().equals(symbol)) {
+      return ">";
+    } else if (RSQLOperators.GREATER_THAN_OR_EQUAL.getSymbol().equals(symbol)) {
+      return ">=";
+    } else if (RSQLOperators.LESS_THAN.getSymbol().equals(symbol)) {
+      return "<";
+    } else if (RSQLOperators.LESS_THAN_OR_EQUAL.getSymbol().equals(symbol)) {
+      return "<=";
+    } else {
+      return null;
+    }
+  }
+
+  private static boolean isSet(String symbol) {
+    return RSQLOperators.IN.getSymbol().equals(symbol) || RSQLOperators.NOT_IN.getSymbol().equals(symbol);
+  }
+
+  private void logical(List<Node> children, String operator, StringBuilder builder) {
+    builder.append("(");
+    for (int i = 0; i < children.size(); ++i) {
+      if (i > 0) {
+        builder.append(operator);
+      }
+      children.get(i).accept(this, builder);
+    }
+    builder.append(")");
+  }
+
+  @Override
+  public Void visit(AndNode node, StringBuilder builder) {
+    logical(node.getChildren(), " AND ", builder);
+    return null;
+  }
+
+  @Override
+  public Void visit(OrNode node, StringBuilder builder) {
+    logical(node.getChildren(), " OR ", builder);
+    return null;
+  }
+
+  @Override
+  public Void visit(ComparisonNode node, StringBuilder builder) {
+    String symbol = node.getOperator().getSymbol();
+    String field = node.getSelector();
+    List<String> arguments = node.getArguments();
+    DataType type = columnTypes == null ? null : columnTypes.get(field);
+    if (type == null) {
+      Log.decorate(logger.atWarn(), pipelineContext).log("The field {} has no column type override so comparisons with it cannot be pushed down", field);
+      throw new IllegalArgumentException("The field " + field + " cannot be used in a comparison that is pushed down");
+    }
+    preparer.appendIdentifier(builder, field);
+    if (isSet(symbol)) {
+      builder.append(RSQLOperators.IN.getSymbol().equals(symbol) ? " IN (" : " NOT IN (");
+      for (int i = 0; i < arguments.size(); ++i) {
+        if (i > 0) {
+          builder.append(", ");
+        }
+        appendArgument(builder, value(field, type, arguments.get(i)));
+      }
+      builder.append(")");
+    } else {
+      String operator = sqlOperator(symbol);
+      if (operator == null) {
+        Log.decorate(logger.atWarn(), pipelineContext).log("The operator specified in the RSQL expression ({}) cannot be pushed down", symbol);
+        throw new IllegalArgumentException("The operator specified in the RSQL expression cannot be pushed down");
+      }
+      String argument = arguments.get(0);
+      if (RSQLOperators.EQUAL.getSymbol().equals(symbol) && isWildcard(type, argument)) {
+        builder.append(" LIKE ");
+        appendArgument(builder, likePattern(argument));
+        builder.append(" ESCAPE '!'");
+      } else {
+        builder.append(" ").append(operator).append(" ");
+        appendArgument(builder, value(field, type, argument));
+      }
+    }
+    return null;
+  }
+
+  private void appendArgument(StringBuilder builder, Object value) {
+    args.add(value);
+    preparer.generateParameterNumber(builder, args.size());
+  }
+
+  private static boolean isWildcard(DataType type, String argument) {
+    if (type != DataType.String) {
+      return false;
+    }
+    boolean leading = argument.startsWith("*");
+    boolean trailing = argument.length() > (leading ? 1 : 0) && argument.endsWith("*");
+    return leading || trailing;
+  }
+
+  /**
+   * Convert an argument with leading and/or trailing wildcards into a LIKE pattern that uses '!' as the escape character.
+   * @param argument The RSQL argument.
+   * @return The LIKE pattern.
+   */
+  static String likePattern(String argument) {
+    boolean leading = argument.startsWith("*");
+    boolean trailing = argument.length() > (leading ? 1 : 0) && argument.endsWith("*");
+    String needle = argument.substring(leading ? 1 : 0, trailing ? argument.length() - 1 : argument.length());
+    StringBuilder pattern = new StringBuilder(needle.length() + 4);
+    if (leading) {
+      pattern.append('%');
+    }
+    for (int i = 0; i < needle.length(); ++i) {
+      char c = needle.charAt(i);
+      if (c == '!' || c == '%' || c == '_' || c == '[') {
+        pattern.append('!');
+      }
+      pattern.append(c);
+    }
+    if (trailing) {
+      pattern.append('%');
+    }
+    return pattern.toString();
+  }
+
+  private Object value(String field, DataType type, String argument) {
+    try {
+      return type.cast(pipelineContext, argument);
+    } catch (Throwable ex) {
+      Log.decorate(logger.atWarn(), pipelineContext).log("Failed to convert \"{}\" to {} for comparison with {}: ", argument, type, field, ex);
+      throw new IllegalArgumentException("The value \"" + argument + "\" is not valid for comparison with " + field);
+    }
+  }
+
+}
@@ -19,6 +19,7 @@ package uk.co.spudsoft.query.exec.sources.sql;
 import com.google.common.base.Strings;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import io.vertx.core.Future;
 import io.vertx.core.Vertx;
 import io.vertx.core.tracing.TracingPolicy;
@@ -30,9 +31,11 @@ import io.vertx.sqlclient.SqlConnection;
 import io.vertx.sqlclient.Transaction;
 import io.vertx.sqlclient.Tuple;
 import java.time.Duration;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import uk.co.spudsoft.query.defn.DataType;
 import uk.co.spudsoft.query.defn.Endpoint;
 import uk.co.spudsoft.query.defn.SourcePipeline;
 import uk.co.spudsoft.query.defn.SourceSql;
@@ -57,11 +60,16 @@ import uk.co.spudsoft.query.web.ServiceException;
  *
  * @author jtalbut
  */
-public class SourceSqlStreamingInstance extends AbstractSource {
+public class SourceSqlStreamingInstance extends AbstractSource implements SqlPushDownTarget {
 
   @SuppressWarnings("constantname")
   private static final Logger logger = LoggerFactory.getLogger(SourceSqlStreamingInstance.class);
 
+  /**
+   * The maximum size of a pool if it is not set on either the {@link SourceSql} or the {@link Endpoint}.
+   */
+  static final int DEFAULT_MAX_POOL_SIZE = 40;
+
   private final PoolCreator poolCreator;
   private final SourceSql definition;
   private RowStreamWrapper rowStreamWrapper;
@@ -69,6 +77,7 @@ public class SourceSqlStreamingInstance extends AbstractSource {
   private SqlConnection connection;
   private PreparedStatement preparedStatement;
   private Transaction transaction;
+  private SqlPushDown pushDown;
 
   private final Log log;
   
@@ -85,19 +94,35 @@ public class SourceSqlStreamingInstance extends AbstractSource {
   public SourceSqlStreamingInstance(Vertx vertx, MeterRegistry meterRegistry, Auditor auditor, PipelineContext pipelineContext, SharedMap sharedMap, SourceSql definition) {
     super(vertx, meterRegistry, auditor, pipelineContext);
 
-    Object pco = sharedMap.get(PoolCreator.class.toString());
-    if (pco instanceof PoolCreator pc) {
-      this.poolCreator = pc;
-    } else {
-      this.poolCreator = new PoolCreator(meterRegistry);
-      sharedMap.put(PoolCreator.class.toString(), this.poolCreator);
-    }
+    this.poolCreator = (PoolCreator) sharedMap.computeIfAbsent(PoolCreator.class.toString(), k -> new PoolCreator(meterRegistry));
 
     this.definition = definition;
     this.log = new Log(logger, pipelineContext);
   }
 
-  @SuppressFBWarnings(value = "SQL_INJECTION_VERTX", justification = "The query from the configuration is definitely a SQL injection vector, but it is not built from end-user input")
+  @Override
+  public boolean isPushDownEnabled() {
+    return definition.isPushDownEnabled();
+  }
+
+  @Override
+  public Map<String, DataType> getColumnTypeOverrideMap() {
+    return definition.getColumnTypeOverrideMap();
+  }
+
+  @Override
+  public void setPushDown(SqlPushDown pushDown) {
+    this.pushDown = pushDown;
+  }
+
+  @Override
+  public void cancel() {
+    if (rowStreamWrapper != null) {
+      rowStreamWrapper.cancel();
+    }
+  }
+
+  @SuppressFBWarnings(value = "SQL_INJECTION_VERTX", justification = "The query from the configuration is definitely a SQL injection vector, but it is not built from end-user input (pushed down identifiers are quoted and values are bound)")
   Future<PreparedStatement> prepareSqlStatement(SqlConnection conn, String sql) {
     return conn.prepare(sql);
   }
@@ -120,6 +145,22 @@ public class SourceSqlStreamingInstance extends AbstractSource {
 
   static PoolOptions poolOptions(SourceSql definition, Endpoint endpoint) {
     PoolOptions po = new PoolOptions();
+    if (definition.getMaxPoolSize() != null) {
+      po.setMaxSize(definition.getMaxPoolSize());
+    } else if (endpoint.getMaxPoolSize() != null) {
+      po.setMaxSize(endpoint.getMaxPoolSize());
+    } else {
+      po.setMaxSize(DEFAULT_MAX_POOL_SIZE);
+    }
+
+    if (definition.getMaxPoolWaitQueueSize() != null) {
+      po.setMaxWaitQueueSize(definition.getMaxPoolWaitQueueSize());
+    } else if (endpoint.getMaxPoolWaitQueueSize() != null) {
+      po.setMaxWaitQueueSize(endpoint.getMaxPoolWaitQueueSize());
+    }
+
+    po.setShared(Boolean.TRUE.equals(endpoint.getSharedPool()));
+
     if (isPositive(definition.getConnectionTimeout())) {
       setConnectionTimeout(definition.getConnectionTimeout(), po);
     } else if (isPositive(endpoint.getConnectionTimeout())) {
@@ -135,6 +176,19 @@ public class SourceSqlStreamingInstance extends AbstractSource {
     return po;
   }
 
+  static void preparedStatementCache(Endpoint endpoint, SqlConnectOptions connectOptions) {
+    Integer maxSize = endpoint.getPreparedStatementCacheMaxSize();
+    if (maxSize != null && maxSize > 0) {
+      connectOptions.setCachePreparedStatements(true);
+      connectOptions.setPreparedStatementCacheMaxSize(maxSize);
+      if (endpoint.getPreparedStatementCacheSqlLimit() != null) {
+        connectOptions.setPreparedStatementCacheSqlLimit(endpoint.getPreparedStatementCacheSqlLimit());
+      }
+    } else {
+      connectOptions.setCachePreparedStatements(false);
+    }
+  }
+
   static void setConnectionTimeout(Duration duration, PoolOptions po) {
     long millis = duration.toMillis();
     millis = Math.min(millis, (long) Integer.MAX_VALUE);
@@ -188,6 +242,7 @@ public class SourceSqlStreamingInstance extends AbstractSource {
 
     SqlConnectOptions connectOptions = SqlConnectOptions.fromUri(url);
     connectOptions.setTracingPolicy(TracingPolicy.IGNORE);
+    preparedStatementCache(endpoint, connectOptions);
 
     PoolOptions poolOptions = poolOptions(definition, endpoint);
 
@@ -196,7 +251,7 @@ public class SourceSqlStreamingInstance extends AbstractSource {
     } catch (ServiceException ex) {
       return Future.failedFuture(ex);
     }
-    Pool pool = poolCreator.pool(vertx, pipelineContext, connectOptions, poolOptions);
+    Pool pool = poolCreator.pool(vertx, pipelineContext, url, connectOptions, poolOptions);
 
     String query = definition.getQuery();
     if (!Strings.isNullOrEmpty(definition.getQueryTemplate())) {
@@ -210,21 +265,41 @@ public class SourceSqlStreamingInstance extends AbstractSource {
 
     AbstractSqlPreparer preparer = getPreparer(url);
     AbstractSqlPreparer.QueryAndArgs queryAndArgs = preparer.prepareSqlStatement(query, definition.getReplaceDoubleQuotes(), pipeline.getArgumentInstances());
+    try {
+      queryAndArgs = preparer.applyPushDown(queryAndArgs, pushDown, definition.getColumnTypeOverrideMap());
+    } catch (Throwable ex) {
+      log.warn().log("Failed to push down {}: ", pushDown, ex);
+      return Future.failedFuture(ex);
+    }
     String sql = queryAndArgs.query();
     Tuple args = Tuple.from(queryAndArgs.args());
 
     auditor.recordSource(pipelineContext, endpointName, url, connectOptions.getUser(), queryAndArgs.query(), queryAndArgs.args());
     
+    Timer poolWaitTimer = meterRegistry == null ? null : meterRegistry.timer("queryengine.sql.pool.wait");
+    Timer prepareTimer = meterRegistry == null ? null : meterRegistry.timer("queryengine.sql.prepare"
+            , "cache", connectOptions.getCachePreparedStatements() ? "enabled" : "disabled"
+    );
     long start = System.currentTimeMillis();
+    long waitStart = System.nanoTime();
     return pool.getConnection()
             .recover(ex -> {
               log.warn().log("Failed to connect to data source: ", ex);
               return Future.failedFuture(new ServiceException(500, "Failed to connect to data source", ex));
             })
             .compose(conn -> {
+              long prepareStart = System.nanoTime();
+              if (poolWaitTimer != null) {
+                poolWaitTimer.record(prepareStart - waitStart, TimeUnit.NANOSECONDS);
+              }
               connection = conn;
               log.info().log("Preparing SQL: {}", sql);
-              return prepareSqlStatement(conn, sql);
+              return prepareSqlStatement(conn, sql)
+                      .onSuccess(ps -> {
+                        if (prepareTimer != null) {
+                          prepareTimer.record(System.nanoTime() - prepareStart, TimeUnit.NANOSECONDS);
+                        }
+                      });
             }).compose(ps -> {
               preparedStatement = ps;
               return connection.begin();
@@ -234,7 +309,7 @@ public class SourceSqlStreamingInstance extends AbstractSource {
                 log.debug().log("Executing SQL stream on {} with {}", connection, args.deepToString());
               }
               // RowStream<Row> rowStream = preparedStatement.createStream(definition.getStreamingFetchSize(), args);
-              MetadataRowStreamImpl rowStream = new MetadataRowStreamImpl(preparedStatement, pipelineContext, Vertx.currentContext(), definition.getStreamingFetchSize(), args);
+              MetadataRowStreamImpl rowStream = new MetadataRowStreamImpl(preparedStatement, pipelineContext, Vertx.currentContext(), definition.getStreamingFetchSize(), definition.getStreamingReadAhead(), args);
               rowStream.exceptionHandler(ex -> {
                 log.error().log("Exception occured in stream: ", ex);
               });
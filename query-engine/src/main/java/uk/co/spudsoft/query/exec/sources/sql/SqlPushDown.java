@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2026 jtalbut
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.spudsoft.query.exec.sources.sql;
+
+import com.google.common.collect.ImmutableList;
+import cz.jirutka.rsql.parser.ast.Node;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.co.spudsoft.query.defn.DataType;
+import uk.co.spudsoft.query.exec.ProcessorInstance;
+import uk.co.spudsoft.query.exec.context.PipelineContext;
+import uk.co.spudsoft.query.exec.procs.filters.ProcessorLimitInstance;
+import uk.co.spudsoft.query.exec.procs.filters.ProcessorOffsetInstance;
+import uk.co.spudsoft.query.exec.procs.query.ProcessorQueryInstance;
+import uk.co.spudsoft.query.exec.procs.sort.ProcessorSortInstance;
+import uk.co.spudsoft.query.exec.procs.sort.ProcessorSortTopNInstance;
+import uk.co.spudsoft.query.logging.Log;
+
+/**
+ * The processing that has been pushed down from the start of a pipeline into the SQL statement run by its source.
+ * <P>
+ * A SqlPushDown is created by {@link #plan(uk.co.spudsoft.query.exec.context.PipelineContext, java.util.List, java.util.Map)}, which takes as many of the
+ * leading processors as can be expressed in SQL, and is given to the {@link SqlPushDownTarget} before it is initialized.
+ * The source then wraps its query using
+ * {@link AbstractSqlPreparer#applyPushDown(uk.co.spudsoft.query.exec.sources.sql.AbstractSqlPreparer.QueryAndArgs, uk.co.spudsoft.query.exec.sources.sql.SqlPushDown, java.util.Map)}.
+ * <P>
+ * The processors are taken in order and planning stops at the first one that cannot be pushed down:
+ * <UL>
+ * <LI>Query processors can be pushed down if their RSQL expressions only use operators that have SQL equivalents, only compare fields that have a column type override
+ * (so that the arguments can be bound with the correct type) and no offset or limit has been pushed down.
+ * <LI>A single sort processor can be pushed down if no offset or limit has been pushed down.
+ * <LI>Offset and limit processors can only be pushed down after a sort has been, because the order of the rows from a derived table is not defined.
+ * Once a limit has been pushed down nothing else can be.
+ * </UL>
+ *
+ * @author jtalbut
+ */
+public final class SqlPushDown {
+
+  private static final Logger logger = LoggerFactory.getLogger(SqlPushDown.class);
+
+  private final ImmutableList<Node> filters;
+  private final ImmutableList<String> sortFields;
+  private final long offset;
+  private final Long limit;
+  private final int processorCount;
+
+  /**
+   * Constructor.
+   * @param filters The RSQL expressions that rows must satisfy.
+   * @param sortFields The fields to sort by, each of which may be preceded by "-" for a descending sort, or null if the rows are not to be sorted.
+   * @param offset The number of rows to skip.
+   * @param limit The maximum number of rows to return, or null if there is no limit.
+   * @param processorCount The number of processors that this push down replaces.
+   */
+  SqlPushDown(List<Node> filters, List<String> sortFields, long offset, Long limit, int processorCount) {
+    this.filters = ImmutableList.copyOf(filters);
+    this.sortFields = sortFields == null ? null : ImmutableList.copyOf(sortFields);
+    this.offset = offset;
+    this.limit = limit;
+    this.processorCount = processorCount;
+  }
+
+  /**
+   * Work out how many of the leading processors of a pipeline can be pushed down into the SQL statement.
+   * <P>
+   * The processors are not modified, the caller must not initialize the first {@link #getProcessorCount()} of them
+   * if the result is passed to the source.
+   *
+   * @param pipelineContext The context in which this {@link uk.co.spudsoft.query.defn.SourcePipeline} is being run.
+   * @param processors The processors of the pipeline, in order.
+   * @param columnTypes The column type overrides from the source definition, may be null.
+   * @return A SqlPushDown describing the processing that can be pushed down, which will be empty if no processors can be.
+   */
+  public static SqlPushDown plan(PipelineContext pipelineContext, List<ProcessorInstance> processors, Map<String, DataType> columnTypes) {
+    List<Node> filters = new ArrayList<>();
+    List<String> sortFields = null;
+    long offset = 0;
+    Long limit = null;
+    int count = 0;
+    for (ProcessorInstance processor : processors) {
+      if (limit != null) {
+        break;
+      } else if (processor instanceof ProcessorQueryInstance query && offset == 0) {
+        Node node = parse(pipelineContext, query, columnTypes);
+        if (node == null) {
+          break;
+        }
+        filters.add(node);
+      } else if (processor instanceof ProcessorSortInstance sort && sortFields == null && offset == 0) {
+        sortFields = sort.getFields();
+      } else if (processor instanceof ProcessorSortTopNInstance sort && sortFields == null && offset == 0) {
+        sortFields = sort.getFields();
+      } else if (processor instanceof ProcessorOffsetInstance offsetInstance && sortFields != null) {
+        offset += offsetInstance.getOffset();
+      } else if (processor instanceof ProcessorLimitInstance limitInstance && sortFields != null) {
+        limit = (long) limitInstance.getLimit();
+      } else {
+        break;
+      }
+      ++count;
+    }
+    return new SqlPushDown(filters, sortFields, offset, limit, count);
+  }
+
+  private static Node parse(PipelineContext pipelineContext, ProcessorQueryInstance query, Map<String, DataType> columnTypes) {
+    try {
+      Node node = ProcessorQueryInstance.RSQL_PARSER.parse(query.getExpression());
+      if (RsqlSqlWriter.canWrite(node, columnTypes)) {
+        return node;
+      }
+      Log.decorate(logger.atDebug(), pipelineContext).log("Query processor {} ({}) cannot be pushed down", query.getName(), query.getExpression());
+    } catch (Throwable ex) {
+      Log.decorate(logger.atDebug(), pipelineContext).log("Query processor {} ({}) cannot be pushed down: ", query.getName(), query.getExpression(), ex);
+    }
+    return null;
+  }
+
+  /**
+   * Get the RSQL expressions that rows must satisfy, all of which must be true.
+   * @return the RSQL expressions that rows must satisfy.
+   */
+  @SuppressFBWarnings(value = "EI_EXPOSE_REP", justification = "ImmutableList")
+  public List<Node> getFilters() {
+    return filters;
+  }
+
+  /**
+   * Get the fields to sort by, each of which may be preceded by "-" for a descending sort.
+   * @return the fields to sort by, or null if the rows are not to be sorted.
+   */
+  @SuppressFBWarnings(value = "EI_EXPOSE_REP", justification = "ImmutableList")
+  public List<String> getSortFields() {
+    return sortFields;
+  }
+
+  /**
+   * Get the number of rows to skip.
+   * @return the number of rows to skip.
+   */
+  public long getOffset() {
+    return offset;
+  }
+
+  /**
+   * Get the maximum number of rows to return.
+   * @return the maximum number of rows to return, or null if there is no limit.
+   */
+  public Long getLimit() {
+    return limit;
+  }
+
+  /**
+   * Get the number of leading processors that this push down replaces.
+   * @return the number of leading processors that this push down replaces.
+   */
+  public int getProcessorCount() {
+    return processorCount;
+  }
+
+  /**
+   * Return true if nothing has been pushed down.
+   * @return true if nothing has been pushed down.
+   */
+  public boolean isEmpty() {
+    return processorCount == 0;
+  }
+
+  @Override
+  public String toString() {
+    return "SqlPushDown{" + "filters=" + filters + ", sortFields=" + sortFields + ", offset=" + offset + ", limit=" + limit + '}';
+  }
+
+}
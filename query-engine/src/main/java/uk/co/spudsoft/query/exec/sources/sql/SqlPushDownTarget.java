@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2026 jtalbut
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.spudsoft.query.exec.sources.sql;
+
+import java.util.Map;
+import uk.co.spudsoft.query.defn.DataType;
+
+/**
+ * Interface implemented by {@link uk.co.spudsoft.query.exec.SourceInstance}s that can have processing pushed down into their SQL statements.
+ *
+ * @author jtalbut
+ */
+public interface SqlPushDownTarget {
+
+  /**
+   * Return true if the definition of this source permits processing to be pushed down into its SQL statement.
+   * @return true if the definition of this source permits processing to be pushed down into its SQL statement.
+   */
+  boolean isPushDownEnabled();
+
+  /**
+   * Get the column type overrides from the definition of this source.
+   * <P>
+   * Only comparisons on fields that have a column type override can be pushed down.
+   * @return the column type overrides from the definition of this source, may be null.
+   */
+  Map<String, DataType> getColumnTypeOverrideMap();
+
+  /**
+   * Set the processing to be pushed down into the SQL statement.
+   * <P>
+   * This must be called before the source is initialized.
+   * @param pushDown The processing to be pushed down into the SQL statement.
+   */
+  void setPushDown(SqlPushDown pushDown);
+
+}
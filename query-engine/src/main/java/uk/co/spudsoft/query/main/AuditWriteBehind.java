@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2026 jtalbut
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.spudsoft.query.main;
+
+import java.time.Duration;
+
+/**
+ * Configuration of write-behind for the audit database.
+ * <P>
+ * When write-behind is configured audit records are added to a bounded in-memory queue and written to the database in batches,
+ * either periodically or when enough records are waiting.
+ * This removes the audit database from the critical path of requests, at the cost of the audit being slightly behind reality and
+ * of records being lost if the queue is full or the process terminates abruptly.
+ * <P>
+ * The queue is always flushed before rate limit rules are evaluated, so rate limits are still applied correctly.
+ * 
+ * @author jtalbut
+ */
+public class AuditWriteBehind {
+
+  private int maxQueueSize = 10000;
+  private int maxBatchSize = 100;
+  private Duration flushPeriod = Duration.ofMillis(500);
+
+  /**
+   * Constructor.
+   */
+  public AuditWriteBehind() {
+  }
+
+  /**
+   * The maximum number of audit records that may be waiting to be written.
+   * <P>
+   * Records that arrive when the queue is full are discarded (and counted in the queryengine.audit.writebehind.dropped metric).
+   * @return the maximum number of audit records that may be waiting to be written.
+   */
+  public int getMaxQueueSize() {
+    return maxQueueSize;
+  }
+
+  /**
+   * The maximum number of audit records that may be waiting to be written.
+   * <P>
+   * Records that arrive when the queue is full are discarded (and counted in the queryengine.audit.writebehind.dropped metric).
+   * @param maxQueueSize the maximum number of audit records that may be waiting to be written.
+   * @return this, so the method may be used fluently.
+   */
+  public AuditWriteBehind setMaxQueueSize(int maxQueueSize) {
+    this.maxQueueSize = maxQueueSize;
+    return this;
+  }
+
+  /**
+   * The maximum number of audit records to write in a single batch.
+   * <P>
+   * A flush is started as soon as this many records are waiting.
+   * @return the maximum number of audit records to write in a single batch.
+   */
+  public int getMaxBatchSize() {
+    return maxBatchSize;
+  }
+
+  /**
+   * The maximum number of audit records to write in a single batch.
+   * <P>
+   * A flush is started as soon as this many records are waiting.
+   * @param maxBatchSize the maximum number of audit records to write in a single batch.
+   * @return this, so the method may be used fluently.
+   */
+  public AuditWriteBehind setMaxBatchSize(int maxBatchSize) {
+    this.maxBatchSize = maxBatchSize;
+    return this;
+  }
+
+  /**
+   * The maximum time that an audit record should wait before being written.
+   * <P>
+   * Configuration files should specify this using <a href="https://en.wikipedia.org/wiki/ISO_8601#Durations">ISO860 Duration</a> format, i.e. PT0.5S.
+   * @return the maximum time that an audit record should wait before being written.
+   */
+  public Duration getFlushPeriod() {
+    return flushPeriod;
+  }
+
+  /**
+   * The maximum time that an audit record should wait before being written.
+   * <P>
+   * Configuration files should specify this using <a href="https://en.wikipedia.org/wiki/ISO_8601#Durations">ISO860 Duration</a> format, i.e. PT0.5S.
+   * @param flushPeriod the maximum time that an audit record should wait before being written.
+   * @return this, so the method may be used fluently.
+   */
+  public AuditWriteBehind setFlushPeriod(Duration flushPeriod) {
+    this.flushPeriod = flushPeriod;
+    return this;
+  }
+
+  /**
+   * Validate the provided parameters.
+   * 
+   * @param path The configuration path to this item, for reporting.
+   * @throws IllegalArgumentException if anything in the parameters is invalid.
+   */
+  public void validate(String path) throws IllegalArgumentException {
+    if (maxQueueSize < 1) {
+      throw new IllegalArgumentException(path + ".maxQueueSize must be positive");
+    }
+    if (maxBatchSize < 1) {
+      throw new IllegalArgumentException(path + ".maxBatchSize must be positive");
+    }
+    if (flushPeriod == null || flushPeriod.isNegative() || flushPeriod.isZero()) {
+      throw new IllegalArgumentException(path + ".flushPeriod must be positive");
+    }
+  }
+
+}
@@ -33,6 +33,7 @@ import io.vertx.ext.web.RoutingContext;
 import io.vertx.ext.web.client.HttpRequest;
 import io.vertx.ext.web.client.WebClient;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.Arrays;
@@ -84,6 +85,8 @@ public class Authenticator {
 
   private final Map<String, TimestampedToken> credentialsCache = new HashMap<>();
 
+  private final ValidatedJwtCache validatedJwtCache;
+
 
   /**
    * Constructor.
@@ -123,6 +126,53 @@ public class Authenticator {
            String issuerHostPath,
            List<String> requiredAuds,
            String sessionCookie
+  ) {
+    this(webClient, validator, discoverer, loginDao, meterRegistry, basicAuthConfig, enableBearerAuth, openIdIntrospectionHeaderName
+            , deriveIssuerFromHost, issuerHostPath, requiredAuds, sessionCookie, 0, null);
+  }
+
+  /**
+   * Constructor.
+   *
+   * Note that fundamentally the RequestContextBuilder does not require the request to have any authentication specified at all.
+   * Conditions imposed using the RequestContext should ensure this.
+   *
+   * @param webClient The WebClient that will be used. The WebClient should be created specifically for use by the
+   * RequestContextBuilder.
+   * @param validator The JWT Validator that will be used for validating all tokens.
+   * @param discoverer The Open ID Discovery handler that will be used for locating the auth URL for the host. This does not have
+   * to be the same discoverer as used by the validator, but it will be more efficient if it is (shared cache).
+   * @param loginDao DAO for accessing tokens from cookies.
+   * @param meterRegistry MeterRegistry for production of metrics.
+   * @param basicAuthConfig Configuration of the handling of Basic Auth credentials in requests.
+   * @param enableBearerAuth When set to false no bearer authentication will be permitted.
+   * @param openIdIntrospectionHeaderName The name of the header that will contain the payload from a token as Json (that may be
+   * base64 encoded or not).
+   * @param deriveIssuerFromHost If true the issuer should be derived from the Host (or X-Forwarded-Host) header.
+   * @param issuerHostPath Path to be appended to the Host to derive the issuer. See
+   * {@link uk.co.spudsoft.query.main.JwtValidationConfig#issuerHostPath}.
+   * @param requiredAuds The audience that must be found in any token (any one of the provided audiences matching any aud in the
+   * token is acceptable).
+   * @param sessionCookie The name of the session cookie that should contain the ID of a previously recorded JWT. Only valid if
+   * login is enabled.
+   * @param validatedTokenCacheSize The maximum number of validated tokens to cache, if this is not positive validated tokens will not be cached.
+   * @param validatedTokenCacheDuration The maximum time for which a validated token will be cached, if this is not positive validated tokens will not be cached.
+   */
+  @SuppressFBWarnings(value = "EI_EXPOSE_REP2", justification = "The WebClient should be created specifically for use by the RequestContextBuilder.")
+  public Authenticator(WebClient webClient,
+           JwtValidator validator,
+           OpenIdDiscoveryHandler discoverer,
+           LoginDao loginDao,
+           MeterRegistry meterRegistry,
+           BasicAuthConfig basicAuthConfig,
+           boolean enableBearerAuth,
+           String openIdIntrospectionHeaderName,
+           boolean deriveIssuerFromHost,
+           String issuerHostPath,
+           List<String> requiredAuds,
+           String sessionCookie,
+           int validatedTokenCacheSize,
+           Duration validatedTokenCacheDuration
   ) {
     this.webClient = webClient;
     this.validator = validator;
@@ -136,6 +186,11 @@ public class Authenticator {
     this.issuerHostPath = ensureNonBlankStartsWith(issuerHostPath, "/");
     this.audList = ImmutableCollectionTools.copy(requiredAuds);
     this.sessionCookieName = sessionCookie;
+    if (validatedTokenCacheSize > 0 && validatedTokenCacheDuration != null && validatedTokenCacheDuration.isPositive()) {
+      this.validatedJwtCache = new ValidatedJwtCache(meterRegistry, validatedTokenCacheSize, validatedTokenCacheDuration);
+    } else {
+      this.validatedJwtCache = null;
+    }
 
     if (meterRegistry != null) {
       meterRegistry.gauge("queryengine.cache.size"
@@ -282,6 +337,9 @@ public class Authenticator {
         logger.info("Purged {} entries from credentials cache, leaving {}", pre - post, post);
       }
     }
+    if (validatedJwtCache != null) {
+      validatedJwtCache.purge();
+    }
   }
 
   private String getCachedToken(Log log, String credentials) {
@@ -322,6 +380,8 @@ public class Authenticator {
 
   /**
    * Validate a JWT using the configured rules.
+   * <P>
+   * If the validated token cache is enabled a token that has already been validated (against the same issuer) will not be validated again.
    *
    * @param request The HTTP request, which may be used to derive the issuer (if so configured).
    * @param token The JWT.
@@ -329,7 +389,16 @@ public class Authenticator {
    * fails.
    */
   public Future<Jwt> validateToken(HttpServerRequest request, String token) {
-    return validator.validateToken(issuer(request), token, audList, false);
+    String issuer = issuer(request);
+    if (validatedJwtCache == null) {
+      return validator.validateToken(issuer, token, audList, false);
+    }
+    Jwt cached = validatedJwtCache.get(issuer, token);
+    if (cached != null) {
+      return Future.succeededFuture(cached);
+    }
+    return validator.validateToken(issuer, token, audList, false)
+            .onSuccess(jwt -> validatedJwtCache.put(issuer, token, jwt));
   }
 
   private Future<RequestContext> buildRequestContextWithoutCookie(Log log, RoutingContext routingContext, RequestContext requestContext) {
@@ -450,7 +519,7 @@ public class Authenticator {
 
       String token = authHeader.substring(BEARER.length());
       request.pause();
-      return validator.validateToken(issuer(request), token, audList, false)
+      return validateToken(request, token)
               .onFailure(ex -> {
                 request.resume();
               })
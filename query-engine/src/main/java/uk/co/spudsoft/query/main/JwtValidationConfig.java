@@ -118,6 +118,9 @@ public class JwtValidationConfig {
   private boolean requireNbf = true;
   
   private Duration permittedTimeSkew = Duration.ZERO;
+
+  private int validatedTokenCacheSize = 1000;
+  private Duration validatedTokenCacheDuration = Duration.ofMinutes(1);
   
   /**
    * Constructor.
@@ -413,6 +416,76 @@ public class JwtValidationConfig {
   public void setPermittedTimeSkew(Duration permittedTimeSkew) {
     this.permittedTimeSkew = permittedTimeSkew;
   }
+
+  /**
+   * Get the maximum number of successfully validated tokens that will be cached.
+   * <P>
+   * Validating a token requires checking its signature, which is relatively expensive, and clients often make many requests with the same token.
+   * Caching the results of successful validations means that each token is only validated once (per cache duration).
+   * <P>
+   * Set to zero to disable the cache.
+   * <P>
+   * Defaults to 1000.
+   *
+   * @return the maximum number of successfully validated tokens that will be cached.
+   */
+  public int getValidatedTokenCacheSize() {
+    return validatedTokenCacheSize;
+  }
+
+  /**
+   * Set the maximum number of successfully validated tokens that will be cached.
+   * <P>
+   * Validating a token requires checking its signature, which is relatively expensive, and clients often make many requests with the same token.
+   * Caching the results of successful validations means that each token is only validated once (per cache duration).
+   * <P>
+   * Set to zero to disable the cache.
+   * <P>
+   * Defaults to 1000.
+   *
+   * @param validatedTokenCacheSize the maximum number of successfully validated tokens that will be cached.
+   * @return this, so that the method may be called in a fluent manner.
+   */
+  public JwtValidationConfig setValidatedTokenCacheSize(int validatedTokenCacheSize) {
+    this.validatedTokenCacheSize = validatedTokenCacheSize;
+    return this;
+  }
+
+  /**
+   * Get the maximum time for which a successfully validated token will be cached.
+   * <P>
+   * A token will never be cached beyond its exp.
+   * The actual duration used is the shorter of this value and the defaultJwksCacheDuration, so that a token signed by a key that has been
+   * removed from the JWKS will not continue to be accepted for longer than the key itself would have been.
+   * <P>
+   * Configuration files should specify this using <a href="https://en.wikipedia.org/wiki/ISO_8601#Durations">ISO860 Duration</a> format, i.e. PT10S.
+   * <P>
+   * Defaults to one minute.
+   *
+   * @return the maximum time for which a successfully validated token will be cached.
+   */
+  public Duration getValidatedTokenCacheDuration() {
+    return validatedTokenCacheDuration;
+  }
+
+  /**
+   * Set the maximum time for which a successfully validated token will be cached.
+   * <P>
+   * A token will never be cached beyond its exp.
+   * The actual duration used is the shorter of this value and the defaultJwksCacheDuration, so that a token signed by a key that has been
+   * removed from the JWKS will not continue to be accepted for longer than the key itself would have been.
+   * <P>
+   * Configuration files should specify this using <a href="https://en.wikipedia.org/wiki/ISO_8601#Durations">ISO860 Duration</a> format, i.e. PT10S.
+   * <P>
+   * Defaults to one minute.
+   *
+   * @param validatedTokenCacheDuration the maximum time for which a successfully validated token will be cached.
+   * @return this, so that the method may be called in a fluent manner.
+   */
+  public JwtValidationConfig setValidatedTokenCacheDuration(Duration validatedTokenCacheDuration) {
+    this.validatedTokenCacheDuration = validatedTokenCacheDuration;
+    return this;
+  }
   
   
 
@@ -423,5 +496,11 @@ public class JwtValidationConfig {
    * @throws IllegalArgumentException if anything in the parameters is invalid.
    */
   public void validate(String path) throws IllegalArgumentException {
+    if (validatedTokenCacheSize < 0) {
+      throw new IllegalArgumentException(path + ".validatedTokenCacheSize configured with negative value (" + validatedTokenCacheSize + ")");
+    }
+    if (validatedTokenCacheDuration != null && validatedTokenCacheDuration.isNegative()) {
+      throw new IllegalArgumentException(path + ".validatedTokenCacheDuration configured with negative value (" + validatedTokenCacheDuration + ")");
+    }
   }
 }
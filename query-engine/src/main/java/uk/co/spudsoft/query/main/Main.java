@@ -110,6 +110,8 @@ import uk.co.spudsoft.query.exec.AuditorPersistenceImpl;
 import uk.co.spudsoft.query.exec.FilterFactory;
 import uk.co.spudsoft.query.exec.JdbcHelper;
 import uk.co.spudsoft.query.exec.PipelineExecutor;
+import uk.co.spudsoft.query.exec.dynamic.JexlEvaluator;
+import uk.co.spudsoft.query.exec.dynamic.StringTemplateEvaluator;
 import uk.co.spudsoft.query.exec.filters.LimitFilter;
 import uk.co.spudsoft.query.exec.filters.MapFilter;
 import uk.co.spudsoft.query.exec.filters.OffsetFilter;
@@ -117,6 +119,7 @@ import uk.co.spudsoft.query.exec.filters.QueryFilter;
 import uk.co.spudsoft.query.exec.filters.SortFilter;
 import uk.co.spudsoft.query.exec.filters.WithoutFilter;
 import uk.co.spudsoft.query.exec.procs.sort.ProcessorSortInstance;
+import uk.co.spudsoft.query.exec.procs.subquery.LookupCache;
 import uk.co.spudsoft.query.json.ObjectMapperConfiguration;
 import uk.co.spudsoft.query.logging.RequestCollatingAppender;
 import uk.co.spudsoft.query.main.sample.SampleDataLoader;
@@ -485,6 +488,10 @@ public class Main extends Application {
 
     ProcessorSortInstance.setMemoryLimit(params.getProcessors().getInMemorySortLimitBytes());
     ProcessorSortInstance.setTempDir(params.getProcessors().getTempDir());
+    ProcessorSortInstance.setMergeFanIn(params.getProcessors().getSortMergeFanIn());
+    ProcessorSortInstance.setNormalisedKeys(params.getProcessors().isSortNormalisedKeys());
+    ProcessorSortInstance.setTopNMaxRows(params.getProcessors().getSortTopNMaxRows());
+    LookupCache.setMaxBytes(params.getProcessors().getLookupCacheMaxBytes());
 
     VertxOptions vertxOptions = params.getVertxOptions();
     vertxOptions.setMetricsOptions(
@@ -510,6 +517,8 @@ public class Main extends Application {
 
     vertx = vertxBuilder.build();
     meterRegistry = (PrometheusMeterRegistry) BackendRegistries.getDefaultNow();
+    JexlEvaluator.monitorCache(meterRegistry);
+    StringTemplateEvaluator.monitorCache(meterRegistry);
 
     vertx.setPeriodic(Duration.ofHours(1).toMillis(), id -> {
       requestLoggingAppender.purgeOlderThanDefault();
@@ -561,6 +570,9 @@ public class Main extends Application {
         if (logger.isDebugEnabled()) {
           logger.info("Known files changed to: {}", Json.encode(dirCache.getRoot()));
         }
+        if (defnLoader != null) {
+          defnLoader.filesChanged();
+        }
       });
       defnLoader = new PipelineDefnLoader(meterRegistry, vertx, params.getPipelineCache(), dirCache);
     } catch (Throwable ex) {
@@ -684,6 +696,7 @@ public class Main extends Application {
             , params.getWriteStreamBufferSize()
             , params.getResponseWriteQueueMaxSize()
             , outputAllErrorMessages()
+            , params.getOutputCacheFillTimeout()
             , pipelineVerticleInstances
     );
 
@@ -1002,6 +1015,12 @@ public class Main extends Application {
       jwtValidator.setTimeLeeway(jwtConfig.getPermittedTimeSkew());
     }
 
+    Duration validatedTokenCacheDuration = jwtConfig.getValidatedTokenCacheDuration();
+    if (validatedTokenCacheDuration != null && jwtConfig.getDefaultJwksCacheDuration() != null
+            && jwtConfig.getDefaultJwksCacheDuration().compareTo(validatedTokenCacheDuration) < 0) {
+      validatedTokenCacheDuration = jwtConfig.getDefaultJwksCacheDuration();
+    }
+
     Authenticator auther = new Authenticator(WebClient.create(vertx, params.getWebClientOptions())
             , jwtValidator
             , openIdDiscoveryHandler
@@ -1014,6 +1033,8 @@ public class Main extends Application {
             , jwtConfig.getIssuerHostPath()
             , jwtConfig.getRequiredAudiences()
             , params.getSession().getSessionCookie() != null ? params.getSession().getSessionCookie().getName() : null
+            , jwtConfig.getValidatedTokenCacheSize()
+            , validatedTokenCacheDuration
     );
 
     vertx.setPeriodic(Duration.ofHours(1).toMillis(), id -> {
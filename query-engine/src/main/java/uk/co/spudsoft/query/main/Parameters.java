@@ -24,6 +24,7 @@ import io.vertx.core.VertxOptions;
 import io.vertx.core.http.HttpServerOptions;
 import io.vertx.ext.web.client.WebClientOptions;
 import java.io.File;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -187,6 +188,14 @@ public class Parameters {
    */
   private String outputCacheDir = System.getProperty("java.io.tmpdir");
 
+  /**
+   * The maximum time that a request will wait for a concurrent request to generate the cache file that it needs.
+   *
+   * After this time the request will run the pipeline itself.
+   *
+   * Default value 2 minutes.
+   */
+  private Duration outputCacheFillTimeout = Duration.ofMinutes(2);
 
   /**
    * The amount of data to cache before writing to the output stream.
@@ -1187,6 +1196,32 @@ public class Parameters {
     this.outputCacheDir = outputCacheDir.endsWith("/") || outputCacheDir.endsWith("\\") ? outputCacheDir : outputCacheDir + File.separator;
   }
 
+  /**
+   * Get the maximum time that a request will wait for a concurrent request to generate the cache file that it needs.
+   * <p>
+   * When several identical requests for a cached pipeline arrive at the same time only one of them runs the pipeline,
+   * the others wait for it to generate the cache file.
+   * If the cache file has not been generated within this time the waiting request will run the pipeline itself.
+   *
+   * @return the maximum time that a request will wait for a concurrent request to generate the cache file that it needs.
+   */
+  public Duration getOutputCacheFillTimeout() {
+    return outputCacheFillTimeout;
+  }
+
+  /**
+   * Set the maximum time that a request will wait for a concurrent request to generate the cache file that it needs.
+   * <p>
+   * When several identical requests for a cached pipeline arrive at the same time only one of them runs the pipeline,
+   * the others wait for it to generate the cache file.
+   * If the cache file has not been generated within this time the waiting request will run the pipeline itself.
+   *
+   * @param outputCacheFillTimeout the maximum time that a request will wait for a concurrent request to generate the cache file that it needs.
+   */
+  public void setOutputCacheFillTimeout(Duration outputCacheFillTimeout) {
+    this.outputCacheFillTimeout = outputCacheFillTimeout;
+  }
+
   /**
    * Get the WriteStream buffer size.
    *
@@ -1617,9 +1652,15 @@ public class Parameters {
         }
       }
     }
+    if (processors != null) {
+      processors.validate("processors");
+    }
     if (writeStreamBufferSize < 1024) {
       throw new IllegalArgumentException("The writeStreamBufferSize cannot be less than 1024.");
     }
+    if (outputCacheFillTimeout == null || !outputCacheFillTimeout.isPositive()) {
+      throw new IllegalArgumentException("The outputCacheFillTimeout must be a positive duration.");
+    }
     if (operators != null) {
       operators.validate();
     }
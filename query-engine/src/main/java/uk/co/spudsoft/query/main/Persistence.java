@@ -42,6 +42,14 @@ public class Persistence {
    * Maximum number of retries, zero => no retries, &lt;0 implies unlimited retries.
    */
   private int retryLimit;
+  /**
+   * Configuration of write-behind for audit records, if not set audit records are written synchronously.
+   */
+  private AuditWriteBehind auditWriteBehind;
+  /**
+   * The way in which rate limit rules are enforced.
+   */
+  private RateLimitMode rateLimitMode = RateLimitMode.database;
 
   /**
    * Constructor.
@@ -84,6 +92,30 @@ public class Persistence {
     return retryLimit;
   }
 
+  /**
+   * Configuration of write-behind for audit records.
+   * <P>
+   * If this is not set audit records are written to the database as they are generated.
+   * 
+   * @return the configuration of write-behind for audit records.
+   */
+  @SuppressFBWarnings(value = "EI_EXPOSE_REP", justification = "Configuration parameter, should not be changed after being initialized by Jackson")
+  public AuditWriteBehind getAuditWriteBehind() {
+    return auditWriteBehind;
+  }
+
+  /**
+   * The way in which rate limit rules are enforced.
+   * <P>
+   * By default rate limit rules are evaluated against the audit database, which is accurate across multiple instances
+   * of Query Engine but requires a serializable transaction for every request.
+   * 
+   * @return the way in which rate limit rules are enforced.
+   */
+  public RateLimitMode getRateLimitMode() {
+    return rateLimitMode;
+  }
+
   /**
    * The JDBC data source for storing audit information.
    * @param dataSource the JDBC data source for storing audit information.
@@ -125,6 +157,34 @@ public class Persistence {
     return this;
   }
   
+  /**
+   * Configuration of write-behind for audit records.
+   * <P>
+   * If this is not set audit records are written to the database as they are generated.
+   * 
+   * @param auditWriteBehind the configuration of write-behind for audit records.
+   * @return this, so the method may be used fluently.
+   */
+  @SuppressFBWarnings(value = "EI_EXPOSE_REP2", justification = "Configuration parameter, should not be changed after being initialized by Jackson")
+  public Persistence setAuditWriteBehind(AuditWriteBehind auditWriteBehind) {
+    this.auditWriteBehind = auditWriteBehind;
+    return this;
+  }
+  
+  /**
+   * The way in which rate limit rules are enforced.
+   * <P>
+   * By default rate limit rules are evaluated against the audit database, which is accurate across multiple instances
+   * of Query Engine but requires a serializable transaction for every request.
+   * 
+   * @param rateLimitMode the way in which rate limit rules are enforced.
+   * @return this, so the method may be used fluently.
+   */
+  public Persistence setRateLimitMode(RateLimitMode rateLimitMode) {
+    this.rateLimitMode = rateLimitMode;
+    return this;
+  }
+  
   /**
    * Validate the provided parameters.
    * 
@@ -138,6 +198,12 @@ public class Persistence {
     if (dataSource != null) {
       dataSource.validate(path + ".dataSource");
     }
+    if (rateLimitMode == null) {
+      throw new IllegalArgumentException(path + ".rateLimitMode must be set");
+    }
+    if (auditWriteBehind != null) {
+      auditWriteBehind.validate(path + ".auditWriteBehind");
+    }
     
   }
   
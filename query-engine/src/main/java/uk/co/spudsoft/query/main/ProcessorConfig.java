@@ -28,6 +28,10 @@ public class ProcessorConfig {
   
   private String tempDir = System.getProperty("java.io.tmpdir");
   private int inMemorySortLimitBytes = 1 << 22; // 4MB;
+  private int sortMergeFanIn = 32;
+  private boolean sortNormalisedKeys = false;
+  private int sortTopNMaxRows = 10000;
+  private long lookupCacheMaxBytes = 64L << 20; // 64MB
 
   /**
    * Constructor.
@@ -79,5 +83,136 @@ public class ProcessorConfig {
   public void setInMemorySortLimitBytes(int inMemorySortLimitBytes) {
     this.inMemorySortLimitBytes = inMemorySortLimitBytes;
   }
+
+  /**
+   * The maximum number of temporary files that {@link uk.co.spudsoft.query.exec.procs.sort.ProcessorSortInstance} will merge in a single pass.
+   * <p>
+   * When a sort spills to more temporary files than this they are merged in groups of this size into larger files before the final merge,
+   * limiting the number of files that are open at once.
+   * Higher values mean fewer passes over the data, but more open files and more memory for read buffers.
+   * <p>
+   * The default value is 32, the minimum value is 2.
+   * @return the maximum number of temporary files that {@link uk.co.spudsoft.query.exec.procs.sort.ProcessorSortInstance} will merge in a single pass.
+   */
+  public int getSortMergeFanIn() {
+    return sortMergeFanIn;
+  }
+
+  /**
+   * The maximum number of temporary files that {@link uk.co.spudsoft.query.exec.procs.sort.ProcessorSortInstance} will merge in a single pass.
+   * <p>
+   * When a sort spills to more temporary files than this they are merged in groups of this size into larger files before the final merge,
+   * limiting the number of files that are open at once.
+   * Higher values mean fewer passes over the data, but more open files and more memory for read buffers.
+   * <p>
+   * The default value is 32, the minimum value is 2.
+   * @param sortMergeFanIn the maximum number of temporary files that {@link uk.co.spudsoft.query.exec.procs.sort.ProcessorSortInstance} will merge in a single pass.
+   */
+  public void setSortMergeFanIn(int sortMergeFanIn) {
+    this.sortMergeFanIn = sortMergeFanIn;
+  }
+
+  /**
+   * Whether {@link uk.co.spudsoft.query.exec.procs.sort.ProcessorSortInstance} should use normalised binary keys to sort data in memory.
+   * <p>
+   * When enabled, sorts on more than one field generate a binary key for each row before sorting a chunk of rows in memory,
+   * so that each comparison is a single byte array comparison rather than a comparison of each field in turn.
+   * This uses more memory whilst each chunk is being sorted, so it is only worthwhile for sorts on several fields.
+   * <p>
+   * The default value is false.
+   * @return true if {@link uk.co.spudsoft.query.exec.procs.sort.ProcessorSortInstance} should use normalised binary keys to sort data in memory.
+   */
+  public boolean isSortNormalisedKeys() {
+    return sortNormalisedKeys;
+  }
+
+  /**
+   * Whether {@link uk.co.spudsoft.query.exec.procs.sort.ProcessorSortInstance} should use normalised binary keys to sort data in memory.
+   * <p>
+   * When enabled, sorts on more than one field generate a binary key for each row before sorting a chunk of rows in memory,
+   * so that each comparison is a single byte array comparison rather than a comparison of each field in turn.
+   * This uses more memory whilst each chunk is being sorted, so it is only worthwhile for sorts on several fields.
+   * <p>
+   * The default value is false.
+   * @param sortNormalisedKeys true if {@link uk.co.spudsoft.query.exec.procs.sort.ProcessorSortInstance} should use normalised binary keys to sort data in memory.
+   */
+  public void setSortNormalisedKeys(boolean sortNormalisedKeys) {
+    this.sortNormalisedKeys = sortNormalisedKeys;
+  }
+
+  /**
+   * The maximum number of rows that will be held in memory to find the first rows of a sort that is followed by a limit.
+   * <p>
+   * When a sort processor is immediately followed by a limit processor (possibly with an offset processor between them)
+   * the sort only needs to find the first (offset + limit) rows.
+   * If that number is no greater than this value those rows are found using a bounded heap in memory, without spilling to temporary files.
+   * Otherwise a full sort is carried out.
+   * <p>
+   * The default value is 10000, a value of zero disables the optimisation.
+   * @return the maximum number of rows that will be held in memory to find the first rows of a sort that is followed by a limit.
+   */
+  public int getSortTopNMaxRows() {
+    return sortTopNMaxRows;
+  }
+
+  /**
+   * The maximum number of rows that will be held in memory to find the first rows of a sort that is followed by a limit.
+   * <p>
+   * When a sort processor is immediately followed by a limit processor (possibly with an offset processor between them)
+   * the sort only needs to find the first (offset + limit) rows.
+   * If that number is no greater than this value those rows are found using a bounded heap in memory, without spilling to temporary files.
+   * Otherwise a full sort is carried out.
+   * <p>
+   * The default value is 10000, a value of zero disables the optimisation.
+   * @param sortTopNMaxRows the maximum number of rows that will be held in memory to find the first rows of a sort that is followed by a limit.
+   */
+  public void setSortTopNMaxRows(int sortTopNMaxRows) {
+    this.sortTopNMaxRows = sortTopNMaxRows;
+  }
+
+  /**
+   * The approximate limit on the amount of memory that should be used by cached lookup maps.
+   * <p>
+   * Lookup processors that have a cacheDuration keep their maps in a single cache that is shared by all requests.
+   * When the (approximate) size of the maps in the cache exceeds this value the least recently used maps are removed.
+   * As with inMemorySortLimitBytes the calculation of the memory used is not very precise.
+   * <p>
+   * The default value is 64MB.
+   * @return the approximate limit on the amount of memory that should be used by cached lookup maps.
+   */
+  public long getLookupCacheMaxBytes() {
+    return lookupCacheMaxBytes;
+  }
+
+  /**
+   * The approximate limit on the amount of memory that should be used by cached lookup maps.
+   * <p>
+   * Lookup processors that have a cacheDuration keep their maps in a single cache that is shared by all requests.
+   * When the (approximate) size of the maps in the cache exceeds this value the least recently used maps are removed.
+   * As with inMemorySortLimitBytes the calculation of the memory used is not very precise.
+   * <p>
+   * The default value is 64MB.
+   * @param lookupCacheMaxBytes the approximate limit on the amount of memory that should be used by cached lookup maps.
+   */
+  public void setLookupCacheMaxBytes(long lookupCacheMaxBytes) {
+    this.lookupCacheMaxBytes = lookupCacheMaxBytes;
+  }
+
+  /**
+   * Validate the provided values.
+   * @param path The configuration path to this item, for reporting.
+   * @throws IllegalArgumentException If the processor configuration is invalid.
+   */
+  public void validate(String path) throws IllegalArgumentException {
+    if (sortMergeFanIn < 2) {
+      throw new IllegalArgumentException(path + ".sortMergeFanIn configured with value less than 2 (" + sortMergeFanIn + ")");
+    }
+    if (sortTopNMaxRows < 0) {
+      throw new IllegalArgumentException(path + ".sortTopNMaxRows configured with negative value (" + sortTopNMaxRows + ")");
+    }
+    if (lookupCacheMaxBytes < 0) {
+      throw new IllegalArgumentException(path + ".lookupCacheMaxBytes configured with negative value (" + lookupCacheMaxBytes + ")");
+    }
+  }
   
 }
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2026 jtalbut
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.spudsoft.query.main;
+
+/**
+ * The ways in which {@link uk.co.spudsoft.query.defn.RateLimitRule}s may be enforced when persistence is configured.
+ *
+ * @author jtalbut
+ */
+public enum RateLimitMode {
+
+  /**
+   * Rate limit rules are evaluated by querying the audit database in a serializable transaction.
+   * <P>
+   * This is accurate across multiple instances of Query Engine, but every request with rate limit rules requires a serializable transaction
+   * against the request table.
+   */
+  database
+  ,
+  /**
+   * Rate limit rules are evaluated using in-memory counters within this instance of Query Engine.
+   * <P>
+   * The audit database is not queried, so requests made to other instances are not taken into account.
+   * This mode is appropriate when there is a single instance of Query Engine, or when the limits only need to be approximate.
+   */
+  local
+  ,
+  /**
+   * Rate limit rules are evaluated using in-memory counters and, if they pass, by querying the audit database as well.
+   * <P>
+   * Requests that breach the limits of this instance are refused without touching the database,
+   * the database check reconciles the limits across multiple instances of Query Engine.
+   */
+  localAndDatabase
+}
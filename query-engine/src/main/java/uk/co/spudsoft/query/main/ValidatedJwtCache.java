@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2026 jtalbut
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.spudsoft.query.main;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import uk.co.spudsoft.jwtvalidatorvertx.Jwt;
+import uk.co.spudsoft.query.exec.ExpiringValue;
+
+/**
+ * Cache of JWTs that have been successfully validated.
+ * <P>
+ * Entries are keyed by a SHA-256 digest of the issuer that the token was validated against and the raw token, so the tokens
+ * themselves are not held as keys.
+ * Each entry lives until the exp of the token, or for the maximum duration passed to the constructor if that is sooner.
+ * <P>
+ * Validation depends on the JWKS, so the maximum duration should be no longer than the period for which JWKS data is cached,
+ * otherwise a token signed by a key that has been removed from the JWKS may be accepted after the key has gone.
+ *
+ * @author jtalbut
+ */
+class ValidatedJwtCache {
+
+  private final Cache<HashCode, ValidatedJwt> cache;
+  private final Duration maxDuration;
+
+  /**
+   * A validated JWT along with the time at which it should no longer be used.
+   * @param jwt The validated JWT.
+   * @param expiry The value of {@link System#nanoTime()} after which this JWT should not be used.
+   */
+  record ValidatedJwt(Jwt jwt, long expiry) implements ExpiringValue {
+  }
+
+  /**
+   * Constructor.
+   * @param meterRegistry MeterRegistry for production of metrics.
+   * @param maxSize The maximum number of validated JWTs to keep.
+   * @param maxDuration The maximum time for which a validated JWT will be kept.
+   */
+  ValidatedJwtCache(MeterRegistry meterRegistry, int maxSize, Duration maxDuration) {
+    this.maxDuration = maxDuration;
+    this.cache = CacheBuilder.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfterWrite(maxDuration)
+            .recordStats()
+            .build();
+    if (meterRegistry != null) {
+      GuavaCacheMetrics.monitor(meterRegistry, cache, "jwt");
+      meterRegistry.gauge("queryengine.cache.size"
+              , Arrays.asList(
+                      Tag.of("cachename", "jwt")
+              )
+              , cache, c -> {
+        synchronized (c) {
+          return c.size();
+        }
+      });
+    }
+  }
+
+  static HashCode key(String issuer, String token) {
+    return Hashing.sha256().newHasher()
+            .putString(issuer == null ? "" : issuer, StandardCharsets.UTF_8)
+            .putInt(0)
+            .putString(token, StandardCharsets.UTF_8)
+            .hash();
+  }
+
+  /**
+   * Get a previously validated JWT.
+   * @param issuer The issuer that the token must have been validated against.
+   * @param token The raw token.
+   * @return The validated JWT, or null if the token has not been validated against the issuer (or the validation has expired).
+   */
+  Jwt get(String issuer, String token) {
+    ValidatedJwt cached = ExpiringValue.getIfPresent(cache, key(issuer, token));
+    return cached == null ? null : cached.jwt();
+  }
+
+  /**
+   * Record a successfully validated JWT.
+   * <P>
+   * Tokens that have already expired are not recorded.
+   * @param issuer The issuer that the token was validated against.
+   * @param token The raw token.
+   * @param jwt The validated JWT.
+   */
+  void put(String issuer, String token, Jwt jwt) {
+    Duration ttl = maxDuration;
+    LocalDateTime exp = jwt.getExpirationLocalDateTime();
+    if (exp != null) {
+      Duration untilExp = Duration.between(LocalDateTime.now(ZoneOffset.UTC), exp);
+      if (untilExp.compareTo(ttl) < 0) {
+        ttl = untilExp;
+      }
+    }
+    if (ttl.isPositive()) {
+      cache.put(key(issuer, token), new ValidatedJwt(jwt, ExpiringValue.expiryAfter(ttl)));
+    }
+  }
+
+  /**
+   * Remove expired entries from the cache.
+   */
+  void purge() {
+    ExpiringValue.purge(cache);
+  }
+
+  /**
+   * Get the number of validated JWTs in the cache.
+   * @return the number of validated JWTs in the cache.
+   */
+  long size() {
+    return cache.size();
+  }
+
+}
@@ -23,10 +23,12 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 import com.fasterxml.jackson.dataformat.yaml.YAMLGenerator;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.hash.Hashing;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
 import io.vertx.core.Future;
 import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
@@ -40,9 +42,14 @@ import java.nio.charset.StandardCharsets;
 import java.text.Normalizer;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -91,10 +98,38 @@ public final class PipelineDefnLoader {
   private final FileCache<Pipeline> pipelineCache;
   private final FileCache<Template> templateCache;
   private final FileCache<ConditionInstance> permissionsCache;
+  /**
+   * Pipelines parsed from the output of Velocity templates, keyed by the type of the output and the SHA-256 of the output.
+   * <P>
+   * Most requests for a templated pipeline render exactly the same text, there is no need to parse it again when that happens.
+   */
+  private final Cache<String, Pipeline> renderedPipelineCache;
+  /**
+   * The title and description of each (non-templated) pipeline file, as reported by {@link #getAccessible(uk.co.spudsoft.query.exec.context.RequestContext)}.
+   * <P>
+   * The key includes the size and modification time of the file, so unchanged files keep their entries when other files change.
+   */
+  private final Cache<DirCacheTree.File, PipelineNodesTree.PipelineFile> pipelineMetadataCache;
+  /**
+   * Trees of accessible pipelines, keyed by the generation of the directory tree and the outcomes of the permissions checks.
+   * <P>
+   * Two requests that are granted access to exactly the same directories will see exactly the same tree,
+   * unless that tree contains templated pipelines (whose titles may depend on the request), in which case it is not cached.
+   */
+  private final Cache<AccessibleTreeKey, PipelineNodesTree.PipelineDir> accessibleTreeCache;
+  private final AtomicLong generation = new AtomicLong();
+  private final AtomicReference<DirCacheTree.Directory> lastRoot = new AtomicReference<>();
   private final DirCache dirCache;
   private final FileSystem fs;
   private final VelocityEngine velocity;
   
+  /**
+   * Key for the {@link #accessibleTreeCache}.
+   * @param generation The value of {@link #generation} when the tree was built.
+   * @param permissions The outcome of each permissions check ('1' for permitted, '0' for forbidden), in depth first order.
+   */
+  private record AccessibleTreeKey(long generation, String permissions) {}
+  
   private static final PipelineParsingErrorHandler PROBLEM_HANDLER = new PipelineParsingErrorHandler();
   /**
    * The ObjectMapper to reading/writing JSON files containing {@link Pipeline} definitions.
@@ -180,6 +215,18 @@ public final class PipelineDefnLoader {
             , cacheConfig.getMaxItems()
             , cacheConfig.getMaxDuration()
             );
+    this.renderedPipelineCache = cacheBuilder.build();
+    if (meterRegistry != null) {
+      GuavaCacheMetrics.monitor(meterRegistry, renderedPipelineCache, "rendered-pipeline-cache");
+    }
+    this.pipelineMetadataCache = cacheBuilder.build();
+    if (meterRegistry != null) {
+      GuavaCacheMetrics.monitor(meterRegistry, pipelineMetadataCache, "pipeline-metadata-cache");
+    }
+    this.accessibleTreeCache = cacheBuilder.build();
+    if (meterRegistry != null) {
+      GuavaCacheMetrics.monitor(meterRegistry, accessibleTreeCache, "accessible-tree-cache");
+    }
     
     this.velocity = new VelocityEngine();
     velocity.setProperty(VelocityEngine.RESOURCE_LOADERS, "string");
@@ -217,6 +264,18 @@ public final class PipelineDefnLoader {
     pipelineCache.purge(files);
     templateCache.purge(files);
     permissionsCache.purge(files);
+    pipelineMetadataCache.asMap().keySet().retainAll(files);
+  }
+  
+  /**
+   * Notify the loader that the files in the {@link DirCache} have changed.
+   * <P>
+   * This should be called from the {@link DirCache} callback, it discards all cached trees of accessible pipelines.
+   * Changes are also detected (less promptly) by a change to the root of the {@link DirCache}.
+   */
+  public void filesChanged() {
+    generation.incrementAndGet();
+    accessibleTreeCache.invalidateAll();
   }
   
   /**
@@ -318,10 +377,21 @@ public final class PipelineDefnLoader {
     }
   }
   
+  private static boolean isTemplate(DirCacheTree.File file) {
+    return file.getName().endsWith(".vm");
+  }
+  
   private Future<PipelineNodesTree.PipelineFile> loadPipeline(DirCacheTree.File file, RequestContext requestContext) {
     if (PERMISSIONS_FILENAME.equals(file.getName())) {
       return Future.succeededFuture();
     } else {
+      boolean template = isTemplate(file);
+      if (!template) {
+        PipelineNodesTree.PipelineFile cached = pipelineMetadataCache.getIfPresent(file);
+        if (cached != null) {
+          return Future.succeededFuture(cached);
+        }
+      }
       Log.decorate(logger.atDebug(), requestContext).log("Loading {}", file);
       return readPipelineFromFile(file, requestContext)
               .onSuccess(paf -> {
@@ -338,39 +408,121 @@ public final class PipelineDefnLoader {
                 Log.decorate(logger.atWarn(), requestContext).log("Failed to parse file {}: ", file, ex);
                 return Future.failedFuture(ex);
               })
-              .map(pipelineAndFile -> new PipelineNodesTree.PipelineFile(
-                      filePathToUrlPath(file)
-                      , pipelineAndFile.pipeline.getTitle()
-                      , pipelineAndFile.pipeline.getDescription()
-              ))
+              .map(pipelineAndFile -> {
+                PipelineNodesTree.PipelineFile result = new PipelineNodesTree.PipelineFile(
+                        filePathToUrlPath(file)
+                        , pipelineAndFile.pipeline.getTitle()
+                        , pipelineAndFile.pipeline.getDescription()
+                );
+                if (!template) {
+                  pipelineMetadataCache.put(file, result);
+                }
+                return result;
+              })
               ;
     }
   }
   
+  /**
+   * Evaluate the permissions of every directory below dir that the request can reach.
+   * <P>
+   * As with {@link AsyncDirTreeMapper} the permissions of dir itself are not checked, and the children of forbidden directories are not evaluated.
+   * 
+   * @param requestContext The request context to use in assessing accessibility.
+   * @param dir The directory whose descendants are to be evaluated.
+   * @param permitted Map to be populated with the outcome for each directory that is evaluated.
+   * @return A Future that will be completed when all reachable directories have been evaluated.
+   */
+  private Future<Void> evaluatePermissions(RequestContext requestContext, DirCacheTree.Directory dir, Map<DirCacheTree.Directory, Boolean> permitted) {
+    List<Future<Void>> futures = new ArrayList<>();
+    for (DirCacheTree.Node node : dir.getChildren()) {
+      if (node instanceof DirCacheTree.Directory child) {
+        futures.add(dirValidator(requestContext, child)
+                .compose(allowed -> {
+                  permitted.put(child, allowed);
+                  return allowed ? evaluatePermissions(requestContext, child, permitted) : Future.succeededFuture();
+                }));
+      }
+    }
+    return Future.all(futures).mapEmpty();
+  }
+  
+  /**
+   * Build a string describing the outcome of every permissions check in the tree, in depth first order.
+   * 
+   * @param dir The directory whose descendants are to be described.
+   * @param permitted The outcomes gathered by {@link #evaluatePermissions}.
+   * @param fingerprint The string being built.
+   */
+  static void permissionsFingerprint(DirCacheTree.Directory dir, Map<DirCacheTree.Directory, Boolean> permitted, StringBuilder fingerprint) {
+    for (DirCacheTree.Node node : dir.getChildren()) {
+      if (node instanceof DirCacheTree.Directory child) {
+        boolean allowed = Boolean.TRUE.equals(permitted.get(child));
+        if (child.get(PERMISSIONS_FILENAME) != null) {
+          fingerprint.append(allowed ? '1' : '0');
+        }
+        if (allowed) {
+          permissionsFingerprint(child, permitted, fingerprint);
+        }
+      }
+    }
+  }
+  
   /**
    * Get a tree of pipelines that are accessible to the current request context.
+   * <P>
+   * The permissions files are evaluated for every request, but the resulting tree is cached for all requests that have the same outcomes
+   * (and is only rebuilt when the files change).
+   * 
    * @param requestContext The request context to use in assessing accessibility.
    * @return a Future that will be completed with a tree of pipelines that are accessible to the current request context.
    */
   public Future<PipelineNodesTree.PipelineDir> getAccessible(RequestContext requestContext) {
     
-    return AsyncDirTreeMapper.<PipelineNodesTree.PipelineNode, PipelineNodesTree.PipelineDir, PipelineNodesTree.PipelineFile>map(
-            requestContext
-            , dirCache.getRoot()
-            , dir -> dirValidator(requestContext, dir)
-            , (dir, list) -> mapDir(dir, list)
-            , file -> {
-              if (file.getSize() == 0) {
-                Log.decorate(logger.atInfo(), requestContext).log("File {} is empty, skipping it", file);
-                return Future.succeededFuture();                
+    DirCacheTree.Directory root = dirCache.getRoot();
+    if (lastRoot.getAndSet(root) != root) {
+      filesChanged();
+    }
+    long currentGeneration = generation.get();
+    
+    Map<DirCacheTree.Directory, Boolean> permitted = new ConcurrentHashMap<>();
+    return evaluatePermissions(requestContext, root, permitted)
+            .compose(v -> {
+              StringBuilder fingerprint = new StringBuilder();
+              permissionsFingerprint(root, permitted, fingerprint);
+              AccessibleTreeKey key = new AccessibleTreeKey(currentGeneration, fingerprint.toString());
+              PipelineNodesTree.PipelineDir cached = accessibleTreeCache.getIfPresent(key);
+              if (cached != null) {
+                Log.decorate(logger.atTrace(), requestContext).log("Found accessible pipelines for {} in cache", key);
+                return Future.succeededFuture(cached);
               }
-              return loadPipeline(file, requestContext)
-                      .recover(ex -> {
-                        Log.decorate(logger.atWarn(), requestContext).log("Failed to load pipeline {}:", file, ex);
-                        return Future.succeededFuture();
-                      });
-            }
-    );
+              
+              AtomicBoolean requestDependent = new AtomicBoolean();
+              return AsyncDirTreeMapper.<PipelineNodesTree.PipelineNode, PipelineNodesTree.PipelineDir, PipelineNodesTree.PipelineFile>map(
+                      requestContext
+                      , root
+                      , dir -> Future.succeededFuture(Boolean.TRUE.equals(permitted.get(dir)))
+                      , (dir, list) -> mapDir(dir, list)
+                      , file -> {
+                        if (file.getSize() == 0) {
+                          Log.decorate(logger.atInfo(), requestContext).log("File {} is empty, skipping it", file);
+                          return Future.succeededFuture();                
+                        }
+                        if (isTemplate(file)) {
+                          requestDependent.set(true);
+                        }
+                        return loadPipeline(file, requestContext)
+                                .recover(ex -> {
+                                  Log.decorate(logger.atWarn(), requestContext).log("Failed to load pipeline {}:", file, ex);
+                                  return Future.succeededFuture();
+                                });
+                      }
+              ).onSuccess(tree -> {
+                if (tree != null && !requestDependent.get()) {
+                  accessibleTreeCache.put(key, tree);
+                }
+              });
+            });
   }
   
   private Future<DirCacheTree.File> findSource(RequestContext requestContext, String path) {
@@ -501,9 +653,17 @@ public final class PipelineDefnLoader {
       try {
         String config = sw.toString();
         Log.decorate(logger.atTrace(), requestContext).log("Template evaluated as: {} using {}", config, requestContext);
-        PROBLEM_HANDLER.setRequestContext(requestContext);
-        Pipeline pipeline = mapper.readValue(config, Pipeline.class);
-        pipeline.setSha256(Hashing.sha256().hashString(config, StandardCharsets.UTF_8).toString());
+        String sha256 = Hashing.sha256().hashString(config, StandardCharsets.UTF_8).toString();
+        String key = (mapper == YAML_OBJECT_MAPPER ? "yaml:" : "json:") + sha256;
+        Pipeline pipeline = renderedPipelineCache.getIfPresent(key);
+        if (pipeline == null) {
+          PROBLEM_HANDLER.setRequestContext(requestContext);
+          pipeline = mapper.readValue(config, Pipeline.class);
+          pipeline.setSha256(sha256);
+          renderedPipelineCache.put(key, pipeline);
+        } else {
+          Log.decorate(logger.atTrace(), requestContext).log("Found pipeline for template output {} in cache", sha256);
+        }
         return Future.succeededFuture(pipeline);
       } catch (Throwable ex) {
         return Future.failedFuture(ex);
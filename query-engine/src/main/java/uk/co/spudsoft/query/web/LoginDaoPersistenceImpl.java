@@ -17,9 +17,12 @@
 package uk.co.spudsoft.query.web;
 
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
 import io.vertx.core.Future;
 import io.vertx.core.Vertx;
 import java.io.IOException;
@@ -30,9 +33,6 @@ import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.temporal.ChronoUnit;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
@@ -48,6 +48,9 @@ import uk.co.spudsoft.query.main.Persistence;
 
 /**
  * Implementation of {@link LoginDao} that stores data in a database.
+ * <P>
+ * Session tokens are cached locally, as are session IDs that are not known, so that most calls to {@link #getToken} do not touch the database.
+ * Expired entries are removed from the cache, and expired sessions from the database, by a periodic background purge rather than on the request path.
  *
  * @author jtalbut
  */
@@ -72,8 +75,17 @@ public class LoginDaoPersistenceImpl implements LoginDao {
   private record TimestampedToken(LocalDateTime expiry, String token){};
 
   private static final int MAX_TOKEN_CACHE_SIZE = 1000;
+  private static final int MAX_UNKNOWN_SESSION_CACHE_SIZE = 10000;
+  private static final Duration UNKNOWN_SESSION_CACHE_DURATION = Duration.ofSeconds(10);
 
-  private final Map<String, TimestampedToken> tokenCache = new HashMap<>();
+  private final Cache<String, TimestampedToken> tokenCache;
+
+  /**
+   * Session IDs that are known not to have a valid token.
+   * <P>
+   * These are only kept for a short time because another instance of the query engine may create a session with the ID.
+   */
+  private final Cache<String, Boolean> unknownSessionCache;
 
   /**
    * Constructor.
@@ -91,7 +103,17 @@ public class LoginDaoPersistenceImpl implements LoginDao {
     this.purgeDelay = purgeDelay;
     this.jdbcHelper = jdbcHelper;
 
+    this.tokenCache = CacheBuilder.newBuilder()
+            .maximumSize(MAX_TOKEN_CACHE_SIZE)
+            .recordStats()
+            .build();
+    this.unknownSessionCache = CacheBuilder.newBuilder()
+            .maximumSize(MAX_UNKNOWN_SESSION_CACHE_SIZE)
+            .expireAfterWrite(UNKNOWN_SESSION_CACHE_DURATION)
+            .build();
+
     if (meterRegistry != null) {
+      GuavaCacheMetrics.monitor(meterRegistry, tokenCache, "token");
       meterRegistry.gauge("queryengine.cache.size"
               , Arrays.asList(
                       Tag.of("cachename", "token")
@@ -266,18 +288,29 @@ public class LoginDaoPersistenceImpl implements LoginDao {
     }
 
     vertx.setPeriodic(purgeDelay.toMillis(), id -> {
-      logger.debug("Scheduled purge of token cache at {}", purgeDelay);
-      int cacheSize;
-      synchronized (tokenCache) {
-        LocalDateTime oneHourAgo = LocalDateTime.now(ZoneOffset.UTC).minusHours(1);
-        tokenCache.entrySet().removeIf(entry -> entry.getValue().expiry.isBefore(oneHourAgo));
-        cacheSize = tokenCache.size();
-        jdbcHelper.runSqlUpdate("purgeLogins", SqlTemplate.PURGE_LOGINS.sql(), ps -> {
-          JdbcHelper.setLocalDateTimeUTC(ps, 1, oneHourAgo);
-        });
-      }
-      logger.debug("Scheduled purge of token cache resulted in cache size of {}", cacheSize);
+      purge();
+    });
+  }
+
+  /**
+   * Remove expired tokens from the cache, and expired logins and sessions from the database.
+   * <P>
+   * This is the only place that expired sessions are deleted from the database, which is done with a single statement for all of them.
+   */
+  void purge() {
+    logger.debug("Scheduled purge of token cache at {}", purgeDelay);
+    LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
+    LocalDateTime oneHourAgo = now.minusHours(1);
+    tokenCache.asMap().values().removeIf(tt -> tt.expiry.isBefore(now));
+    tokenCache.cleanUp();
+    unknownSessionCache.cleanUp();
+    jdbcHelper.runSqlUpdate("purgeLogins", SqlTemplate.PURGE_LOGINS.sql(), ps -> {
+      JdbcHelper.setLocalDateTimeUTC(ps, 1, oneHourAgo);
+    });
+    jdbcHelper.runSqlUpdate("expireTokens", SqlTemplate.EXPIRE_TOKENS.sql(), ps -> {
+      JdbcHelper.setLocalDateTimeUTC(ps, 1, now);
     });
+    logger.debug("Scheduled purge of token cache resulted in cache size of {}", tokenCache.size());
   }
 
   @SuppressFBWarnings(value = "SQL_PREPARED_STATEMENT_GENERATED_FROM_NONCONSTANT_STRING", justification = "Generated SQL is safe")
@@ -395,7 +428,7 @@ public class LoginDaoPersistenceImpl implements LoginDao {
 
   @Override
   public Future<Void> storeTokens(RequestContext requestContext, String id, LocalDateTime expiry, String token, String provider, String refreshToken, String idToken) {
-    cacheToken(requestContext, id, new TimestampedToken(expiry, token));
+    cacheToken(id, new TimestampedToken(expiry, token));
     return jdbcHelper.runSqlUpdate("storeToken", SqlTemplate.STORE_TOKENS.sql(), ps -> {
                     int param = 1;
                     ps.setString(param++, id);
@@ -410,18 +443,22 @@ public class LoginDaoPersistenceImpl implements LoginDao {
   @Override
   public Future<String> getToken(RequestContext requestContext, String id) {
     LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
-    synchronized (tokenCache) {
-      TimestampedToken token = tokenCache.get(id);
-      if (token != null) {
-        Log.decorate(logger.atDebug(), requestContext).log("Now: {}, Expiry: {}", now, token.expiry);
-        if (token.expiry.isBefore(now)) {
-          tokenCache.remove(id);
-          tokenCache.entrySet().removeIf(entry -> entry.getValue().expiry.isBefore(now));
-        } else {
-          return Future.succeededFuture(token.token);
-        }
+    TimestampedToken token = tokenCache.getIfPresent(id);
+    if (token != null) {
+      Log.decorate(logger.atDebug(), requestContext).log("Now: {}, Expiry: {}", now, token.expiry);
+      if (token.expiry.isBefore(now)) {
+        // The session will be removed from the database by the next purge
+        tokenCache.asMap().remove(id, token);
+        cacheUnknownSession(id);
+        return Future.succeededFuture(null);
+      } else {
+        return Future.succeededFuture(token.token);
       }
     }
+    if (unknownSessionCache.getIfPresent(id) != null) {
+      Log.decorate(logger.atDebug(), requestContext).log("Session {} is known not to have a valid token", id);
+      return Future.succeededFuture(null);
+    }
 
     return jdbcHelper.runSqlSelect(SqlTemplate.GET_TOKEN.sql(), ps -> {
         ps.setString(1, id);
@@ -437,15 +474,13 @@ public class LoginDaoPersistenceImpl implements LoginDao {
       .compose(tt -> {
         if (tt != null) {
           Log.decorate(logger.atDebug(), requestContext).log("Now: {}, Expiry: {}", now, tt.expiry);
-          if (now.isAfter(tt.expiry)) {
-            jdbcHelper.runSqlUpdate("deleteToken", SqlTemplate.DELETE_TOKEN.sql(), ps -> ps.setString(1, id));
-            jdbcHelper.runSqlUpdate("expireTokens", SqlTemplate.EXPIRE_TOKENS.sql(), ps -> JdbcHelper.setLocalDateTimeUTC(ps, 1, now));
-            return Future.succeededFuture(null);
-          } else {
-            cacheToken(requestContext, id, tt);
+          if (!now.isAfter(tt.expiry)) {
+            cacheToken(id, tt);
             return Future.succeededFuture(tt.token);
           }
         }
+        // Either there is no such session or it has expired (in which case it will be removed from the database by the next purge)
+        cacheUnknownSession(id);
         return Future.succeededFuture(null);
       });
   }
@@ -470,37 +505,37 @@ public class LoginDaoPersistenceImpl implements LoginDao {
 
   /**
    * Store a token in the local cache.
+   * <P>
+   * When the cache is full the least recently used entry is evicted.
    * @param id Token ID.
    * @param tt Token, with timestamp.
    */
-  void cacheToken(RequestContext requestContext, String id, TimestampedToken tt) {
-    Entry<String, TimestampedToken> oldest = null;
-    int cacheSize;
-    synchronized (tokenCache) {
-      cacheSize = tokenCache.size();
-      if (cacheSize >= MAX_TOKEN_CACHE_SIZE) {
-        // Find the oldest cache entry (one that will expire soonest) and remove it
-        for (Entry<String, TimestampedToken> entry : tokenCache.entrySet()) {
-          if (oldest == null || entry.getValue().expiry.isBefore(oldest.getValue().expiry)) {
-            oldest = entry;
-          }
-        }
-        if (oldest != null) {
-          tokenCache.remove(oldest.getKey());
-        }
-      }
-      tokenCache.put(id, tt);
-    }
-    if (oldest != null) {
-      Log.decorate(logger.atDebug(), requestContext).log("Token cache contains {} entries, removed entry for {} to accomodate {}", cacheSize, oldest.getKey(), id);
+  void cacheToken(String id, TimestampedToken tt) {
+    // The token must be stored before the negative entry is removed, see cacheUnknownSession
+    tokenCache.put(id, tt);
+    unknownSessionCache.invalidate(id);
+  }
+
+  /**
+   * Record that a session is known not to have a valid token.
+   * <P>
+   * A token may be stored for the session whilst it is being looked up, so the negative entry is only kept if the token cache
+   * has no entry for the session after it has been added.
+   * Because {@link #cacheToken(java.lang.String, uk.co.spudsoft.query.web.LoginDaoPersistenceImpl.TimestampedToken)} stores the token
+   * before removing the negative entry, one of them will always see the other.
+   * @param id Token ID.
+   */
+  private void cacheUnknownSession(String id) {
+    unknownSessionCache.put(id, Boolean.TRUE);
+    if (tokenCache.asMap().containsKey(id)) {
+      unknownSessionCache.invalidate(id);
     }
   }
 
   @Override
   public Future<Void> removeToken(RequestContext requestContext, String sessionId) {
-    synchronized (tokenCache) {
-      tokenCache.remove(sessionId);
-    }
+    tokenCache.invalidate(sessionId);
+    unknownSessionCache.put(sessionId, Boolean.TRUE);
     return jdbcHelper.runSqlUpdate("deleteToken", SqlTemplate.DELETE_TOKEN.sql(), ps -> {
       ps.setString(1, sessionId);
     }).mapEmpty();
@@ -511,9 +546,16 @@ public class LoginDaoPersistenceImpl implements LoginDao {
    * @return the size of the token cache.
    */
   int getTokenCacheSize() {
-    synchronized (tokenCache) {
-      return tokenCache.size();
-    }
+    return (int) tokenCache.size();
+  }
+
+  /**
+   * Return true if the session is known not to have a valid token.
+   * @param id Token ID.
+   * @return true if the session is known not to have a valid token.
+   */
+  boolean isUnknownSession(String id) {
+    return unknownSessionCache.getIfPresent(id) != null;
   }
 
 
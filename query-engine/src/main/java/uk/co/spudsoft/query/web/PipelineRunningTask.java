@@ -16,6 +16,7 @@
  */
 package uk.co.spudsoft.query.web;
 
+import io.vertx.core.Future;
 import io.vertx.core.MultiMap;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.streams.WriteStream;
@@ -65,6 +66,11 @@ public class PipelineRunningTask {
    */
   public final WriteStream<Buffer> responseStream;
 
+  /**
+   * Future that will be completed if the client closes the connection before the pipeline completes, may be null.
+   */
+  public final Future<Void> connectionClosed;
+
   /**
    * Constructor. 
    * @param requestContext The request context for this HTTP request.
@@ -73,14 +79,16 @@ public class PipelineRunningTask {
    * @param queryStringParams Query string parameters taken from the HTTP request.
    * @param arguments Processed arguments for the pipeline.
    * @param responseStream The WriteStream that will be written to, in usual usage this must be a {@link BufferingContextAwareWriteStream}.
+   * @param connectionClosed Future that will be completed if the client closes the connection before the pipeline completes, may be null.
    */
-  public PipelineRunningTask(RequestContext requestContext, Pipeline pipeline, Format chosenFormat, MultiMap queryStringParams, Map<String, ArgumentInstance> arguments, WriteStream<Buffer> responseStream) {
+  public PipelineRunningTask(RequestContext requestContext, Pipeline pipeline, Format chosenFormat, MultiMap queryStringParams, Map<String, ArgumentInstance> arguments, WriteStream<Buffer> responseStream, Future<Void> connectionClosed) {
     this.requestContext = requestContext;
     this.pipeline = pipeline;
     this.chosenFormat = chosenFormat;
     this.queryStringParams = queryStringParams;
     this.arguments = arguments;
     this.responseStream = responseStream;
+    this.connectionClosed = connectionClosed;
   }
 
 }
@@ -104,6 +104,19 @@ public class PipelineRunningVerticle extends VerticleBase {
     return promise.future();
   }
   
+  /**
+   * Stop a pipeline because the client is no longer listening.
+   * <P>
+   * The final promise is failed before the sources are cancelled so that the truncated output is not treated as a success
+   * (in particular it must not be used as a cache file).
+   */
+  private static void cancelPipeline(PipelineContext rootContext, PipelineInstance instance) {
+    if (instance.getFinalPromise().tryFail(new IllegalStateException("The connection has been closed"))) {
+      Log.decorate(logger.atInfo(), rootContext).log("Connection closed, cancelling pipeline");
+      instance.cancel();
+    }
+  }
+
   private Future<Void> handleRequestOnContext(PipelineRunningTask task) {
     Log.decorate(logger.atInfo(), task.requestContext)
             .log("Creating PipelineInstance");
@@ -126,6 +139,11 @@ public class PipelineRunningVerticle extends VerticleBase {
               .addArgument(instance)
               .log("PipelineInstance: {}")
               ;
+      if (task.connectionClosed != null) {
+        task.connectionClosed.onComplete(ar -> {
+          this.context.runOnContext(v -> cancelPipeline(rootContext, instance));
+        });
+      }
       return pipelineExecutor.initializePipeline(rootContext, instance).map(v -> instance)
               .compose(i -> {
                 Log.decorate(logger.atInfo(), rootContext)
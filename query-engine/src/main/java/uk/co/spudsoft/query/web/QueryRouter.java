@@ -26,6 +26,7 @@ import io.vertx.core.Context;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.MultiMap;
+import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.file.OpenOptions;
@@ -37,6 +38,7 @@ import io.vertx.core.json.Json;
 import io.vertx.core.streams.WriteStream;
 import io.vertx.ext.web.RoutingContext;
 import io.vertx.ext.web.impl.Utils;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
@@ -46,11 +48,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.co.spudsoft.query.exec.Auditor;
+import uk.co.spudsoft.query.exec.Auditor.CacheDetails;
 import uk.co.spudsoft.query.exec.FormatRequest;
 import uk.co.spudsoft.query.exec.PipelineExecutor;
 import uk.co.spudsoft.query.exec.context.RequestContext;
@@ -87,6 +91,11 @@ public class QueryRouter implements Handler<RoutingContext> {
    */
   public static final String ROOT_SOURCE_DEFAULT_NAME = "Source";
 
+  /**
+   * The key in the RoutingContext for the Future that is completed when the client closes the connection.
+   */
+  private static final String CONNECTION_CLOSED = "connectionClosed";
+
   private final Vertx vertx;
   private final MeterRegistry meterRegistry;
   private final Auditor auditor;
@@ -98,6 +107,7 @@ public class QueryRouter implements Handler<RoutingContext> {
   private final int writeStreamBufferSize;
   private final int responseWriteQueueMaxSize;
   private final boolean outputAllErrorMessages;
+  private final Duration outputCacheFillTimeout;
 
   private final PipelineRunningVerticle[] verticles;
 
@@ -105,6 +115,13 @@ public class QueryRouter implements Handler<RoutingContext> {
   private final Set<String> queriesExecuting = ConcurrentHashMap.newKeySet();
   private final Counter queriesExecuted;
 
+  /**
+   * Cache files that are currently being generated, keyed by {@link #cacheFillKey(uk.co.spudsoft.query.exec.Auditor, uk.co.spudsoft.query.exec.context.RequestContext, uk.co.spudsoft.query.defn.Pipeline)}.
+   * <P>
+   * Requests that would generate the same cache file wait for the one in progress rather than running the pipeline again.
+   */
+  private final Map<String, Future<CacheDetails>> cacheFills = new ConcurrentHashMap<>();
+
   /**
    * Constructor.
    *
@@ -119,6 +136,8 @@ public class QueryRouter implements Handler<RoutingContext> {
    * @param writeStreamBufferSize The number of bytes to buffer before each write to the output, each write involves a context switch so this should not be too small.
    * @param responseWriteQueueMaxSize The number of 
    * @param outputAllErrorMessages In a production environment error messages should usually not leak information that may assist a bad actor, set this to true to return full details in error responses.
+   * @param outputCacheFillTimeout The maximum time that a request will wait for a concurrent request to generate the cache file that it needs,
+   * after which it will run the pipeline itself.
    * @param instances The number of {@link PipelineRunningVerticle}s to create, typically this should be the same as VertxOptions.getEventLoopPoolSize
    */
   @SuppressFBWarnings(value = "EI_EXPOSE_REP2", justification = "The PipelineDefnLoader is mutable because it changes the filesystem")
@@ -133,6 +152,7 @@ public class QueryRouter implements Handler<RoutingContext> {
           , int writeStreamBufferSize
           , int responseWriteQueueMaxSize
           , boolean outputAllErrorMessages
+          , Duration outputCacheFillTimeout
           , int instances
   ) {
     this.vertx = vertx;
@@ -146,6 +166,7 @@ public class QueryRouter implements Handler<RoutingContext> {
     this.writeStreamBufferSize = writeStreamBufferSize;
     this.responseWriteQueueMaxSize = responseWriteQueueMaxSize;
     this.outputAllErrorMessages = outputAllErrorMessages;
+    this.outputCacheFillTimeout = outputCacheFillTimeout;
 
 
     verticles = new PipelineRunningVerticle[instances];
@@ -255,8 +276,11 @@ public class QueryRouter implements Handler<RoutingContext> {
                 }
                 HttpServerResponse response = routingContext.response();
 
+                Promise<Void> connectionClosed = Promise.promise();
+                routingContext.put(CONNECTION_CLOSED, connectionClosed.future());
                 response.closeHandler(v2 -> {
                   Log.decorate(logger.atWarn(), requestContext).log("The connection has been closed.");
+                  connectionClosed.tryComplete();
                   auditor.recordAuditLogMessages(requestContext, requestCollatingAppender.getAndRemoveEventsForRequest(requestContext.getRequestId()));
                   queriesExecuting.remove(requestContext.getRequestId());
                 });
@@ -345,65 +369,176 @@ public class QueryRouter implements Handler<RoutingContext> {
     return false;
   }
 
+  /**
+   * Get the key used to identify requests that would generate the same cache file.
+   * <P>
+   * This is the key used by the {@link Auditor} to find cache files combined with the hash of the pipeline definition,
+   * which must also match for a cache file to be used.
+   *
+   * @param auditor The auditor that will be used to find the cache file.
+   * @param requestContext The request context.
+   * @param pipeline The pipeline being run.
+   * @return the key used to identify requests that would generate the same cache file, or null if there is no request context.
+   */
+  static String cacheFillKey(Auditor auditor, RequestContext requestContext, Pipeline pipeline) {
+    String cacheKey = auditor.cacheKey(requestContext);
+    if (cacheKey == null) {
+      return null;
+    }
+    return cacheKey + ":" + pipeline.getSha256();
+  }
+
   private Future<Void> runCachedPipeline(Pipeline pipeline, FormatRequest formatRequest, HttpServerResponse response, WriteStream<Buffer> responseStream, RoutingContext routingContext) {
 
     RequestContext requestContext = RequestContext.retrieveRequestContext(routingContext);
+    String fillKey = cacheFillKey(auditor, requestContext, pipeline);
+
+    Future<CacheDetails> inFlight = fillKey == null ? null : cacheFills.get(fillKey);
+    if (inFlight != null) {
+      return waitForCacheFill(inFlight, pipeline, formatRequest, response, responseStream, routingContext);
+    }
 
     return auditor.getCacheFile(requestContext, pipeline)
             .compose(cacheDetails -> {
               if (cacheDetails == null) {
+                if (fillKey == null) {
+                  Log.decorate(logger.atDebug(), requestContext).log("Caching pipeline {} with {} no previous run found.", requestContext.getPath(), pipeline.getCacheDuration());
+                  return runPipelineToCache(pipeline, requestContext, formatRequest, response, responseStream, routingContext, null);
+                }
+                Promise<CacheDetails> published = Promise.promise();
+                Future<CacheDetails> existing = cacheFills.putIfAbsent(fillKey, published.future());
+                if (existing != null) {
+                  return waitForCacheFill(existing, pipeline, formatRequest, response, responseStream, routingContext);
+                }
                 Log.decorate(logger.atDebug(), requestContext).log("Caching pipeline {} with {} no previous run found.", requestContext.getPath(), pipeline.getCacheDuration());
-                return runPipelineToCache(pipeline, requestContext, formatRequest, response, responseStream, routingContext);
+                // The entry must be removed before the waiters are told, so that any that retry do not find this fill again
+                Promise<CacheDetails> fill = Promise.promise();
+                fill.future().onComplete(ar -> {
+                  cacheFills.remove(fillKey, published.future());
+                  published.handle(ar);
+                });
+                return runPipelineToCache(pipeline, requestContext, formatRequest, response, responseStream, routingContext, fill)
+                        .andThen(ar -> {
+                          if (ar.failed()) {
+                            fill.tryFail(ar.cause());
+                          }
+                        });
               } else {
                 // Return from cache
                 Log.decorate(logger.atDebug(), requestContext).log("Caching pipeline {} found file {} from run {}.", requestContext.getPath(), cacheDetails.cacheFile(), cacheDetails.auditId());
+                return sendCacheFile(cacheDetails, pipeline, formatRequest, response, responseStream, routingContext);
+              }
+            });
+  }
 
-                if (notModifiedSince(routingContext, cacheDetails.expiry())) {
-                  response.setStatusCode(304);
-                  // bodyEndHandler not called, so must explicitly audit reponse
-                  auditor.recordResponse(requestContext, response);
-                  return response.end();
+  private Future<Void> waitForCacheFill(Future<CacheDetails> fill, Pipeline pipeline, FormatRequest formatRequest, HttpServerResponse response, WriteStream<Buffer> responseStream, RoutingContext routingContext) {
+
+    RequestContext requestContext = RequestContext.retrieveRequestContext(routingContext);
+    Log.decorate(logger.atDebug(), requestContext).log("Caching pipeline {} waiting for concurrent run to generate cache file.", requestContext.getPath());
+
+    Context context = vertx.getOrCreateContext();
+    Promise<CacheDetails> local = Promise.promise();
+    long timerId = vertx.setTimer(outputCacheFillTimeout.toMillis(), id -> {
+      local.tryFail(new TimeoutException("Concurrent run did not generate cache file within " + outputCacheFillTimeout));
+    });
+    fill.onComplete(ar -> context.runOnContext(v -> {
+      vertx.cancelTimer(timerId);
+      if (ar.succeeded()) {
+        local.tryComplete(ar.result());
+      } else {
+        local.tryFail(ar.cause());
+      }
+    }));
+    return local.future()
+            .transform(ar -> {
+              if (ar.succeeded()) {
+                Log.decorate(logger.atDebug(), requestContext).log("Caching pipeline {} using file {} from concurrent run {}.", requestContext.getPath(), ar.result().cacheFile(), ar.result().auditId());
+                return sendCacheFile(ar.result(), pipeline, formatRequest, response, responseStream, routingContext);
+              } else if (ar.cause() instanceof TimeoutException) {
+                // Do not wait for the same fill again, this request generates its own cache file
+                Log.decorate(logger.atWarn(), requestContext).log("Caching pipeline {} gave up waiting for concurrent run after {}, running pipeline.", requestContext.getPath(), outputCacheFillTimeout);
+                return runPipelineToCache(pipeline, requestContext, formatRequest, response, responseStream, routingContext, null);
+              } else {
+                Log.decorate(logger.atDebug(), requestContext).log("Caching pipeline {} concurrent run failed to generate cache file: {}", requestContext.getPath(), ar.cause().getMessage());
+                return runCachedPipeline(pipeline, formatRequest, response, responseStream, routingContext);
+              }
+            });
+  }
+
+  private Future<Void> sendCacheFile(CacheDetails cacheDetails, Pipeline pipeline, FormatRequest formatRequest, HttpServerResponse response, WriteStream<Buffer> responseStream, RoutingContext routingContext) {
+
+    RequestContext requestContext = RequestContext.retrieveRequestContext(routingContext);
+
+    if (notModifiedSince(routingContext, cacheDetails.expiry())) {
+      response.setStatusCode(304);
+      // bodyEndHandler not called, so must explicitly audit reponse
+      auditor.recordResponse(requestContext, response);
+      return response.end();
+    } else {
+      Format chosenFormat = pipelineExecutor.getFormat(new PipelineContext(null, requestContext), pipeline.getFormats(), formatRequest);
+      String filename = buildDesiredFilename(requestContext, pipeline, chosenFormat);
+      if (filename != null) {
+        response.headers().set("Content-Disposition", "attachment; filename=\"" + filename + "\"");
+      }
+      return vertx.fileSystem().open(cacheDetails.cacheFile(), new OpenOptions().setRead(true).setCreate(false))
+              .transform(ar -> {
+                if (ar.succeeded()) {
+                  auditor.recordCacheFileUsed(requestContext, cacheDetails.cacheFile());
+                  routingContext.lastModified(cacheDetails.expiry().toInstant(ZoneOffset.UTC));
+                  return ar.result().pipeTo(responseStream);
                 } else {
-                  Format chosenFormat = pipelineExecutor.getFormat(new PipelineContext(null, requestContext), pipeline.getFormats(), formatRequest);
-                  String filename = buildDesiredFilename(requestContext, pipeline, chosenFormat);
-                  if (filename != null) {
-                    response.headers().set("Content-Disposition", "attachment; filename=\"" + filename + "\"");
-                  }
-                  return vertx.fileSystem().open(cacheDetails.cacheFile(), new OpenOptions().setRead(true).setCreate(false))
-                          .transform(ar -> {
-                            if (ar.succeeded()) {
-                              auditor.recordCacheFileUsed(requestContext, cacheDetails.cacheFile());
-                              routingContext.lastModified(cacheDetails.expiry().toInstant(ZoneOffset.UTC));
-                              return ar.result().pipeTo(responseStream);
-                            } else {
-                              Log.decorate(logger.atWarn(), requestContext).log("Failed to open cache file {}: ", cacheDetails, ar.cause());
-                              // Failed to open cache file, so regenerate
-                              return auditor.deleteCacheFile(requestContext, cacheDetails.auditId())
-                                      .transform(ar2 -> {
-                                        if (ar2.failed()) {
-                                          Log.decorate(logger.atError(), requestContext).log("Failed to delete cache for {}: {}", cacheDetails.auditId(), ar2.cause());
-                                        }
-                                        return runPipelineToCache(pipeline, requestContext, formatRequest, response, responseStream, routingContext);
-                                      });
+                  Log.decorate(logger.atWarn(), requestContext).log("Failed to open cache file {}: ", cacheDetails, ar.cause());
+                  // Failed to open cache file, so regenerate
+                  return auditor.deleteCacheFile(requestContext, cacheDetails.auditId())
+                          .transform(ar2 -> {
+                            if (ar2.failed()) {
+                              Log.decorate(logger.atError(), requestContext).log("Failed to delete cache for {}: {}", cacheDetails.auditId(), ar2.cause());
                             }
+                            return runPipelineToCache(pipeline, requestContext, formatRequest, response, responseStream, routingContext, null);
                           });
                 }
-              }
-            });
+              });
+    }
   }
 
-  private Future<Void> runPipelineToCache(Pipeline pipeline, RequestContext requestContext, FormatRequest formatRequest, HttpServerResponse response, WriteStream<Buffer> responseStream, RoutingContext routingContext) {
+  /**
+   * Run the pipeline, writing the output to a cache file as well as to the response.
+   *
+   * @param fill If not null this will be completed with the details of the cache file once it has been completely written,
+   * or failed if no cache file is produced.
+   */
+  private Future<Void> runPipelineToCache(Pipeline pipeline, RequestContext requestContext, FormatRequest formatRequest, HttpServerResponse response, WriteStream<Buffer> responseStream, RoutingContext routingContext, Promise<CacheDetails> fill) {
     // No cache file found, so run pipeline to generate one
     String cacheFile = outputCacheDir + requestContext.getRequestId().replace('/', '_').replace(':', '-');
-    return auditor.recordCacheFile(requestContext, cacheFile, LocalDateTime.now(ZoneOffset.UTC).plus(pipeline.getCacheDuration()))
+    LocalDateTime expiry = LocalDateTime.now(ZoneOffset.UTC).plus(pipeline.getCacheDuration());
+    return auditor.recordCacheFile(requestContext, cacheFile, expiry)
             .transform(ar -> {
               if (ar.succeeded()) {
                 return CachingWriteStream.cacheStream(vertx, responseStream, cacheFile)
                         .transform(ar2 -> {
                           if (ar2.succeeded()) {
-                            return runPipeline(pipeline, requestContext, formatRequest, response, ar2.result(), routingContext);
+                            CachingWriteStream cachingStream = ar2.result();
+                            return runPipeline(pipeline, requestContext, formatRequest, response, cachingStream, routingContext)
+                                    .andThen(ar3 -> {
+                                      if (fill != null) {
+                                        if (ar3.succeeded()) {
+                                          cachingStream.cacheCompletion()
+                                                  .map(v -> new CacheDetails(requestContext.getRequestId(), cacheFile, expiry))
+                                                  .onComplete(ar4 -> {
+                                                    if (ar4.succeeded()) {
+                                                      fill.tryComplete(ar4.result());
+                                                    } else {
+                                                      fill.tryFail(ar4.cause());
+                                                    }
+                                                  });
+                                        } else {
+                                          fill.tryFail(ar3.cause());
+                                        }
+                                      }
+                                    });
                           } else {
                             Log.decorate(logger.atError(), requestContext).log("Failed to open cache file ({}) for {}: {}", cacheFile, requestContext.getRequestId(), ar2.cause());
+                            failCacheFill(fill, ar2.cause());
                             return auditor.deleteCacheFile(requestContext, requestContext.getRequestId())
                                     .transform(ar3 -> {
                                       if (ar3.failed()) {
@@ -415,11 +550,18 @@ public class QueryRouter implements Handler<RoutingContext> {
                         });
               } else {
                 Log.decorate(logger.atError(), requestContext).log("Failed to record cache file ({}) for {} in database: {}", cacheFile, requestContext.getRequestId(), ar.cause());
+                failCacheFill(fill, ar.cause());
                 return runPipeline(pipeline, requestContext, formatRequest, response, responseStream, routingContext);
               }
             });
   }
 
+  private static void failCacheFill(Promise<CacheDetails> fill, Throwable cause) {
+    if (fill != null) {
+      fill.tryFail(cause);
+    }
+  }
+
   private Future<Void> runPipeline(Pipeline pipeline, RequestContext requestContext, FormatRequest formatRequest, HttpServerResponse response, WriteStream<Buffer> rawResponseStream, RoutingContext routingContext) {
     try {
       Format chosenFormat = pipelineExecutor.getFormat(new PipelineContext(null, requestContext), pipeline.getFormats(), formatRequest);
@@ -444,7 +586,7 @@ public class QueryRouter implements Handler<RoutingContext> {
       MultiMap queryStringParams = routingContext.request().params();
       Map<String, ArgumentInstance> arguments = pipelineExecutor.prepareArguments(requestContext, pipeline.getArguments(), queryStringParams);
 
-      PipelineRunningTask task = new PipelineRunningTask(requestContext, pipeline, chosenFormat, queryStringParams, arguments, responseStream);
+      PipelineRunningTask task = new PipelineRunningTask(requestContext, pipeline, chosenFormat, queryStringParams, arguments, responseStream, routingContext.get(CONNECTION_CLOSED));
 
       PipelineRunningVerticle verticle = chooseVerticle(requestContext);
       return verticle.handleRequest(task);
@@ -495,6 +637,9 @@ public class QueryRouter implements Handler<RoutingContext> {
     }
 
     HttpServerResponse response = routingContext.response();
+    if (response.closed()) {
+      return;
+    }
     response.putHeader("Content-Type", "text/plain");
     response.setStatusCode(statusCode)
             .end(message);
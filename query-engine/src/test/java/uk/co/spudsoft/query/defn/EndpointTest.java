@@ -35,6 +35,19 @@ public class EndpointTest {
     assertThrows(IllegalArgumentException.class, () -> {
       Endpoint.builder().username("bob").secret("secret").build().validate();
     });
+    assertThrows(IllegalArgumentException.class, () -> {
+      Endpoint.builder().name("name").url("url").maxPoolSize(0).build().validate();
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      Endpoint.builder().name("name").url("url").maxPoolWaitQueueSize(0).build().validate();
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      Endpoint.builder().name("name").url("url").preparedStatementCacheMaxSize(-1).build().validate();
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      Endpoint.builder().name("name").url("url").preparedStatementCacheSqlLimit(0).build().validate();
+    });
+    Endpoint.builder().name("name").url("url").maxPoolSize(1).maxPoolWaitQueueSize(1).preparedStatementCacheMaxSize(0).preparedStatementCacheSqlLimit(1).build().validate();
   }
   
   @Test
@@ -16,11 +16,14 @@
  */
 package uk.co.spudsoft.query.defn;
 
+import java.time.Duration;
 import java.util.Arrays;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.Test;
 
 /**
@@ -175,4 +178,43 @@ public class ProcessorLookupTest {
     assertEquals(1, instance.getLookupFields().size());
   }
 
+  @Test
+  public void testGetCacheDuration() {
+    ProcessorLookup instance = ProcessorLookup.builder().build();
+    assertNull(instance.getCacheDuration());
+    assertFalse(instance.supportsCaching());
+    instance = ProcessorLookup.builder().cacheDuration(Duration.ZERO).build();
+    assertFalse(instance.supportsCaching());
+    instance = ProcessorLookup.builder().cacheDuration(Duration.ofMinutes(5)).build();
+    assertEquals(Duration.ofMinutes(5), instance.getCacheDuration());
+    assertTrue(instance.supportsCaching());
+  }
+
+  @Test
+  public void testValidateNegativeCacheDuration() {
+    assertEquals(
+            "Negative lookup cache duration (PT-1S) does not make sense"
+            , assertThrows(IllegalArgumentException.class, () -> {
+              ProcessorLookup.builder()
+                      .map(
+                              SourcePipeline.builder()
+                                      .source(
+                                              SourceTest.builder()
+                                                      .build()
+                                      )
+                                      .build()
+                      )
+                      .lookupKeyField("key")
+                      .lookupValueField("value")
+                      .lookupFields(
+                              Arrays.asList(
+                                      ProcessorLookupField.builder().keyField("key").valueField("value").build()
+                              )
+                      )
+                      .cacheDuration(Duration.ofSeconds(-1))
+                      .build().validate(null);
+            }).getMessage()
+    );
+  }
+
 }
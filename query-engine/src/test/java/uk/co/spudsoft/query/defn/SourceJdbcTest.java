@@ -45,6 +45,7 @@ class SourceJdbcTest {
             .type(SourceType.JDBC)
             .processingBatchSize(500)
             .jdbcFetchSize(200)
+            .pushDown(Boolean.TRUE)
             .build();
 
     assertEquals("mySource", src.getName());
@@ -53,6 +54,7 @@ class SourceJdbcTest {
     assertEquals(SourceType.JDBC, src.getType());
     assertEquals(500, src.getProcessingBatchSize());
     assertEquals(200, src.getJdbcFetchSize());
+    assertTrue(src.isPushDownEnabled());
   }
 
   @Test
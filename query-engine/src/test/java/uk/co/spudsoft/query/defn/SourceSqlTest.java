@@ -21,7 +21,10 @@ import java.time.Duration;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -111,6 +114,16 @@ public class SourceSqlTest {
     assertEquals(2345, instance.getStreamingFetchSize());
   }
   
+  @Test
+  public void testGetPushDown() {
+    SourceSql instance = SourceSql.builder().build();
+    assertNull(instance.getPushDown());
+    assertFalse(instance.isPushDownEnabled());
+    instance = SourceSql.builder().pushDown(Boolean.TRUE).build();
+    assertEquals(Boolean.TRUE, instance.getPushDown());
+    assertTrue(instance.isPushDownEnabled());
+  }
+
   @Test
   public void toFromJson() {
     SourceSql instance = SourceSql.builder().build();
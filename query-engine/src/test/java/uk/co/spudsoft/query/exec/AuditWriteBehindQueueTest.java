@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2026 jtalbut
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.spudsoft.query.exec;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import uk.co.spudsoft.query.main.AuditWriteBehind;
+
+/**
+ *
+ * @author jtalbut
+ */
+@ExtendWith(VertxExtension.class)
+public class AuditWriteBehindQueueTest {
+
+  private static JdbcHelper jdbcHelper(Connection conn, List<String> written) throws Throwable {
+    JdbcHelper jdbcHelper = mock(JdbcHelper.class);
+    when(jdbcHelper.runOnConnectionSynchronously(anyString(), any())).thenAnswer(inv -> {
+      JdbcHelper.SqlFunction<Connection, ?> fn = inv.getArgument(1);
+      return fn.accept(conn);
+    });
+    when(jdbcHelper.runSqlUpdateOnConnectionSynchronously(eq(conn), anyString(), any())).thenAnswer(inv -> {
+      String sql = inv.getArgument(1);
+      if (sql.startsWith("fail")) {
+        throw new SQLException("Duplicate");
+      }
+      written.add(sql);
+      return 1;
+    });
+    return jdbcHelper;
+  }
+
+  @Test
+  public void testBatchesAndOrdering(Vertx vertx, VertxTestContext testContext) throws Throwable {
+    Connection conn = mock(Connection.class);
+    PreparedStatement ps = mock(PreparedStatement.class);
+    when(conn.prepareStatement("insert")).thenReturn(ps);
+    List<String> written = Collections.synchronizedList(new ArrayList<>());
+    when(ps.executeBatch()).thenAnswer(inv -> {
+      written.add("batch");
+      return new int[0];
+    });
+    JdbcHelper jdbcHelper = jdbcHelper(conn, written);
+    MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    AuditWriteBehindQueue queue = new AuditWriteBehindQueue(vertx, meterRegistry, jdbcHelper
+            , new AuditWriteBehind().setFlushPeriod(Duration.ofHours(1)).setMaxBatchSize(100));
+
+    assertTrue(queue.add(new AuditWriteBehindQueue.Update("first", "first", false, p -> {})));
+    for (int i = 0; i < 3; ++i) {
+      queue.add(new AuditWriteBehindQueue.Update("insert", "insert", false, p -> {}));
+    }
+    queue.add(new AuditWriteBehindQueue.Update("silent", "fail", true, p -> {}));
+    queue.add(new AuditWriteBehindQueue.Update("last", "last", false, p -> {}));
+    assertEquals(6, queue.size());
+    assertEquals(6.0, meterRegistry.get("queryengine.audit.writebehind.queued").gauge().value());
+
+    queue.close()
+            .onComplete(testContext.succeeding(v -> {
+              testContext.verify(() -> {
+                assertEquals(0, queue.size());
+                assertEquals(List.of("first", "batch", "last"), written);
+                verify(ps, times(3)).addBatch();
+                verify(conn).commit();
+                assertEquals(5.0, meterRegistry.get("queryengine.audit.writebehind.written").counter().count());
+                assertEquals(1.0, meterRegistry.get("queryengine.audit.writebehind.failed").counter().count());
+              });
+              testContext.completeNow();
+            }));
+  }
+
+  @Test
+  public void testFailedBatchRolledBack(Vertx vertx, VertxTestContext testContext) throws Throwable {
+    Connection conn = mock(Connection.class);
+    PreparedStatement ps = mock(PreparedStatement.class);
+    when(conn.prepareStatement("insert")).thenReturn(ps);
+    when(ps.executeBatch()).thenThrow(new BatchUpdateException("Duplicate", new int[] {1}));
+    List<String> written = Collections.synchronizedList(new ArrayList<>());
+    JdbcHelper jdbcHelper = jdbcHelper(conn, written);
+    MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    AuditWriteBehindQueue queue = new AuditWriteBehindQueue(vertx, meterRegistry, jdbcHelper
+            , new AuditWriteBehind().setFlushPeriod(Duration.ofHours(1)).setMaxBatchSize(100));
+
+    for (int i = 0; i < 3; ++i) {
+      queue.add(new AuditWriteBehindQueue.Update("insert", "insert", false, p -> {}));
+    }
+
+    queue.close()
+            .onComplete(testContext.succeeding(v -> {
+              testContext.verify(() -> {
+                // The partial batch is rolled back before each update is written individually, so none are written twice
+                InOrder inOrder = inOrder(conn, jdbcHelper);
+                inOrder.verify(conn).setAutoCommit(false);
+                inOrder.verify(conn).rollback();
+                inOrder.verify(conn).setAutoCommit(true);
+                inOrder.verify(jdbcHelper, times(3)).runSqlUpdateOnConnectionSynchronously(eq(conn), eq("insert"), any());
+                verify(conn, never()).commit();
+                assertEquals(List.of("insert", "insert", "insert"), written);
+                assertEquals(3.0, meterRegistry.get("queryengine.audit.writebehind.written").counter().count());
+              });
+              testContext.completeNow();
+            }));
+  }
+
+  @Test
+  public void testFullQueueDiscards(Vertx vertx, VertxTestContext testContext) throws Throwable {
+    Connection conn = mock(Connection.class);
+    List<String> written = Collections.synchronizedList(new ArrayList<>());
+    JdbcHelper jdbcHelper = jdbcHelper(conn, written);
+    MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    AuditWriteBehindQueue queue = new AuditWriteBehindQueue(vertx, meterRegistry, jdbcHelper
+            , new AuditWriteBehind().setFlushPeriod(Duration.ofHours(1)).setMaxQueueSize(2).setMaxBatchSize(10));
+
+    assertTrue(queue.add(new AuditWriteBehindQueue.Update("one", "one", false, p -> {})));
+    assertTrue(queue.add(new AuditWriteBehindQueue.Update("two", "two", false, p -> {})));
+    assertFalse(queue.add(new AuditWriteBehindQueue.Update("three", "three", false, p -> {})));
+    assertEquals(1.0, meterRegistry.get("queryengine.audit.writebehind.dropped").counter().count());
+
+    queue.flush()
+            .compose(v -> {
+              testContext.verify(() -> {
+                assertEquals(List.of("one", "two"), written);
+              });
+              // Nothing queued, so this completes immediately
+              return queue.close();
+            })
+            .onComplete(testContext.succeeding(v -> {
+              testContext.completeNow();
+            }));
+  }
+
+}
@@ -18,30 +18,35 @@ package uk.co.spudsoft.query.exec;
 
 import uk.co.spudsoft.query.exec.context.RequestContext;
 import inet.ipaddr.IPAddressString;
+import io.vertx.core.MultiMap;
 import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
 import io.vertx.ext.healthchecks.Status;
 import io.vertx.junit5.VertxExtension;
 import java.lang.reflect.Field;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
+import uk.co.spudsoft.dircache.DirCacheTree;
+import uk.co.spudsoft.query.defn.Pipeline;
 import uk.co.spudsoft.query.defn.RateLimitRule;
 import uk.co.spudsoft.query.defn.RateLimitScopeType;
 import uk.co.spudsoft.query.exec.Auditor.HistoryFilters;
 import uk.co.spudsoft.query.main.OperatorsInstance;
+import uk.co.spudsoft.query.web.ServiceException;
 
 /**
  *
@@ -67,6 +72,68 @@ public class AuditorMemoryImplTest {
     assertTrue(auditor.deleteCacheFile(context2, context2.getRequestId()).succeeded());
   }
 
+  private static RequestContext mockRequest(String id, String url) {
+    RequestContext context = mock(RequestContext.class);
+    when(context.getRequestId()).thenReturn(id);
+    when(context.getUrl()).thenReturn(url);
+    when(context.getHost()).thenReturn("host");
+    when(context.getPath()).thenReturn("path");
+    when(context.getHeaders()).thenReturn(MultiMap.caseInsensitiveMultiMap());
+    when(context.getClientIp()).thenReturn(new IPAddressString("127.0.0.1"));
+    return context;
+  }
+
+  @Test
+  public void testCacheFileIndexAndEviction(Vertx vertx) {
+    AuditorMemoryImpl auditor = new AuditorMemoryImpl(vertx, null);
+    Pipeline pipeline = mock(Pipeline.class);
+    when(pipeline.getSha256()).thenReturn("sha");
+    DirCacheTree.File file = mock(DirCacheTree.File.class);
+    when(file.getSize()).thenReturn(12L);
+
+    RequestContext cached = mockRequest("cached", "cachedUrl");
+    assertTrue(auditor.recordRequest(cached).succeeded());
+    assertTrue(auditor.recordFileDetails(cached, file, pipeline).succeeded());
+    assertTrue(auditor.recordCacheFile(cached, "cacheFile", LocalDateTime.now(ZoneOffset.UTC).plusHours(1)).succeeded());
+
+    Auditor.CacheDetails details = auditor.getCacheFile(mockRequest("other", "cachedUrl"), pipeline).result();
+    assertEquals("cached", details.auditId());
+    assertEquals("cacheFile", details.cacheFile());
+    assertNull(auditor.getCacheFile(mockRequest("other", "otherUrl"), pipeline).result());
+
+    // Once the cache file has been deleted it is no longer found, even if it is recorded again
+    assertTrue(auditor.deleteCacheFile(cached, "cached").succeeded());
+    assertNull(auditor.getCacheFile(mockRequest("other", "cachedUrl"), pipeline).result());
+    assertTrue(auditor.recordCacheFile(cached, "cacheFile", LocalDateTime.now(ZoneOffset.UTC).plusHours(1)).succeeded());
+    assertNull(auditor.getCacheFile(mockRequest("other", "cachedUrl"), pipeline).result());
+
+    RequestContext recached = mockRequest("recached", "cachedUrl");
+    assertTrue(auditor.recordRequest(recached).succeeded());
+    assertTrue(auditor.recordFileDetails(recached, file, pipeline).succeeded());
+    assertTrue(auditor.recordCacheFile(recached, "cacheFile2", LocalDateTime.now(ZoneOffset.UTC).plusHours(1)).succeeded());
+    assertEquals("cacheFile2", auditor.getCacheFile(mockRequest("other", "cachedUrl"), pipeline).result().cacheFile());
+
+    // Once the row has been evicted from the history its cache file is no longer found
+    for (int i = 0; i < AuditorMemoryImpl.SIZE; ++i) {
+      auditor.recordRequest(mockRequest("req" + i, "url" + i));
+    }
+    assertNull(auditor.getCacheFile(mockRequest("other", "cachedUrl"), pipeline).result());
+  }
+
+  @Test
+  public void testRateLimitRules(Vertx vertx) {
+    AuditorMemoryImpl auditor = new AuditorMemoryImpl(vertx, null);
+    Pipeline pipeline = mock(Pipeline.class);
+    when(pipeline.getRateLimitRules()).thenReturn(Arrays.asList(
+            RateLimitRule.builder().scope(Arrays.asList(RateLimitScopeType.path)).timeLimit(Duration.ofMinutes(1)).runLimit("1").concurrencyLimit(5).build()
+    ));
+
+    assertTrue(auditor.runRateLimitRules(mockRequest("one", "url"), pipeline).succeeded());
+    assertTrue(auditor.runRateLimitRules(mockRequest("two", "url"), pipeline).succeeded());
+    Throwable ex = auditor.runRateLimitRules(mockRequest("three", "url"), pipeline).cause();
+    assertEquals(429, ((ServiceException) ex).getStatusCode());
+  }
+
   /**
    * Helper to set private fields on AuditRow via reflection.
    */
@@ -84,59 +151,6 @@ public class AuditorMemoryImplTest {
     return new AuditorMemoryImpl.AuditRow("id", LocalDateTime.now(), "pid", "url", "ip", "host", "path", "args", "headers");
   }
 
-  // ========================================================================
-  // rowMatches Tests
-  // ========================================================================
-  @Test
-  void testRowMatches_NullRequestContext() {
-    RateLimitRule rule = RateLimitRule.builder().scope(Collections.singletonList(RateLimitScopeType.host)).build();
-    assertThat(AuditorMemoryImpl.rowMatches(null, rule, createTestRow()), is(false));
-  }
-
-  @Test
-  void testRowMatches_AllScopes() {
-    RequestContext ctx = mock(RequestContext.class);
-    when(ctx.getClientIp()).thenReturn(new IPAddressString("1.2.3.4"));
-    when(ctx.getHost()).thenReturn("host.com");
-    when(ctx.getPath()).thenReturn("/path");
-    when(ctx.getIssuer()).thenReturn("iss");
-    when(ctx.getSubject()).thenReturn("sub");
-    when(ctx.getUsername()).thenReturn("user");
-
-    RateLimitScopeType[] allScopes = RateLimitScopeType.values();
-    RateLimitRule rule = RateLimitRule.builder().scope(Arrays.asList(allScopes)).build();
-
-    AuditorMemoryImpl.AuditRow row = createTestRow();
-    setPrivateField(row, "clientIp", "1.2.3.4");
-    setPrivateField(row, "host", "host.com");
-    setPrivateField(row, "path", "/path");
-    setPrivateField(row, "issuer", "iss");
-    setPrivateField(row, "subject", "sub");
-    setPrivateField(row, "username", "user");
-
-    assertThat("Should match when all fields are identical",
-            AuditorMemoryImpl.rowMatches(ctx, rule, row), is(true));
-
-    // Test one mismatch (e.g. host)
-    when(ctx.getHost()).thenReturn("other.com");
-    assertThat("Should fail if even one scope field differs",
-            AuditorMemoryImpl.rowMatches(ctx, rule, row), is(false));
-  }
-
-  @Test
-  void testRowMatches_NullFieldsInContext() {
-    RequestContext ctx = mock(RequestContext.class);
-    // host is null in context, but present in row
-    when(ctx.getHost()).thenReturn(null);
-    RateLimitRule rule = RateLimitRule.builder().scope(Collections.singletonList(RateLimitScopeType.host)).build();
-
-    AuditorMemoryImpl.AuditRow row = createTestRow();
-    setPrivateField(row, "host", "some-host");
-
-    assertThat("Context null field should fail match against populated row field",
-            AuditorMemoryImpl.rowMatches(ctx, rule, row), is(false));
-  }
-
   // ========================================================================
   // filterHistoryRows Tests
   // ========================================================================
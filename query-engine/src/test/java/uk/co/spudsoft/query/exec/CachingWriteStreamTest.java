@@ -80,7 +80,7 @@ public class CachingWriteStreamTest {
                 testContext.failNow(ex);
               });
               cws.setWriteQueueMaxSize(2);
-              return input.pipeTo(cws);
+              return input.pipeTo(cws).compose(v -> cws.cacheCompletion());
             })
             .onSuccess(v -> {
               testContext.verify(() -> {
@@ -239,6 +239,7 @@ public class CachingWriteStreamTest {
               // Wait half a second to give it time to delete the file
               vertx.timer(500).andThen(ar -> {
                 testContext.verify(() -> {
+                  assertTrue(cws.cacheCompletion().failed());
                   assertEquals(list.size(), out.size());
                   assertEquals(list, out);
                   assertFalse(vertx.fileSystem().existsBlocking(outputFile));
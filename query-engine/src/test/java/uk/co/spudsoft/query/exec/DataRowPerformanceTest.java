@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2026 jtalbut
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.spudsoft.query.exec;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Optional;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.co.spudsoft.query.defn.DataType;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Comparison of the slot based DataRow with the LinkedHashMap per row that it replaced.
+ * <p>
+ * Each iteration creates a row with eight columns and reads every value back by name.
+ * The iteration counts are too low to be meaningful unless the test is run on its own ( -Dtest=uk.co.spudsoft.query.exec.DataRowPerformanceTest ).
+ *
+ * @author jtalbut
+ */
+@TestMethodOrder(MethodOrderer.MethodName.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class DataRowPerformanceTest {
+
+  @SuppressWarnings("constantname")
+  private static final Logger logger = LoggerFactory.getLogger(DataRowPerformanceTest.class);
+
+  private final static int WARMUPS = DataRowPerformanceTest.class.getCanonicalName().equals(System.getProperty("test")) ? 1000000 : 100;
+  private final static int TIMED = DataRowPerformanceTest.class.getCanonicalName().equals(System.getProperty("test")) ? 5000000 : 100;
+
+  private static final String[] NAMES = {"id", "value", "ratio", "score", "name", "flag", "created", "count"};
+  private static final LocalDateTime NOW = LocalDateTime.of(2026, 1, 2, 3, 4, 5);
+
+  private static String findTidyName() {
+    StackWalker walker = StackWalker.getInstance();
+    Optional<String> methodName = walker.walk(frames -> frames
+      .skip(1)
+      .findFirst()
+      .map(StackWalker.StackFrame::getMethodName));
+    return methodName.get().substring(4);
+  }
+
+  @BeforeAll
+  public void headers() {
+    logger.warn("{}", String.format("%-40s %-20s %10s %10s %14s", "Method", "JVM", "Iterations", "Duration/s", "Rate (rows/s)"));
+  }
+
+  private void report(String name, long durationMs) {
+    logger.info("{}", String.format("%-40s %-20s %10d %10.3f %14.3f", name, System.getProperty("java.vendor.version"), TIMED, durationMs / 1000.0, TIMED / (durationMs / 1000.0)));
+  }
+
+  /**
+   * The work done by DataRow.put when DataRow was backed by a LinkedHashMap.
+   */
+  private static void mapPut(Types types, LinkedHashMap<String, Comparable<?>> data, String key, Comparable<?> value) {
+    types.putIfAbsent(key, key, DataType.fromObject(value));
+    data.put(key, value);
+  }
+
+  private static long mapRow(Types types, int i) {
+    LinkedHashMap<String, Comparable<?>> data = new LinkedHashMap<>();
+    mapPut(types, data, NAMES[0], i);
+    mapPut(types, data, NAMES[1], (long) i * 3);
+    mapPut(types, data, NAMES[2], i / 7.0);
+    mapPut(types, data, NAMES[3], i / 3.0f);
+    mapPut(types, data, NAMES[4], "Name");
+    mapPut(types, data, NAMES[5], (i & 1) == 0);
+    mapPut(types, data, NAMES[6], NOW);
+    mapPut(types, data, NAMES[7], i + 1);
+    long total = 0;
+    for (String name : NAMES) {
+      if (data.get(name) instanceof Number n) {
+        total += n.longValue();
+      }
+    }
+    return total;
+  }
+
+  private static long slotRow(Types types, int i) {
+    DataRow row = DataRow.create(types)
+            .put(NAMES[0], i)
+            .put(NAMES[1], (long) i * 3)
+            .put(NAMES[2], i / 7.0)
+            .put(NAMES[3], i / 3.0f)
+            .put(NAMES[4], "Name")
+            .put(NAMES[5], (i & 1) == 0)
+            .put(NAMES[6], NOW)
+            .put(NAMES[7], i + 1);
+    long total = 0;
+    for (String name : NAMES) {
+      if (row.get(name) instanceof Number n) {
+        total += n.longValue();
+      }
+    }
+    return total;
+  }
+
+  private static long slotRowIndexed(Types types, int[] indices, int i) {
+    DataRow row = DataRow.create(types)
+            .setInt(indices[0], i)
+            .setLong(indices[1], (long) i * 3)
+            .setDouble(indices[2], i / 7.0)
+            .setFloat(indices[3], i / 3.0f)
+            .set(indices[4], "Name")
+            .setBoolean(indices[5], (i & 1) == 0)
+            .set(indices[6], NOW)
+            .setInt(indices[7], i + 1);
+    return row.getLong(indices[0])
+            + row.getLong(indices[1])
+            + row.getLong(indices[2])
+            + row.getLong(indices[3])
+            + row.getLong(indices[7]);
+  }
+
+  private static long expected() {
+    long total = 0;
+    for (int i = 0; i < TIMED; ++i) {
+      total += i + (long) i * 3 + (long) (i / 7.0) + (long) (i / 3.0f) + i + 1;
+    }
+    return total;
+  }
+
+  @Test
+  public void testLinkedHashMap() {
+    Types types = new Types();
+    for (int i = 0; i < WARMUPS; ++i) {
+      mapRow(types, i);
+    }
+    long total = 0;
+    long start = System.currentTimeMillis();
+    for (int i = 0; i < TIMED; ++i) {
+      total += mapRow(types, i);
+    }
+    report(findTidyName(), System.currentTimeMillis() - start);
+    assertEquals(expected(), total);
+  }
+
+  @Test
+  public void testSlotDataRow() {
+    Types types = new Types();
+    for (int i = 0; i < WARMUPS; ++i) {
+      slotRow(types, i);
+    }
+    long total = 0;
+    long start = System.currentTimeMillis();
+    for (int i = 0; i < TIMED; ++i) {
+      total += slotRow(types, i);
+    }
+    report(findTidyName(), System.currentTimeMillis() - start);
+    assertEquals(expected(), total);
+  }
+
+  @Test
+  public void testSlotDataRowIndexed() {
+    Types types = new Types();
+    slotRow(types, 0);
+    int[] indices = new int[NAMES.length];
+    for (int i = 0; i < NAMES.length; ++i) {
+      indices[i] = types.indexOf(NAMES[i]);
+    }
+    for (int i = 0; i < WARMUPS; ++i) {
+      slotRowIndexed(types, indices, i);
+    }
+    long total = 0;
+    long start = System.currentTimeMillis();
+    for (int i = 0; i < TIMED; ++i) {
+      total += slotRowIndexed(types, indices, i);
+    }
+    report(findTidyName(), System.currentTimeMillis() - start);
+    assertEquals(expected(), total);
+  }
+
+}
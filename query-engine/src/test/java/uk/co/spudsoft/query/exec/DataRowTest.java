@@ -20,10 +20,17 @@ import com.google.common.collect.ImmutableMap;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 import org.junit.jupiter.api.Test;
+import uk.co.spudsoft.query.defn.DataType;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  *
@@ -32,7 +39,11 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 public class DataRowTest {
   
   private DataRow create() {
-    return DataRow.create(new Types())
+    return create(new Types());
+  }
+  
+  private DataRow create(Types types) {
+    return DataRow.create(types)
             .put("nullValue", null)
             .put("intValue", 7)
             .put("longValue", 1L << 40)
@@ -118,4 +129,95 @@ public class DataRowTest {
     assertEquals("{text=hello}", row.get("convertedStringValue"));
   }
 
+  @Test
+  public void testSlotAccess() {
+    Types types = new Types();
+    DataRow row = create(types);
+    int intIdx = types.indexOf("intValue");
+    int longIdx = types.indexOf("longValue");
+    int floatIdx = types.indexOf("floatValue");
+    int doubleIdx = types.indexOf("doubleValue");
+    int boolIdx = types.indexOf("boolValue");
+    int nullIdx = types.indexOf("nullValue");
+    assertEquals(-1, types.indexOf("unknown"));
+    
+    assertEquals(7, row.getInt(intIdx));
+    assertEquals(1L << 40, row.getLong(longIdx));
+    assertEquals(3.4f, row.getFloat(floatIdx));
+    assertEquals(3.1415926, row.getDouble(doubleIdx));
+    assertTrue(row.getBoolean(boolIdx));
+    assertTrue(row.isNull(nullIdx));
+    assertFalse(row.isNull(intIdx));
+    assertThrows(IllegalStateException.class, () -> row.getLong(nullIdx));
+    assertThrows(IllegalStateException.class, () -> row.getLong(types.indexOf("stringValue")));
+    
+    row.setLong(intIdx, 12L);
+    assertEquals(12L, row.get("intValue"));
+    row.setDouble(longIdx, 2.5);
+    assertEquals(2.5, row.get("longValue"));
+    row.set(floatIdx, null);
+    assertNull(row.get("floatValue"));
+    assertTrue(row.containsKey("floatValue"));
+    assertEquals(10, row.size());
+  }
+
+  @Test
+  public void testSharedTypes() {
+    Types types = new Types();
+    DataRow row1 = DataRow.create(types).put("a", 1).put("b", "two");
+    DataRow row2 = DataRow.create(types).put("b", "three");
+    
+    assertEquals(2, row1.size());
+    assertEquals(1, row2.size());
+    assertFalse(row2.containsKey("a"));
+    assertTrue(row2.containsKey("b"));
+    assertNull(row2.get("a"));
+    assertEquals("{\"b\":\"three\"}", row2.toString());
+    
+    // Adding a column after the row was created must grow the row
+    DataRow row3 = DataRow.create(types).put("c", 3L).put("d", 4.0).put("e", 5.0f).put("f", false).put("g", "g");
+    assertEquals(7, types.size());
+    assertEquals(5, row3.size());
+    assertEquals(Boolean.FALSE, row3.get("f"));
+    assertEquals("{\"c\":3,\"d\":4.0,\"e\":5.0,\"f\":false,\"g\":\"g\"}", row3.toString());
+    assertEquals(5, row3.getMap().size());
+  }
+
+  @Test
+  public void testBytesSize() {
+    DataRow row = create();
+    // nullValue contributes nothing, the string contributes its length
+    assertEquals(16 + 24 + 16 + 24 + 6 + 16 + 24 + 24 + 24, row.bytesSize());
+  }
+
+  @Test
+  public void testConcurrentTypes() throws Exception {
+    Types types = new Types();
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 4; ++t) {
+      threads.add(new Thread(() -> {
+        try {
+          for (int i = 0; i < 2000; ++i) {
+            String key = "col" + i;
+            int idx = types.indexFor(key, key, DataType.Integer);
+            assertEquals(key, types.getDefn(idx).name());
+            assertEquals(idx, types.indexOf(key));
+            assertEquals(DataType.Integer, types.get(key));
+          }
+        } catch (Throwable ex) {
+          failure.compareAndSet(null, ex);
+        }
+      }));
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertNull(failure.get());
+    assertEquals(2000, types.size());
+  }
+
 }
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2026 jtalbut
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.spudsoft.query.exec;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.time.Duration;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author jtalbut
+ */
+public class ExpiringValueTest {
+
+  private record Value(String value, long expiry) implements ExpiringValue {
+  }
+
+  @Test
+  public void testGetIfPresent() {
+    Cache<String, Value> cache = CacheBuilder.newBuilder().recordStats().build();
+    Value live = new Value("live", ExpiringValue.expiryAfter(Duration.ofMinutes(1)));
+    cache.put("live", live);
+    cache.put("dead", new Value("dead", ExpiringValue.expiryAfter(Duration.ofNanos(-1))));
+
+    assertSame(live, ExpiringValue.getIfPresent(cache, "live"));
+    assertNull(ExpiringValue.getIfPresent(cache, "dead"));
+    assertNull(ExpiringValue.getIfPresent(cache, "missing"));
+    assertEquals(1, cache.size());
+    // The expired value is recorded as a miss
+    assertEquals(1, cache.stats().hitCount());
+    assertEquals(2, cache.stats().missCount());
+  }
+
+  @Test
+  public void testPurge() {
+    Cache<String, Value> cache = CacheBuilder.newBuilder().build();
+    cache.put("live", new Value("live", ExpiringValue.expiryAfter(Duration.ofMinutes(1))));
+    cache.put("dead", new Value("dead", ExpiringValue.expiryAfter(Duration.ofNanos(-1))));
+    ExpiringValue.purge(cache);
+    assertEquals(1, cache.size());
+    assertEquals("live", cache.getIfPresent("live").value());
+  }
+
+}
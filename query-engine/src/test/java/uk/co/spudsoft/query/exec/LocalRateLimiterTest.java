@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2026 jtalbut
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.spudsoft.query.exec;
+
+import inet.ipaddr.IPAddressString;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import uk.co.spudsoft.query.defn.RateLimitRule;
+import uk.co.spudsoft.query.defn.RateLimitScopeType;
+import uk.co.spudsoft.query.exec.context.RequestContext;
+import uk.co.spudsoft.query.web.ServiceException;
+
+/**
+ *
+ * @author jtalbut
+ */
+public class LocalRateLimiterTest {
+
+  private static RequestContext request(String id, String path) {
+    RequestContext requestContext = mock(RequestContext.class);
+    when(requestContext.getRequestId()).thenReturn(id);
+    when(requestContext.getHost()).thenReturn("host");
+    when(requestContext.getPath()).thenReturn(path);
+    when(requestContext.getClientIp()).thenReturn(new IPAddressString("127.0.0.1"));
+    return requestContext;
+  }
+
+  private static RateLimitRule rule(String runLimit, String byteLimit, int concurrencyLimit, RateLimitScopeType... scope) {
+    return RateLimitRule.builder()
+            .scope(Arrays.asList(scope))
+            .timeLimit(Duration.ofMinutes(10))
+            .runLimit(runLimit)
+            .byteLimit(byteLimit)
+            .concurrencyLimit(concurrencyLimit)
+            .build();
+  }
+
+  @Test
+  public void testRunLimit() throws Exception {
+    AtomicLong clock = new AtomicLong(1000000);
+    LocalRateLimiter limiter = new LocalRateLimiter(null, clock::get);
+    List<RateLimitRule> rules = List.of(rule("2", null, 10, RateLimitScopeType.path));
+
+    limiter.admit(request("1", "/a"), rules, Instant.now());
+    limiter.admit(request("2", "/a"), rules, Instant.now());
+    limiter.admit(request("3", "/a"), rules, Instant.now());
+    ServiceException ex = assertThrows(ServiceException.class, () -> limiter.admit(request("4", "/a"), rules, Instant.now()));
+    assertEquals(429, ex.getStatusCode());
+    // A different path is not affected
+    limiter.admit(request("5", "/b"), rules, Instant.now());
+
+    // The refused request was not counted, and once the window has passed the path can be used again
+    clock.addAndGet(Duration.ofMinutes(11).toMillis());
+    limiter.admit(request("6", "/a"), rules, Instant.now());
+  }
+
+  @Test
+  public void testConcurrencyLimit() throws Exception {
+    LocalRateLimiter limiter = new LocalRateLimiter(null, () -> 1000000L);
+    List<RateLimitRule> rules = List.of(rule(null, null, 1, RateLimitScopeType.host));
+
+    limiter.admit(request("1", "/a"), rules, Instant.now());
+    limiter.admit(request("2", "/b"), rules, Instant.now());
+    assertThrows(ServiceException.class, () -> limiter.admit(request("3", "/c"), rules, Instant.now()));
+    limiter.complete("1", 100);
+    limiter.admit(request("4", "/d"), rules, Instant.now());
+  }
+
+  @Test
+  public void testByteLimit() throws Exception {
+    LocalRateLimiter limiter = new LocalRateLimiter(null, () -> 1000000L);
+    List<RateLimitRule> rules = List.of(rule(null, "1K", 10, RateLimitScopeType.clientip, RateLimitScopeType.path));
+
+    limiter.admit(request("1", "/a"), rules, Instant.now());
+    limiter.complete("1", 800);
+    limiter.admit(request("2", "/a"), rules, Instant.now());
+    limiter.complete("2", 800);
+    assertThrows(ServiceException.class, () -> limiter.admit(request("3", "/a"), rules, Instant.now()));
+  }
+
+  @Test
+  public void testRequestsWithoutRulesAreCounted() throws Exception {
+    LocalRateLimiter limiter = new LocalRateLimiter(null, () -> 1000000L);
+    List<RateLimitRule> rules = List.of(rule("1", null, 10, RateLimitScopeType.host));
+
+    // Register the shape of the rule
+    limiter.admit(request("1", "/a"), rules, Instant.now());
+    // A request for a pipeline without any rules is still within the scope of the host rule
+    limiter.admit(request("2", "/b"), List.of(), Instant.now());
+    assertThrows(ServiceException.class, () -> limiter.admit(request("3", "/a"), rules, Instant.now()));
+  }
+
+  @Test
+  public void testCancelAndPurge() throws Exception {
+    AtomicLong clock = new AtomicLong(1000000);
+    LocalRateLimiter limiter = new LocalRateLimiter(null, clock::get);
+    List<RateLimitRule> rules = List.of(rule("1", null, 0, RateLimitScopeType.path));
+
+    limiter.admit(request("1", "/a"), rules, Instant.now());
+    limiter.cancel("1");
+    assertDoesNotThrow(() -> limiter.admit(request("2", "/a"), rules, Instant.now()));
+    assertEquals(1, limiter.windowCount());
+
+    // Outstanding requests keep the window alive until they are discarded
+    clock.addAndGet(Duration.ofMinutes(11).toMillis());
+    limiter.purge();
+    assertEquals(1, limiter.windowCount());
+    clock.addAndGet(LocalRateLimiter.MAX_ADMISSION_AGE.toMillis());
+    limiter.purge();
+    assertEquals(0, limiter.windowCount());
+  }
+
+  @Test
+  public void testUnusedShapesArePurged() throws Exception {
+    AtomicLong clock = new AtomicLong(1000000);
+    LocalRateLimiter limiter = new LocalRateLimiter(null, clock::get);
+    List<RateLimitRule> pathRules = List.of(rule("1", null, 0, RateLimitScopeType.path));
+    List<RateLimitRule> hostRules = List.of(rule("1", null, 0, RateLimitScopeType.host));
+
+    limiter.admit(request("1", "/a"), pathRules, Instant.now());
+    limiter.complete("1", 0);
+    assertEquals(1, limiter.shapeCount());
+
+    // The path rule is no longer used, but its shape is kept for its time limit
+    clock.addAndGet(Duration.ofMinutes(5).toMillis());
+    limiter.admit(request("2", "/b"), hostRules, Instant.now());
+    limiter.complete("2", 0);
+    limiter.purge();
+    assertEquals(2, limiter.shapeCount());
+    assertEquals(3, limiter.windowCount());
+
+    clock.addAndGet(Duration.ofMinutes(6).toMillis());
+    limiter.purge();
+    assertEquals(1, limiter.shapeCount());
+    assertEquals(1, limiter.windowCount());
+
+    clock.addAndGet(Duration.ofMinutes(5).toMillis());
+    limiter.purge();
+    assertEquals(0, limiter.shapeCount());
+    assertEquals(0, limiter.windowCount());
+  }
+
+  @Test
+  public void testConcurrentAdmission() throws Exception {
+    LocalRateLimiter limiter = new LocalRateLimiter(null, () -> 1000000L);
+    List<RateLimitRule> rules = List.of(rule("2", null, 100, RateLimitScopeType.path), rule(null, null, 100, RateLimitScopeType.host));
+
+    int threadCount = 16;
+    CountDownLatch start = new CountDownLatch(1);
+    AtomicInteger admitted = new AtomicInteger();
+    AtomicInteger refused = new AtomicInteger();
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < threadCount; ++i) {
+      String id = Integer.toString(i);
+      threads.add(Thread.ofPlatform().start(() -> {
+        try {
+          start.await();
+          limiter.admit(request(id, "/a"), rules, Instant.now());
+          admitted.incrementAndGet();
+        } catch (ServiceException ex) {
+          refused.incrementAndGet();
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+      }));
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    // Exactly as many requests are admitted as the run limit allows, however they interleave
+    assertEquals(3, admitted.get());
+    assertEquals(threadCount - 3, refused.get());
+  }
+
+}
@@ -18,6 +18,7 @@ package uk.co.spudsoft.query.exec;
 
 import uk.co.spudsoft.query.exec.context.RequestContext;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.net.MediaType;
 import inet.ipaddr.IPAddressString;
 import io.vertx.core.Future;
@@ -44,7 +45,17 @@ import uk.co.spudsoft.query.defn.DataType;
 import uk.co.spudsoft.query.defn.Pipeline;
 import uk.co.spudsoft.query.defn.ProcessorLimit;
 import uk.co.spudsoft.query.defn.SourceTest;
+import uk.co.spudsoft.query.defn.ProcessorSort;
+import uk.co.spudsoft.query.exec.filters.LimitFilter;
+import uk.co.spudsoft.query.exec.filters.OffsetFilter;
+import uk.co.spudsoft.query.exec.filters.QueryFilter;
+import uk.co.spudsoft.query.exec.filters.SortFilter;
 import uk.co.spudsoft.query.exec.procs.filters.ProcessorLimitInstance;
+import uk.co.spudsoft.query.exec.procs.filters.ProcessorOffsetInstance;
+import uk.co.spudsoft.query.exec.procs.sort.ProcessorSortInstance;
+import uk.co.spudsoft.query.exec.procs.sort.ProcessorSortTopNInstance;
+import uk.co.spudsoft.query.exec.sources.sql.SqlPushDown;
+import uk.co.spudsoft.query.exec.sources.sql.SqlPushDownTarget;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.hasSize;
@@ -52,6 +63,7 @@ import static org.hamcrest.Matchers.instanceOf;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.slf4j.Logger;
@@ -108,6 +120,126 @@ public class PipelineExecutorImplTest {
     assertEquals(2, ((ProcessorLimitInstance) results.get(1)).getLimit());
   }
 
+  @Test
+  public void testCreateProcessorsTopNSort(Vertx vertx) {
+    RequestContext reqctx = new RequestContext(null, "id", "url", "host", "path", null, null, null, new IPAddressString("127.0.0.1"), null);
+    PipelineContext pipelineContext = new PipelineContext("test", reqctx);
+    Pipeline definition = Pipeline.builder()
+            .source(SourceTest.builder().name("test").build())
+            .processors(
+                    Arrays.asList(
+                            ProcessorSort.builder().fields(Arrays.asList("value")).build()
+                            , ProcessorLimit.builder().limit(20).build()
+                    )
+            )
+            .build();
+    Auditor auditor = new AuditorMemoryImpl(vertx, new OperatorsInstance(null));
+    PipelineExecutor instance = PipelineExecutor.create(null, auditor, new FilterFactory(Arrays.asList(new SortFilter(), new LimitFilter(), new OffsetFilter())), null);
+
+    // Sort and limit in the definition
+    List<ProcessorInstance> results = instance.createProcessors(vertx, pipelineContext, definition, null);
+    assertThat(results, hasSize(2));
+    assertEquals(20, ((ProcessorSortTopNInstance) results.get(0)).getRows());
+    assertEquals(20, ((ProcessorLimitInstance) results.get(1)).getLimit());
+
+    // Sort, offset and limit from the query string
+    Pipeline noProcessors = Pipeline.builder().source(SourceTest.builder().name("test").build()).build();
+    results = instance.createProcessors(vertx, pipelineContext, noProcessors
+            , MultiMap.caseInsensitiveMultiMap().add("_sort", "-value").add("_offset", "10").add("_limit", "50"));
+    assertThat(results, hasSize(3));
+    assertEquals(60, ((ProcessorSortTopNInstance) results.get(0)).getRows());
+    assertThat(results.get(1), instanceOf(ProcessorOffsetInstance.class));
+    assertThat(results.get(2), instanceOf(ProcessorLimitInstance.class));
+
+    // Limit before the sort, or too many rows, must use a full sort
+    results = instance.createProcessors(vertx, pipelineContext, noProcessors
+            , MultiMap.caseInsensitiveMultiMap().add("_limit", "50").add("_sort", "-value"));
+    assertThat(results.get(1), instanceOf(ProcessorSortInstance.class));
+    results = instance.createProcessors(vertx, pipelineContext, noProcessors
+            , MultiMap.caseInsensitiveMultiMap().add("_sort", "-value").add("_limit", "100000"));
+    assertThat(results.get(0), instanceOf(ProcessorSortInstance.class));
+    results = instance.createProcessors(vertx, pipelineContext, noProcessors
+            , MultiMap.caseInsensitiveMultiMap().add("_sort", "-value").add("_offset", "10"));
+    assertThat(results.get(0), instanceOf(ProcessorSortInstance.class));
+  }
+
+  private static class PushDownSource implements SourceInstance, SqlPushDownTarget {
+
+    private final boolean enabled;
+    private SqlPushDown pushDown;
+
+    PushDownSource(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    @Override
+    public Future<ReadStreamWithTypes> initialize(PipelineExecutor executor, PipelineInstance pipeline) {
+      return Future.failedFuture("Not implemented");
+    }
+
+    @Override
+    public boolean isPushDownEnabled() {
+      return enabled;
+    }
+
+    @Override
+    public Map<String, DataType> getColumnTypeOverrideMap() {
+      return ImmutableMap.of("value", DataType.Integer);
+    }
+
+    @Override
+    public void setPushDown(SqlPushDown pushDown) {
+      this.pushDown = pushDown;
+    }
+  }
+
+  @Test
+  public void testPushDownProcessors(Vertx vertx) {
+    RequestContext reqctx = new RequestContext(null, "id", "url", "host", "path", null, null, null, new IPAddressString("127.0.0.1"), null);
+    PipelineContext pipelineContext = new PipelineContext("test", reqctx);
+    Auditor auditor = new AuditorMemoryImpl(vertx, new OperatorsInstance(null));
+    PipelineExecutor instance = PipelineExecutor.create(null, auditor, new FilterFactory(Arrays.asList(new QueryFilter(), new SortFilter(), new LimitFilter(), new OffsetFilter())), null);
+    Pipeline noProcessors = Pipeline.builder().source(SourceTest.builder().name("test").build()).build();
+
+    List<ProcessorInstance> processors = instance.createProcessors(vertx, pipelineContext, noProcessors
+            , MultiMap.caseInsensitiveMultiMap().add("_query", "value=gt=3").add("_sort", "-value").add("_offset", "10").add("_limit", "50"));
+
+    // Not enabled
+    PushDownSource source = new PushDownSource(false);
+    assertEquals(0, PipelineExecutorImpl.pushDownProcessors(pipelineContext, source, processors));
+    assertNull(source.pushDown);
+
+    // Everything can be pushed down
+    source = new PushDownSource(true);
+    assertEquals(4, PipelineExecutorImpl.pushDownProcessors(pipelineContext, source, processors));
+    assertEquals(1, source.pushDown.getFilters().size());
+    assertEquals(Arrays.asList("-value"), source.pushDown.getSortFields());
+    assertEquals(10, source.pushDown.getOffset());
+    assertEquals(50L, source.pushDown.getLimit());
+
+    // A limit without a sort is not pushed down, nor is anything after it
+    processors = instance.createProcessors(vertx, pipelineContext, noProcessors
+            , MultiMap.caseInsensitiveMultiMap().add("_query", "value=gt=3").add("_limit", "50").add("_sort", "-value"));
+    source = new PushDownSource(true);
+    assertEquals(1, PipelineExecutorImpl.pushDownProcessors(pipelineContext, source, processors));
+    assertNull(source.pushDown.getSortFields());
+    assertNull(source.pushDown.getLimit());
+
+    // An offset without a sort is not pushed down
+    processors = instance.createProcessors(vertx, pipelineContext, noProcessors
+            , MultiMap.caseInsensitiveMultiMap().add("_offset", "10").add("_sort", "-value"));
+    source = new PushDownSource(true);
+    assertEquals(0, PipelineExecutorImpl.pushDownProcessors(pipelineContext, source, processors));
+    assertNull(source.pushDown);
+
+    // A comparison on a field without a column type override is not pushed down
+    processors = instance.createProcessors(vertx, pipelineContext, noProcessors
+            , MultiMap.caseInsensitiveMultiMap().add("_query", "name==123").add("_sort", "-value"));
+    source = new PushDownSource(true);
+    assertEquals(0, PipelineExecutorImpl.pushDownProcessors(pipelineContext, source, processors));
+    assertNull(source.pushDown);
+  }
+
   @Test
   public void testPrepareArguments() throws Throwable {
     RequestContext req = new RequestContext(
@@ -332,6 +464,37 @@ public class PipelineExecutorImplTest {
     assertEquals("Source not specified in root pipeline", future.cause().getMessage());
   }
 
+  @Test
+  public void testValidatePipelineMemoisedBySha256() {
+    PipelineExecutor instance = PipelineExecutor.create(null, null, new FilterFactory(Collections.emptyList()), null);
+
+    Pipeline valid = Pipeline.builder()
+            .source(SourceTest.builder().name("test").build())
+            .formats(Arrays.asList(FormatDelimited.builder().build()))
+            .build();
+    valid.setSha256("valid");
+    assertTrue(instance.validatePipeline(null, valid).succeeded());
+
+    // An invalid pipeline with the same hash is not validated again
+    Pipeline invalid = Pipeline.builder().build();
+    invalid.setSha256("valid");
+    Future<Pipeline> future = instance.validatePipeline(null, invalid);
+    assertTrue(future.succeeded());
+    assertEquals(invalid, future.result());
+
+    // Failures are remembered too
+    invalid.setSha256("invalid");
+    assertTrue(instance.validatePipeline(null, invalid).failed());
+    valid.setSha256("invalid");
+    future = instance.validatePipeline(null, valid);
+    assertTrue(future.failed());
+    assertEquals("Source not specified in root pipeline", future.cause().getMessage());
+
+    // Pipelines without a hash are always validated
+    invalid.setSha256(null);
+    assertTrue(instance.validatePipeline(null, invalid).failed());
+  }
+
   @Test
   public void testPossibleValuesContains() {
     Argument arg = Argument.builder().possibleValues(
@@ -24,7 +24,12 @@ import static org.hamcrest.Matchers.containsString;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.util.Arrays;
 import org.junit.jupiter.api.Test;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import uk.co.spudsoft.query.defn.Argument;
 import uk.co.spudsoft.query.defn.DataType;
 import uk.co.spudsoft.query.defn.Pipeline;
@@ -78,4 +83,24 @@ public class PipelineInstanceTest {
             
   }
 
+  @Test
+  public void testCancelUpstream() {
+    SourceInstance source = mock(SourceInstance.class);
+    ProcessorInstance p1 = mock(ProcessorInstance.class);
+    ProcessorInstance p2 = mock(ProcessorInstance.class);
+    ProcessorInstance p3 = mock(ProcessorInstance.class);
+    PipelineInstance instance = new PipelineInstance(null, Pipeline.builder().build(), null, null, null, source, Arrays.asList(p1, p2, p3), null);
+
+    // Processor indexes start at 1, so this is cancelling everything before p3
+    instance.cancelUpstream(3);
+    verify(source, times(1)).cancel();
+    verify(p1, times(1)).cancel();
+    verify(p2, times(1)).cancel();
+    verify(p3, never()).cancel();
+
+    instance.cancel();
+    verify(source, times(2)).cancel();
+    verify(p3, times(1)).cancel();
+  }
+
 }
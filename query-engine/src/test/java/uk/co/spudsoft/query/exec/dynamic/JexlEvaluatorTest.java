@@ -19,6 +19,7 @@ package uk.co.spudsoft.query.exec.dynamic;
 import uk.co.spudsoft.query.exec.dynamic.JexlEvaluator;
 import uk.co.spudsoft.query.exec.context.RequestContext;
 import inet.ipaddr.IPAddressString;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import io.vertx.core.MultiMap;
 import io.vertx.core.http.Cookie;
 import io.vertx.core.json.JsonObject;
@@ -28,7 +29,9 @@ import java.util.HashSet;
 import java.util.Set;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.Test;
 import uk.co.spudsoft.jwtvalidatorvertx.Jwt;
@@ -76,6 +79,27 @@ public class JexlEvaluatorTest {
     assertEquals(LocalDate.now().withDayOfMonth(1).minusMonths(1), new JexlEvaluator("now().toLocalDate().withDayOfMonth(1).minusMonths(1)").evaluateAsObject(request, null));
   }
 
+  @Test
+  public void testCompiledExpressionCache() {
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    JexlEvaluator.monitorCache(meterRegistry);
+
+    String source = "args.testCompiledExpressionCache == " + System.nanoTime();
+    assertSame(JexlEvaluator.compile(source), JexlEvaluator.compile(source));
+    assertTrue(JexlEvaluator.cacheSize() > 0);
+    assertTrue(JexlEvaluator.cacheSize() <= JexlEvaluator.EXPRESSION_CACHE_SIZE);
+
+    // Evaluators for the same expression share the compiled form, but not the iteration count
+    JexlEvaluator first = new JexlEvaluator("iteration");
+    JexlEvaluator second = new JexlEvaluator("iteration");
+    assertEquals(0, first.evaluateAsObject(null, null));
+    assertEquals(1, first.evaluateAsObject(null, null));
+    assertEquals(0, second.evaluateAsObject(null, null));
+
+    assertNotNull(meterRegistry.find("cache.gets").tag("cache", "jexl").tag("result", "hit").functionCounter());
+    assertTrue(meterRegistry.find("cache.gets").tag("cache", "jexl").tag("result", "hit").functionCounter().count() > 0);
+  }
+
   @Test
   public void testStripWhitespace() {
     assertNull(JexlEvaluator.collapseWhitespace(null));
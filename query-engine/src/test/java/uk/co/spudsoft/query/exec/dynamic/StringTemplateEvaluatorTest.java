@@ -135,4 +135,30 @@ public class StringTemplateEvaluatorTest {
     assertTrue(ex.getMessage().contains("Error(s) evaluating cyclic template:"), ex.getMessage());
     assertNotNull(ex.getCause(), "Expected original cause to be preserved");
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testCompiledTemplateCache() {
+    PipelineContext ctx = pipelineContext("hostA");
+    // Unique template text so that other tests cannot have put it in the cache already
+    String suffix = Long.toString(System.nanoTime());
+    String template = "Cached <who> on <request.host> " + suffix;
+
+    long before = StringTemplateEvaluator.cacheSize();
+    assertEquals("Cached Bob on hostA " + suffix
+            , StringTemplateEvaluator.renderTemplate("t", template, ctx, Map.of("who", "Bob")));
+    assertEquals(before + 1, StringTemplateEvaluator.cacheSize());
+
+    // Attributes bound for one render must not leak into the next
+    assertEquals("Cached Fred on hostB " + suffix
+            , StringTemplateEvaluator.renderTemplate("t", template, pipelineContext("hostB"), Map.of("who", "Fred")));
+    assertEquals("Cached  on hostA " + suffix
+            , StringTemplateEvaluator.renderTemplate("t", template, ctx, null));
+    assertEquals(before + 1, StringTemplateEvaluator.cacheSize());
+
+    // Templates that fail to compile are not cached and fail every time
+    String badTemplate = "<request.host " + System.nanoTime();
+    assertThrows(IllegalStateException.class, () -> StringTemplateEvaluator.renderTemplate("bad", badTemplate, ctx, null));
+    assertThrows(IllegalStateException.class, () -> StringTemplateEvaluator.renderTemplate("bad", badTemplate, ctx, null));
+    assertEquals(before + 1, StringTemplateEvaluator.cacheSize());
+  }
+}
@@ -30,13 +30,21 @@ import org.junit.jupiter.api.TestInstance;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import uk.co.spudsoft.query.exec.DataRow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import uk.co.spudsoft.query.defn.Pipeline;
 import uk.co.spudsoft.query.defn.ProcessorLimit;
 import uk.co.spudsoft.query.exec.Auditor;
 import uk.co.spudsoft.query.exec.AuditorMemoryImpl;
+import uk.co.spudsoft.query.exec.PipelineInstance;
+import uk.co.spudsoft.query.exec.ProcessorInstance;
 import uk.co.spudsoft.query.exec.ReadStreamWithTypes;
+import uk.co.spudsoft.query.exec.SourceInstance;
 import uk.co.spudsoft.query.exec.Types;
 import uk.co.spudsoft.query.exec.context.PipelineContext;
 import uk.co.spudsoft.query.exec.context.RequestContext;
@@ -109,4 +117,44 @@ public class ProcessorLimitInstanceTest {
             });
   }
   
+  @Test
+  public void testCancelUpstream(Vertx vertx, VertxTestContext testContext) {
+
+    Types types = new Types();
+    List<DataRow> rowsList = Arrays.asList(
+              DataRow.create(types, "id", 1, "value", "one")
+            , DataRow.create(types, "id", 2, "value", "two")
+            , DataRow.create(types, "id", 3, "value", "three")
+            , DataRow.create(types, "id", 4, "value", "four")
+    );
+    
+    RequestContext reqctx = new RequestContext(null, "id", "url", "host", "path", null, null, null, new IPAddressString("127.0.0.1"), null);
+    PipelineContext pipelineContext = new PipelineContext("test", reqctx);
+    Auditor auditor = new AuditorMemoryImpl(vertx, new OperatorsInstance(null));
+    
+    SourceInstance source = mock(SourceInstance.class);
+    ProcessorInstance previous = mock(ProcessorInstance.class);
+    ProcessorLimitInstance instance = new ProcessorLimitInstance(vertx, null, auditor, pipelineContext, ProcessorLimit.builder().limit(2).build(), "P1-Limit");
+    ProcessorInstance following = mock(ProcessorInstance.class);
+    PipelineInstance pipeline = new PipelineInstance(pipelineContext, Pipeline.builder().build(), null, null, null, source, Arrays.asList(previous, instance, following), null);
+    
+    instance.initialize(null, pipeline, "source", 2, new ReadStreamWithTypes(new ListReadStream<>(pipelineContext, vertx.getOrCreateContext(), rowsList), types))
+            .compose(rswt -> {
+              return ReadStreamToList.capture(pipelineContext, rswt.getStream());
+            })
+            .onFailure(ex -> {
+              testContext.failNow(ex);
+            })
+            .onSuccess(rows -> {
+              testContext.verify(() -> {
+                assertEquals(2, rows.size());
+                assertEquals(2, rows.get(1).get("id"));
+                verify(source, times(1)).cancel();
+                verify(previous, times(1)).cancel();
+                verify(following, never()).cancel();
+              });
+              testContext.completeNow();
+            });
+  }
+  
 }
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2026 jtalbut
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.spudsoft.query.exec.procs.query;
+
+import cz.jirutka.rsql.parser.RSQLParser;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Arrays;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import uk.co.spudsoft.query.exec.DataRow;
+import uk.co.spudsoft.query.exec.Types;
+
+/**
+ *
+ * @author jtalbut
+ */
+public class RsqlPredicateTest {
+
+  private static final RSQLParser RSQL_PARSER = new RSQLParser();
+
+  private record Entry(String key, Comparable<?> value){};
+
+  private static Entry e(String key, Comparable<?> value){
+    return new Entry(key, value);
+  };
+
+  private static DataRow row(Entry... entries) {
+    Types types = new Types();
+    DataRow output = DataRow.create(types);
+    for (Entry entry : entries) {
+      output.put(entry.key, entry.value);
+    }
+    return output;
+  }
+
+  /**
+   * Evaluate with both the compiled predicate and the RsqlEvaluator, which must agree.
+   */
+  private static boolean eval(String exp, DataRow row) {
+    boolean compiled = RsqlPredicate.compile(null, RSQL_PARSER.parse(exp)).test(row);
+    boolean visited = RSQL_PARSER.parse(exp).accept(new RsqlEvaluator(null), row);
+    assertEquals(visited, compiled, exp);
+    return compiled;
+  }
+
+  @Test
+  public void testComparisons() {
+    assertTrue(eval("x==4", row(e("x", 4))));
+    assertFalse(eval("x==4", row(e("x", 5))));
+    assertFalse(eval("x==4", row(e("x", null))));
+    assertTrue(eval("x=gt=3", row(e("x", 4))));
+    assertFalse(eval("x=gt=3", row(e("x", 3))));
+    assertTrue(eval("x=ge=3", row(e("x", 3))));
+    assertFalse(eval("x=ge=3", row(e("x", 2))));
+    assertFalse(eval("x!=4", row(e("x", 4))));
+    assertTrue(eval("x!=4", row(e("x", 5))));
+    assertFalse(eval("x!=4", row(e("x", null))));
+
+    assertTrue(eval("x=ge=3", row(e("x", "4"))));
+    assertFalse(eval("x=ge=3", row(e("x", "2"))));
+
+    assertTrue(eval("x=ge=2024-05-06T12:34", row(e("x", LocalDateTime.parse("2024-05-06T12:34")))));
+    assertFalse(eval("x=ge=2024-05-07", row(e("x", LocalDateTime.parse("2024-05-06T12:34")))));
+    assertTrue(eval("x=ge=2024-05-06", row(e("x", LocalDate.parse("2024-05-06")))));
+    assertFalse(eval("x=ge=12:34", row(e("x", LocalTime.parse("12:33")))));
+
+    assertTrue(eval("x=ge=3", row(e("x", 3L))));
+    assertFalse(eval("x=ge=3", row(e("x", 2L))));
+    assertFalse(eval("x=lt=1.3", row(e("x", 1.4f))));
+    assertTrue(eval("x=lt=1.3", row(e("x", 1.2f))));
+    assertFalse(eval("x=le=1.3", row(e("x", 1.4))));
+    assertTrue(eval("x=le=1.3", row(e("x", 1.2))));
+    assertFalse(eval("x==true", row(e("x", Boolean.FALSE))));
+    assertTrue(eval("x==false", row(e("x", Boolean.FALSE))));
+
+    assertTrue(eval("x=le=1.5;y==bob", row(e("x", 1.4), e("y", "bob"))));
+    assertFalse(eval("x=le=1.5;y==bob", row(e("x", 1.4), e("y", "fred"))));
+    assertTrue(eval("x=le=1.5,y==fred", row(e("x", 1.4), e("y", "bob"))));
+    assertFalse(eval("x=le=1.1,y==fred", row(e("x", 1.2), e("y", "bob"))));
+
+    assertTrue(eval("x=in=(a,b,c,d)", row(e("x", "c"))));
+    assertFalse(eval("x=in=(a,b,c,d)", row(e("x", "e"))));
+    assertFalse(eval("x=out=(a,b,c,d)", row(e("x", "c"))));
+    assertTrue(eval("x=out=(a,b,c,d)", row(e("x", "e"))));
+    assertTrue(eval("x=in=(1,3,5)", row(e("x", 3))));
+    assertFalse(eval("x=in=(1,3,5)", row(e("x", 4))));
+  }
+
+  @Test
+  public void testStringWildcards() {
+    assertTrue(eval("x==*ob", row(e("x", "bob"))));
+    assertFalse(eval("x==*ob", row(e("x", "obi"))));
+    assertTrue(eval("x==bo*", row(e("x", "bob"))));
+    assertFalse(eval("x==bo*", row(e("x", "abo"))));
+    assertTrue(eval("x==*o*", row(e("x", "bob"))));
+    assertFalse(eval("x==*o*", row(e("x", "bib"))));
+    // Wildcards only apply to ==
+    assertTrue(eval("x!=bo*", row(e("x", "bob"))));
+  }
+
+  @Test
+  public void testMissingField() {
+    RsqlPredicate predicate = RsqlPredicate.compile(null, RSQL_PARSER.parse("y==4"));
+    assertThrows(IllegalArgumentException.class, () -> {
+      predicate.test(row(e("x", 4)));
+    });
+  }
+
+  @Test
+  public void testRowsWithDifferentTypes() {
+    RsqlPredicate predicate = RsqlPredicate.compile(null, RSQL_PARSER.parse("x=gt=3"));
+    assertTrue(predicate.test(row(e("x", 4))));
+    assertFalse(predicate.test(row(e("y", 7), e("x", 2))));
+    assertTrue(predicate.test(row(e("y", 7), e("x", "5"))));
+  }
+
+  @Test
+  public void testSharedTypes() {
+    Types types = new Types();
+    RsqlPredicate predicate = RsqlPredicate.compile(null, RSQL_PARSER.parse("x=gt=3"));
+    // The type of x is not known until the first non-null value
+    assertFalse(predicate.test(DataRow.create(types, "x", null)));
+    assertTrue(predicate.test(DataRow.create(types, "x", 4)));
+    assertFalse(predicate.test(DataRow.create(types, "x", 3)));
+    assertFalse(predicate.test(DataRow.create(types, "x", null)));
+  }
+
+  @Test
+  public void testCompilePattern() {
+    assertThat(assertThrows(IllegalArgumentException.class, () -> {
+      RsqlPredicate.compilePattern(Arrays.asList());
+    }).getMessage(), startsWith("0 arguments"));
+
+    assertThat(assertThrows(IllegalArgumentException.class, () -> {
+      RsqlPredicate.compilePattern(Arrays.asList("one", "two"));
+    }).getMessage(), startsWith("2 arguments"));
+
+    assertThat(assertThrows(IllegalArgumentException.class, () -> {
+      RsqlPredicate.compilePattern(Arrays.asList("([)]"));
+    }).getMessage(), startsWith("Invalid argument passed to =~ operator"));
+
+    assertTrue(RsqlPredicate.compilePattern(Arrays.asList(".*V.*")).matcher("rowValue").matches());
+    assertEquals(null, RsqlPredicate.compilePattern(Arrays.asList((String) null)));
+  }
+
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2026 jtalbut
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.spudsoft.query.exec.procs.sort;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.co.spudsoft.query.defn.DataType;
+import uk.co.spudsoft.query.exec.ColumnDefn;
+import uk.co.spudsoft.query.exec.DataRow;
+import uk.co.spudsoft.query.exec.Types;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Comparison of the {@link DataRowCodec} with the ObjectOutputStream based serialization that the sort used previously.
+ * <p>
+ * Each iteration serializes and then deserializes one row that has a column of every type.
+ * The iteration counts are too low to be meaningful unless the test is run on its own ( -Dtest=uk.co.spudsoft.query.exec.procs.sort.DataRowCodecPerformanceTest ).
+ *
+ * @author jtalbut
+ */
+@TestMethodOrder(MethodOrderer.MethodName.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class DataRowCodecPerformanceTest {
+
+  @SuppressWarnings("constantname")
+  private static final Logger logger = LoggerFactory.getLogger(DataRowCodecPerformanceTest.class);
+
+  private final static int WARMUPS = DataRowCodecPerformanceTest.class.getCanonicalName().equals(System.getProperty("test")) ? 100000 : 100;
+  private final static int TIMED = DataRowCodecPerformanceTest.class.getCanonicalName().equals(System.getProperty("test")) ? 1000000 : 100;
+
+  private final Types types = new Types();
+  private final List<DataRow> rows = new ArrayList<>();
+
+  private static String findTidyName() {
+    StackWalker walker = StackWalker.getInstance();
+    Optional<String> methodName = walker.walk(frames -> frames
+      .skip(1)
+      .findFirst()
+      .map(StackWalker.StackFrame::getMethodName));
+    return methodName.get().substring(4);
+  }
+
+  @BeforeAll
+  public void headers() {
+    logger.warn("{}", String.format("%-40s %-20s %10s %10s %14s %12s", "Method", "JVM", "Iterations", "Duration/s", "Rate (rows/s)", "Bytes/row"));
+    for (int i = 0; i < 1000; ++i) {
+      rows.add(DataRow.create(types
+              , "id", i
+              , "value", (long) i * 1000
+              , "ratio", i / 7.0
+              , "score", i / 3.0f
+              , "name", "Row number " + i
+              , "flag", (i & 1) == 0
+              , "day", LocalDate.of(2026, 1, 1).plusDays(i)
+              , "created", LocalDateTime.of(2026, 1, 1, 0, 0).plusSeconds(i * 37L)
+              , "at", LocalTime.of(9, 0).plusSeconds(i)
+              , "missing", null
+      ));
+    }
+  }
+
+  private void report(String name, long durationMs, long bytes) {
+    logger.info("{}", String.format("%-40s %-20s %10d %10.3f %14.3f %12.1f", name, System.getProperty("java.vendor.version"), TIMED, durationMs / 1000.0, TIMED / (durationMs / 1000.0), (double) bytes / TIMED));
+  }
+
+  /**
+   * The serializer that ProcessorSortInstance used before DataRowCodec.
+   */
+  private byte[] legacySerialize(DataRow row) throws IOException {
+    try (ByteArrayOutputStream baos = new ByteArrayOutputStream(row.bytesSize() + 4 * row.size())) {
+      try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+        for (Iterator<ColumnDefn> iter = types.iterator(); iter.hasNext();) {
+          ColumnDefn cd = iter.next();
+          Object value = row.get(cd.name());
+          if (value == null) {
+            oos.writeByte(~cd.type().ordinal());
+          } else {
+            oos.writeByte(cd.type().ordinal());
+            switch (cd.type()) {
+              case Boolean -> oos.writeBoolean((Boolean) value);
+              case Date, DateTime, Time -> oos.writeObject(value);
+              case Double -> oos.writeDouble((Double) value);
+              case Float -> oos.writeFloat((Float) value);
+              case Integer -> oos.writeInt((Integer) value);
+              case Long -> oos.writeLong((Long) value);
+              case String -> {
+                byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+                oos.writeInt(bytes.length);
+                oos.write(bytes);
+              }
+              default -> throw new IllegalArgumentException("Unknown value type: " + cd.typeName());
+            }
+          }
+        }
+      }
+      return baos.toByteArray();
+    }
+  }
+
+  /**
+   * The deserializer that ProcessorSortInstance used before DataRowCodec.
+   */
+  private DataRow legacyDeserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+    DataRow result = DataRow.create(types);
+    try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+      for (Iterator<ColumnDefn> iter = types.iterator(); iter.hasNext();) {
+        ColumnDefn cd = iter.next();
+        byte typeOrd = ois.readByte();
+        if (typeOrd <= 0) {
+          result.put(cd.name(), cd.type(), null);
+        } else {
+          switch (DataType.fromOrdinal(typeOrd)) {
+            case Boolean -> result.put(cd.name(), cd.type(), ois.readBoolean());
+            case Date, DateTime, Time -> result.put(cd.name(), cd.type(), (Comparable<?>) ois.readObject());
+            case Double -> result.put(cd.name(), cd.type(), ois.readDouble());
+            case Float -> result.put(cd.name(), cd.type(), ois.readFloat());
+            case Integer -> result.put(cd.name(), cd.type(), ois.readInt());
+            case Long -> result.put(cd.name(), cd.type(), ois.readLong());
+            case String -> {
+              int length = ois.readInt();
+              result.put(cd.name(), cd.type(), new String(ois.readNBytes(length), StandardCharsets.UTF_8));
+            }
+            default -> throw new IllegalArgumentException("Unknown value type: " + cd.typeName());
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  @Test
+  public void testDataRowCodec() throws Exception {
+    DataRowCodec codec = new DataRowCodec(types);
+    for (int i = 0; i < WARMUPS; ++i) {
+      codec.deserialize(codec.serialize(rows.get(i % rows.size())));
+    }
+    long bytes = 0;
+    long start = System.currentTimeMillis();
+    for (int i = 0; i < TIMED; ++i) {
+      byte[] data = codec.serialize(rows.get(i % rows.size()));
+      bytes += data.length;
+      DataRow row = codec.deserialize(data);
+      assertEquals(i % rows.size(), row.get("id"));
+    }
+    report(findTidyName(), System.currentTimeMillis() - start, bytes);
+  }
+
+  @Test
+  public void testObjectStream() throws Exception {
+    for (int i = 0; i < WARMUPS; ++i) {
+      legacyDeserialize(legacySerialize(rows.get(i % rows.size())));
+    }
+    long bytes = 0;
+    long start = System.currentTimeMillis();
+    for (int i = 0; i < TIMED; ++i) {
+      byte[] data = legacySerialize(rows.get(i % rows.size()));
+      bytes += data.length;
+      DataRow row = legacyDeserialize(data);
+      assertEquals(i % rows.size(), row.get("id"));
+    }
+    report(findTidyName(), System.currentTimeMillis() - start, bytes);
+  }
+
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2026 jtalbut
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.spudsoft.query.exec.procs.sort;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import uk.co.spudsoft.query.defn.DataType;
+import uk.co.spudsoft.query.exec.DataRow;
+import uk.co.spudsoft.query.exec.Types;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ *
+ * @author jtalbut
+ */
+public class DataRowCodecTest {
+
+  private void roundTrip(DataType type, Comparable<?>... values) throws IOException {
+    Types types = new Types();
+    types.putIfAbsent("value", type);
+    DataRowCodec codec = new DataRowCodec(types);
+    for (Comparable<?> value : values) {
+      DataRow row = DataRow.create(types).put("value", type, value);
+      DataRow result = codec.deserialize(codec.serialize(row));
+      assertEquals(value, result.get("value"), () -> type + " value " + value);
+      assertEquals(1, result.size());
+    }
+  }
+
+  @Test
+  public void testInteger() throws IOException {
+    roundTrip(DataType.Integer, 0, 1, -1, 63, 64, -64, -65, Integer.MAX_VALUE, Integer.MIN_VALUE, null);
+  }
+
+  @Test
+  public void testLongInIntegerColumn() throws IOException {
+    Types types = new Types();
+    types.putIfAbsent("value", DataType.Integer);
+    DataRowCodec codec = new DataRowCodec(types);
+
+    DataRow row = DataRow.create(types).put("value", DataType.Integer, 1L + Integer.MAX_VALUE);
+    IOException ex = assertThrows(IOException.class, () -> codec.serialize(row));
+    assertTrue(ex.getMessage().contains("Integer field value"), ex.getMessage());
+
+    // A Long that does fit is read back as an Integer
+    DataRow small = DataRow.create(types).put("value", DataType.Integer, 7L);
+    assertEquals(7, codec.deserialize(codec.serialize(small)).get("value"));
+  }
+
+  @Test
+  public void testLong() throws IOException {
+    roundTrip(DataType.Long, 0L, 1L, -1L, 1L << 40, -(1L << 40), Long.MAX_VALUE, Long.MIN_VALUE, null);
+  }
+
+  @Test
+  public void testFloat() throws IOException {
+    roundTrip(DataType.Float, 0.0f, -0.0f, 3.14f, Float.MAX_VALUE, Float.MIN_VALUE, Float.NaN, Float.NEGATIVE_INFINITY, null);
+  }
+
+  @Test
+  public void testDouble() throws IOException {
+    roundTrip(DataType.Double, 0.0, -0.0, 3.1415926, Double.MAX_VALUE, Double.MIN_VALUE, Double.NaN, Double.POSITIVE_INFINITY, null);
+  }
+
+  @Test
+  public void testString() throws IOException {
+    roundTrip(DataType.String, "", "one", "été ☃ 😀", "x".repeat(1000), null);
+  }
+
+  @Test
+  public void testBoolean() throws IOException {
+    roundTrip(DataType.Boolean, Boolean.TRUE, Boolean.FALSE, null);
+  }
+
+  @Test
+  public void testDate() throws IOException {
+    roundTrip(DataType.Date, LocalDate.of(1971, 5, 6), LocalDate.of(1, 1, 1), LocalDate.of(9999, 12, 31), LocalDate.MIN, LocalDate.MAX, null);
+  }
+
+  @Test
+  public void testDateTime() throws IOException {
+    roundTrip(DataType.DateTime
+            , LocalDateTime.of(1971, 5, 6, 12, 34, 56, 789012345)
+            , LocalDateTime.of(1, 1, 1, 0, 0)
+            , LocalDateTime.of(9999, 12, 31, 23, 59, 59, 999999999)
+            , LocalDateTime.MIN
+            , LocalDateTime.MAX
+            , null
+    );
+  }
+
+  @Test
+  public void testTime() throws IOException {
+    roundTrip(DataType.Time, LocalTime.MIDNIGHT, LocalTime.of(12, 34, 56, 789), LocalTime.MAX, null);
+  }
+
+  @Test
+  public void testNull() throws IOException {
+    roundTrip(DataType.Null, (Comparable<?>) null);
+  }
+
+  @Test
+  public void testWideRow() throws IOException {
+    Types types = new Types();
+    DataRow row = DataRow.create(types);
+    for (int i = 0; i < 20; ++i) {
+      row.put("c" + i, i % 3 == 0 ? null : i);
+    }
+    DataRowCodec codec = new DataRowCodec(types);
+    byte[] bytes = codec.serialize(row);
+    // 1 byte column count, 3 bytes of bitmap, 1 byte per non-null value
+    assertEquals(1 + 3 + 13, bytes.length);
+    DataRow result = codec.deserialize(bytes);
+    for (int i = 0; i < 20; ++i) {
+      assertEquals(row.get("c" + i), result.get("c" + i));
+    }
+  }
+
+  @Test
+  public void testColumnsAddedAfterSerialization() throws IOException {
+    Types types = new Types();
+    DataRowCodec codec = new DataRowCodec(types);
+    byte[] bytes = codec.serialize(DataRow.create(types, "id", 1, "wasnull", null));
+
+    DataRow.create(types, "id", 2, "wasnull", "now a string", "extra", 7L);
+
+    DataRow result = codec.deserialize(bytes);
+    assertEquals(1, result.get("id"));
+    assertNull(result.get("wasnull"));
+    assertTrue(result.containsKey("wasnull"));
+    assertFalse(result.containsKey("extra"));
+  }
+
+  @Test
+  public void testTruncated() throws IOException {
+    Types types = new Types();
+    DataRowCodec codec = new DataRowCodec(types);
+    byte[] bytes = codec.serialize(DataRow.create(types, "id", 1L << 40, "name", "Hello"));
+    for (int i = 0; i < bytes.length; ++i) {
+      byte[] truncated = Arrays.copyOf(bytes, i);
+      assertThrows(EOFException.class, () -> codec.deserialize(truncated), () -> "Truncated to " + truncated.length);
+    }
+  }
+
+}
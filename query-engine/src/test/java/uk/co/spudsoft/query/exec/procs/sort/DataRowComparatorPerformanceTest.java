@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2026 jtalbut
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.spudsoft.query.exec.procs.sort;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.co.spudsoft.query.exec.DataRow;
+import uk.co.spudsoft.query.exec.Types;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Comparison of the ways of sorting a list of DataRows on three fields.
+ * <p>
+ * The legacy comparison parses the field list and looks up each value by name on every call, as DataRowComparator used to.
+ * The iteration counts are too low to be meaningful unless the test is run on its own ( -Dtest=uk.co.spudsoft.query.exec.procs.sort.DataRowComparatorPerformanceTest ).
+ *
+ * @author jtalbut
+ */
+@TestMethodOrder(MethodOrderer.MethodName.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class DataRowComparatorPerformanceTest {
+
+  @SuppressWarnings("constantname")
+  private static final Logger logger = LoggerFactory.getLogger(DataRowComparatorPerformanceTest.class);
+
+  private final static int WARMUPS = DataRowComparatorPerformanceTest.class.getCanonicalName().equals(System.getProperty("test")) ? 20 : 1;
+  private final static int TIMED = DataRowComparatorPerformanceTest.class.getCanonicalName().equals(System.getProperty("test")) ? 100 : 1;
+  private final static int ROWS = 20000;
+
+  private static final List<String> FIELDS = Arrays.asList("name", "-value", "created");
+  private static final LocalDateTime NOW = LocalDateTime.of(2026, 1, 2, 3, 4, 5);
+
+  private final Types types = new Types();
+  private final List<DataRow> rows = new ArrayList<>(ROWS);
+
+  private static String findTidyName() {
+    StackWalker walker = StackWalker.getInstance();
+    Optional<String> methodName = walker.walk(frames -> frames
+      .skip(1)
+      .findFirst()
+      .map(StackWalker.StackFrame::getMethodName));
+    return methodName.get().substring(4);
+  }
+
+  @BeforeAll
+  public void setup() {
+    logger.warn("{}", String.format("%-40s %-20s %10s %10s %14s", "Method", "JVM", "Iterations", "Duration/s", "Rate (rows/s)"));
+    Random random = new Random(42);
+    for (int i = 0; i < ROWS; ++i) {
+      rows.add(DataRow.create(types)
+              .put("id", i)
+              .put("name", "Name" + random.nextInt(20))
+              .put("value", (long) random.nextInt(50))
+              .put("created", NOW.plusSeconds(random.nextInt(1000)))
+      );
+    }
+  }
+
+  private void report(String name, long durationMs) {
+    logger.info("{}", String.format("%-40s %-20s %10d %10.3f %14.3f", name, System.getProperty("java.vendor.version"), TIMED, durationMs / 1000.0, (long) TIMED * ROWS / (durationMs / 1000.0)));
+  }
+
+  /**
+   * The work done by DataRowComparator.compare before the comparison chain was resolved in advance.
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static int legacyCompare(DataRow o1, DataRow o2) {
+    for (String field : FIELDS) {
+      int descending = 1;
+      if (field.startsWith("-")) {
+        descending = -1;
+        field = field.substring(1);
+      }
+      if (o1.getType(field) == null) {
+        throw new IllegalArgumentException("Unrecognised field in sort");
+      }
+      Comparable v1 = o1.get(field);
+      Comparable v2 = o2.get(field);
+      int result;
+      if (v1 == null) {
+        result = (v2 == null) ? 0 : -1;
+      } else if (v2 == null) {
+        result = 1;
+      } else {
+        result = v1.compareTo(v2);
+      }
+      result *= descending;
+      if (result != 0) {
+        return result;
+      }
+    }
+    return 0;
+  }
+
+  private static void sortByKeys(DataRowComparator comparator, List<DataRow> items) {
+    List<Object[]> keyed = new ArrayList<>(items.size());
+    for (DataRow row : items) {
+      keyed.add(new Object[]{comparator.sortKey(row), row});
+    }
+    keyed.sort((a, b) -> Arrays.compareUnsigned((byte[]) a[0], (byte[]) b[0]));
+    for (int i = 0; i < keyed.size(); ++i) {
+      items.set(i, (DataRow) keyed.get(i)[1]);
+    }
+  }
+
+  private List<Integer> ids(List<DataRow> sorted) {
+    List<Integer> result = new ArrayList<>(sorted.size());
+    for (DataRow row : sorted) {
+      result.add((Integer) row.get("id"));
+    }
+    return result;
+  }
+
+  private List<Integer> expected() {
+    List<DataRow> sorted = new ArrayList<>(rows);
+    sorted.sort(DataRowComparatorPerformanceTest::legacyCompare);
+    return ids(sorted);
+  }
+
+  private long time(Comparator<DataRow> comparator, List<Integer> expected) {
+    for (int i = 0; i < WARMUPS; ++i) {
+      new ArrayList<>(rows).sort(comparator);
+    }
+    List<DataRow> sorted = null;
+    long start = System.currentTimeMillis();
+    for (int i = 0; i < TIMED; ++i) {
+      sorted = new ArrayList<>(rows);
+      sorted.sort(comparator);
+    }
+    long duration = System.currentTimeMillis() - start;
+    assertEquals(expected, ids(sorted));
+    return duration;
+  }
+
+  @Test
+  public void testLegacyComparator() {
+    report(findTidyName(), time(DataRowComparatorPerformanceTest::legacyCompare, expected()));
+  }
+
+  @Test
+  public void testResolvedComparator() {
+    report(findTidyName(), time(new DataRowComparator(null, FIELDS), expected()));
+  }
+
+  @Test
+  public void testNormalisedKeys() {
+    DataRowComparator comparator = new DataRowComparator(null, FIELDS);
+    List<Integer> expected = expected();
+    for (int i = 0; i < WARMUPS; ++i) {
+      sortByKeys(comparator, new ArrayList<>(rows));
+    }
+    List<DataRow> sorted = null;
+    long start = System.currentTimeMillis();
+    for (int i = 0; i < TIMED; ++i) {
+      sorted = new ArrayList<>(rows);
+      sortByKeys(comparator, sorted);
+    }
+    report(findTidyName(), System.currentTimeMillis() - start);
+    assertEquals(expected, ids(sorted));
+  }
+
+}
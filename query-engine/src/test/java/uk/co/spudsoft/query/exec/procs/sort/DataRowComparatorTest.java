@@ -20,12 +20,15 @@ import com.google.common.collect.ImmutableMap;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.List;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.lessThan;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -250,4 +253,92 @@ public class DataRowComparatorTest {
     
   }
   
+  @Test
+  public void testUnrecognisedField() {
+    Comparator<DataRow> comp = new DataRowComparator(null, Arrays.asList("intValue", "noSuchValue"));
+    IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> comp.compare(row1, row2));
+    assertEquals("Unrecognised field in sort", ex.getMessage());
+  }
+  
+  @Test
+  public void testNullRows() {
+    Comparator<DataRow> comp = new DataRowComparator(null, Arrays.asList("intValue"));
+    assertEquals(0, comp.compare(null, null));
+    assertEquals(-1, comp.compare(null, row1));
+    assertEquals(1, comp.compare(row1, null));
+    
+    comp = new DataRowComparator(null, Arrays.asList("-intValue"));
+    assertEquals(1, comp.compare(null, row1));
+    assertEquals(-1, comp.compare(row1, null));
+    
+    comp = new DataRowComparator(null, Arrays.asList());
+    assertEquals(0, comp.compare(null, row1));
+    assertEquals(0, comp.compare(row1, null));
+  }
+  
+  @Test
+  public void testColumnWithoutType() {
+    Types localTypes = new Types();
+    DataRow a = DataRow.create(localTypes).put("id", 1).put("value", null);
+    DataRow b = DataRow.create(localTypes).put("id", 1).put("value", null);
+    DataRowComparator comp = new DataRowComparator(null, Arrays.asList("id", "value"));
+    assertEquals(0, comp.compare(a, b));
+    
+    // Once the column has a type the comparator must use it
+    DataRow c = DataRow.create(localTypes).put("id", 1).put("value", "b");
+    DataRow d = DataRow.create(localTypes).put("id", 1).put("value", "a");
+    assertThat(comp.compare(c, d), greaterThan(0));
+    assertThat(comp.compare(a, d), lessThan(0));
+    assertThat(Arrays.compareUnsigned(comp.sortKey(c), comp.sortKey(d)), greaterThan(0));
+  }
+  
+  private static void assertSameOrder(DataRowComparator comp, DataRow a, DataRow b) {
+    int expected = Integer.signum(comp.compare(a, b));
+    int actual = Integer.signum(Arrays.compareUnsigned(comp.sortKey(a), comp.sortKey(b)));
+    assertEquals(expected, actual, () -> "Sort keys do not match comparison of " + a + " and " + b);
+  }
+  
+  @Test
+  public void testSortKeyMatchesCompare() {
+    List<DataRow> rows = Arrays.asList(rowN, row0, row1, row10, row12, row2);
+    List<String> columns = Arrays.asList("intValue", "longValue", "floatValue", "doubleValue", "stringValue", "boolValue"
+            , "timeValue", "dateValue", "dateTimeValue", "sqlDate", "sqlTime", "javaDate", "convertedStringValue");
+    for (String column : columns) {
+      for (List<String> fields : Arrays.asList(Arrays.asList(column), Arrays.asList("-" + column), Arrays.asList(column, "-intValue", "floatValue"))) {
+        DataRowComparator comp = new DataRowComparator(null, fields);
+        for (DataRow a : rows) {
+          for (DataRow b : rows) {
+            assertSameOrder(comp, a, b);
+          }
+        }
+      }
+    }
+  }
+  
+  @Test
+  public void testSortKeyEdgeValues() {
+    Types localTypes = new Types();
+    List<DataRow> rows = new ArrayList<>();
+    rows.add(DataRow.create(localTypes).put("s", "").put("i", Integer.MIN_VALUE).put("l", Long.MIN_VALUE).put("f", Float.NEGATIVE_INFINITY).put("d", Double.NEGATIVE_INFINITY));
+    rows.add(DataRow.create(localTypes).put("s", "\0").put("i", -1).put("l", -1L).put("f", -0.0f).put("d", -0.0));
+    rows.add(DataRow.create(localTypes).put("s", "\0a").put("i", 0).put("l", 0L).put("f", 0.0f).put("d", 0.0));
+    rows.add(DataRow.create(localTypes).put("s", "\u0001").put("i", 1).put("l", 1L).put("f", Float.MIN_VALUE).put("d", Double.MIN_VALUE));
+    rows.add(DataRow.create(localTypes).put("s", "a").put("i", Integer.MAX_VALUE).put("l", Long.MAX_VALUE).put("f", Float.MAX_VALUE).put("d", Double.MAX_VALUE));
+    rows.add(DataRow.create(localTypes).put("s", "a\0").put("i", 7).put("l", 7L).put("f", Float.POSITIVE_INFINITY).put("d", Double.POSITIVE_INFINITY));
+    rows.add(DataRow.create(localTypes).put("s", "ab").put("i", -7).put("l", -7L).put("f", Float.NaN).put("d", Double.NaN));
+    rows.add(DataRow.create(localTypes).put("s", "\uffff").put("i", null).put("l", null).put("f", null).put("d", null));
+    rows.add(DataRow.create(localTypes).put("s", null).put("i", 3).put("l", 3L).put("f", -1.5f).put("d", -1.5));
+    for (List<String> fields : Arrays.asList(
+            Arrays.asList("s", "i"), Arrays.asList("-s", "i"), Arrays.asList("i", "s"), Arrays.asList("-i", "s"), Arrays.asList("l", "s"), Arrays.asList("-l", "s")
+            , Arrays.asList("f", "s"), Arrays.asList("-f", "s"), Arrays.asList("d", "s"), Arrays.asList("-d", "-s")
+    )) {
+      DataRowComparator comp = new DataRowComparator(null, fields);
+      for (DataRow a : rows) {
+        for (DataRow b : rows) {
+          assertSameOrder(comp, a, b);
+        }
+      }
+    }
+  }
+  
 }
@@ -118,7 +118,7 @@ public class ProcessorSortInstanceTest {
     
     byte[] serialized = instance.dataRowSerializer(row);
     assertNotNull(serialized);
-    assertThat(serialized.length, equalTo(124));
+    assertThat(serialized.length, equalTo(45));
     
     DataRow deserialized = instance.dataRowDeserializer(serialized);
     assertNotNull(deserialized);
@@ -159,7 +159,7 @@ public class ProcessorSortInstanceTest {
     
     byte[] serialized = instance.dataRowSerializer(row);
     assertNotNull(serialized);
-    assertThat(serialized.length, equalTo(12));
+    assertThat(serialized.length, equalTo(3));
     
     // To change the type of wasnull
     DataRow.create(types
@@ -28,6 +28,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Random;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -679,4 +680,105 @@ public class SortingStreamTest {
 
     ss.fetch(Long.MAX_VALUE);
   }
+
+  @Test
+  public void testMultiPassStableMerge(Vertx vertx, VertxTestContext testContext, TestInfo testInfo) {
+    logger.debug("{}.{}", testInfo.getTestClass().get().getSimpleName(), testInfo.getTestMethod().get().getName());
+    // Each value is key * 100000 + sequence, the comparator only considers the key so a stable sort keeps the sequence ascending within each key
+    int total = 5000;
+    Random random = new Random(42);
+    List<Integer> input = new ArrayList<>(total);
+    for (int i = 0; i < total; ++i) {
+      input.add(random.nextInt(10) * 100000 + i);
+    }
+    Comparator<Integer> byKey = Comparator.comparingInt(i -> i / 100000);
+    List<Integer> expected = new ArrayList<>(input);
+    expected.sort(byKey);
+
+    String tempDir = "target/temp/" + testInfo.getTestClass().get().getSimpleName() + "_" + testInfo.getTestMethod().get().getName();
+    List<Integer> captured = new ArrayList<>();
+    ListReadStream<Integer> lrs = new ListReadStream<>(null, vertx.getOrCreateContext(), input);
+
+    assertThrows(IllegalArgumentException.class, () -> {
+      new SortingStream<>(null, vertx.getOrCreateContext(), vertx.fileSystem(), byKey
+              , i -> SerializeWriteStream.byteArrayFromInt(i), b -> SerializeReadStream.intFromByteArray(b)
+              , tempDir, "invalid", 1600, 1, i -> 16, null, lrs
+      );
+    });
+
+    // 100 items per run gives 50 runs, which requires two passes with a fan-in of 4
+    SortingStream<Integer> ss = new SortingStream<>(null,
+            vertx.getOrCreateContext(),
+             vertx.fileSystem(),
+             byKey,
+             i -> SerializeWriteStream.byteArrayFromInt(i),
+             b -> SerializeReadStream.intFromByteArray(b),
+             tempDir,
+             testInfo.getTestClass().get().getSimpleName() + "_" + testInfo.getTestMethod().get().getName(),
+             1600,
+             4,
+             i -> 16,
+             null,
+             lrs
+    );
+    ss.endHandler(v -> {
+      testContext.verify(() -> {
+        assertEquals(expected, captured);
+        assertEquals(0, vertx.fileSystem().readDirBlocking(tempDir).size());
+      });
+      testContext.completeNow();
+    });
+    ss.exceptionHandler(ex -> {
+      logger.error("Failed: ", ex);
+      testContext.failNow(ex);
+    });
+    ss.handler(captured::add);
+    ss.fetch(Long.MAX_VALUE);
+  }
+
+  @Test
+  public void testSortByKeys(Vertx vertx, VertxTestContext testContext, TestInfo testInfo) {
+    logger.debug("{}.{}", testInfo.getTestClass().get().getSimpleName(), testInfo.getTestMethod().get().getName());
+    // The key only encodes value / 100000 (with the sign bit flipped), so a stable sort keeps the sequence ascending within each key
+    int total = 5000;
+    Random random = new Random(17);
+    List<Integer> input = new ArrayList<>(total);
+    for (int i = 0; i < total; ++i) {
+      input.add((random.nextInt(10) - 5) * 100000 + i);
+    }
+    Comparator<Integer> byKey = Comparator.comparingInt(i -> Math.floorDiv(i, 100000));
+    List<Integer> expected = new ArrayList<>(input);
+    expected.sort(byKey);
+
+    String tempDir = "target/temp/" + testInfo.getTestClass().get().getSimpleName() + "_" + testInfo.getTestMethod().get().getName();
+    List<Integer> captured = new ArrayList<>();
+    ListReadStream<Integer> lrs = new ListReadStream<>(null, vertx.getOrCreateContext(), input);
+
+    SortingStream<Integer> ss = new SortingStream<>(null,
+            vertx.getOrCreateContext(),
+             vertx.fileSystem(),
+             byKey,
+             i -> SerializeWriteStream.byteArrayFromInt(i),
+             b -> SerializeReadStream.intFromByteArray(b),
+             tempDir,
+             testInfo.getTestClass().get().getSimpleName() + "_" + testInfo.getTestMethod().get().getName(),
+             1600,
+             SortingStream.DEFAULT_MERGE_FAN_IN,
+             i -> 16,
+             i -> SerializeWriteStream.byteArrayFromInt(Math.floorDiv(i, 100000) ^ Integer.MIN_VALUE),
+             lrs
+    );
+    ss.endHandler(v -> {
+      testContext.verify(() -> {
+        assertEquals(expected, captured);
+      });
+      testContext.completeNow();
+    });
+    ss.exceptionHandler(ex -> {
+      logger.error("Failed: ", ex);
+      testContext.failNow(ex);
+    });
+    ss.handler(captured::add);
+    ss.fetch(Long.MAX_VALUE);
+  }
 }
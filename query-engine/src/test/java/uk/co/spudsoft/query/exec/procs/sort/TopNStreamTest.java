@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2026 jtalbut
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.spudsoft.query.exec.procs.sort;
+
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.extension.ExtendWith;
+import uk.co.spudsoft.query.exec.procs.ListReadStream;
+
+/**
+ *
+ * @author jtalbut
+ */
+@ExtendWith(VertxExtension.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class TopNStreamTest {
+
+  // Each value is key * 100000 + sequence, the comparator only considers the key so a stable sort keeps the sequence ascending within each key
+  private static final Comparator<Integer> BY_KEY = Comparator.comparingInt(i -> i / 100000);
+
+  private static List<Integer> input(int total) {
+    Random random = new Random(42);
+    List<Integer> input = new ArrayList<>(total);
+    for (int i = 0; i < total; ++i) {
+      input.add(random.nextInt(10) * 100000 + i);
+    }
+    return input;
+  }
+
+  private static List<Integer> expected(List<Integer> input, int limit) {
+    List<Integer> expected = new ArrayList<>(input);
+    expected.sort(BY_KEY);
+    return expected.subList(0, Math.min(limit, expected.size()));
+  }
+
+  private void runTest(Vertx vertx, VertxTestContext testContext, List<Integer> input, int limit, boolean oneAtATime) {
+    List<Integer> captured = new ArrayList<>();
+    ListReadStream<Integer> lrs = new ListReadStream<>(null, vertx.getOrCreateContext(), input);
+    TopNStream<Integer> stream = new TopNStream<>(null, vertx.getOrCreateContext(), BY_KEY, limit, lrs);
+    stream.endHandler(v -> {
+      testContext.verify(() -> {
+        assertEquals(expected(input, limit), captured);
+      });
+      testContext.completeNow();
+    });
+    stream.exceptionHandler(testContext::failNow);
+    if (oneAtATime) {
+      stream.handler(item -> {
+        captured.add(item);
+        stream.fetch(1);
+      });
+      stream.fetch(1);
+    } else {
+      stream.handler(captured::add);
+      stream.resume();
+    }
+  }
+
+  @Test
+  public void testConstructor(Vertx vertx) {
+    ListReadStream<Integer> lrs = new ListReadStream<>(null, vertx.getOrCreateContext(), new ArrayList<>());
+    assertThrows(IllegalArgumentException.class, () -> new TopNStream<>(null, vertx.getOrCreateContext(), BY_KEY, 0, lrs));
+  }
+
+  @Test
+  public void testTopN(Vertx vertx, VertxTestContext testContext) {
+    runTest(vertx, testContext, input(5000), 50, false);
+  }
+
+  @Test
+  public void testTopNOneAtATime(Vertx vertx, VertxTestContext testContext) {
+    runTest(vertx, testContext, input(5000), 777, true);
+  }
+
+  @Test
+  public void testLimitGreaterThanInput(Vertx vertx, VertxTestContext testContext) {
+    runTest(vertx, testContext, input(100), 1000, false);
+  }
+
+  @Test
+  public void testEmptyInput(Vertx vertx, VertxTestContext testContext) {
+    runTest(vertx, testContext, new ArrayList<>(), 10, false);
+  }
+
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2026 jtalbut
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.spudsoft.query.exec.procs.subquery;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import uk.co.spudsoft.query.defn.DataType;
+
+/**
+ *
+ * @author jtalbut
+ */
+@ExtendWith(VertxExtension.class)
+public class LookupCacheTest {
+
+  private static Map<Comparable<?>, Comparable<?>> map(int size) {
+    Map<Comparable<?>, Comparable<?>> map = new HashMap<>();
+    for (int i = 0; i < size; ++i) {
+      map.put(i, "value" + i);
+    }
+    return map;
+  }
+
+  @Test
+  public void testSingleFlight(Vertx vertx, VertxTestContext testContext) {
+    LookupCache cache = new LookupCache(new SimpleMeterRegistry());
+    Context context = vertx.getOrCreateContext();
+    AtomicInteger loads = new AtomicInteger();
+    Promise<LookupCache.LookupTable> loadPromise = Promise.promise();
+
+    context.runOnContext(v -> {
+      Future<LookupCache.LookupTable> first = cache.get(null, context, "key", () -> {
+        loads.incrementAndGet();
+        return loadPromise.future();
+      });
+      Future<LookupCache.LookupTable> second = cache.get(null, context, "key", () -> {
+        loads.incrementAndGet();
+        return Future.failedFuture("Should not be called");
+      });
+      loadPromise.complete(LookupCache.table(map(3), DataType.String, Duration.ofMinutes(1)));
+
+      Future.all(first, second)
+              .compose(cf -> {
+                testContext.verify(() -> {
+                  assertSame(first.result(), second.result());
+                  assertEquals(3, first.result().map().size());
+                  assertEquals(1, loads.get());
+                  assertEquals(1, cache.size());
+                });
+                // A third request is served from the cache
+                return cache.get(null, context, "key", () -> {
+                  loads.incrementAndGet();
+                  return Future.failedFuture("Should not be called");
+                });
+              })
+              .onComplete(testContext.succeeding(third -> {
+                testContext.verify(() -> {
+                  assertSame(first.result(), third);
+                  assertEquals(1, loads.get());
+                });
+                testContext.completeNow();
+              }));
+    });
+  }
+
+  @Test
+  public void testExpiry(Vertx vertx, VertxTestContext testContext) {
+    LookupCache cache = new LookupCache(null);
+    Context context = vertx.getOrCreateContext();
+    AtomicInteger loads = new AtomicInteger();
+
+    context.runOnContext(v -> {
+      cache.get(null, context, "key", () -> {
+        loads.incrementAndGet();
+        return Future.succeededFuture(LookupCache.table(map(1), DataType.String, Duration.ofNanos(-1)));
+      })
+              .compose(table -> {
+                testContext.verify(() -> {
+                  assertTrue(table.expired());
+                });
+                return cache.get(null, context, "key", () -> {
+                  loads.incrementAndGet();
+                  return Future.succeededFuture(LookupCache.table(map(2), DataType.String, Duration.ofMinutes(1)));
+                });
+              })
+              .onComplete(testContext.succeeding(table -> {
+                testContext.verify(() -> {
+                  assertEquals(2, table.map().size());
+                  assertEquals(2, loads.get());
+                });
+                testContext.completeNow();
+              }));
+    });
+  }
+
+  @Test
+  public void testFailedLoadNotCached(Vertx vertx, VertxTestContext testContext) {
+    LookupCache cache = new LookupCache(null);
+    Context context = vertx.getOrCreateContext();
+
+    context.runOnContext(v -> {
+      cache.get(null, context, "key", () -> {
+        throw new IllegalStateException("Bad load");
+      })
+              .recover(ex -> {
+                testContext.verify(() -> {
+                  assertEquals("Bad load", ex.getMessage());
+                  assertEquals(0, cache.size());
+                });
+                return cache.get(null, context, "key", () -> {
+                  return Future.succeededFuture(LookupCache.table(map(4), DataType.String, Duration.ofMinutes(1)));
+                });
+              })
+              .onComplete(testContext.succeeding(table -> {
+                testContext.verify(() -> {
+                  assertEquals(4, table.map().size());
+                });
+                testContext.completeNow();
+              }));
+    });
+  }
+
+  @Test
+  public void testWeigh() {
+    assertEquals(64 + 6, LookupCache.weigh("key", LookupCache.table(new HashMap<>(), DataType.String, Duration.ZERO)));
+    // One entry: 48 overhead, 24 for the Integer key, 40 + 2 * 6 for the String value
+    assertEquals(64 + 6 + 48 + 24 + 52, LookupCache.weigh("key", LookupCache.table(map(1), DataType.String, Duration.ZERO)));
+  }
+
+}
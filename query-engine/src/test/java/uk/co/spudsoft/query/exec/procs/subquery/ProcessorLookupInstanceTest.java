@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2026 jtalbut
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.spudsoft.query.exec.procs.subquery;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import uk.co.spudsoft.query.defn.ProcessorLookup;
+import uk.co.spudsoft.query.exec.ArgumentInstance;
+import uk.co.spudsoft.query.exec.PipelineInstance;
+
+/**
+ *
+ * @author jtalbut
+ */
+public class ProcessorLookupInstanceTest {
+
+  private static PipelineInstance pipeline(Comparable<?>... values) {
+    ArgumentInstance arg = new ArgumentInstance(null, ImmutableList.copyOf(values));
+    PipelineInstance pipeline = mock(PipelineInstance.class);
+    when(pipeline.getArgumentInstances()).thenReturn(ImmutableMap.of("arg", arg));
+    return pipeline;
+  }
+
+  @Test
+  public void testCacheKeySeparatesValues() throws Exception {
+    ProcessorLookup definition = ProcessorLookup.builder().name("arg").build();
+    String key = ProcessorLookupInstance.cacheKey(definition, pipeline("ab", "c"));
+    assertEquals(key, ProcessorLookupInstance.cacheKey(definition, pipeline("ab", "c")));
+    assertNotEquals(key, ProcessorLookupInstance.cacheKey(definition, pipeline("a", "bc")));
+    assertNotEquals(key, ProcessorLookupInstance.cacheKey(definition, pipeline("abc")));
+
+    // Arguments that the definition does not mention do not affect the key
+    ProcessorLookup other = ProcessorLookup.builder().name("argument").build();
+    assertEquals(ProcessorLookupInstance.cacheKey(other, pipeline("ab", "c")), ProcessorLookupInstance.cacheKey(other, pipeline("a", "bc")));
+  }
+
+  @Test
+  public void testMentions() {
+    assertTrue(ProcessorLookupInstance.mentions("{\"name\":\"arg\"}", "arg"));
+    assertTrue(ProcessorLookupInstance.mentions("select * from t where x = :arg", "arg"));
+    assertTrue(ProcessorLookupInstance.mentions("arg", "arg"));
+    assertTrue(ProcessorLookupInstance.mentions("argument arg", "arg"));
+    assertFalse(ProcessorLookupInstance.mentions("{\"name\":\"argument\"}", "arg"));
+    assertFalse(ProcessorLookupInstance.mentions("{\"name\":\"my_arg\"}", "arg"));
+    assertFalse(ProcessorLookupInstance.mentions("{\"name\":\"arg2\"}", "arg"));
+    assertFalse(ProcessorLookupInstance.mentions("anything", ""));
+  }
+
+}
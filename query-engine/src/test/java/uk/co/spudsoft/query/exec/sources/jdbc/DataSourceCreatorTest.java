@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2026 jtalbut
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.spudsoft.query.exec.sources.jdbc;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author jtalbut
+ */
+public class DataSourceCreatorTest {
+
+  private static final String URL = "jdbc:sqlserver://localhost:1433;databaseName=test";
+
+  @Test
+  public void testSamePoolForSameCredentials() {
+    DataSourceCreator creator = new DataSourceCreator(new SimpleMeterRegistry());
+    DataSourceCreator.PooledDataSource first = creator.acquire(null, URL, "user", "pass", 4);
+    DataSourceCreator.PooledDataSource second = creator.acquire(null, URL, "user", "pass", 4);
+    DataSourceCreator.PooledDataSource other = creator.acquire(null, URL, "other", "pass", 4);
+    assertSame(first, second);
+    assertNotSame(first, other);
+    first.release();
+    second.release();
+    other.release();
+    creator.invalidateAll();
+    assertTrue(first.isClosed());
+    assertTrue(other.isClosed());
+  }
+
+  @Test
+  public void testPoolNotClosedWhileLeased() {
+    DataSourceCreator creator = new DataSourceCreator(null);
+    DataSourceCreator.PooledDataSource pooled = creator.acquire(null, URL, "user", "pass", 4);
+    creator.invalidateAll();
+    assertFalse(pooled.isClosed());
+
+    DataSourceCreator.PooledDataSource replacement = creator.acquire(null, URL, "user", "pass", 4);
+    assertNotSame(pooled, replacement);
+
+    pooled.release();
+    assertTrue(pooled.isClosed());
+    assertFalse(replacement.isClosed());
+    replacement.release();
+    creator.invalidateAll();
+    assertTrue(replacement.isClosed());
+  }
+
+  @Test
+  public void testPoolNameIsStable() {
+    DataSourceCreator creator = new DataSourceCreator(null);
+    DataSourceCreator.PooledDataSource first = creator.acquire(null, URL, "user", "pass", 4);
+    DataSourceCreator.PooledDataSource larger = creator.acquire(null, URL, "user", "pass", 8);
+    assertNotSame(first, larger);
+    assertNotEquals(first.getPoolName(), larger.getPoolName());
+    first.release();
+    larger.release();
+    creator.invalidateAll();
+
+    // A pool recreated for the same key has the same name, so its metrics have the same tags
+    DataSourceCreator.PooledDataSource recreated = creator.acquire(null, URL, "user", "pass", 4);
+    assertNotSame(first, recreated);
+    assertEquals(first.getPoolName(), recreated.getPoolName());
+    recreated.release();
+    creator.invalidateAll();
+  }
+
+}
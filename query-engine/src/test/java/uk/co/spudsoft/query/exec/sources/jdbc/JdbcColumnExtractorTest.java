@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2026 jtalbut
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.spudsoft.query.exec.sources.jdbc;
+
+import java.math.BigInteger;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.Calendar;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.co.spudsoft.query.defn.DataType;
+import uk.co.spudsoft.query.exec.DataRow;
+import uk.co.spudsoft.query.logging.Log;
+
+/**
+ *
+ * @author jtalbut
+ */
+public class JdbcColumnExtractorTest {
+
+  private static final Logger logger = LoggerFactory.getLogger(JdbcColumnExtractorTest.class);
+
+  @Test
+  public void testExtract() throws Exception {
+    ResultSetMetaData rsmeta = mock(ResultSetMetaData.class);
+    when(rsmeta.getColumnCount()).thenReturn(7);
+    String[] names = {"int", "unsigned", "string", "timestamp", "decimal", "override", "nullint"};
+    int[] jdbcTypes = {Types.INTEGER, Types.BIGINT, Types.VARCHAR, Types.TIMESTAMP, Types.DECIMAL, Types.INTEGER, Types.SMALLINT};
+    DataType[] dataTypes = {DataType.Integer, DataType.Long, DataType.String, DataType.DateTime, DataType.Double, DataType.String, DataType.Integer};
+    uk.co.spudsoft.query.exec.Types types = new uk.co.spudsoft.query.exec.Types();
+    for (int i = 0; i < names.length; ++i) {
+      when(rsmeta.getColumnLabel(i + 1)).thenReturn(names[i]);
+      when(rsmeta.getColumnType(i + 1)).thenReturn(jdbcTypes[i]);
+      when(rsmeta.isSigned(i + 1)).thenReturn(i != 1);
+      types.putIfAbsent(names[i], dataTypes[i]);
+    }
+
+    JdbcColumnExtractor[] extractors = JdbcColumnExtractor.create(null, new Log(logger, null), rsmeta, types);
+    assertEquals(7, extractors.length);
+
+    ResultSet rs = mock(ResultSet.class);
+    when(rs.getInt(1)).thenReturn(17);
+    when(rs.getObject(2)).thenReturn(new BigInteger("1234567890123"));
+    when(rs.getString(3)).thenReturn("text");
+    when(rs.getTimestamp(any(Integer.class), any(Calendar.class))).thenReturn(Timestamp.from(Instant.parse("2026-01-02T03:04:05.123456789Z")));
+    when(rs.getDouble(5)).thenReturn(1.5);
+    when(rs.getObject(6)).thenReturn(42);
+    when(rs.getInt(7)).thenReturn(0);
+    when(rs.wasNull()).thenReturn(false, false, true);
+
+    DataRow row = DataRow.create(types);
+    for (JdbcColumnExtractor extractor : extractors) {
+      extractor.extract(rs, row);
+    }
+
+    assertEquals(17, row.get("int"));
+    assertEquals(1234567890123L, row.get("unsigned"));
+    assertEquals("text", row.get("string"));
+    assertEquals(LocalDateTime.of(2026, 1, 2, 3, 4, 5, 123456789), row.get("timestamp"));
+    assertEquals(1.5, row.get("decimal"));
+    assertEquals("42", row.get("override"));
+    assertTrue(row.isNull(6));
+    assertNull(row.get("nullint"));
+
+    // Only the columns that have to be converted are read as objects
+    verify(rs, never()).getObject(1);
+    verify(rs, never()).getObject(5);
+    verify(rs, never()).getLong(anyInt());
+  }
+
+  @Test
+  public void testNullTimestamp() throws Exception {
+    uk.co.spudsoft.query.exec.Types types = new uk.co.spudsoft.query.exec.Types();
+    types.putIfAbsent("ts", DataType.DateTime);
+    JdbcColumnExtractor extractor = JdbcColumnExtractor.create(null, new Log(logger, null), "ts", 1, 0, DataType.DateTime, java.sql.JDBCType.TIMESTAMP, true, Calendar.getInstance());
+    ResultSet rs = mock(ResultSet.class);
+    DataRow row = DataRow.create(types);
+    extractor.extract(rs, row);
+    assertTrue(row.isNull(0));
+  }
+
+  @Test
+  public void testBadCast() throws Exception {
+    uk.co.spudsoft.query.exec.Types types = new uk.co.spudsoft.query.exec.Types();
+    types.putIfAbsent("value", DataType.Integer);
+    JdbcColumnExtractor extractor = JdbcColumnExtractor.create(null, new Log(logger, null), "value", 1, 0, DataType.Integer, java.sql.JDBCType.VARCHAR, true, Calendar.getInstance());
+    ResultSet rs = mock(ResultSet.class);
+    when(rs.getObject(1)).thenReturn("not a number");
+    DataRow row = DataRow.create(types);
+    extractor.extract(rs, row);
+    assertTrue(row.isEmpty());
+  }
+
+}
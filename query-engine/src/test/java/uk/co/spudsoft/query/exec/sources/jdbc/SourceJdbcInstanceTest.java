@@ -70,7 +70,7 @@ public class SourceJdbcInstanceTest {
       SourceJdbc definition = SourceJdbc.builder()
               .endpoint("bob")
               .build();
-      SourceJdbcInstance instance = new SourceJdbcInstance(vertx, null, auditor, pipelineContext, definition);
+      SourceJdbcInstance instance = new SourceJdbcInstance(vertx, null, auditor, pipelineContext, pipelineExecutor, definition);
 
       Pipeline pipeline = Pipeline.builder()
               .sourceEndpoints(
@@ -140,7 +140,7 @@ public class SourceJdbcInstanceTest {
       SourceJdbc definition = SourceJdbc.builder()
               .endpoint("bob")
               .build();
-      SourceJdbcInstance instance = new SourceJdbcInstance(vertx, null, auditor, pipelineContext, definition);
+      SourceJdbcInstance instance = new SourceJdbcInstance(vertx, null, auditor, pipelineContext, pipelineExecutor, definition);
 
       Pipeline pipeline = Pipeline.builder()
               .sourceEndpoints(
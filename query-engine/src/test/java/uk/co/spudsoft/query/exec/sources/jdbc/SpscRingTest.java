@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2026 jtalbut
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.spudsoft.query.exec.sources.jdbc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author jtalbut
+ */
+public class SpscRingTest {
+
+  @Test
+  public void testConstructor() {
+    assertThrows(IllegalArgumentException.class, () -> new SpscRing<>(0));
+    assertEquals(3, new SpscRing<>(3).capacity());
+  }
+
+  @Test
+  public void testOfferAndPoll() {
+    SpscRing<Integer> ring = new SpscRing<>(3);
+    assertTrue(ring.isEmpty());
+    assertNull(ring.poll());
+    for (int round = 0; round < 5; ++round) {
+      assertTrue(ring.offer(round * 10 + 1));
+      assertTrue(ring.offer(round * 10 + 2));
+      assertTrue(ring.offer(round * 10 + 3));
+      assertFalse(ring.offer(round * 10 + 4));
+      assertEquals(3, ring.size());
+      assertEquals(round * 10 + 1, ring.poll());
+      assertEquals(round * 10 + 2, ring.poll());
+      assertEquals(1, ring.size());
+      assertEquals(round * 10 + 3, ring.poll());
+      assertNull(ring.poll());
+      assertTrue(ring.isEmpty());
+    }
+  }
+
+  @Test
+  public void testConcurrentProducer() throws Exception {
+    int count = 100_000;
+    SpscRing<Integer> ring = new SpscRing<>(16);
+    Thread producer = Thread.ofPlatform().start(() -> {
+      for (int i = 0; i < count; ++i) {
+        while (!ring.offer(i)) {
+          Thread.yield();
+        }
+      }
+    });
+    int expected = 0;
+    while (expected < count) {
+      Integer value = ring.poll();
+      if (value == null) {
+        Thread.yield();
+      } else {
+        assertEquals(expected++, value);
+      }
+    }
+    producer.join();
+    assertTrue(ring.isEmpty());
+  }
+
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2026 jtalbut
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.spudsoft.query.exec.sources.sql;
+
+import inet.ipaddr.IPAddressString;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.sqlclient.Cursor;
+import io.vertx.sqlclient.PreparedStatement;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.RowIterator;
+import io.vertx.sqlclient.RowSet;
+import io.vertx.sqlclient.Tuple;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import uk.co.spudsoft.query.exec.context.PipelineContext;
+import uk.co.spudsoft.query.exec.context.RequestContext;
+
+/**
+ *
+ * @author jtalbut
+ */
+public class MetadataRowStreamImplTest {
+
+  @SuppressWarnings("unchecked")
+  private static RowSet<Row> rowSet(int size) {
+    List<Row> rows = new ArrayList<>();
+    for (int i = 0; i < size; ++i) {
+      rows.add(mock(Row.class));
+    }
+    Iterator<Row> iter = rows.iterator();
+    RowIterator<Row> rowIterator = mock(RowIterator.class);
+    when(rowIterator.hasNext()).thenAnswer(inv -> iter.hasNext());
+    when(rowIterator.next()).thenAnswer(inv -> iter.next());
+    RowSet<Row> rowSet = mock(RowSet.class);
+    when(rowSet.iterator()).thenReturn(rowIterator);
+    when(rowSet.columnDescriptors()).thenReturn(Collections.emptyList());
+    return rowSet;
+  }
+
+  @Test
+  public void testReadAhead() {
+    RequestContext reqctx = new RequestContext(null, "id", "url", "host", "path", null, null, null, new IPAddressString("127.0.0.1"), null);
+    PipelineContext pipelineContext = new PipelineContext("test", reqctx);
+
+    PreparedStatement ps = mock(PreparedStatement.class);
+    Cursor cursor = mock(Cursor.class);
+    when(ps.cursor(any(Tuple.class))).thenReturn(cursor);
+    when(cursor.hasMore()).thenReturn(true);
+    when(cursor.close()).thenReturn(Future.succeededFuture());
+    List<Promise<RowSet<Row>>> reads = new ArrayList<>();
+    AtomicReference<MetadataRowStreamImpl> streamRef = new AtomicReference<>();
+    AtomicBoolean readWhilstLocked = new AtomicBoolean();
+    when(cursor.read(anyInt())).thenAnswer(inv -> {
+      if (Thread.holdsLock(streamRef.get())) {
+        readWhilstLocked.set(true);
+      }
+      Promise<RowSet<Row>> promise = Promise.promise();
+      reads.add(promise);
+      return promise.future();
+    });
+
+    MetadataRowStreamImpl stream = new MetadataRowStreamImpl(ps, pipelineContext, null, 2, 1, Tuple.tuple());
+    streamRef.set(stream);
+    List<Row> rows = new ArrayList<>();
+    AtomicBoolean ended = new AtomicBoolean();
+    stream.endHandler(v -> ended.set(true));
+    stream.pause();
+    stream.handler(rows::add);
+    assertEquals(1, reads.size());
+
+    // The next batch is requested as soon as the first arrives, even though nothing has been consumed
+    reads.get(0).complete(rowSet(2));
+    assertEquals(2, reads.size());
+    // But no more than one batch is held waiting
+    reads.get(1).complete(rowSet(2));
+    assertEquals(2, reads.size());
+    assertEquals(0, rows.size());
+
+    // Once the first batch has been emitted the next read is issued
+    stream.fetch(3);
+    assertEquals(3, rows.size());
+    assertEquals(3, reads.size());
+
+    when(cursor.hasMore()).thenReturn(false);
+    reads.get(2).complete(rowSet(1));
+    assertEquals(3, reads.size());
+    assertFalse(ended.get());
+
+    stream.resume();
+    assertEquals(5, rows.size());
+    assertEquals(3, reads.size());
+    assertTrue(ended.get());
+
+    // Reads ahead are never started whilst the stream is locked
+    assertFalse(readWhilstLocked.get());
+  }
+
+  @Test
+  public void testNoReadAhead() {
+    RequestContext reqctx = new RequestContext(null, "id", "url", "host", "path", null, null, null, new IPAddressString("127.0.0.1"), null);
+    PipelineContext pipelineContext = new PipelineContext("test", reqctx);
+
+    PreparedStatement ps = mock(PreparedStatement.class);
+    Cursor cursor = mock(Cursor.class);
+    when(ps.cursor(any(Tuple.class))).thenReturn(cursor);
+    when(cursor.hasMore()).thenReturn(true);
+    List<Promise<RowSet<Row>>> reads = new ArrayList<>();
+    when(cursor.read(anyInt())).thenAnswer(inv -> {
+      Promise<RowSet<Row>> promise = Promise.promise();
+      reads.add(promise);
+      return promise.future();
+    });
+
+    MetadataRowStreamImpl stream = new MetadataRowStreamImpl(ps, pipelineContext, null, 2, Tuple.tuple());
+    List<Row> rows = new ArrayList<>();
+    stream.pause();
+    stream.handler(rows::add);
+    reads.get(0).complete(rowSet(2));
+    assertEquals(1, reads.size());
+    stream.fetch(2);
+    assertEquals(2, rows.size());
+    // The next read is only issued when there is demand for more rows
+    assertEquals(1, reads.size());
+    stream.fetch(1);
+    assertEquals(2, reads.size());
+  }
+
+}
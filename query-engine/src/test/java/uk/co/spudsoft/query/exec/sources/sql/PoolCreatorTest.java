@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2026 jtalbut
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.spudsoft.query.exec.sources.sql;
+
+import io.vertx.sqlclient.PoolOptions;
+import io.vertx.sqlclient.SqlConnectOptions;
+import java.util.concurrent.TimeUnit;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author jtalbut
+ */
+public class PoolCreatorTest {
+
+  private static SqlConnectOptions database(String password) {
+    return new SqlConnectOptions().setUser("user").setPassword(password);
+  }
+
+  @Test
+  public void testKey() {
+    PoolOptions options = new PoolOptions().setMaxSize(7).setIdleTimeout(2).setIdleTimeoutUnit(TimeUnit.SECONDS);
+    PoolCreator.PoolKey key1 = PoolCreator.key("postgresql://host/db", database("secret"), options);
+    PoolCreator.PoolKey key2 = PoolCreator.key("postgresql://host/db", database("secret"), new PoolOptions(options));
+    assertEquals(key1, key2);
+    assertEquals(key1.hashCode(), key2.hashCode());
+    assertEquals(key1.poolName(), key2.poolName());
+    assertEquals(7, key1.maxSize());
+    assertEquals(2000, key1.idleTimeoutMs());
+    assertEquals(0, key1.preparedStatementCacheMaxSize());
+
+    PoolCreator.PoolKey key3 = PoolCreator.key("postgresql://host/db", database("other"), options);
+    assertNotEquals(key1, key3);
+    assertNotEquals(key1.poolName(), key3.poolName());
+    assertThat(key1.toString(), not(containsString("secret")));
+    assertThat(key1.poolName(), not(containsString("secret")));
+
+    PoolCreator.PoolKey key4 = PoolCreator.key("postgresql://host/db", database("secret").setCachePreparedStatements(true).setPreparedStatementCacheMaxSize(16), options);
+    assertNotEquals(key1, key4);
+    assertEquals(16, key4.preparedStatementCacheMaxSize());
+  }
+
+}
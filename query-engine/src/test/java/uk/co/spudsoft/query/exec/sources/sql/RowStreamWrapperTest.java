@@ -22,11 +22,18 @@ import io.vertx.core.Handler;
 import io.vertx.sqlclient.Row;
 import io.vertx.sqlclient.SqlConnection;
 import io.vertx.sqlclient.Transaction;
+import io.vertx.sqlclient.desc.ColumnDescriptor;
+import java.sql.JDBCType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import com.google.common.collect.ImmutableMap;
+import uk.co.spudsoft.query.defn.DataType;
 import uk.co.spudsoft.query.exec.DataRow;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -210,4 +217,43 @@ public class RowStreamWrapperTest {
     assertTrue(customExceptionHandlerCalled.get(), "Exception handler should have been called");
   }
 
+  @Test
+  public void testRowConversion() {
+    RequestContext reqctx = new RequestContext(null, "id", "url", "host", "path", null, null, null, new IPAddressString("127.0.0.1"), null);
+    PipelineContext pipelineContext = new PipelineContext("test", reqctx);
+    MetadataRowStreamImpl rowStream = mock(MetadataRowStreamImpl.class);
+
+    @SuppressWarnings("unchecked")
+    ArgumentCaptor<Handler<List<ColumnDescriptor>>> descriptorHandlerCaptor = ArgumentCaptor.forClass(Handler.class);
+    @SuppressWarnings("unchecked")
+    ArgumentCaptor<Handler<Row>> rowHandlerCaptor = ArgumentCaptor.forClass(Handler.class);
+    when(rowStream.coloumnDescriptorHandler(descriptorHandlerCaptor.capture())).thenReturn(rowStream);
+    when(rowStream.handler(rowHandlerCaptor.capture())).thenReturn(rowStream);
+
+    RowStreamWrapper wrapper = new RowStreamWrapper(pipelineContext, null, null, rowStream, ImmutableMap.of("overridden", DataType.String));
+
+    ColumnDescriptor number = mock(ColumnDescriptor.class);
+    when(number.name()).thenReturn("number");
+    when(number.jdbcType()).thenReturn(JDBCType.INTEGER);
+    ColumnDescriptor overridden = mock(ColumnDescriptor.class);
+    when(overridden.name()).thenReturn("overridden");
+    when(overridden.jdbcType()).thenReturn(JDBCType.BIGINT);
+    descriptorHandlerCaptor.getValue().handle(Arrays.asList(overridden, number));
+    assertEquals(DataType.Integer, wrapper.getTypes().get("number"));
+    assertEquals(DataType.String, wrapper.getTypes().get("overridden"));
+
+    List<DataRow> received = new ArrayList<>();
+    wrapper.handler(received::add);
+
+    Row row = mock(Row.class);
+    when(row.size()).thenReturn(2);
+    when(row.getValue(0)).thenReturn(7L);
+    when(row.getValue(1)).thenReturn(12L);
+    rowHandlerCaptor.getValue().handle(row);
+
+    assertEquals(1, received.size());
+    assertEquals("7", received.get(0).get("overridden"));
+    assertEquals(12, received.get(0).get("number"));
+  }
+
 }
@@ -24,6 +24,7 @@ import io.vertx.core.Vertx;
 import io.vertx.junit5.VertxExtension;
 import io.vertx.junit5.VertxTestContext;
 import io.vertx.sqlclient.PoolOptions;
+import io.vertx.sqlclient.SqlConnectOptions;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
 import java.util.Arrays;
@@ -32,6 +33,7 @@ import java.util.concurrent.TimeUnit;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.Test;
@@ -251,6 +253,40 @@ public class SourceSqlStreamingInstanceTest {
     assertEquals(TimeUnit.MILLISECONDS, po.getIdleTimeoutUnit());
   }
 
+  @Test
+  public void testPoolSizing() {
+    PoolOptions po = SourceSqlStreamingInstance.poolOptions(SourceSql.builder().build(), Endpoint.builder().build());
+    assertEquals(SourceSqlStreamingInstance.DEFAULT_MAX_POOL_SIZE, po.getMaxSize());
+    assertEquals(PoolOptions.DEFAULT_MAX_WAIT_QUEUE_SIZE, po.getMaxWaitQueueSize());
+    assertFalse(po.isShared());
+
+    Endpoint endpoint = Endpoint.builder()
+            .maxPoolSize(7)
+            .maxPoolWaitQueueSize(20)
+            .sharedPool(Boolean.TRUE)
+            .build();
+    po = SourceSqlStreamingInstance.poolOptions(SourceSql.builder().build(), endpoint);
+    assertEquals(7, po.getMaxSize());
+    assertEquals(20, po.getMaxWaitQueueSize());
+    assertTrue(po.isShared());
+
+    po = SourceSqlStreamingInstance.poolOptions(SourceSql.builder().maxPoolSize(3).maxPoolWaitQueueSize(4).build(), endpoint);
+    assertEquals(3, po.getMaxSize());
+    assertEquals(4, po.getMaxWaitQueueSize());
+  }
+
+  @Test
+  public void testPreparedStatementCache() {
+    SqlConnectOptions options = new SqlConnectOptions();
+    SourceSqlStreamingInstance.preparedStatementCache(Endpoint.builder().build(), options);
+    assertFalse(options.getCachePreparedStatements());
+
+    SourceSqlStreamingInstance.preparedStatementCache(Endpoint.builder().preparedStatementCacheMaxSize(64).preparedStatementCacheSqlLimit(4096).build(), options);
+    assertTrue(options.getCachePreparedStatements());
+    assertEquals(64, options.getPreparedStatementCacheMaxSize());
+    assertEquals(4096, options.getPreparedStatementCacheSqlLimit());
+  }
+
   @Test
   public void testCoalesce() {
     assertEquals("two", SourceSqlStreamingInstance.coalesce(null, "two"));
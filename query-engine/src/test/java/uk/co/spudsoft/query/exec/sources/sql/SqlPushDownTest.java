@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2026 jtalbut
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.spudsoft.query.exec.sources.sql;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import cz.jirutka.rsql.parser.RSQLParser;
+import inet.ipaddr.IPAddressString;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.Collections;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import uk.co.spudsoft.query.defn.DataType;
+import uk.co.spudsoft.query.exec.context.PipelineContext;
+import uk.co.spudsoft.query.exec.context.RequestContext;
+
+/**
+ *
+ * @author jtalbut
+ */
+public class SqlPushDownTest {
+
+  private static final RSQLParser RSQL_PARSER = new RSQLParser();
+
+  private static PipelineContext pipelineContext() {
+    RequestContext reqctx = new RequestContext(null, "id", "url", "host", "path", null, null, null, new IPAddressString("127.0.0.1"), null);
+    return new PipelineContext("test", reqctx);
+  }
+
+  private static SqlPushDown pushDown(String rsql, String... sortFields) {
+    return new SqlPushDown(
+            rsql == null ? Collections.emptyList() : Arrays.asList(RSQL_PARSER.parse(rsql))
+            , sortFields.length == 0 ? null : Arrays.asList(sortFields)
+            , 0
+            , null
+            , 1
+    );
+  }
+
+  @Test
+  public void testNothingPushedDown() {
+    AbstractSqlPreparer preparer = new PostgreSqlPreparer(pipelineContext());
+    AbstractSqlPreparer.QueryAndArgs prepared = new AbstractSqlPreparer.QueryAndArgs("select * from bob", Collections.emptyList());
+    assertSame(prepared, preparer.applyPushDown(prepared, null, null));
+    assertSame(prepared, preparer.applyPushDown(prepared, new SqlPushDown(Collections.emptyList(), null, 0, null, 0), null));
+  }
+
+  @Test
+  public void testSortOffsetAndLimit() {
+    AbstractSqlPreparer.QueryAndArgs prepared = new AbstractSqlPreparer.QueryAndArgs("select * from bob;", ImmutableList.of(7L));
+    SqlPushDown pushDown = new SqlPushDown(Collections.emptyList(), Arrays.asList("-value", "na\"me"), 10, 20L, 3);
+
+    assertEquals("SELECT * FROM (select * from bob\n) qe_pushdown ORDER BY \"value\" DESC NULLS LAST, \"na\"\"me\" NULLS FIRST LIMIT 20 OFFSET 10"
+            , new PostgreSqlPreparer(pipelineContext()).applyPushDown(prepared, pushDown, null).query());
+    assertEquals("SELECT * FROM (select * from bob\n) qe_pushdown ORDER BY \"value\" DESC, \"na\"\"me\" OFFSET 10 ROWS FETCH NEXT 20 ROWS ONLY"
+            , new MsSqlPreparer(pipelineContext()).applyPushDown(prepared, pushDown, null).query());
+    assertEquals("SELECT * FROM (select * from bob\n) qe_pushdown ORDER BY `value` DESC, `na\"me` LIMIT 20 OFFSET 10"
+            , new MySqlPreparer(pipelineContext()).applyPushDown(prepared, pushDown, null).query());
+
+    pushDown = new SqlPushDown(Collections.emptyList(), Arrays.asList("value"), 10, null, 2);
+    assertEquals("SELECT * FROM (select * from bob\n) qe_pushdown ORDER BY `value` LIMIT 18446744073709551615 OFFSET 10"
+            , new MySqlPreparer(pipelineContext()).applyPushDown(prepared, pushDown, null).query());
+    assertEquals("SELECT * FROM (select * from bob\n) qe_pushdown ORDER BY \"value\" OFFSET 10 ROWS"
+            , new MsSqlPreparer(pipelineContext()).applyPushDown(prepared, pushDown, null).query());
+    AbstractSqlPreparer.QueryAndArgs result = new PostgreSqlPreparer(pipelineContext()).applyPushDown(prepared, pushDown, null);
+    assertEquals("SELECT * FROM (select * from bob\n) qe_pushdown ORDER BY \"value\" NULLS FIRST OFFSET 10", result.query());
+    assertEquals(ImmutableList.of(7L), result.args());
+  }
+
+  @Test
+  public void testFilters() {
+    AbstractSqlPreparer.QueryAndArgs prepared = new AbstractSqlPreparer.QueryAndArgs("select * from bob where id = $1", ImmutableList.of(7L));
+
+    AbstractSqlPreparer.QueryAndArgs result = new PostgreSqlPreparer(pipelineContext())
+            .applyPushDown(prepared, pushDown("x=gt=3;(y==fred,z=in=(1,2.5))", "x")
+                    , ImmutableMap.of("x", DataType.Long, "y", DataType.String, "z", DataType.Double));
+    assertEquals("SELECT * FROM (select * from bob where id = $1\n) qe_pushdown WHERE (\"x\" > $2 AND (\"y\" = $3 OR \"z\" IN ($4, $5))) ORDER BY \"x\" NULLS FIRST"
+            , result.query());
+    assertEquals(Arrays.asList(7L, 3L, "fred", 1.0, 2.5), result.args());
+
+    result = new MsSqlPreparer(pipelineContext()).applyPushDown(prepared, pushDown("x!=3"), ImmutableMap.of("x", DataType.String));
+    assertEquals("SELECT * FROM (select * from bob where id = $1\n) qe_pushdown WHERE \"x\" <> @p2", result.query());
+    assertEquals(Arrays.asList(7L, "3"), result.args());
+
+    result = new MySqlPreparer(pipelineContext()).applyPushDown(prepared, pushDown("x==*a_b*;y=out=(2024-05-06,2024-05-07);t==12:34")
+                    , ImmutableMap.of("x", DataType.String, "y", DataType.Date, "t", DataType.Time));
+    assertEquals("SELECT * FROM (select * from bob where id = $1\n) qe_pushdown WHERE (`x` LIKE ? ESCAPE '!' AND `y` NOT IN (?, ?) AND `t` = ?)", result.query());
+    assertEquals(Arrays.asList(7L, "%a!_b%", LocalDate.parse("2024-05-06"), LocalDate.parse("2024-05-07"), LocalTime.parse("12:34")), result.args());
+
+    // Wildcards are only used for string fields
+    result = new MySqlPreparer(pipelineContext()).applyPushDown(prepared, pushDown("x==*3"), ImmutableMap.of("x", DataType.Integer));
+    assertEquals("SELECT * FROM (select * from bob where id = $1\n) qe_pushdown WHERE `x` = ?", result.query());
+  }
+
+  @Test
+  public void testBadValue() {
+    AbstractSqlPreparer.QueryAndArgs prepared = new AbstractSqlPreparer.QueryAndArgs("select * from bob", Collections.emptyList());
+    assertThrows(IllegalArgumentException.class, () -> {
+      new PostgreSqlPreparer(pipelineContext()).applyPushDown(prepared, pushDown("x==fred"), ImmutableMap.of("x", DataType.Integer));
+    });
+  }
+
+  @Test
+  public void testLikePattern() {
+    assertEquals("%ob", RsqlSqlWriter.likePattern("*ob"));
+    assertEquals("bo%", RsqlSqlWriter.likePattern("bo*"));
+    assertEquals("%o%", RsqlSqlWriter.likePattern("*o*"));
+    assertEquals("%", RsqlSqlWriter.likePattern("*"));
+    assertEquals("%!%!!![x%", RsqlSqlWriter.likePattern("*%![x*"));
+  }
+
+  @Test
+  public void testUntypedField() {
+    assertTrue(RsqlSqlWriter.canWrite(RSQL_PARSER.parse("x==3"), ImmutableMap.of("x", DataType.Integer)));
+    assertFalse(RsqlSqlWriter.canWrite(RSQL_PARSER.parse("x==3"), null));
+    assertFalse(RsqlSqlWriter.canWrite(RSQL_PARSER.parse("x==3;y==4"), ImmutableMap.of("x", DataType.Integer)));
+    assertFalse(RsqlSqlWriter.canWrite(RSQL_PARSER.parse("x=re=3"), ImmutableMap.of("x", DataType.String)));
+
+    AbstractSqlPreparer.QueryAndArgs prepared = new AbstractSqlPreparer.QueryAndArgs("select * from bob", Collections.emptyList());
+    assertThrows(IllegalArgumentException.class, () -> {
+      new PostgreSqlPreparer(pipelineContext()).applyPushDown(prepared, pushDown("name==123"), null);
+    });
+  }
+
+  @Test
+  public void testSqlServerOrderedQuery() {
+    SqlPushDown pushDown = new SqlPushDown(Collections.emptyList(), Arrays.asList("value"), 0, 10L, 2);
+
+    AbstractSqlPreparer.QueryAndArgs prepared = new AbstractSqlPreparer.QueryAndArgs("select * from bob order by name", Collections.emptyList());
+    assertEquals("SELECT * FROM (select * from bob order by name\nOFFSET 0 ROWS\n) qe_pushdown ORDER BY \"value\" OFFSET 0 ROWS FETCH NEXT 10 ROWS ONLY"
+            , new MsSqlPreparer(pipelineContext()).applyPushDown(prepared, pushDown, null).query());
+    assertEquals("SELECT * FROM (select * from bob order by name\n) qe_pushdown ORDER BY \"value\" NULLS FIRST LIMIT 10"
+            , new PostgreSqlPreparer(pipelineContext()).applyPushDown(prepared, pushDown, null).query());
+
+    String query = "select * from bob";
+    assertEquals(query, AbstractSqlPreparer.appendOffsetToOrderedQuery(query));
+    query = "select top 10 * from bob order by name";
+    assertEquals(query, AbstractSqlPreparer.appendOffsetToOrderedQuery(query));
+    query = "select distinct top 10 name from bob order by name";
+    assertEquals(query, AbstractSqlPreparer.appendOffsetToOrderedQuery(query));
+    query = "select * from bob order by name offset 5 rows";
+    assertEquals(query, AbstractSqlPreparer.appendOffsetToOrderedQuery(query));
+    query = "select row_number() over (order by name) as n from bob";
+    assertEquals(query, AbstractSqlPreparer.appendOffsetToOrderedQuery(query));
+    query = "select 'order by' as [order by] from bob -- order by\n/* order by */";
+    assertEquals(query, AbstractSqlPreparer.appendOffsetToOrderedQuery(query));
+    query = "select * from (select top 5 * from bob order by name) b order by name -- comment";
+    assertEquals(query + "\nOFFSET 0 ROWS", AbstractSqlPreparer.appendOffsetToOrderedQuery(query));
+  }
+
+}
@@ -20,6 +20,7 @@ import java.time.Duration;
 import java.time.temporal.ChronoUnit;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import org.junit.jupiter.api.Test;
 
 
@@ -60,5 +61,17 @@ public class JwtValidationConfigTest {
     instance.setDefaultJwksCacheDuration(Duration.ofDays(3));
     assertEquals(Duration.ofDays(3), instance.getDefaultJwksCacheDuration());
   }
+
+  @Test
+  public void testGetValidatedTokenCache() {
+    JwtValidationConfig instance = new JwtValidationConfig();
+    assertEquals(1000, instance.getValidatedTokenCacheSize());
+    assertEquals(Duration.ofMinutes(1), instance.getValidatedTokenCacheDuration());
+    instance.validate("jwt");
+    instance.setValidatedTokenCacheSize(-1);
+    assertEquals("jwt.validatedTokenCacheSize configured with negative value (-1)", assertThrows(IllegalArgumentException.class, () -> instance.validate("jwt")).getMessage());
+    instance.setValidatedTokenCacheSize(0).setValidatedTokenCacheDuration(Duration.ofSeconds(-1));
+    assertEquals("jwt.validatedTokenCacheDuration configured with negative value (PT-1S)", assertThrows(IllegalArgumentException.class, () -> instance.validate("jwt")).getMessage());
+  }
   
 }
@@ -325,6 +325,13 @@ public class ParametersTest {
     }).getMessage();
     assertEquals("Sessions are configured with oauth without known JWKS endpoints being configured, please set jwt.jwksEndpoints.", msg);
 
+    msg = assertThrows(IllegalArgumentException.class, () -> {
+      Parameters config = new Parameters();
+      config.setOutputCacheFillTimeout(Duration.ZERO);
+      config.validate();
+    }).getMessage();
+    assertEquals("The outputCacheFillTimeout must be a positive duration.", msg);
+
     instance.setLogging(null);
     instance.setTracing(null);
     instance.setSession(null);
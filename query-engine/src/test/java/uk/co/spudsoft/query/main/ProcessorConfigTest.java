@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2026 jtalbut
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.spudsoft.query.main;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/**
+ *
+ * @author jtalbut
+ */
+public class ProcessorConfigTest {
+  
+  @Test
+  public void testGetSortMergeFanIn() {
+    ProcessorConfig pc = new ProcessorConfig();
+    assertEquals(32, pc.getSortMergeFanIn());
+    pc.setSortMergeFanIn(8);
+    assertEquals(8, pc.getSortMergeFanIn());
+  }
+  
+  @Test
+  public void testIsSortNormalisedKeys() {
+    ProcessorConfig pc = new ProcessorConfig();
+    assertFalse(pc.isSortNormalisedKeys());
+    pc.setSortNormalisedKeys(true);
+    assertTrue(pc.isSortNormalisedKeys());
+  }
+  
+  @Test
+  public void testGetSortTopNMaxRows() {
+    ProcessorConfig pc = new ProcessorConfig();
+    assertEquals(10000, pc.getSortTopNMaxRows());
+    pc.setSortTopNMaxRows(0);
+    assertEquals(0, pc.getSortTopNMaxRows());
+  }
+  
+  @Test
+  public void testGetLookupCacheMaxBytes() {
+    ProcessorConfig pc = new ProcessorConfig();
+    assertEquals(64L << 20, pc.getLookupCacheMaxBytes());
+    pc.setLookupCacheMaxBytes(1000);
+    assertEquals(1000, pc.getLookupCacheMaxBytes());
+  }
+  
+  @Test
+  public void testValidate() {
+    ProcessorConfig pc = new ProcessorConfig();
+    pc.validate("default");
+    
+    pc.setSortMergeFanIn(2);
+    pc.validate("processors");
+    
+    pc.setSortMergeFanIn(1);
+    IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> {
+      pc.validate("processors");
+    });
+    assertEquals("processors.sortMergeFanIn configured with value less than 2 (1)", ex.getMessage());
+    
+    pc.setSortMergeFanIn(2);
+    pc.setSortTopNMaxRows(-1);
+    ex = assertThrows(IllegalArgumentException.class, () -> {
+      pc.validate("processors");
+    });
+    assertEquals("processors.sortTopNMaxRows configured with negative value (-1)", ex.getMessage());
+
+    pc.setSortTopNMaxRows(0);
+    pc.setLookupCacheMaxBytes(-1);
+    ex = assertThrows(IllegalArgumentException.class, () -> {
+      pc.validate("processors");
+    });
+    assertEquals("processors.lookupCacheMaxBytes configured with negative value (-1)", ex.getMessage());
+  }
+
+}
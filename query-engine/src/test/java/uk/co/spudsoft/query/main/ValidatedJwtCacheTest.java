@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2026 jtalbut
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.spudsoft.query.main;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import org.junit.jupiter.api.Test;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import uk.co.spudsoft.jwtvalidatorvertx.Jwt;
+
+/**
+ *
+ * @author jtalbut
+ */
+public class ValidatedJwtCacheTest {
+
+  private static Jwt jwt(LocalDateTime exp) {
+    Jwt jwt = mock(Jwt.class);
+    when(jwt.getExpirationLocalDateTime()).thenReturn(exp);
+    return jwt;
+  }
+
+  @Test
+  public void testGetAndPut() {
+    ValidatedJwtCache cache = new ValidatedJwtCache(new SimpleMeterRegistry(), 10, Duration.ofMinutes(1));
+    Jwt jwt = jwt(LocalDateTime.now(ZoneOffset.UTC).plusHours(1));
+
+    assertNull(cache.get("issuer", "token"));
+    cache.put("issuer", "token", jwt);
+    assertSame(jwt, cache.get("issuer", "token"));
+    // A token validated against one issuer is not valid for another
+    assertNull(cache.get("other", "token"));
+    assertNull(cache.get(null, "token"));
+    assertNull(cache.get("issuer", "token2"));
+    assertEquals(1, cache.size());
+
+    cache.put(null, "token", jwt);
+    assertSame(jwt, cache.get(null, "token"));
+    assertEquals(2, cache.size());
+  }
+
+  @Test
+  public void testExpiry() throws Exception {
+    ValidatedJwtCache cache = new ValidatedJwtCache(null, 10, Duration.ofMinutes(1));
+
+    // Already expired tokens are not cached
+    cache.put("issuer", "expired", jwt(LocalDateTime.now(ZoneOffset.UTC).minusSeconds(1)));
+    assertNull(cache.get("issuer", "expired"));
+    assertEquals(0, cache.size());
+
+    // Tokens without an exp are cached for the maximum duration
+    Jwt noExp = jwt(null);
+    cache.put("issuer", "noexp", noExp);
+    assertSame(noExp, cache.get("issuer", "noexp"));
+
+    // Entries expire at the exp of the token
+    Jwt shortLived = jwt(LocalDateTime.now(ZoneOffset.UTC).plus(Duration.ofMillis(50)));
+    cache.put("issuer", "short", shortLived);
+    assertSame(shortLived, cache.get("issuer", "short"));
+    Thread.sleep(100);
+    assertNull(cache.get("issuer", "short"));
+    assertSame(noExp, cache.get("issuer", "noexp"));
+
+    cache.put("issuer", "short", shortLived);
+    assertEquals(1, cache.size());
+    cache.put("issuer", "short2", jwt(LocalDateTime.now(ZoneOffset.UTC).plus(Duration.ofMillis(50))));
+    assertEquals(2, cache.size());
+    Thread.sleep(100);
+    cache.purge();
+    assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void testKey() {
+    assertEquals(ValidatedJwtCache.key("issuer", "token"), ValidatedJwtCache.key("issuer", "token"));
+    assertNotEquals(ValidatedJwtCache.key("issuer", "token"), ValidatedJwtCache.key("issuert", "oken"));
+    assertNotEquals(ValidatedJwtCache.key(null, "token"), ValidatedJwtCache.key("issuer", "token"));
+  }
+
+}
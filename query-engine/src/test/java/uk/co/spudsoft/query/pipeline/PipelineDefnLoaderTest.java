@@ -28,6 +28,8 @@ import java.io.File;
 import java.time.Duration;
 import java.util.regex.Pattern;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.slf4j.Logger;
@@ -182,4 +184,101 @@ public class PipelineDefnLoaderTest {
             });
   }
 
+  private static RequestContext templateRequest(String key) {
+    return new RequestContext(
+            null
+            , null
+            , null
+            , "localhost"
+            , null
+            , MultiMap.caseInsensitiveMultiMap().add("key", key).add("port", "1234")
+            , MultiMap.caseInsensitiveMultiMap().add("Host", "localhost:123")
+            , null
+            , new IPAddressString("127.0.0.1")
+            , null
+    );
+  }
+
+  @Test
+  public void testRenderedTemplateCache(Vertx vertx, VertxTestContext testContext) throws Exception {
+    CacheConfig cacheConfig = new CacheConfig();
+    cacheConfig.setMaxItems(10);
+    PipelineDefnLoader loader = new PipelineDefnLoader(new SimpleMeterRegistry(), vertx, cacheConfig, DirCache.cache(new File("target/classes/samples").toPath(), Duration.ofSeconds(1), Pattern.compile("\\..*"), null));
+    Thread.sleep(2000);
+
+    String path = "sub1/sub2/TemplatedJsonToPipelineIT";
+    loader.loadPipeline(path, templateRequest("one"), null)
+            .compose(first -> {
+              return loader.loadPipeline(path, templateRequest("one"), null)
+                      .compose(second -> {
+                        testContext.verify(() -> {
+                          // Identical output from the template is not parsed again
+                          assertSame(first.pipeline(), second.pipeline());
+                        });
+                        return loader.loadPipeline(path, templateRequest("two"), null);
+                      })
+                      .map(third -> {
+                        testContext.verify(() -> {
+                          assertNotSame(first.pipeline(), third.pipeline());
+                          assertEquals("two", third.pipeline().getSource().getName());
+                        });
+                        return third;
+                      });
+            })
+            .onComplete(testContext.succeedingThenComplete());
+  }
+
+  @Test
+  public void testAccessibleTreeCache(Vertx vertx, VertxTestContext testContext) throws Exception {
+    CacheConfig cacheConfig = new CacheConfig();
+    cacheConfig.setMaxItems(100);
+    PipelineDefnLoader loader = new PipelineDefnLoader(new SimpleMeterRegistry(), vertx, cacheConfig, DirCache.cache(new File("target/classes/samples").toPath(), Duration.ofSeconds(1), Pattern.compile("\\..*"), null));
+    Thread.sleep(2000);
+
+    RequestContext req = new RequestContext(
+            null
+            , null
+            , null
+            , "unknown"
+            , null
+            , null
+            , MultiMap.caseInsensitiveMultiMap().add("Host", "bad")
+            , null
+            , new IPAddressString("12.34.56.78")
+            , null
+    );
+    loader.getAccessible(req)
+            .compose(first -> {
+              return loader.getAccessible(req)
+                      .compose(second -> {
+                        testContext.verify(() -> {
+                          // Same permissions outcomes, same tree
+                          assertSame(first, second);
+                        });
+                        loader.filesChanged();
+                        return loader.getAccessible(req);
+                      })
+                      .compose(third -> {
+                        testContext.verify(() -> {
+                          assertNotSame(first, third);
+                          assertEquals(Json.encode(first), Json.encode(third));
+                        });
+                        // Trees that contain templated pipelines are not cached
+                        return loader.getAccessible(templateRequest("one"));
+                      })
+                      .compose(fourth -> {
+                        return loader.getAccessible(templateRequest("one"))
+                                .map(fifth -> {
+                                  testContext.verify(() -> {
+                                    assertNotSame(first, fourth);
+                                    assertNotSame(fourth, fifth);
+                                    assertEquals(Json.encode(fourth), Json.encode(fifth));
+                                  });
+                                  return fifth;
+                                });
+                      });
+            })
+            .onComplete(testContext.succeedingThenComplete());
+  }
+
 }
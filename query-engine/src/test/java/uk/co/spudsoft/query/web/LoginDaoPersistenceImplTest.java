@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2026 jtalbut
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package uk.co.spudsoft.query.web;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import uk.co.spudsoft.query.exec.JdbcHelper;
+
+/**
+ *
+ * @author jtalbut
+ */
+public class LoginDaoPersistenceImplTest {
+
+  @Test
+  public void testTokenCache() {
+    JdbcHelper jdbcHelper = mock(JdbcHelper.class);
+    when(jdbcHelper.runSqlSelect(any(), any(), any())).thenReturn(Future.succeededFuture(null));
+    when(jdbcHelper.runSqlUpdate(any(), any(), any())).thenReturn(Future.succeededFuture(1));
+
+    LoginDaoPersistenceImpl instance = new LoginDaoPersistenceImpl(null, null, null, Duration.ofMinutes(1), jdbcHelper);
+    LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
+
+    // Unknown sessions are only looked up in the database once
+    assertNull(instance.getToken(null, "one").result());
+    assertNull(instance.getToken(null, "one").result());
+    verify(jdbcHelper, times(1)).runSqlSelect(any(), any(), any());
+
+    // Storing a token replaces the negative cache entry
+    instance.storeTokens(null, "one", now.plusMinutes(1), "token1", "provider", null, null);
+    assertEquals("token1", instance.getToken(null, "one").result());
+    assertEquals(1, instance.getTokenCacheSize());
+
+    // Expired tokens are not returned, and do not result in any database access
+    instance.storeTokens(null, "two", now.minusSeconds(1), "token2", "provider", null, null);
+    assertNull(instance.getToken(null, "two").result());
+    assertNull(instance.getToken(null, "two").result());
+    assertEquals(1, instance.getTokenCacheSize());
+
+    instance.removeToken(null, "one");
+    assertNull(instance.getToken(null, "one").result());
+    assertEquals(0, instance.getTokenCacheSize());
+    verify(jdbcHelper, times(1)).runSqlSelect(any(), any(), any());
+    verify(jdbcHelper, times(0)).runSqlUpdate(eq("expireTokens"), any(), any());
+  }
+
+  @Test
+  public void testStoreDuringLookup() {
+    JdbcHelper jdbcHelper = mock(JdbcHelper.class);
+    Promise<Object> lookup = Promise.promise();
+    when(jdbcHelper.runSqlSelect(any(), any(), any())).thenReturn(lookup.future());
+    when(jdbcHelper.runSqlUpdate(any(), any(), any())).thenReturn(Future.succeededFuture(1));
+
+    LoginDaoPersistenceImpl instance = new LoginDaoPersistenceImpl(null, null, null, Duration.ofMinutes(1), jdbcHelper);
+    LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
+
+    // The token is stored after the lookup has started, but before it finds nothing in the database
+    Future<String> token = instance.getToken(null, "one");
+    instance.storeTokens(null, "one", now.plusMinutes(1), "token1", "provider", null, null);
+    lookup.complete(null);
+    assertNull(token.result());
+    assertFalse(instance.isUnknownSession("one"));
+    assertEquals("token1", instance.getToken(null, "one").result());
+
+    // Without a stored token the session is recorded as unknown
+    assertNull(instance.getToken(null, "two").result());
+    assertTrue(instance.isUnknownSession("two"));
+    instance.storeTokens(null, "two", now.plusMinutes(1), "token2", "provider", null, null);
+    assertFalse(instance.isUnknownSession("two"));
+  }
+
+  @Test
+  public void testPurge() {
+    JdbcHelper jdbcHelper = mock(JdbcHelper.class);
+    when(jdbcHelper.runSqlUpdate(any(), any(), any())).thenReturn(Future.succeededFuture(1));
+
+    LoginDaoPersistenceImpl instance = new LoginDaoPersistenceImpl(null, null, null, Duration.ofMinutes(1), jdbcHelper);
+    LocalDateTime now = LocalDateTime.now(ZoneOffset.UTC);
+
+    instance.storeTokens(null, "one", now.plusMinutes(1), "token1", "provider", null, null);
+    instance.storeTokens(null, "two", now.minusSeconds(1), "token2", "provider", null, null);
+    assertEquals(2, instance.getTokenCacheSize());
+
+    instance.purge();
+    assertEquals(1, instance.getTokenCacheSize());
+    verify(jdbcHelper, times(1)).runSqlUpdate(eq("purgeLogins"), any(), any());
+    verify(jdbcHelper, times(1)).runSqlUpdate(eq("expireTokens"), any(), any());
+  }
+
+}
@@ -25,6 +25,7 @@ import io.vertx.core.http.HttpServerRequest;
 import io.vertx.core.http.HttpServerResponse;
 import io.vertx.ext.web.RoutingContext;
 import io.vertx.junit5.VertxExtension;
+import java.time.Duration;
 import java.util.Collections;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
@@ -34,9 +35,12 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.matches;
 
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.testcontainers.shaded.org.awaitility.Awaitility.await;
@@ -61,7 +65,7 @@ public class QueryRouterTest {
     PipelineDefnLoader loader = mock(PipelineDefnLoader.class);
     Authenticator rcb = new Authenticator(null, null, null, null, null, null, true, null, false, null, Collections.singletonList("aud"), null);
     RequestCollatingAppender requestCollatingAppender = new RequestCollatingAppender();
-    QueryRouter router = new QueryRouter(vertx, null, new AuditorMemoryImpl(vertx, new OperatorsInstance(null)), rcb, loader, null, requestCollatingAppender, System.getProperty("java.io.tmpdir"), 32768, 32, true, 2);
+    QueryRouter router = new QueryRouter(vertx, null, new AuditorMemoryImpl(vertx, new OperatorsInstance(null)), rcb, loader, null, requestCollatingAppender, System.getProperty("java.io.tmpdir"), 32768, 32, true, Duration.ofMinutes(1), 2);
 
     RoutingContext routingContext = mock(RoutingContext.class);
     HttpServerRequest request = mock(HttpServerRequest.class);
@@ -77,7 +81,7 @@ public class QueryRouterTest {
     PipelineDefnLoader loader = mock(PipelineDefnLoader.class);
     Authenticator rcb = new Authenticator(null, null, null, null, null, null, true, null, false, null, Collections.singletonList("aud"), null);
     RequestCollatingAppender requestCollatingAppender = new RequestCollatingAppender();
-    QueryRouter router = new QueryRouter(vertx, null, new AuditorMemoryImpl(vertx, new OperatorsInstance(null)), rcb, loader, null, requestCollatingAppender, System.getProperty("java.io.tmpdir"), 32768, 32, true, 2);
+    QueryRouter router = new QueryRouter(vertx, null, new AuditorMemoryImpl(vertx, new OperatorsInstance(null)), rcb, loader, null, requestCollatingAppender, System.getProperty("java.io.tmpdir"), 32768, 32, true, Duration.ofMinutes(1), 2);
 
     Future<Void> deployFuture = router.deploy();
     await().until(() -> deployFuture.isComplete());
@@ -99,7 +103,7 @@ public class QueryRouterTest {
     Authenticator rcb = new Authenticator(null, null, null, null, null, null, true, null, false, null, Collections.singletonList("aud"), null);
     PipelineExecutor pipelineExecutor = mock(PipelineExecutor.class);
     RequestCollatingAppender requestCollatingAppender = new RequestCollatingAppender();
-    QueryRouter router = new QueryRouter(vertx, null, new AuditorMemoryImpl(vertx, new OperatorsInstance(null)), rcb, loader, pipelineExecutor, requestCollatingAppender, System.getProperty("java.io.tmpdir"), 32768, 32, true, 2);
+    QueryRouter router = new QueryRouter(vertx, null, new AuditorMemoryImpl(vertx, new OperatorsInstance(null)), rcb, loader, pipelineExecutor, requestCollatingAppender, System.getProperty("java.io.tmpdir"), 32768, 32, true, Duration.ofMinutes(1), 2);
     
     Future<Void> deployFuture = router.deploy();
     await().until(() -> deployFuture.isComplete());
@@ -249,6 +253,20 @@ public class QueryRouterTest {
     assertEquals("Something special went wrong", messageCaptor.getValue());
   }
   
+  @Test
+  public void testErrorReportClosedConnection() {
+    Throwable ex = new IllegalStateException("The connection has been closed");
+
+    RoutingContext routingContext = mock(RoutingContext.class);
+    HttpServerResponse response = mock(HttpServerResponse.class);
+    when(routingContext.response()).thenReturn(response);
+    when(response.closed()).thenReturn(true);
+
+    QueryRouter.internalError(ex, routingContext, false);
+    verify(response, never()).setStatusCode(anyInt());
+    verify(response, never()).end(anyString());
+  }
+  
   @Test
   void testRemoveMatrixParams() {
     // Basic cases - no matrix parameters